@@ -1,9 +1,12 @@
 package de.fu_berlin.inf.dpp;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import org.apache.log4j.Logger;
+import org.jivesoftware.smackx.entitycaps.EntityCapsManager;
+import org.jivesoftware.smackx.entitycaps.cache.SimpleDirectoryPersistentCache;
 import org.picocontainer.Characteristics;
 import org.picocontainer.ComponentAdapter;
 import org.picocontainer.MutablePicoContainer;
@@ -18,6 +21,7 @@ import org.picocontainer.injectors.ProviderAdapter;
 import org.picocontainer.injectors.Reinjector;
 
 import de.fu_berlin.inf.dpp.account.XMPPAccountStore;
+import de.fu_berlin.inf.dpp.communication.chat.muc.MultiUserChatService;
 import de.fu_berlin.inf.dpp.communication.extensions.ActivitiesExtension;
 import de.fu_berlin.inf.dpp.communication.extensions.CancelInviteExtension;
 import de.fu_berlin.inf.dpp.communication.extensions.CancelProjectNegotiationExtension;
@@ -45,6 +49,7 @@ import de.fu_berlin.inf.dpp.communication.extensions.VersionExchangeExtension;
 import de.fu_berlin.inf.dpp.misc.pico.ChildContainer;
 import de.fu_berlin.inf.dpp.misc.pico.ChildContainerProvider;
 import de.fu_berlin.inf.dpp.misc.pico.DotGraphMonitor;
+import de.fu_berlin.inf.dpp.negotiation.FileListSnapshotStore;
 import de.fu_berlin.inf.dpp.net.util.XMPPUtils;
 import de.fu_berlin.inf.dpp.net.xmpp.XMPPConnectionService;
 import de.fu_berlin.inf.dpp.util.StackTrace;
@@ -74,6 +79,12 @@ public class SarosContext implements ISarosContext {
 
     private static final String SAROS_XMPP_ACCOUNT_FILE = "config.dat";
 
+    private static final String SAROS_CHAT_HISTORY_DIRECTORY = "chat";
+
+    private static final String SAROS_ENTITY_CAPS_CACHE_DIRECTORY = "caps";
+
+    private static final String SAROS_FILE_LIST_DIRECTORY = "filelists";
+
     private final DotGraphMonitor dotMonitor;
 
     private final List<ISarosContextFactory> factories;
@@ -184,7 +195,18 @@ public class SarosContext implements ISarosContext {
          */
         reinjector = new Reinjector(container);
 
-        initAccountStore(container.getComponent(XMPPAccountStore.class));
+        File sarosDataDir = getSarosDataDirectory();
+
+        initAccountStore(container.getComponent(XMPPAccountStore.class),
+            sarosDataDir);
+
+        initChatHistory(container.getComponent(MultiUserChatService.class),
+            sarosDataDir);
+
+        initEntityCapsCache(sarosDataDir);
+
+        initFileListSnapshots(
+            container.getComponent(FileListSnapshotStore.class), sarosDataDir);
 
         installPacketExtensionProviders();
 
@@ -194,7 +216,7 @@ public class SarosContext implements ISarosContext {
         log.info("successfully created Saros runtime context");
     }
 
-    private void initAccountStore(XMPPAccountStore store) {
+    private File getSarosDataDirectory() {
         // see http://bugs.java.com/bugdatabase/view_bug.do?bug_id=4787931
 
         String os = System.getProperty("os.name");
@@ -217,17 +239,66 @@ public class SarosContext implements ISarosContext {
         if (homeDirectory == null)
             homeDirectory = System.getProperty("user.home");
 
-        if (homeDirectory == null) {
+        if (homeDirectory == null)
+            return null;
+
+        return new File(homeDirectory, SAROS_DATA_DIRECTORY);
+    }
+
+    private void initAccountStore(XMPPAccountStore store, File sarosDataDir) {
+        if (sarosDataDir == null) {
             log.warn("home directory not set, cannot save and load account data");
             return;
         }
 
-        File sarosDataDir = new File(homeDirectory, SAROS_DATA_DIRECTORY);
         File accountFile = new File(sarosDataDir, SAROS_XMPP_ACCOUNT_FILE);
 
         store.setAccountFile(accountFile, System.getProperty("user.name"));
     }
 
+    private void initChatHistory(MultiUserChatService service,
+        File sarosDataDir) {
+        if (service == null || sarosDataDir == null)
+            return;
+
+        service.setHistoryDirectory(new File(sarosDataDir,
+            SAROS_CHAT_HISTORY_DIRECTORY));
+    }
+
+    private void initEntityCapsCache(File sarosDataDir) {
+        if (sarosDataDir == null)
+            return;
+
+        File cacheDir = new File(sarosDataDir,
+            SAROS_ENTITY_CAPS_CACHE_DIRECTORY);
+
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            log.warn("could not create entity capabilities cache directory: "
+                + cacheDir);
+            return;
+        }
+
+        try {
+            EntityCapsManager.setPersistentCache(new SimpleDirectoryPersistentCache(
+                cacheDir));
+        } catch (IllegalStateException e) {
+            // the cache is global and may be set by a previous context
+            log.debug("entity capabilities cache is already set");
+        } catch (IOException e) {
+            log.warn("could not load entity capabilities cache: " + cacheDir,
+                e);
+        }
+    }
+
+    private void initFileListSnapshots(FileListSnapshotStore store,
+        File sarosDataDir) {
+        if (store == null || sarosDataDir == null)
+            return;
+
+        store.setDirectory(new File(sarosDataDir,
+            SAROS_FILE_LIST_DIRECTORY));
+    }
+
     /**
      * Adds the object to Saros' container, and injects dependencies into the
      * annotated fields of the given object. It should only be used for objects
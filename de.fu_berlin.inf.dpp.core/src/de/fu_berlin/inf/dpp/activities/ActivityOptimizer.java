@@ -6,6 +6,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import de.fu_berlin.inf.dpp.activities.ProgressActivity.ProgressAction;
+import de.fu_berlin.inf.dpp.session.User;
+import de.fu_berlin.inf.dpp.util.Pair;
+
 /**
  * Optimizer for activities.
  */
@@ -36,12 +40,13 @@ public class ActivityOptimizer {
 
         boolean[] dropActivityIdx = new boolean[activities.size()];
 
-        Map<SPath, Integer> selections = new HashMap<SPath, Integer>();
-        Map<SPath, Integer> viewports = new HashMap<SPath, Integer>();
+        Map<Pair<User, SPath>, Integer> selections = new HashMap<Pair<User, SPath>, Integer>();
+        Map<Pair<User, SPath>, Integer> viewports = new HashMap<Pair<User, SPath>, Integer>();
+        Map<Pair<User, String>, Integer> progresses = new HashMap<Pair<User, String>, Integer>();
 
         /*
-         * keep only the latest selection/viewport activities per project and
-         * path
+         * keep only the latest selection/viewport activities per user, project
+         * and path and the latest progress update per target and progress
          */
 
         int activityIdx = 0;
@@ -49,23 +54,46 @@ public class ActivityOptimizer {
         for (IActivity activity : activities) {
 
             if (activity instanceof TextSelectionActivity) {
-                SPath path = ((TextSelectionActivity) activity).getPath();
+                Pair<User, SPath> key = new Pair<User, SPath>(
+                    activity.getSource(),
+                    ((TextSelectionActivity) activity).getPath());
 
-                Integer idx = selections.get(path);
+                Integer idx = selections.get(key);
 
                 if (idx != null)
                     dropActivityIdx[idx] = true;
 
-                selections.put(path, activityIdx);
+                selections.put(key, activityIdx);
             } else if (activity instanceof ViewportActivity) {
-                SPath path = ((ViewportActivity) activity).getPath();
+                Pair<User, SPath> key = new Pair<User, SPath>(
+                    activity.getSource(),
+                    ((ViewportActivity) activity).getPath());
 
-                Integer idx = viewports.get(path);
+                Integer idx = viewports.get(key);
 
                 if (idx != null)
                     dropActivityIdx[idx] = true;
 
-                viewports.put(path, activityIdx);
+                viewports.put(key, activityIdx);
+            } else if (activity instanceof ProgressActivity) {
+                ProgressActivity progress = (ProgressActivity) activity;
+
+                Pair<User, String> key = new Pair<User, String>(
+                    progress.getTarget(), progress.getProgressID());
+
+                Integer idx = progresses.remove(key);
+
+                /*
+                 * an update without a task name only reports the work done
+                 * and is superseded by the next update
+                 */
+                if (progress.getAction() == ProgressAction.UPDATE) {
+                    if (idx != null)
+                        dropActivityIdx[idx] = true;
+
+                    if (progress.getTaskName() == null)
+                        progresses.put(key, activityIdx);
+                }
             }
 
             activityIdx++;
@@ -36,11 +36,22 @@ import de.fu_berlin.inf.dpp.session.User;
  * The host will reply with a ChecksumError of the same recoveryID after having
  * sent the last FileActivity (with {@link FileActivity#isRecovery()} being set
  * related to this checksum recovery.
+ * 
+ * A Checksum Error whose recoveryID starts with {@link #FILE_REQUEST_PREFIX}
+ * requests files the user did not receive during the project negotiation. The
+ * host answers it in the same way but only locks the requesting user. The
+ * paths of the reply contain the files the host could not send, if any.
  */
 @XStreamAlias("checksumErrorActivity")
 public class ChecksumErrorActivity extends AbstractActivity implements
     ITargetedActivity {
 
+    /**
+     * Prefix of the recoveryID of a request for files that were not received
+     * during the project negotiation.
+     */
+    public static final String FILE_REQUEST_PREFIX = "file-request-";
+
     @XStreamAsAttribute
     private User target;
 
@@ -80,6 +91,15 @@ public class ChecksumErrorActivity extends AbstractActivity implements
         return recoveryID;
     }
 
+    /**
+     * Returns <code>true</code> if this is a request for files that were not
+     * received during the project negotiation rather than a request to recover
+     * from an inconsistency.
+     */
+    public boolean isFileRequest() {
+        return recoveryID != null && recoveryID.startsWith(FILE_REQUEST_PREFIX);
+    }
+
     @Override
     public void dispatch(IActivityReceiver receiver) {
         receiver.receive(this);
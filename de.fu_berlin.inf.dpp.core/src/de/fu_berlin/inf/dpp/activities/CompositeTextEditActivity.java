@@ -0,0 +1,115 @@
+package de.fu_berlin.inf.dpp.activities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.ObjectUtils;
+
+import de.fu_berlin.inf.dpp.concurrent.jupiter.Operation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.SplitOperation;
+import de.fu_berlin.inf.dpp.session.User;
+
+/**
+ * An immutable sequence of {@link TextEditActivity}s in the same document that
+ * were caused by one command (e.g. reformat code or replace all). The edits
+ * are applied one after another, so the offset of every edit refers to the
+ * document after all previous edits of the sequence were applied.
+ * <p>
+ * The sequence is transformed into one composed {@link Operation}, so it is
+ * sent to the other session participants as a single activity.
+ */
+public class CompositeTextEditActivity extends AbstractResourceActivity {
+
+    private final List<TextEditActivity> edits;
+
+    /**
+     * @param source
+     *            the user that caused the edits
+     * @param path
+     *            path of the editor where the edits happened
+     * @param edits
+     *            the edits in the order they have to be applied, all of them
+     *            must have the given source and path
+     */
+    public CompositeTextEditActivity(User source, SPath path,
+        List<TextEditActivity> edits) {
+
+        super(source, path);
+
+        if (path == null)
+            throw new IllegalArgumentException("Editor cannot be null");
+        if (edits == null || edits.isEmpty())
+            throw new IllegalArgumentException("Edits cannot be empty");
+
+        for (TextEditActivity edit : edits) {
+            if (!path.equals(edit.getPath()))
+                throw new IllegalArgumentException("edit " + edit
+                    + " does not belong to " + path);
+        }
+
+        this.edits = Collections
+            .unmodifiableList(new ArrayList<TextEditActivity>(edits));
+    }
+
+    /**
+     * Returns the edits in the order they have to be applied.
+     */
+    public List<TextEditActivity> getEdits() {
+        return edits;
+    }
+
+    /**
+     * Converts the edits to one operation, a chain of {@link SplitOperation}s
+     * if there is more than one edit.
+     */
+    public Operation toOperation() {
+        Operation operation = null;
+
+        for (TextEditActivity edit : edits) {
+            if (operation == null)
+                operation = edit.toOperation();
+            else
+                operation = new SplitOperation(operation, edit.toOperation());
+        }
+
+        return operation;
+    }
+
+    @Override
+    public String toString() {
+        return "CompositeTextEditActivity(edits: " + edits + ", path: "
+            + getPath() + ", src: " + getSource() + ")";
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = super.hashCode();
+        result = prime * result + ObjectUtils.hashCode(edits);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!super.equals(obj))
+            return false;
+        if (!(obj instanceof CompositeTextEditActivity))
+            return false;
+
+        CompositeTextEditActivity other = (CompositeTextEditActivity) obj;
+
+        return ObjectUtils.equals(this.edits, other.edits);
+    }
+
+    /**
+     * Dispatches the edits one after another.
+     */
+    @Override
+    public void dispatch(IActivityReceiver receiver) {
+        for (TextEditActivity edit : edits)
+            edit.dispatch(receiver);
+    }
+}
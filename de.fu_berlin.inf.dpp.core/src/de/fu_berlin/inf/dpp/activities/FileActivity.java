@@ -10,7 +10,8 @@ import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 import de.fu_berlin.inf.dpp.session.User;
 
 @XStreamAlias("fileActivity")
-public class FileActivity extends AbstractResourceActivity {
+public class FileActivity extends AbstractResourceActivity implements
+    Cloneable {
 
     /**
      * Enumeration used to distinguish file activities which are caused as part
@@ -40,7 +41,14 @@ public class FileActivity extends AbstractResourceActivity {
     @XStreamAsAttribute
     protected String encoding;
 
-    protected final byte[] content;
+    protected byte[] content;
+
+    /**
+     * The hash of the content if the content is transferred separately from
+     * this activity, see {@link FileContentStore}.
+     */
+    @XStreamAsAttribute
+    protected String contentHash;
 
     /**
      * Utility method for creating a FileActivity of type {@link Type#CREATED}
@@ -179,6 +187,55 @@ public class FileActivity extends AbstractResourceActivity {
         return content;
     }
 
+    /**
+     * Returns the hash of the content if the content was not transferred along
+     * with this activity.
+     * 
+     * @return the content hash or <code>null</code> if this activity is not
+     *         referencing its content
+     * 
+     * @see #withContentReference(String)
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Returns a copy of this activity which only references its content by the
+     * given hash. The content of the copy is <code>null</code>.
+     * 
+     * @param hash
+     *            the hash of the content
+     */
+    public FileActivity withContentReference(String hash) {
+        FileActivity copy = copy();
+        copy.content = null;
+        copy.contentHash = hash;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this activity containing the given content instead of
+     * the content reference.
+     * 
+     * @param content
+     *            the referenced content
+     */
+    public FileActivity withContent(byte[] content) {
+        FileActivity copy = copy();
+        copy.content = content;
+        copy.contentHash = null;
+        return copy;
+    }
+
+    private FileActivity copy() {
+        try {
+            return (FileActivity) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     /**
      * Returns the encoding the content is encoded with.
      * 
@@ -193,8 +250,14 @@ public class FileActivity extends AbstractResourceActivity {
         return "FileActivity [dst:path=" + getPath() + ", src:path="
             + (oldPath == null ? "N/A" : oldPath) + ", type=" + type
             + ", encoding=" + (encoding == null ? "N/A" : encoding)
-            + ", content=" + (content == null ? "0" : content.length)
-            + " byte(s)]";
+            + ", content=" + contentToString() + "]";
+    }
+
+    protected String contentToString() {
+        if (contentHash != null)
+            return "ref:" + contentHash;
+
+        return (content == null ? "0" : content.length) + " byte(s)";
     }
 
     @Override
@@ -202,6 +265,7 @@ public class FileActivity extends AbstractResourceActivity {
         final int prime = 31;
         int result = super.hashCode();
         result = prime * result + Arrays.hashCode(content);
+        result = prime * result + ObjectUtils.hashCode(contentHash);
         result = prime * result + ObjectUtils.hashCode(oldPath);
         result = prime * result + ObjectUtils.hashCode(type);
         result = prime * result + ObjectUtils.hashCode(purpose);
@@ -233,6 +297,9 @@ public class FileActivity extends AbstractResourceActivity {
         if (!Arrays.equals(content, other.content))
             return false;
 
+        if (!ObjectUtils.equals(contentHash, other.contentHash))
+            return false;
+
         return ObjectUtils.equals(encoding, other.encoding);
     }
 
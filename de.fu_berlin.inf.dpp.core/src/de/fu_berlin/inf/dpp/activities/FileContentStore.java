@@ -0,0 +1,266 @@
+package de.fu_berlin.inf.dpp.activities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.util.Pair;
+
+/**
+ * Content addressed store for the contents of {@linkplain FileActivity file
+ * activities} which are transferred separately from the activities
+ * themselves. An activity only carries the hash of its content and the
+ * receiver must not execute it until the content is available.
+ * <p>
+ * For every peer the store tracks the contents that were sent to the peer and
+ * the contents that were received from the peer. Both sides evict the least
+ * recently used contents if more than {@link #PEER_CAPACITY} bytes are held.
+ * As the sender and the receiver update their side in the order of the
+ * activity sequence, both sides always agree which contents the receiver
+ * holds. So a content that the receiver already holds is not sent again.
+ * </p>
+ * <p>
+ * This class is thread safe.
+ * </p>
+ */
+public class FileContentStore {
+
+    /**
+     * Contents smaller than this are still sent along with their activity.
+     */
+    public static final int MIN_CONTENT_SIZE = 8 * 1024;
+
+    /**
+     * Maximum number of bytes held for every peer. This value must be the same
+     * for all participants of a session.
+     */
+    public static final long PEER_CAPACITY = 16 * 1024 * 1024;
+
+    /**
+     * Index of the contents a peer holds in least recently used order.
+     */
+    private static class ContentIndex {
+
+        private final LinkedHashMap<String, Integer> sizes = new LinkedHashMap<String, Integer>(
+            16, 0.75F, true);
+
+        private long size;
+
+        /**
+         * Marks the content as used.
+         *
+         * @return <code>true</code> if the content is indexed
+         */
+        private boolean touch(String hash) {
+            return sizes.get(hash) != null;
+        }
+
+        /**
+         * Adds the content to the index and evicts the least recently used
+         * contents if the capacity is exceeded. Contents that exceed the
+         * capacity on their own are not added.
+         *
+         * @return the hashes of the evicted contents
+         */
+        private List<String> add(String hash, int length) {
+            List<String> evicted = new ArrayList<String>();
+
+            if (length > PEER_CAPACITY)
+                return evicted;
+
+            sizes.put(hash, length);
+            size += length;
+
+            for (Iterator<Map.Entry<String, Integer>> it = sizes.entrySet()
+                .iterator(); it.hasNext() && size > PEER_CAPACITY;) {
+
+                Map.Entry<String, Integer> entry = it.next();
+
+                size -= entry.getValue();
+                evicted.add(entry.getKey());
+                it.remove();
+            }
+
+            return evicted;
+        }
+    }
+
+    private static class PeerContents {
+
+        /** the contents the peer holds as they were sent to it */
+        private final ContentIndex sent = new ContentIndex();
+
+        /** the contents the local user holds as received from the peer */
+        private final ContentIndex received = new ContentIndex();
+
+        private final Map<String, byte[]> contents = new HashMap<String, byte[]>();
+
+        /**
+         * Contents that arrived but were not referenced by an activity yet. A
+         * content may arrive several times if it was evicted in the meantime.
+         */
+        private final Map<String, List<byte[]>> pending = new HashMap<String, List<byte[]>>();
+    }
+
+    private final Map<JID, PeerContents> peers = new HashMap<JID, PeerContents>();
+
+    /**
+     * Returns the hash that is used to reference the given content.
+     *
+     * @param content
+     *            the content of a file
+     * @return the hex encoded SHA-1 hash of the content
+     */
+    public static String hash(byte[] content) {
+        return DigestUtils.shaHex(content);
+    }
+
+    /**
+     * Replaces the contents of the file activities that should be transferred
+     * separately with references. This method must be called for the
+     * activities in the order they are sent to the peer.
+     *
+     * @param peer
+     *            the recipient of the activities
+     * @param activities
+     *            the activities to send
+     * @param transfers
+     *            list to which the hashes and contents are added that must be
+     *            transferred to the peer
+     * @return the activities to send
+     */
+    public synchronized List<IActivity> toReferences(JID peer,
+        List<IActivity> activities, List<Pair<String, byte[]>> transfers) {
+
+        List<IActivity> result = null;
+
+        for (int i = 0; i < activities.size(); i++) {
+            IActivity activity = activities.get(i);
+
+            if (!(activity instanceof FileActivity))
+                continue;
+
+            FileActivity fileActivity = (FileActivity) activity;
+            byte[] content = fileActivity.getContent();
+
+            if (content == null || content.length < MIN_CONTENT_SIZE)
+                continue;
+
+            String hash = hash(content);
+
+            ContentIndex sent = getPeerContents(peer).sent;
+
+            if (!sent.touch(hash)) {
+                sent.add(hash, content.length);
+                transfers.add(new Pair<String, byte[]>(hash, content));
+            }
+
+            if (result == null)
+                result = new ArrayList<IActivity>(activities);
+
+            result.set(i, fileActivity.withContentReference(hash));
+        }
+
+        return result == null ? activities : result;
+    }
+
+    /**
+     * Adds a content that was received from the given peer.
+     *
+     * @param peer
+     *            the sender of the content
+     * @param hash
+     *            the hash the content is referenced with
+     * @param content
+     *            the content
+     */
+    public synchronized void addContent(JID peer, String hash, byte[] content) {
+        Map<String, List<byte[]>> pending = getPeerContents(peer).pending;
+
+        List<byte[]> contents = pending.get(hash);
+
+        if (contents == null) {
+            contents = new ArrayList<byte[]>(1);
+            pending.put(hash, contents);
+        }
+
+        contents.add(content);
+    }
+
+    /**
+     * Resolves the content reference of the given activity. This method must
+     * be called for the activities in the order they were sent by the peer.
+     *
+     * @param peer
+     *            the sender of the activity
+     * @param activity
+     *            the received activity
+     * @return the activity with its content, the activity itself if it does
+     *         not reference a content or <code>null</code> if the referenced
+     *         content was not received yet
+     */
+    public synchronized IActivity resolve(JID peer, IActivity activity) {
+        if (!(activity instanceof FileActivity))
+            return activity;
+
+        FileActivity fileActivity = (FileActivity) activity;
+        String hash = fileActivity.getContentHash();
+
+        if (hash == null)
+            return activity;
+
+        PeerContents peerContents = getPeerContents(peer);
+
+        if (peerContents.received.touch(hash))
+            return fileActivity.withContent(peerContents.contents.get(hash));
+
+        List<byte[]> contents = peerContents.pending.get(hash);
+
+        if (contents == null)
+            return null;
+
+        byte[] content = contents.remove(0);
+
+        if (contents.isEmpty())
+            peerContents.pending.remove(hash);
+
+        for (String evicted : peerContents.received.add(hash, content.length))
+            peerContents.contents.remove(evicted);
+
+        if (content.length <= PEER_CAPACITY)
+            peerContents.contents.put(hash, content);
+
+        return fileActivity.withContent(content);
+    }
+
+    /**
+     * Removes all contents sent to or received from the given peer.
+     */
+    public synchronized void remove(JID peer) {
+        peers.remove(peer);
+    }
+
+    /**
+     * Removes all contents.
+     */
+    public synchronized void clear() {
+        peers.clear();
+    }
+
+    private PeerContents getPeerContents(JID peer) {
+        PeerContents peerContents = peers.get(peer);
+
+        if (peerContents == null) {
+            peerContents = new PeerContents();
+            peers.put(peer, peerContents);
+        }
+
+        return peerContents;
+    }
+}
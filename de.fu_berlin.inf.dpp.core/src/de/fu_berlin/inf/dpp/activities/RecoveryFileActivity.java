@@ -121,6 +121,6 @@ public class RecoveryFileActivity extends FileActivity implements
             + getPath() + ", src:path=" + (oldPath == null ? "N/A" : oldPath)
             + ", type=" + type + ", encoding="
             + (encoding == null ? "N/A" : encoding) + ", content="
-            + (content == null ? "0" : content.length) + " byte(s)]";
+            + contentToString() + "]";
     }
 }
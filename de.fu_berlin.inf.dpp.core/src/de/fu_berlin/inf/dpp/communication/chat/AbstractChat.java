@@ -12,9 +12,26 @@ import de.fu_berlin.inf.dpp.net.xmpp.JID;
  * functionality for adding and removing {@link IChatListener}s.
  */
 public abstract class AbstractChat implements IChat {
-    private ChatHistory history = new ChatHistory();
+    private final ChatHistory history;
     private List<IChatListener> chatListeners = new CopyOnWriteArrayList<IChatListener>();
 
+    /**
+     * Creates a chat that keeps its complete history in memory.
+     */
+    public AbstractChat() {
+        this(new ChatHistory());
+    }
+
+    /**
+     * Creates a chat that uses the given history.
+     * 
+     * @param history
+     *            the history to use
+     */
+    protected AbstractChat(ChatHistory history) {
+        this.history = history;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -31,6 +48,22 @@ public abstract class AbstractChat implements IChat {
         return history.getEntries();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ChatElement> getHistory(int offset, int count) {
+        return history.getEntries(offset, count);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getHistorySize() {
+        return history.size();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -39,6 +72,15 @@ public abstract class AbstractChat implements IChat {
         history.clear();
     }
 
+    /**
+     * Releases the in-memory part of the history. A persistent history stays
+     * available for a later chat using the same store, any other history is
+     * cleared.
+     */
+    protected void releaseHistory() {
+        history.release();
+    }
+
     /**
      * {@inheritDoc}
      */
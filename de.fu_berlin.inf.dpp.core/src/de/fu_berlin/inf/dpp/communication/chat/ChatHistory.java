@@ -1,43 +1,187 @@
 package de.fu_berlin.inf.dpp.communication.chat;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.apache.log4j.Logger;
+
 /**
  * This class describes the history of incoming messages of a chat. It saves
- * entries in the form of {@link ChatElement} instances.
+ * entries in the form of {@link ChatElement} instances.
+ * <p>
+ * If the history is backed by a {@link ChatHistoryStore} only the most recent
+ * entries are kept in memory. Older entries can be accessed page by page with
+ * {@link #getEntries(int, int)}.
  */
 public class ChatHistory {
-    private List<ChatElement> history = Collections
-        .synchronizedList(new LinkedList<ChatElement>());
+
+    private static final Logger log = Logger.getLogger(ChatHistory.class);
+
+    /**
+     * Default number of entries that are kept in memory if the history is
+     * backed by a {@link ChatHistoryStore}.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 256;
+
+    private final ChatHistoryStore store;
+
+    private final int windowSize;
+
+    /** the most recent entries, oldest first */
+    private final LinkedList<ChatElement> window = new LinkedList<ChatElement>();
+
+    /** total number of entries including the ones that are not in memory */
+    private int size;
+
+    /**
+     * Creates a history that keeps all entries in memory.
+     */
+    public ChatHistory() {
+        this(null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a history that persists all entries in the given store and only
+     * keeps the last <code>windowSize</code> entries in memory. Entries that
+     * are already present in the store are available immediately.
+     *
+     * @param store
+     *            the store to use, may be <code>null</code> to keep all
+     *            entries in memory
+     * @param windowSize
+     *            the number of entries to keep in memory
+     */
+    public ChatHistory(ChatHistoryStore store, int windowSize) {
+        if (windowSize <= 0)
+            throw new IllegalArgumentException("window size must be > 0");
+
+        this.store = store;
+        this.windowSize = windowSize;
+
+        if (store != null)
+            loadWindow();
+    }
 
     /**
      * Adds a new {@link ChatElement}
-     * 
+     *
      * @param entry
      *            that describes the chat message
      */
-    public void addEntry(ChatElement entry) {
-        history.add(entry);
+    public synchronized void addEntry(ChatElement entry) {
+        if (store == null) {
+            size++;
+        } else {
+            try {
+                store.append(entry);
+            } catch (IOException e) {
+                /*
+                 * the window must always be the tail of the store, otherwise
+                 * the offsets of all following entries would be wrong
+                 */
+                log.error("failed to persist chat history entry", e);
+                return;
+            }
+
+            // the store may have dropped its oldest entries
+            size = store.size();
+        }
+
+        window.addLast(entry);
+
+        while (window.size() > Math.min(windowSize, size))
+            window.removeFirst();
     }
 
     /**
-     * Returns all added {@link ChatElement}s
-     * 
+     * Returns the {@link ChatElement}s that are currently held in memory. If
+     * the history is not backed by a store these are all added entries.
+     *
      * @return
      */
-    public List<ChatElement> getEntries() {
-        synchronized (history) {
-            return new ArrayList<ChatElement>(history);
+    public synchronized List<ChatElement> getEntries() {
+        return new ArrayList<ChatElement>(window);
+    }
+
+    /**
+     * Returns a page of {@link ChatElement}s in chronological order.
+     *
+     * @param offset
+     *            the number of entries to skip counting from the most recent
+     *            entry backwards
+     * @param count
+     *            the maximum number of entries to return
+     * @return the entries in chronological order, an empty list if there are
+     *         no entries in the given range
+     */
+    public synchronized List<ChatElement> getEntries(int offset, int count) {
+        if (offset < 0 || count < 0)
+            throw new IllegalArgumentException("offset and count must be >= 0");
+
+        int end = size - offset;
+        int start = Math.max(0, end - count);
+
+        if (end <= 0)
+            return Collections.emptyList();
+
+        int windowStart = size - window.size();
+
+        if (start >= windowStart)
+            return new ArrayList<ChatElement>(window.subList(start
+                - windowStart, end - windowStart));
+
+        try {
+            return store.read(start, end - start);
+        } catch (IOException e) {
+            log.error("failed to read chat history", e);
+            return Collections.emptyList();
         }
     }
 
+    /**
+     * Returns the total number of {@link ChatElement}s in this history.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
     /**
      * Removes all added {@link ChatElement}s from the {@link ChatHistory}
      */
-    public void clear() {
-        history.clear();
+    public synchronized void clear() {
+        window.clear();
+        size = 0;
+
+        if (store != null)
+            store.clear();
+    }
+
+    /**
+     * Releases all resources of this history. Persistent entries remain in
+     * the store and are available again when a new history is created for the
+     * same store. If the history is not backed by a store all entries are
+     * removed.
+     */
+    public synchronized void release() {
+        if (store == null) {
+            clear();
+            return;
+        }
+
+        store.close();
+    }
+
+    private void loadWindow() {
+        size = store.size();
+
+        try {
+            window.addAll(store.read(Math.max(0, size - windowSize),
+                windowSize));
+        } catch (IOException e) {
+            log.error("failed to load chat history", e);
+        }
     }
 }
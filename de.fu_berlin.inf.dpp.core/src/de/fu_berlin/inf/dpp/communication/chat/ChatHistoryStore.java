@@ -0,0 +1,564 @@
+package de.fu_berlin.inf.dpp.communication.chat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.jivesoftware.smackx.ChatState;
+
+import de.fu_berlin.inf.dpp.communication.chat.ChatElement.ChatElementType;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+
+/**
+ * Append-only, segment file based storage for {@link ChatElement}s. Every
+ * segment file contains at most {@link #SEGMENT_SIZE} entries, so reading a
+ * page of old entries only requires to read the segments covering the
+ * requested range instead of the whole history. The file offsets of the
+ * entries of a segment are indexed the first time the segment is read, so
+ * reading a whole history page by page only reads every entry once.
+ * <p>
+ * A segment ends at its first entry that cannot be read, e.g if the IDE
+ * crashed while writing. The current segment is truncated at this entry when
+ * the store is loaded, so new entries are appended after the last valid one.
+ * <p>
+ * The store can be limited to a maximum number of segments. If a new segment
+ * would exceed this limit the oldest segment is deleted, so the indices of the
+ * remaining entries are shifted by {@link #SEGMENT_SIZE}.
+ * <p>
+ * All methods of this class are thread safe.
+ */
+public class ChatHistoryStore {
+
+    private static final Logger log = Logger.getLogger(ChatHistoryStore.class);
+
+    /**
+     * Maximum number of entries stored in one segment file.
+     */
+    public static final int SEGMENT_SIZE = 512;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int FORMAT_VERSION = 1;
+
+    /** length of the header of a segment file in bytes */
+    private static final int HEADER_LENGTH = 4;
+
+    /** maximum number of segment indices that are kept in memory */
+    private static final int MAX_CACHED_INDICES = 32;
+
+    private final File directory;
+
+    private final int maxSegments;
+
+    /** number of entries in the last (current) segment */
+    private int tailSegmentSize;
+
+    /** number of the oldest segment */
+    private int headSegment;
+
+    /** number of the current segment, -1 if there is no segment yet */
+    private int tailSegment = -1;
+
+    /** length of the current segment file in bytes */
+    private long tailSegmentLength;
+
+    private DataOutputStream out;
+
+    private boolean loaded;
+
+    /** the indices of recently read segments and of the current segment */
+    private final Map<Integer, SegmentIndex> indices = new LinkedHashMap<Integer, SegmentIndex>(
+        16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(
+            Map.Entry<Integer, SegmentIndex> eldest) {
+            return size() > MAX_CACHED_INDICES
+                && eldest.getKey() != tailSegment;
+        }
+    };
+
+    /**
+     * The file offsets of the valid entries of a segment.
+     */
+    private static class SegmentIndex {
+
+        private final long[] offsets = new long[SEGMENT_SIZE];
+
+        /** number of valid entries */
+        private int size;
+
+        /** offset behind the last valid entry */
+        private long length = HEADER_LENGTH;
+
+        private void add(long offset, long end) {
+            offsets[size++] = offset;
+            length = end;
+        }
+    }
+
+    /**
+     * Creates a store that keeps its segment files in the given directory. The
+     * directory is created on the first write if it does not exist.
+     *
+     * @param directory
+     *            the directory containing the segment files
+     */
+    public ChatHistoryStore(File directory) {
+        this(directory, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a store that keeps at most the given number of segment files in
+     * the given directory. The directory is created on the first write if it
+     * does not exist.
+     *
+     * @param directory
+     *            the directory containing the segment files
+     * @param maxSegments
+     *            the maximum number of segment files to keep
+     */
+    public ChatHistoryStore(File directory, int maxSegments) {
+        if (directory == null)
+            throw new IllegalArgumentException("directory is null");
+
+        if (maxSegments <= 0)
+            throw new IllegalArgumentException("max segments must be > 0");
+
+        this.directory = directory;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * Appends the given entry at the end of the store.
+     *
+     * @param element
+     *            the entry to append
+     * @throws IOException
+     *             if the entry could not be written
+     */
+    public synchronized void append(ChatElement element) throws IOException {
+        load();
+
+        if (out == null || tailSegmentSize == SEGMENT_SIZE)
+            openNextSegment();
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        write(new DataOutputStream(buffer), element);
+
+        out.write(buffer.toByteArray());
+        out.flush();
+
+        long offset = tailSegmentLength;
+        tailSegmentLength += buffer.size();
+        tailSegmentSize++;
+
+        SegmentIndex index = indices.get(tailSegment);
+
+        if (index != null)
+            index.add(offset, tailSegmentLength);
+    }
+
+    /**
+     * Returns the number of entries in this store.
+     */
+    public synchronized int size() {
+        load();
+
+        if (tailSegment < 0)
+            return 0;
+
+        return (tailSegment - headSegment) * SEGMENT_SIZE + tailSegmentSize;
+    }
+
+    /**
+     * Reads up to <code>count</code> entries starting at the given index in
+     * chronological order.
+     *
+     * @param index
+     *            index of the first entry to read, the oldest entry has index
+     *            0
+     * @param count
+     *            the maximum number of entries to read
+     * @return the entries in chronological order, an empty list if the store
+     *         does not contain any entries in the given range
+     * @throws IOException
+     *             if a segment could not be read
+     */
+    public synchronized List<ChatElement> read(int index, int count)
+        throws IOException {
+
+        if (index < 0 || count < 0)
+            throw new IllegalArgumentException("index and count must be >= 0");
+
+        int size = size();
+
+        int end = Math.min(size, index + count);
+
+        List<ChatElement> result = new ArrayList<ChatElement>(Math.max(0, end
+            - index));
+
+        if (out != null)
+            out.flush();
+
+        for (int i = index; i < end;) {
+            int segment = headSegment + i / SEGMENT_SIZE;
+            int offset = i % SEGMENT_SIZE;
+            int toRead = Math.min(SEGMENT_SIZE - offset, end - i);
+
+            readSegment(segment, offset, toRead, result);
+            i += toRead;
+        }
+
+        return result;
+    }
+
+    /**
+     * Closes the current segment file. The store can still be used afterwards
+     * and will reopen its files on demand.
+     */
+    public synchronized void close() {
+        IOUtils.closeQuietly(out);
+        out = null;
+        indices.clear();
+        loaded = false;
+    }
+
+    /**
+     * Deletes all entries of this store.
+     */
+    public synchronized void clear() {
+        close();
+
+        for (File segment : listSegments())
+            if (!segment.delete())
+                log.warn("could not delete chat history segment: " + segment);
+
+        headSegment = 0;
+        tailSegment = -1;
+        tailSegmentSize = 0;
+        tailSegmentLength = 0;
+        loaded = true;
+    }
+
+    private void load() {
+        if (loaded)
+            return;
+
+        loaded = true;
+
+        File[] segments = listSegments();
+
+        headSegment = 0;
+        tailSegment = -1;
+        tailSegmentSize = 0;
+        tailSegmentLength = 0;
+
+        if (segments.length == 0)
+            return;
+
+        File tail = segments[segments.length - 1];
+
+        try {
+            headSegment = getSegmentNumber(segments[0]);
+            tailSegment = getSegmentNumber(tail);
+        } catch (NumberFormatException e) {
+            log.warn("invalid chat history segment names in: " + directory, e);
+            headSegment = 0;
+            tailSegment = segments.length - 1;
+        }
+
+        try {
+            SegmentIndex index = createIndex(tail);
+
+            long validLength = index.size == 0 ? 0 : index.length;
+
+            /*
+             * cut off everything behind the last valid entry, e.g a partially
+             * written entry if the IDE crashed while writing
+             */
+            if (validLength < tail.length()) {
+                log.warn("truncating chat history segment " + tail + " at "
+                    + validLength + " of " + tail.length() + " bytes");
+
+                truncate(tail, validLength);
+            }
+
+            tailSegmentSize = index.size;
+            indices.put(tailSegment, index);
+        } catch (IOException e) {
+            log.warn("could not read chat history segment: " + tail, e);
+        }
+    }
+
+    /*
+     * Reads the offsets of all entries of the given segment up to the first
+     * entry that cannot be read.
+     */
+    private static SegmentIndex createIndex(File segment) throws IOException {
+        SegmentIndex index = new SegmentIndex();
+
+        CountingInputStream counter = new CountingInputStream(
+            new FileInputStream(segment));
+
+        DataInputStream in = new DataInputStream(counter);
+
+        try {
+            if (in.readInt() != FORMAT_VERSION)
+                return index;
+
+            while (index.size < SEGMENT_SIZE) {
+                long offset = counter.position;
+
+                read(in);
+                index.add(offset, counter.position);
+            }
+        } catch (EOFException e) {
+            // end of the segment
+        } catch (IOException e) {
+            log.warn("chat history segment " + segment
+                + " is corrupted behind entry " + index.size, e);
+        } catch (RuntimeException e) {
+            // e.g an unknown chat state or an invalid JID
+            log.warn("chat history segment " + segment
+                + " is corrupted behind entry " + index.size, e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+
+        return index;
+    }
+
+    private SegmentIndex getIndex(int segment) throws IOException {
+        SegmentIndex index = indices.get(segment);
+
+        if (index == null) {
+            index = createIndex(getSegmentFile(segment));
+            indices.put(segment, index);
+        }
+
+        return index;
+    }
+
+    private void truncate(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void openNextSegment() throws IOException {
+        IOUtils.closeQuietly(out);
+        out = null;
+
+        if (tailSegment < 0 || tailSegmentSize == SEGMENT_SIZE) {
+            tailSegment++;
+            tailSegmentSize = 0;
+            indices.put(tailSegment, new SegmentIndex());
+        }
+
+        while (tailSegment - headSegment + 1 > maxSegments) {
+            indices.remove(headSegment);
+            File head = getSegmentFile(headSegment++);
+
+            if (head.exists() && !head.delete())
+                log.warn("could not delete chat history segment: " + head);
+        }
+
+        if (!directory.exists() && !directory.mkdirs())
+            throw new IOException("could not create directory: " + directory);
+
+        File segment = getSegmentFile(tailSegment);
+
+        boolean isNew = !segment.exists() || segment.length() == 0;
+
+        out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(segment, true)));
+
+        if (isNew)
+            out.writeInt(FORMAT_VERSION);
+
+        tailSegmentLength = isNew ? HEADER_LENGTH : segment.length();
+    }
+
+    private void readSegment(int segment, int offset, int count,
+        List<ChatElement> result) throws IOException {
+
+        SegmentIndex index = getIndex(segment);
+
+        // entries behind a corrupted entry are skipped
+        count = Math.min(count, index.size - offset);
+
+        if (count <= 0)
+            return;
+
+        FileInputStream file = new FileInputStream(getSegmentFile(segment));
+
+        try {
+            file.getChannel().position(index.offsets[offset]);
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                file));
+
+            for (int i = 0; i < count; i++)
+                result.add(read(in));
+
+        } finally {
+            IOUtils.closeQuietly(file);
+        }
+    }
+
+    private File[] listSegments() {
+        File[] segments = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+
+        if (segments == null)
+            return new File[0];
+
+        // the file names are zero padded so this is the correct order
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private static int getSegmentNumber(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring(0, name.length()
+            - SEGMENT_SUFFIX.length()));
+    }
+
+    private File getSegmentFile(int segment) {
+        return new File(directory, String.format("%08d", segment)
+            + SEGMENT_SUFFIX);
+    }
+
+    private static void write(DataOutputStream out, ChatElement element)
+        throws IOException {
+
+        JID sender = element.getSender();
+        ChatState state = element.getChatState();
+        String body = null;
+
+        if (element.getChatElementType() == ChatElementType.MESSAGE)
+            body = element.getMessage().getBody();
+
+        out.writeByte(element.getChatElementType().ordinal());
+        out.writeLong(element.getDate().getTime());
+        writeString(out, sender == null ? null : sender.toString());
+        writeString(out, body);
+        writeString(out, state == null ? null : state.name());
+    }
+
+    private static ChatElement read(DataInputStream in) throws IOException {
+        int ordinal = in.readUnsignedByte();
+
+        ChatElementType[] types = ChatElementType.values();
+
+        if (ordinal >= types.length)
+            throw new IOException("corrupted chat history, unknown type: "
+                + ordinal);
+
+        ChatElementType type = types[ordinal];
+        Date date = new Date(in.readLong());
+        String sender = readString(in);
+        String body = readString(in);
+        String state = readString(in);
+
+        JID jid = sender == null ? null : new JID(sender);
+
+        switch (type) {
+        case MESSAGE:
+            return new ChatElement(body, jid, date);
+        case STATECHANGE:
+            return new ChatElement(jid, date, state == null ? null
+                : ChatState.valueOf(state));
+        default:
+            return new ChatElement(jid, date, type);
+        }
+    }
+
+    /*
+     * DataOutput#writeUTF is limited to 64 KiB which is not enough for
+     * arbitrary chat messages
+     */
+    private static void writeString(DataOutputStream out, String value)
+        throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] data = value.getBytes("UTF-8");
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length == -1)
+            return null;
+
+        if (length < 0)
+            throw new IOException("corrupted chat history, invalid length: "
+                + length);
+
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new String(data, "UTF-8");
+    }
+
+    private static class CountingInputStream extends BufferedInputStream {
+
+        private long position;
+
+        public CountingInputStream(FileInputStream in) {
+            super(in);
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            int b = super.read();
+
+            if (b != -1)
+                position++;
+
+            return b;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len)
+            throws IOException {
+            int read = super.read(b, off, len);
+
+            if (read > 0)
+                position += read;
+
+            return read;
+        }
+    }
+}
@@ -73,12 +73,33 @@ public interface IChat {
     void addHistoryEntry(ChatElement entry);
 
     /**
-     * Returns the chat history for this chat.
+     * Returns the chat history for this chat. For chats with a persistent
+     * history this only contains the most recent entries, use
+     * {@link #getHistory(int, int)} to access older ones.
      * 
      * @return the chat history for this chat
      */
     public List<ChatElement> getHistory();
 
+    /**
+     * Returns a page of the chat history in chronological order.
+     * 
+     * @param offset
+     *            the number of entries to skip counting backwards from the most
+     *            recent entry
+     * @param count
+     *            the maximum number of entries to return
+     * @return the requested entries in chronological order
+     */
+    public List<ChatElement> getHistory(int offset, int count);
+
+    /**
+     * Returns the total number of entries in the chat history.
+     * 
+     * @return the total number of entries in the chat history
+     */
+    public int getHistorySize();
+
     /**
      * Clears the current chat history.
      */
@@ -22,6 +22,7 @@ import org.jivesoftware.smackx.FormField;
 import de.fu_berlin.inf.dpp.communication.chat.AbstractChat;
 import de.fu_berlin.inf.dpp.communication.chat.ChatElement;
 import de.fu_berlin.inf.dpp.communication.chat.ChatElement.ChatElementType;
+import de.fu_berlin.inf.dpp.communication.chat.ChatHistory;
 import de.fu_berlin.inf.dpp.communication.chat.IChatListener;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
 
@@ -156,6 +157,20 @@ public class MultiUserChat extends AbstractChat {
      */
     public MultiUserChat(Connection connection,
         MultiUserChatPreferences communicationPreferences) {
+        this(connection, communicationPreferences, new ChatHistory());
+    }
+
+    /**
+     * Creates a new {@link MultiUserChat} that uses the given history.
+     * 
+     * @param connection
+     * @param communicationPreferences
+     * @param history
+     *            the history to record the chat in
+     */
+    public MultiUserChat(Connection connection,
+        MultiUserChatPreferences communicationPreferences, ChatHistory history) {
+        super(history);
         this.connection = connection;
         this.preferences = communicationPreferences;
     }
@@ -211,7 +226,7 @@ public class MultiUserChat extends AbstractChat {
          */
         // this.setCurrentState(ChatState.gone);
 
-        clearHistory();
+        releaseHistory();
 
         // TODO just leave as the room is not persistent
         try {
@@ -19,10 +19,13 @@
  */
 package de.fu_berlin.inf.dpp.communication.chat.muc;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.Connection;
 import org.jivesoftware.smack.XMPPException;
@@ -30,6 +33,8 @@ import org.jivesoftware.smackx.ChatState;
 
 import de.fu_berlin.inf.dpp.annotations.Component;
 import de.fu_berlin.inf.dpp.communication.chat.AbstractChatService;
+import de.fu_berlin.inf.dpp.communication.chat.ChatHistory;
+import de.fu_berlin.inf.dpp.communication.chat.ChatHistoryStore;
 import de.fu_berlin.inf.dpp.communication.chat.IChat;
 import de.fu_berlin.inf.dpp.net.ConnectionState;
 import de.fu_berlin.inf.dpp.net.xmpp.IConnectionListener;
@@ -47,8 +52,26 @@ public class MultiUserChatService extends AbstractChatService {
     private static final Logger log = Logger
         .getLogger(MultiUserChatService.class);
 
+    /**
+     * Maximum number of segments of a persistent chat history, older entries
+     * are discarded.
+     */
+    private static final int MAX_HISTORY_SEGMENTS = 8;
+
+    /**
+     * Persistent chat histories that were not used for this time in
+     * milliseconds are deleted.
+     */
+    private static final long HISTORY_EXPIRATION = 30L * 24 * 60 * 60 * 1000;
+
     private Set<MultiUserChat> chats = new HashSet<MultiUserChat>();
 
+    /**
+     * Directory for the persistent chat histories, <code>null</code> if the
+     * histories should only be kept in memory.
+     */
+    private volatile File historyDirectory;
+
     private AtomicReference<Connection> connection = new AtomicReference<Connection>(
         null);
 
@@ -88,6 +111,27 @@ public class MultiUserChatService extends AbstractChatService {
      * TODO connectMUC should be split into create and join; bkahlert 2010/11/23
      */
     public IChat createChat(MultiUserChatPreferences preferences) {
+        return createChat(preferences, null);
+    }
+
+    /**
+     * Connects to a {@link MultiUserChat} like
+     * {@link #createChat(MultiUserChatPreferences)} and records its messages
+     * in a persistent history.
+     * <p>
+     * The name of a chat room is usually only valid for one session, so the
+     * history is identified by the given key instead, e.g the JID of the
+     * session host. Chats using the same key share their history.
+     * 
+     * @param preferences
+     * @param historyKey
+     *            the stable identity of the persistent history or
+     *            <code>null</code> to keep the history only in memory
+     * @return an {@link IChat} interface for the created chat or
+     *         <code>null</code> if the chat creation failed
+     */
+    public IChat createChat(MultiUserChatPreferences preferences,
+        String historyKey) {
         Connection connection = this.connection.get();
 
         if (connection == null) {
@@ -95,7 +139,8 @@ public class MultiUserChatService extends AbstractChatService {
             return null;
         }
 
-        MultiUserChat chat = new MultiUserChat(connection, preferences);
+        MultiUserChat chat = new MultiUserChat(connection, preferences,
+            createHistory(historyKey));
 
         log.debug("Joining MUC...");
 
@@ -148,4 +193,59 @@ public class MultiUserChatService extends AbstractChatService {
         return new HashSet<IChat>(chats);
     }
 
+    /**
+     * Sets the directory in which the histories of the multi-user chats are
+     * persisted. A history is restored when a chat with the same history key
+     * is created again, e.g after restarting the IDE. Histories that were not
+     * used for {@value #HISTORY_EXPIRATION} milliseconds are deleted.
+     * 
+     * @param directory
+     *            the directory or <code>null</code> to keep the histories only
+     *            in memory
+     */
+    public void setHistoryDirectory(File directory) {
+        historyDirectory = directory;
+    }
+
+    private ChatHistory createHistory(String historyKey) {
+        File directory = historyDirectory;
+
+        if (directory == null || historyKey == null)
+            return new ChatHistory();
+
+        deleteExpiredHistories(directory);
+
+        File keyDirectory = new File(directory, historyKey.replaceAll(
+            "[^a-zA-Z0-9@._-]", "_"));
+
+        // mark the history as used
+        if (keyDirectory.exists())
+            keyDirectory.setLastModified(System.currentTimeMillis());
+
+        return new ChatHistory(new ChatHistoryStore(keyDirectory,
+            MAX_HISTORY_SEGMENTS), ChatHistory.DEFAULT_WINDOW_SIZE);
+    }
+
+    private void deleteExpiredHistories(File directory) {
+        File[] histories = directory.listFiles();
+
+        if (histories == null)
+            return;
+
+        long expired = System.currentTimeMillis() - HISTORY_EXPIRATION;
+
+        for (File history : histories) {
+            if (!history.isDirectory() || history.lastModified() >= expired)
+                continue;
+
+            log.debug("deleting expired chat history: " + history);
+
+            try {
+                FileUtils.deleteDirectory(history);
+            } catch (IOException e) {
+                log.warn("could not delete chat history: " + history, e);
+            }
+        }
+    }
+
 }
@@ -303,8 +303,11 @@ public class ConnectionHandler {
             if (preferences.forceIBBTransport())
                 connectionManager
                     .setTransport(IConnectionManager.IBB_TRANSPORT);
-            else
+            else if (preferences.isLANTransportEnabled())
                 connectionManager.setTransport(/* use all */-1);
+            else
+                connectionManager
+                    .setTransport(~IConnectionManager.TCP_TRANSPORT);
 
             connectionService.connect(
                 createConnectionConfiguration(domain, server, port, useTLS,
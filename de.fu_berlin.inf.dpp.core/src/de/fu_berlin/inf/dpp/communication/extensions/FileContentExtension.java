@@ -0,0 +1,45 @@
+package de.fu_berlin.inf.dpp.communication.extensions;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+
+import de.fu_berlin.inf.dpp.activities.FileActivity;
+import de.fu_berlin.inf.dpp.activities.FileContentStore;
+
+/**
+ * Transfers the content of a {@link FileActivity} that only references its
+ * content.
+ *
+ * @see FileContentStore
+ */
+@XStreamAlias(/* SessionFileContent */"SNFC")
+public class FileContentExtension extends SarosSessionPacketExtension {
+
+    public static final Provider PROVIDER = new Provider();
+
+    @XStreamAsAttribute
+    private final String hash;
+
+    private final byte[] content;
+
+    public FileContentExtension(String sessionID, String hash, byte[] content) {
+        super(sessionID);
+        this.hash = hash;
+        this.content = content;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public static class Provider extends
+        SarosSessionPacketExtension.Provider<FileContentExtension> {
+        private Provider() {
+            super("snfc", FileContentExtension.class);
+        }
+    }
+}
@@ -1,12 +1,13 @@
 package de.fu_berlin.inf.dpp.communication.extensions;
 
-import org.jivesoftware.smack.filter.AndFilter;
 import org.jivesoftware.smack.filter.PacketFilter;
 import org.jivesoftware.smack.packet.Packet;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 
+import de.fu_berlin.inf.dpp.net.ExtensionPacketFilter;
+
 public abstract class InvitationExtension extends SarosPacketExtension {
 
     @XStreamAlias("nid")
@@ -28,9 +29,9 @@ public abstract class InvitationExtension extends SarosPacketExtension {
             super(elementName, classes);
         }
 
-        public PacketFilter getPacketFilter(final String invitationID) {
+        public ExtensionPacketFilter getPacketFilter(final String invitationID) {
 
-            return new AndFilter(super.getPacketFilter(), new PacketFilter() {
+            return super.getPacketFilter().and(new PacketFilter() {
                 @Override
                 public boolean accept(Packet packet) {
                     InvitationExtension extension = getPayload(packet);
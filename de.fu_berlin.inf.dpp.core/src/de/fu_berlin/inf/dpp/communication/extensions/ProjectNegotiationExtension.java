@@ -1,12 +1,13 @@
 package de.fu_berlin.inf.dpp.communication.extensions;
 
-import org.jivesoftware.smack.filter.AndFilter;
 import org.jivesoftware.smack.filter.PacketFilter;
 import org.jivesoftware.smack.packet.Packet;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 
+import de.fu_berlin.inf.dpp.net.ExtensionPacketFilter;
+
 public abstract class ProjectNegotiationExtension extends
     SarosSessionPacketExtension {
 
@@ -38,10 +39,10 @@ public abstract class ProjectNegotiationExtension extends
          *               here is the basic example how to extend it properly.
          */
 
-        public PacketFilter getPacketFilter(final String sessionID,
+        public ExtensionPacketFilter getPacketFilter(final String sessionID,
             final String negotiationID) {
 
-            return new AndFilter(super.getPacketFilter(sessionID),
+            return super.getPacketFilter(sessionID).and(
                 new PacketFilter() {
                     @Override
                     public boolean accept(Packet packet) {
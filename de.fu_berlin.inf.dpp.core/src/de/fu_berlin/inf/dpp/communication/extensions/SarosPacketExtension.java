@@ -1,6 +1,5 @@
 package de.fu_berlin.inf.dpp.communication.extensions;
 
-import org.jivesoftware.smack.filter.AndFilter;
 import org.jivesoftware.smack.filter.PacketFilter;
 import org.jivesoftware.smack.packet.Packet;
 
@@ -8,6 +7,7 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 
 import de.fu_berlin.inf.dpp.misc.xstream.XStreamExtensionProvider;
+import de.fu_berlin.inf.dpp.net.ExtensionPacketFilter;
 
 /**
  * @JTourBusStop 1, Creating custom network messages, Packet Extensions:
@@ -45,9 +45,9 @@ public abstract class SarosPacketExtension {
         }
 
         @Override
-        public PacketFilter getPacketFilter() {
+        public ExtensionPacketFilter getPacketFilter() {
 
-            return new AndFilter(super.getPacketFilter(), new PacketFilter() {
+            return super.getPacketFilter().and(new PacketFilter() {
                 @Override
                 public boolean accept(Packet packet) {
                     SarosPacketExtension extension = getPayload(packet);
@@ -1,12 +1,13 @@
 package de.fu_berlin.inf.dpp.communication.extensions;
 
-import org.jivesoftware.smack.filter.AndFilter;
 import org.jivesoftware.smack.filter.PacketFilter;
 import org.jivesoftware.smack.packet.Packet;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 
+import de.fu_berlin.inf.dpp.net.ExtensionPacketFilter;
+
 /**
  * @JTourBusStop 2, Creating custom network messages, Session Packet Extensions:
  * 
@@ -36,9 +37,9 @@ public abstract class SarosSessionPacketExtension extends SarosPacketExtension {
             super(elementName, classes);
         }
 
-        public PacketFilter getPacketFilter(final String sessionID) {
+        public ExtensionPacketFilter getPacketFilter(final String sessionID) {
 
-            return new AndFilter(super.getPacketFilter(), new PacketFilter() {
+            return super.getPacketFilter().and(new PacketFilter() {
                 @Override
                 public boolean accept(Packet packet) {
                     SarosSessionPacketExtension extension = getPayload(packet);
@@ -7,6 +7,7 @@ import org.apache.log4j.Logger;
 
 import de.fu_berlin.inf.dpp.activities.AbstractActivityReceiver;
 import de.fu_berlin.inf.dpp.activities.ChecksumActivity;
+import de.fu_berlin.inf.dpp.activities.CompositeTextEditActivity;
 import de.fu_berlin.inf.dpp.activities.FileActivity;
 import de.fu_berlin.inf.dpp.activities.IActivity;
 import de.fu_berlin.inf.dpp.activities.IActivityReceiver;
@@ -70,6 +71,11 @@ public class ConcurrentDocumentClient {
             TextEditActivity textEdit = (TextEditActivity) activity;
             return jupiterClient.generate(textEdit);
 
+        } else if (activity instanceof CompositeTextEditActivity) {
+            // Transform all edits of a command into one jupiterActivity
+            CompositeTextEditActivity textEdits = (CompositeTextEditActivity) activity;
+            return jupiterClient.generate(textEdits);
+
         } else if (activity instanceof ChecksumActivity) {
             ChecksumActivity checksumActivity = (ChecksumActivity) activity;
 
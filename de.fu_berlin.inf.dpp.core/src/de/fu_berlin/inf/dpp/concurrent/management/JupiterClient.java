@@ -3,6 +3,7 @@ package de.fu_berlin.inf.dpp.concurrent.management;
 import java.util.HashMap;
 
 import de.fu_berlin.inf.dpp.activities.ChecksumActivity;
+import de.fu_berlin.inf.dpp.activities.CompositeTextEditActivity;
 import de.fu_berlin.inf.dpp.activities.JupiterActivity;
 import de.fu_berlin.inf.dpp.activities.SPath;
 import de.fu_berlin.inf.dpp.activities.TextEditActivity;
@@ -71,6 +72,14 @@ public class JupiterClient {
             sarosSession.getLocalUser(), path);
     }
 
+    public synchronized JupiterActivity generate(
+        CompositeTextEditActivity textEdits) {
+
+        SPath path = textEdits.getPath();
+        return get(path).generateJupiterActivity(textEdits.toOperation(),
+            sarosSession.getLocalUser(), path);
+    }
+
     /**
      * Given a checksum, this method will return a new ChecksumActivity with the
      * timestamp set to the VectorTime of the Jupiter algorithm used for
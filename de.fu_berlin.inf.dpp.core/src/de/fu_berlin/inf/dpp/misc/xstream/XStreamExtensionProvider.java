@@ -26,7 +26,6 @@ import java.util.Map;
 
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.log4j.Logger;
-import org.jivesoftware.smack.filter.PacketExtensionFilter;
 import org.jivesoftware.smack.filter.PacketFilter;
 import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.Packet;
@@ -44,6 +43,8 @@ import com.thoughtworks.xstream.converters.SingleValueConverter;
 import com.thoughtworks.xstream.converters.basic.BooleanConverter;
 import com.thoughtworks.xstream.io.xml.CompactWriter;
 
+import de.fu_berlin.inf.dpp.net.ExtensionPacketFilter;
+
 /**
  * Flexible extension provider using XStream to serialize arbitrary data
  * objects.
@@ -302,8 +303,8 @@ public class XStreamExtensionProvider<T> implements PacketExtensionProvider,
      * {@link XStreamExtensionProvider#elementName} and
      * {@link XStreamExtensionProvider#namespace}.
      */
-    public PacketFilter getPacketFilter() {
-        return new PacketExtensionFilter(getElementName(), getNamespace());
+    public ExtensionPacketFilter getPacketFilter() {
+        return new ExtensionPacketFilter(getElementName(), getNamespace());
     }
 
     public String getNamespace() {
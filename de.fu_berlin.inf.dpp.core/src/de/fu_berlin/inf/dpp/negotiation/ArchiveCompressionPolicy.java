@@ -0,0 +1,100 @@
+package de.fu_berlin.inf.dpp.negotiation;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Decides how the content of a file is compressed when it is added to a
+ * project archive. Deflating content that is already compressed, e.g a JAR
+ * file or an image, costs a lot of CPU time without reducing the size of the
+ * archive. Such files are therefore only stored.
+ * <p>
+ * A file is considered to be incompressible if its extension denotes a
+ * compressed format or if the entropy of a sample of its content is close to
+ * eight bits per byte.
+ */
+final class ArchiveCompressionPolicy {
+
+    private static final Set<String> INCOMPRESSIBLE_EXTENSIONS = new HashSet<String>(
+        Arrays.asList("7z", "bz2", "ear", "gif", "gz", "jar", "jpeg", "jpg",
+            "mp3", "mp4", "ogg", "png", "rar", "tgz", "war", "webp", "xz",
+            "zip"));
+
+    /**
+     * Samples smaller than this size in bytes are not analyzed as their
+     * entropy is not meaningful.
+     */
+    static final int MIN_SAMPLE_SIZE = 1024;
+
+    /**
+     * Samples with an entropy above this value in bits per byte are
+     * considered to be incompressible.
+     */
+    private static final double MAX_ENTROPY = 7.5D;
+
+    private ArchiveCompressionPolicy() {
+        // NOP
+    }
+
+    /**
+     * Returns the compression level for the given file.
+     *
+     * @param name
+     *            the name or path of the file
+     * @param sample
+     *            buffer containing the beginning of the file content
+     * @param length
+     *            the number of valid bytes in the sample buffer
+     * @return {@link Deflater#NO_COMPRESSION} if the content should only be
+     *         stored or {@link Deflater#DEFAULT_COMPRESSION} otherwise
+     */
+    static int getLevel(final String name, final byte[] sample,
+        final int length) {
+
+        if (INCOMPRESSIBLE_EXTENSIONS.contains(getExtension(name)))
+            return Deflater.NO_COMPRESSION;
+
+        if (length >= MIN_SAMPLE_SIZE
+            && getEntropy(sample, length) > MAX_ENTROPY)
+            return Deflater.NO_COMPRESSION;
+
+        return Deflater.DEFAULT_COMPRESSION;
+    }
+
+    /**
+     * Returns the Shannon entropy of the given data in bits per byte.
+     */
+    static double getEntropy(final byte[] data, final int length) {
+        if (length == 0)
+            return 0D;
+
+        final int[] counts = new int[256];
+
+        for (int i = 0; i < length; i++)
+            counts[data[i] & 0xFF]++;
+
+        double entropy = 0D;
+
+        for (int count : counts) {
+            if (count == 0)
+                continue;
+
+            double p = (double) count / length;
+            entropy -= p * Math.log(p);
+        }
+
+        return entropy / Math.log(2);
+    }
+
+    private static String getExtension(final String name) {
+        final int idx = name.lastIndexOf('.');
+
+        if (idx == -1 || idx < name.lastIndexOf('/'))
+            return "";
+
+        return name.substring(idx + 1).toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -8,6 +8,7 @@ import java.io.InputStream;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -17,12 +18,18 @@ import org.apache.log4j.Logger;
 
 import de.fu_berlin.inf.dpp.exceptions.OperationCanceledException;
 import de.fu_berlin.inf.dpp.filesystem.IFile;
+import de.fu_berlin.inf.dpp.filesystem.IWorkspace;
 import de.fu_berlin.inf.dpp.filesystem.IWorkspaceRunnable;
 import de.fu_berlin.inf.dpp.monitoring.IProgressMonitor;
 import de.fu_berlin.inf.dpp.monitoring.NullProgressMonitor;
 import de.fu_berlin.inf.dpp.util.CoreUtils;
 
-// TODO java doc
+/**
+ * Creates an archive of files that can be executed by {@link IWorkspace#run}.
+ * The compression level of each file is chosen by the
+ * {@link ArchiveCompressionPolicy} so that already compressed content is only
+ * stored.
+ */
 public class CreateArchiveTask implements IWorkspaceRunnable {
 
     private static final int BUFFER_SIZE = 32 * 1024;
@@ -64,6 +71,8 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
 
         long totalRead = 0L;
 
+        int storedFiles = 0;
+
         boolean cleanup = true;
 
         byte[] buffer = new byte[BUFFER_SIZE];
@@ -95,17 +104,24 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
 
                 monitor.subTask("compressing file: " + originalEntryName);
 
-                zipStream.putNextEntry(new ZipEntry(entryName));
-
                 InputStream in = null;
 
                 try {
 
-                    int read = 0;
-
                     in = file.getContents();
 
-                    while ((read = in.read(buffer)) > 0) {
+                    int read = readSample(in, buffer);
+
+                    final int level = ArchiveCompressionPolicy.getLevel(
+                        originalEntryName, buffer, read);
+
+                    if (level == Deflater.NO_COMPRESSION)
+                        storedFiles++;
+
+                    zipStream.setLevel(level);
+                    zipStream.putNextEntry(new ZipEntry(entryName));
+
+                    while (read > 0) {
 
                         if (monitor.isCanceled())
                             throw new OperationCanceledException(
@@ -117,6 +133,8 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
                         totalRead += read;
 
                         updateMonitor(monitor, totalRead, totalSize);
+
+                        read = in.read(buffer);
                     }
                 } finally {
                     IOUtils.closeQuietly(in);
@@ -137,10 +155,30 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
 
         stopWatch.stop();
 
-        LOG.debug(String.format("created archive %s I/O: [%s]",
+        LOG.debug(String.format(
+            "created archive %s I/O: [%s], %d of %d file(s) stored",
             archive.getAbsolutePath(),
-            CoreUtils.throughput(archive.length(), stopWatch.getTime())));
+            CoreUtils.throughput(archive.length(), stopWatch.getTime()),
+            storedFiles, files.size()));
+
+    }
+
+    /**
+     * Fills the buffer with the beginning of the stream.
+     *
+     * @return the number of bytes read
+     */
+    private static int readSample(final InputStream in, final byte[] buffer)
+        throws IOException {
+
+        int length = 0;
+        int read;
+
+        while (length < buffer.length
+            && (read = in.read(buffer, length, buffer.length - length)) > 0)
+            length += read;
 
+        return length;
     }
 
     private int lastWorked = 0;
@@ -1,13 +1,22 @@
 package de.fu_berlin.inf.dpp.negotiation;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 
 import de.fu_berlin.inf.dpp.exceptions.OperationCanceledException;
@@ -18,12 +27,31 @@ import de.fu_berlin.inf.dpp.filesystem.IWorkspace;
 import de.fu_berlin.inf.dpp.filesystem.IWorkspaceRunnable;
 import de.fu_berlin.inf.dpp.monitoring.IProgressMonitor;
 import de.fu_berlin.inf.dpp.session.ISarosSession;
-
+import de.fu_berlin.inf.dpp.util.NamedThreadFactory;
+
+/**
+ * Decompresses an archive into the workspace. The entries are inflated ahead
+ * of time by a pool of worker threads while the files are written by the
+ * thread executing the task, so a single workspace operation is sufficient
+ * and the resource deltas are reported once after all files are written.
+ */
 public class DecompressArchiveTask implements IWorkspaceRunnable {
 
     private static final Logger LOG = Logger
         .getLogger(DecompressArchiveTask.class);
 
+    private static final int INFLATER_THREADS = Math.min(4, Runtime
+        .getRuntime().availableProcessors());
+
+    /** Number of entries that are inflated ahead per inflater thread. */
+    private static final int PREFETCH_PER_THREAD = 8;
+
+    /**
+     * Entries larger than this size in bytes are not inflated ahead but
+     * streamed directly into the workspace.
+     */
+    private static final long MAX_INFLATED_ENTRY_SIZE = 1024 * 1024;
+
     private final File file;
     private final IProgressMonitor monitor;
     private final Map<String, IProject> idToProjectMapping;
@@ -68,6 +96,8 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
 
         ZipFile zipFile = null;
 
+        ExecutorService inflater = null;
+
         try {
 
             zipFile = new ZipFile(file);
@@ -75,6 +105,8 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
             monitor.beginTask("Unpacking archive file to workspace",
                 zipFile.size());
 
+            final List<Item> items = new ArrayList<Item>(zipFile.size());
+
             for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries
                 .hasMoreElements();) {
 
@@ -82,9 +114,6 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
 
                 final String entryName = entry.getName();
 
-                if (monitor.isCanceled())
-                    throw new OperationCanceledException();
-
                 final int delimiterIdx = entry.getName().indexOf(delimiter);
 
                 if (delimiterIdx == -1) {
@@ -110,29 +139,66 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
                     continue;
                 }
 
-                final IFile file = project.getFile(path);
+                items.add(new Item(entry, path, project.getFile(path)));
+            }
+
+            if (items.size() > 1 && INFLATER_THREADS > 1)
+                inflater = Executors.newFixedThreadPool(INFLATER_THREADS,
+                    new NamedThreadFactory("ArchiveInflater-"));
+
+            final int prefetch = INFLATER_THREADS * PREFETCH_PER_THREAD;
+
+            int submitted = 0;
+
+            for (int i = 0; i < items.size(); i++) {
+
+                if (monitor.isCanceled())
+                    throw new OperationCanceledException();
+
+                /*
+                 * keep the inflater threads busy while the files are written
+                 */
+                while (inflater != null
+                    && submitted < Math.min(items.size(), i + prefetch)) {
+                    final Item next = items.get(submitted++);
+                    next.content = inflater.submit(inflate(zipFile, next.entry));
+                }
+
+                final Item item = items.get(i);
+
+                final IFile file = item.file;
 
                 FileSystem.createFolder(file);
 
-                monitor.subTask("decompressing: " + path);
+                monitor.subTask("decompressing: " + item.path);
 
-                final InputStream in = zipFile.getInputStream(entry);
+                final InputStream in = getContent(zipFile, item);
 
                 /*
                  * FIXME make it possible to cancel the task during
                  * decompressing large files
                  */
-                if (!file.exists())
-                    file.create(in, false);
-                else
-                    file.setContents(in, false, true);
+                try {
+                    if (!file.exists())
+                        file.create(in, false);
+                    else
+                        file.setContents(in, false, true);
+                } finally {
+                    IOUtils.closeQuietly(in);
+                }
+
+                // release the inflated content as soon as possible
+                item.content = null;
 
                 monitor.worked(1);
 
                 if (LOG.isTraceEnabled())
-                    LOG.trace("file written to disk: " + path);
+                    LOG.trace("file written to disk: " + item.path);
             }
         } finally {
+            if (inflater != null)
+                inflater.shutdownNow();
+
             if (monitor != null)
                 monitor.done();
 
@@ -145,4 +211,68 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
             }
         }
     }
+
+    /**
+     * Returns a callable that inflates the given entry into memory or returns
+     * <code>null</code> if the entry is too large to be kept in memory.
+     */
+    private static Callable<byte[]> inflate(final ZipFile zipFile,
+        final ZipEntry entry) {
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                long size = entry.getSize();
+
+                if (size < 0 || size > MAX_INFLATED_ENTRY_SIZE)
+                    return null;
+
+                InputStream in = zipFile.getInputStream(entry);
+
+                try {
+                    return IOUtils.toByteArray(in);
+                } finally {
+                    IOUtils.closeQuietly(in);
+                }
+            }
+        };
+    }
+
+    private static InputStream getContent(final ZipFile zipFile,
+        final Item item) throws IOException, OperationCanceledException {
+
+        byte[] content = null;
+
+        if (item.content != null) {
+            try {
+                content = item.content.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OperationCanceledException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+
+                throw new IOException("failed to inflate zip entry "
+                    + item.entry.getName(), e.getCause());
+            }
+        }
+
+        if (content != null)
+            return new ByteArrayInputStream(content);
+
+        return zipFile.getInputStream(item.entry);
+    }
+
+    private static class Item {
+        private final ZipEntry entry;
+        private final String path;
+        private final IFile file;
+        private Future<byte[]> content;
+
+        private Item(ZipEntry entry, String path, IFile file) {
+            this.entry = entry;
+            this.path = path;
+            this.file = file;
+        }
+    }
 }
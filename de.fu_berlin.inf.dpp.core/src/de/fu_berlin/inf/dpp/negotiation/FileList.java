@@ -28,8 +28,7 @@ import java.util.Set;
 import org.apache.commons.lang.ObjectUtils;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
-import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
-import com.thoughtworks.xstream.annotations.XStreamOmitField;
+import com.thoughtworks.xstream.annotations.XStreamConverter;
 
 import de.fu_berlin.inf.dpp.filesystem.IResource;
 import de.fu_berlin.inf.dpp.vcs.VCSProvider;
@@ -41,10 +40,14 @@ import de.fu_berlin.inf.dpp.vcs.VCSResourceInfo;
  * denoted by a trailing separator. Instances of this class are immutable. No
  * further modification is allowed after creation. Instances should be created
  * using the methods provided by the {@link FileListFactory}.
+ * <p>
+ * File lists are transferred in a compact binary encoding, see
+ * {@link FileListConverter}.
  * 
  * @author rdjemili
  */
 @XStreamAlias("FILELIST")
+@XStreamConverter(FileListConverter.class)
 public class FileList {
 
     /**
@@ -53,24 +56,17 @@ public class FileList {
      */
     public static final String DIR_SEPARATOR = "/";
 
-    @XStreamAlias("f")
-    private static class File {
+    static class File {
 
-        @XStreamAlias("p")
-        @XStreamAsAttribute
         String path;
 
-        @XStreamAlias("m")
         MetaData metaData;
 
-        @XStreamAlias("l")
         List<File> files;
 
-        @XStreamAlias("d")
-        @XStreamAsAttribute
         boolean isDirectory;
 
-        private File(String path, MetaData metaData, boolean isDirectory) {
+        File(String path, MetaData metaData, boolean isDirectory) {
             this.path = path;
             this.metaData = metaData;
             this.files = new ArrayList<File>();
@@ -289,18 +285,22 @@ public class FileList {
         }
     }
 
-    @XStreamAlias("md")
     static class MetaData {
         /** Checksum of this file. */
-
-        @XStreamAlias("crc")
         long checksum;
 
         /** Identifies the version of this file in the repository. */
-
-        @XStreamAlias("vcs")
         VCSResourceInfo vcsInfo;
 
+        /**
+         * <code>true</code> if the content of the file may differ from its
+         * revision in the repository, i.e. the file contains changes that are
+         * not committed or the VCS translates its content.
+         * 
+         * @see VCSProvider#isContentTranslated(IResource)
+         */
+        boolean modified;
+
         @Override
         public boolean equals(Object o) {
             if (o == this)
@@ -316,6 +316,8 @@ public class FileList {
                 return false;
             if (!ObjectUtils.equals(vcsInfo, other.vcsInfo))
                 return false;
+            if (modified != other.modified)
+                return false;
 
             return true;
         }
@@ -328,7 +330,7 @@ public class FileList {
         @Override
         public String toString() {
             return "[Checksum: 0x" + Long.toHexString(checksum).toUpperCase()
-                + ", VCS: " + vcsInfo + "]";
+                + ", VCS: " + vcsInfo + ", Modified: " + modified + "]";
         }
     }
 
@@ -351,6 +353,10 @@ public class FileList {
         return root.getMetaData(path);
     }
 
+    File getRoot() {
+        return root;
+    }
+
     public String getVCSRevision(String path) {
         if (path.isEmpty())
             return vcsProjectInfo.getRevision();
@@ -411,7 +417,6 @@ public class FileList {
         return root.contains(path);
     }
 
-    @XStreamOmitField
     private List<String> cachedList = null;
 
     /**
@@ -0,0 +1,344 @@
+package de.fu_berlin.inf.dpp.negotiation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.codec.binary.Base64;
+
+import com.thoughtworks.xstream.converters.ConversionException;
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+import de.fu_berlin.inf.dpp.negotiation.FileList.File;
+import de.fu_berlin.inf.dpp.negotiation.FileList.MetaData;
+import de.fu_berlin.inf.dpp.vcs.VCSResourceInfo;
+
+/**
+ * Converts a {@link FileList} to a compact binary encoding which is embedded
+ * as Base64 text. Marshalling the file tree as nested XML elements produces
+ * huge documents for big projects as every file repeats its complete meta
+ * data.
+ * <p>
+ * The encoding writes the file tree depth first. Every string, e.g. a path
+ * segment or a revision, is only written the first time it occurs and
+ * afterwards referenced by its index. Numbers are written as variable length
+ * integers and VCS URLs only contain the suffix that differs from the
+ * previously written URL.
+ * <p>
+ * <b>Changing the encoding breaks the compatibility with other Saros
+ * versions.</b> Increase the {@link #FORMAT_VERSION} in this case.
+ */
+public class FileListConverter implements Converter {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String VERSION_ATTRIBUTE = "v";
+
+    private static final int FLAG_DIRECTORY = 1;
+    private static final int FLAG_META_DATA = 2;
+    private static final int FLAG_VCS_INFO = 4;
+    private static final int FLAG_MODIFIED = 8;
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public boolean canConvert(Class type) {
+        return type.equals(FileList.class);
+    }
+
+    @Override
+    public void marshal(Object source, HierarchicalStreamWriter writer,
+        MarshallingContext context) {
+
+        writer.addAttribute(VERSION_ATTRIBUTE, String.valueOf(FORMAT_VERSION));
+
+        try {
+            byte[] data = encode((FileList) source);
+            writer.setValue(toASCII(Base64.encodeBase64(data)));
+        } catch (IOException e) {
+            throw new ConversionException("could not encode file list", e);
+        }
+    }
+
+    @Override
+    public Object unmarshal(HierarchicalStreamReader reader,
+        UnmarshallingContext context) {
+
+        String version = reader.getAttribute(VERSION_ATTRIBUTE);
+
+        if (!String.valueOf(FORMAT_VERSION).equals(version))
+            throw new ConversionException("unsupported file list format: "
+                + version);
+
+        try {
+            return decode(Base64.decodeBase64(reader.getValue().getBytes(
+                "US-ASCII")));
+        } catch (IOException e) {
+            throw new ConversionException("could not decode file list", e);
+        }
+    }
+
+    static byte[] encode(FileList list) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Encoder encoder = new Encoder(new DataOutputStream(bytes));
+
+        encoder.writeString(list.getVcsProviderID());
+        encoder.writeString(list.getRepositoryRoot());
+        encoder.writeVCSInfo(list.getProjectInfo());
+        encoder.writeString(list.getProjectID());
+
+        Set<String> encodings = list.getEncodings();
+
+        encoder.writeNumber(encodings.size());
+
+        for (String encoding : encodings)
+            encoder.writeString(encoding);
+
+        encoder.writeChildren(list.getRoot());
+        encoder.out.flush();
+
+        return bytes.toByteArray();
+    }
+
+    static FileList decode(byte[] data) throws IOException {
+        Decoder decoder = new Decoder(new DataInputStream(
+            new ByteArrayInputStream(data)));
+
+        FileList list = new FileList();
+
+        list.setVcsProviderID(decoder.readString());
+        list.setVcsRepositoryRoot(decoder.readString());
+        list.setVcsRepositoryRoot(decoder.readVCSInfo());
+        list.setProjectID(decoder.readString());
+
+        for (long count = decoder.readNumber(); count > 0; count--)
+            list.addEncoding(decoder.readString());
+
+        decoder.readChildren(list.getRoot());
+
+        return list;
+    }
+
+    private static class Encoder {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        private String lastURL = "";
+
+        private Encoder(DataOutputStream out) {
+            this.out = out;
+        }
+
+        private void writeChildren(File parent) throws IOException {
+            writeNumber(parent.files.size());
+
+            for (File file : parent.files) {
+                MetaData metaData = file.metaData;
+
+                int flags = file.isDirectory ? FLAG_DIRECTORY : 0;
+
+                if (metaData != null)
+                    flags |= FLAG_META_DATA;
+
+                if (metaData != null && metaData.vcsInfo != null)
+                    flags |= FLAG_VCS_INFO;
+
+                if (metaData != null && metaData.modified)
+                    flags |= FLAG_MODIFIED;
+
+                writeString(file.path);
+                out.writeByte(flags);
+
+                if (metaData != null)
+                    writeNumber(metaData.checksum);
+
+                if ((flags & FLAG_VCS_INFO) != 0)
+                    writeVCSInfo(metaData.vcsInfo);
+
+                writeChildren(file);
+            }
+        }
+
+        private void writeVCSInfo(VCSResourceInfo info) throws IOException {
+            out.writeBoolean(info != null);
+
+            if (info == null)
+                return;
+
+            writeURL(info.getURL());
+            writeString(info.getRevision());
+        }
+
+        /**
+         * Writes the length of the prefix the URL shares with the previous
+         * URL followed by the remaining suffix.
+         */
+        private void writeURL(String url) throws IOException {
+            if (url == null) {
+                writeNumber(0);
+                return;
+            }
+
+            int length = Math.min(url.length(), lastURL.length());
+            int prefix = 0;
+
+            while (prefix < length
+                && url.charAt(prefix) == lastURL.charAt(prefix))
+                prefix++;
+
+            writeNumber(prefix + 1);
+            writeString(url.substring(prefix));
+
+            lastURL = url;
+        }
+
+        /**
+         * Writes <code>0</code> for <code>null</code>, <code>1</code>
+         * followed by the string if the string is written for the first time
+         * or the index of the string plus <code>2</code> otherwise.
+         */
+        private void writeString(String string) throws IOException {
+            if (string == null) {
+                writeNumber(0);
+                return;
+            }
+
+            Integer index = strings.get(string);
+
+            if (index != null) {
+                writeNumber(index + 2);
+                return;
+            }
+
+            writeNumber(1);
+            out.writeUTF(string);
+            strings.put(string, strings.size());
+        }
+
+        /**
+         * Writes the number as unsigned variable length integer using seven
+         * bits per byte.
+         */
+        private void writeNumber(long number) throws IOException {
+            while ((number & ~0x7FL) != 0) {
+                out.writeByte((int) ((number & 0x7F) | 0x80));
+                number >>>= 7;
+            }
+
+            out.writeByte((int) number);
+        }
+    }
+
+    private static class Decoder {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<String>();
+        private String lastURL = "";
+
+        private Decoder(DataInputStream in) {
+            this.in = in;
+        }
+
+        private void readChildren(File parent) throws IOException {
+            for (long count = readNumber(); count > 0; count--) {
+                String path = readString();
+                int flags = in.readUnsignedByte();
+
+                MetaData metaData = null;
+
+                if ((flags & FLAG_META_DATA) != 0) {
+                    metaData = new MetaData();
+                    metaData.checksum = readNumber();
+                    metaData.modified = (flags & FLAG_MODIFIED) != 0;
+                }
+
+                if ((flags & FLAG_VCS_INFO) != 0) {
+                    if (metaData == null)
+                        throw new IOException("corrupted file list: "
+                            + "VCS information without meta data");
+
+                    metaData.vcsInfo = readVCSInfo();
+                }
+
+                File file = new File(path, metaData,
+                    (flags & FLAG_DIRECTORY) != 0);
+
+                parent.files.add(file);
+
+                readChildren(file);
+            }
+        }
+
+        private VCSResourceInfo readVCSInfo() throws IOException {
+            if (!in.readBoolean())
+                return null;
+
+            String url = readURL();
+            return new VCSResourceInfo(url, readString());
+        }
+
+        private String readURL() throws IOException {
+            long prefix = readNumber();
+
+            if (prefix == 0)
+                return null;
+
+            if (prefix - 1 > lastURL.length())
+                throw new IOException("corrupted file list: invalid URL");
+
+            lastURL = lastURL.substring(0, (int) (prefix - 1)) + readString();
+
+            return lastURL;
+        }
+
+        private String readString() throws IOException {
+            long index = readNumber();
+
+            if (index == 0)
+                return null;
+
+            if (index == 1) {
+                String string = in.readUTF();
+                strings.add(string);
+                return string;
+            }
+
+            if (index - 2 >= strings.size())
+                throw new IOException("corrupted file list: invalid string");
+
+            return strings.get((int) (index - 2));
+        }
+
+        private long readNumber() throws IOException {
+            long number = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+
+                number |= (long) (b & 0x7F) << shift;
+
+                if ((b & 0x80) == 0)
+                    return number;
+            }
+
+            throw new IOException("corrupted file list: invalid number");
+        }
+    }
+
+    private static String toASCII(byte[] data) {
+        try {
+            return new String(data, "US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -88,7 +88,8 @@ public class FileListDiff {
 
             if ((baseData == null && targetData == null)
                 || (baseData != null && targetData != null)
-                && (baseData.checksum == targetData.checksum)) {
+                && (baseData.checksum == targetData.checksum || isSameVCSRevision(
+                    baseData, targetData))) {
                 result.unaltered.add(path);
             } else {
                 result.altered.add(path);
@@ -98,6 +99,32 @@ public class FileListDiff {
         return result;
     }
 
+    /**
+     * Returns <code>true</code> if both files are unmodified copies of the same
+     * revision in the repository. Their checksums need not be compared in this
+     * case and are not even calculated by
+     * {@link FileListFactory#createVCSFileList}.
+     * <p>
+     * Files whose content is translated by the VCS, e.g. SVN files with the
+     * <code>svn:eol-style</code> or <code>svn:keywords</code> property, are
+     * marked as modified and therefore always compared by their checksums.
+     */
+    private static boolean isSameVCSRevision(MetaData baseData,
+        MetaData targetData) {
+
+        if (baseData.modified || targetData.modified)
+            return false;
+
+        if (baseData.vcsInfo == null || targetData.vcsInfo == null)
+            return false;
+
+        if (baseData.vcsInfo.getURL() == null
+            || baseData.vcsInfo.getRevision() == null)
+            return false;
+
+        return baseData.vcsInfo.equals(targetData.vcsInfo);
+    }
+
     /**
      * Subset of {@link FileList#getPaths() target.getPaths()}: All entries that
      * do not exist in <code>base</code>.
@@ -11,6 +11,7 @@ import java.util.zip.Adler32;
 import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 
+import de.fu_berlin.inf.dpp.exceptions.OperationCanceledException;
 import de.fu_berlin.inf.dpp.filesystem.IChecksumCache;
 import de.fu_berlin.inf.dpp.filesystem.IFile;
 import de.fu_berlin.inf.dpp.filesystem.IFolder;
@@ -27,11 +28,14 @@ import de.fu_berlin.inf.dpp.vcs.VCSResourceInfo;
  * <p>
  * <li>Either an inexpensive one that rescans the whole project to gather meta
  * data:<br>
- * {@link #createFileList(IProject, List, IChecksumCache, VCSProvider, IProgressMonitor)}
+ * {@link #createFileList(IProject, List, IChecksumCache, FileListSnapshotStore, VCSProvider, IProgressMonitor)}
  * </li>
  * <li>Or a cheap one which requires the caller to take care of the validity of
  * input data:<br>
  * {@link #createFileList(List)}</li>
+ * <p>
+ * The creation of a file list from resources is canceled as soon as the given
+ * monitor is canceled or the calling thread is interrupted.
  */
 public class FileListFactory {
 
@@ -40,12 +44,22 @@ public class FileListFactory {
     private static final int BUFFER_SIZE = 32 * 1024;
 
     private IChecksumCache checksumCache;
+    private FileListSnapshotStore snapshots;
     private IProgressMonitor monitor;
 
+    /**
+     * If set, no checksums are calculated for files which are unmodified
+     * copies of a revision in the repository.
+     */
+    private boolean skipUnmodifiedChecksums;
+
     private FileListFactory(IChecksumCache checksumCache,
-        IProgressMonitor monitor) {
+        FileListSnapshotStore snapshots, IProgressMonitor monitor,
+        boolean skipUnmodifiedChecksums) {
         this.checksumCache = checksumCache;
+        this.snapshots = snapshots;
         this.monitor = monitor;
+        this.skipUnmodifiedChecksums = skipUnmodifiedChecksums;
 
         if (this.monitor == null)
             this.monitor = new NullProgressMonitor();
@@ -53,12 +67,65 @@ public class FileListFactory {
 
     public static FileList createFileList(IProject project,
         List<IResource> resources, IChecksumCache checksumCache,
-        VCSProvider provider, IProgressMonitor monitor) throws IOException {
+        VCSProvider provider, IProgressMonitor monitor) throws IOException,
+        OperationCanceledException {
+
+        return createFileList(project, resources, checksumCache, null,
+            provider, monitor);
+    }
+
+    /**
+     * Creates a new file list for the given resources. Checksums that were
+     * recorded in the given snapshot store are reused as long as the files
+     * were not changed. The store is updated with the checksums of all files
+     * that had to be read.
+     * 
+     * @param snapshots
+     *            the store to lookup and record the checksums, may be
+     *            <code>null</code>
+     * @throws OperationCanceledException
+     *             if the monitor was canceled or the thread was interrupted
+     */
+    public static FileList createFileList(IProject project,
+        List<IResource> resources, IChecksumCache checksumCache,
+        FileListSnapshotStore snapshots, VCSProvider provider,
+        IProgressMonitor monitor) throws IOException,
+        OperationCanceledException {
 
-        FileListFactory fact = new FileListFactory(checksumCache, monitor);
+        FileListFactory fact = new FileListFactory(checksumCache, snapshots,
+            monitor, false);
         return fact.build(project, resources, provider);
     }
 
+    /**
+     * Creates a new file list for the complete project which is compared
+     * against the file list of a project under the same version control.
+     * <p>
+     * Files that are unmodified copies of a revision in the repository are
+     * identified by their VCS information only, so their checksums are not
+     * calculated and their meta data contains no valid checksum.
+     * {@link FileListDiff} treats these files as unaltered as long as the other
+     * file list contains an unmodified copy of the same revision.
+     * 
+     * @param snapshots
+     *            the store to lookup and record the checksums, may be
+     *            <code>null</code>
+     * @param provider
+     *            the provider of the version control the project is shared
+     *            with, must not be <code>null</code>
+     * @throws OperationCanceledException
+     *             if the monitor was canceled or the thread was interrupted
+     */
+    public static FileList createVCSFileList(IProject project,
+        IChecksumCache checksumCache, FileListSnapshotStore snapshots,
+        VCSProvider provider, IProgressMonitor monitor) throws IOException,
+        OperationCanceledException {
+
+        FileListFactory fact = new FileListFactory(checksumCache, snapshots,
+            monitor, true);
+        return fact.build(project, null, provider);
+    }
+
     /**
      * Creates a new file list from given paths. It does not compute checksums
      * or location information.
@@ -84,23 +151,32 @@ public class FileListFactory {
     }
 
     private FileList build(IProject project, List<IResource> resources,
-        VCSProvider provider) throws IOException {
+        VCSProvider provider) throws IOException, OperationCanceledException {
 
         FileList list = new FileList();
 
-        if (resources == null) {
+        boolean isCompleteProject = resources == null;
+
+        if (isCompleteProject) {
             list.addEncoding(project.getDefaultCharset());
             resources = Arrays.asList(project.members());
         }
 
         addMembersToList(list, resources, provider);
 
+        if (snapshots != null && project != null) {
+            if (isCompleteProject)
+                snapshots.retain(project, list.getPaths());
+
+            snapshots.save(project);
+        }
+
         return list;
     }
 
     private void addMembersToList(final FileList list,
         final List<IResource> resources, final VCSProvider provider)
-        throws IOException {
+        throws IOException, OperationCanceledException {
 
         if (resources.size() == 0)
             return;
@@ -140,6 +216,8 @@ public class FileListFactory {
             monitor.subTask("Reading SVN revisions for shared files...");
 
         while (!stack.isEmpty()) {
+            checkCancellation();
+
             IResource resource = stack.pop();
 
             if (resource.isDerived() || !resource.exists())
@@ -162,6 +240,15 @@ public class FileListFactory {
                 files.add((IFile) resource);
                 data = new MetaData();
                 data.vcsInfo = info;
+
+                /*
+                 * a translated file, e.g. with native line endings, may have a
+                 * different content in every working copy of the same revision
+                 */
+                if (info != null)
+                    data.modified = provider.isModified(resource)
+                        || provider.isContentTranslated(resource);
+
                 list.addPath(path, data, false);
                 list.addEncoding(((IFile) resource).getCharset());
                 break;
@@ -180,20 +267,33 @@ public class FileListFactory {
         monitor.beginTask("Calculating checksums...", files.size());
 
         for (IFile file : files) {
+            checkCancellation();
+
+            MetaData data = list.getMetaData(file.getProjectRelativePath()
+                .toPortableString());
+
+            if (skipUnmodifiedChecksums && isUnmodifiedRevision(data)) {
+                monitor.worked(1);
+                continue;
+            }
+
             try {
                 monitor.subTask(file.getProject().getName() + ": "
                     + file.getName());
 
-                MetaData data = list.getMetaData(file.getProjectRelativePath()
-                    .toPortableString());
-
                 Long checksum = null;
 
                 if (checksumCache != null)
                     checksum = checksumCache.getChecksum(file);
 
+                if (checksum == null && snapshots != null)
+                    checksum = snapshots.getChecksum(file);
+
                 data.checksum = checksum == null ? checksum(file) : checksum;
 
+                if (snapshots != null)
+                    snapshots.addChecksum(file, data.checksum);
+
                 if (checksumCache != null) {
                     boolean isInvalid = checksumCache.addChecksum(file,
                         data.checksum);
@@ -211,6 +311,23 @@ public class FileListFactory {
         }
     }
 
+    /**
+     * Aborts the creation of the file list if the monitor was canceled or the
+     * current thread was interrupted, e.g because the creation of the file
+     * list of another project failed.
+     */
+    private void checkCancellation() throws OperationCanceledException {
+        if (monitor.isCanceled() || Thread.currentThread().isInterrupted())
+            throw new OperationCanceledException(
+                "creation of the file list was canceled");
+    }
+
+    private static boolean isUnmodifiedRevision(MetaData data) {
+        return !data.modified && data.vcsInfo != null
+            && data.vcsInfo.getURL() != null
+            && data.vcsInfo.getRevision() != null;
+    }
+
     /**
      * Calculate Adler32 checksum for given file.
      * <p>
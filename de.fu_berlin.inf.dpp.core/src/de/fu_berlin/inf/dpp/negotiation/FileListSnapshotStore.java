@@ -0,0 +1,332 @@
+package de.fu_berlin.inf.dpp.negotiation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import de.fu_berlin.inf.dpp.filesystem.IFile;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+
+/**
+ * Keeps a snapshot of the file checksums of every project a {@link FileList}
+ * was created for. Every entry records the size and the modification time the
+ * file had when its checksum was calculated, so a checksum is only reused as
+ * long as the file on disk still matches these stamps. Creating the file list
+ * of an already indexed project therefore only requires to read the files that
+ * changed in the meantime.
+ * <p>
+ * If a directory is set, the snapshot of each project is stored in a file of
+ * its own and loaded again when the project is accessed for the first time,
+ * so the snapshots survive restarts of the IDE.
+ * <p>
+ * All methods of this class are thread safe.
+ */
+public class FileListSnapshotStore {
+
+    private static final Logger LOG = Logger
+        .getLogger(FileListSnapshotStore.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Files modified within this period in milliseconds are not recorded as
+     * their modification time may not change when they are modified again.
+     */
+    private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+    private static class Entry {
+        private final long size;
+        private final long modified;
+        private final long checksum;
+
+        private Entry(long size, long modified, long checksum) {
+            this.size = size;
+            this.modified = modified;
+            this.checksum = checksum;
+        }
+    }
+
+    private static class Snapshot {
+        private final String location;
+        private final Map<String, Entry> entries = new HashMap<String, Entry>();
+        private boolean dirty;
+
+        private Snapshot(String location) {
+            this.location = location;
+        }
+    }
+
+    private final Map<String, Snapshot> snapshots = new HashMap<String, Snapshot>();
+
+    private File directory;
+
+    /**
+     * Sets the directory the snapshots are stored in. Snapshots that are
+     * already loaded are not affected.
+     *
+     * @param directory
+     *            the directory or <code>null</code> to only keep the
+     *            snapshots in memory
+     */
+    public synchronized void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the recorded checksum of the given file.
+     *
+     * @param file
+     *            the file to lookup
+     * @return the checksum or <code>null</code> if no checksum was recorded
+     *         or the file was changed since then
+     */
+    public synchronized Long getChecksum(IFile file) {
+        File localFile = toLocalFile(file);
+
+        if (localFile == null)
+            return null;
+
+        Snapshot snapshot = getSnapshot(file.getProject());
+
+        if (snapshot == null)
+            return null;
+
+        Entry entry = snapshot.entries.get(getPath(file));
+
+        if (entry == null || entry.size != localFile.length()
+            || entry.modified != localFile.lastModified())
+            return null;
+
+        return entry.checksum;
+    }
+
+    /**
+     * Records the checksum of the given file along with its current size and
+     * modification time. The checksum must have been calculated from the
+     * current content of the file.
+     *
+     * @param file
+     *            the file the checksum was calculated for
+     * @param checksum
+     *            the checksum
+     */
+    public synchronized void addChecksum(IFile file, long checksum) {
+        File localFile = toLocalFile(file);
+
+        if (localFile == null)
+            return;
+
+        Snapshot snapshot = getSnapshot(file.getProject());
+
+        if (snapshot == null)
+            return;
+
+        String path = getPath(file);
+
+        long modified = localFile.lastModified();
+
+        if (modified == 0
+            || modified > System.currentTimeMillis()
+                - MODIFICATION_TIME_RESOLUTION) {
+
+            if (snapshot.entries.remove(path) != null)
+                snapshot.dirty = true;
+
+            return;
+        }
+
+        Entry entry = new Entry(localFile.length(), modified, checksum);
+
+        Entry previous = snapshot.entries.put(path, entry);
+
+        if (previous == null || previous.size != entry.size
+            || previous.modified != entry.modified
+            || previous.checksum != entry.checksum)
+            snapshot.dirty = true;
+    }
+
+    /**
+     * Removes the entries of all files of the given project that are not
+     * contained in the given paths, e.g because they were deleted.
+     *
+     * @param project
+     *            the project
+     * @param paths
+     *            the project relative paths of all files of the project
+     */
+    public synchronized void retain(IProject project, Collection<String> paths) {
+        Snapshot snapshot = getSnapshot(project);
+
+        if (snapshot == null)
+            return;
+
+        Set<String> retained = new HashSet<String>(paths);
+
+        for (Iterator<String> it = snapshot.entries.keySet().iterator(); it
+            .hasNext();) {
+
+            if (!retained.contains(it.next())) {
+                it.remove();
+                snapshot.dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot of the given project if it was changed since it was
+     * loaded or written the last time.
+     *
+     * @param project
+     *            the project
+     */
+    public synchronized void save(IProject project) {
+        Snapshot snapshot = getSnapshot(project);
+
+        if (snapshot == null || !snapshot.dirty)
+            return;
+
+        File file = getSnapshotFile(snapshot.location);
+
+        if (file == null)
+            return;
+
+        try {
+            write(snapshot, file);
+            snapshot.dirty = false;
+        } catch (IOException e) {
+            LOG.warn("could not write file list snapshot " + file, e);
+        }
+    }
+
+    private Snapshot getSnapshot(IProject project) {
+        if (project == null)
+            return null;
+
+        URI locationURI = project.getLocationURI();
+
+        if (locationURI == null)
+            return null;
+
+        String location = locationURI.toString();
+
+        Snapshot snapshot = snapshots.get(location);
+
+        if (snapshot == null) {
+            snapshot = new Snapshot(location);
+            read(snapshot, getSnapshotFile(location));
+            snapshots.put(location, snapshot);
+        }
+
+        return snapshot;
+    }
+
+    private File getSnapshotFile(String location) {
+        if (directory == null)
+            return null;
+
+        return new File(directory, DigestUtils.shaHex(location) + ".dat");
+    }
+
+    private void read(Snapshot snapshot, File file) {
+        if (file == null || !file.exists())
+            return;
+
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+
+            if (in.readInt() != FORMAT_VERSION
+                || !snapshot.location.equals(in.readUTF())) {
+                LOG.warn("discarding file list snapshot " + file
+                    + ", unsupported format or location");
+                return;
+            }
+
+            int count = in.readInt();
+
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+
+                snapshot.entries.put(path, new Entry(in.readLong(),
+                    in.readLong(), in.readLong()));
+            }
+        } catch (IOException e) {
+            LOG.warn("could not read file list snapshot " + file, e);
+            snapshot.entries.clear();
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+
+        LOG.debug("loaded " + snapshot.entries.size()
+            + " checksums from file list snapshot " + file);
+    }
+
+    private void write(Snapshot snapshot, File file) throws IOException {
+        File parent = file.getParentFile();
+
+        if (parent != null && !parent.exists() && !parent.mkdirs())
+            throw new IOException("could not create directory: " + parent);
+
+        // write to a temporary file first so a crash cannot corrupt the
+        // existing snapshot
+        File tmp = new File(file.getPath() + ".tmp");
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(tmp)));
+
+        try {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(snapshot.location);
+            out.writeInt(snapshot.entries.size());
+
+            for (Map.Entry<String, Entry> entry : snapshot.entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().size);
+                out.writeLong(entry.getValue().modified);
+                out.writeLong(entry.getValue().checksum);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (file.exists() && !file.delete())
+            throw new IOException("could not replace " + file);
+
+        if (!tmp.renameTo(file))
+            throw new IOException("could not rename " + tmp + " to " + file);
+    }
+
+    private static String getPath(IFile file) {
+        return file.getProjectRelativePath().toPortableString();
+    }
+
+    private static File toLocalFile(IFile file) {
+        IPath location = file.getLocation();
+
+        if (location == null)
+            return null;
+
+        File localFile = location.toFile();
+
+        return localFile.isFile() ? localFile : null;
+    }
+}
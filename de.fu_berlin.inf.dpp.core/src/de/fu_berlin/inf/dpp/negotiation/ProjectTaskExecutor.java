@@ -0,0 +1,231 @@
+package de.fu_berlin.inf.dpp.negotiation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.fu_berlin.inf.dpp.exceptions.LocalCancellationException;
+import de.fu_berlin.inf.dpp.exceptions.SarosCancellationException;
+import de.fu_berlin.inf.dpp.monitoring.IProgressMonitor;
+import de.fu_berlin.inf.dpp.monitoring.SubProgressMonitor;
+import de.fu_berlin.inf.dpp.util.NamedThreadFactory;
+
+/**
+ * Executes the per project steps of a project negotiation, e.g creating the
+ * file list of a project, concurrently so a large project does not delay the
+ * processing of its siblings.
+ * <p>
+ * The progress of all tasks is reported to a single monitor whose methods are
+ * only invoked by one thread at a time. The results are collected in the order
+ * the tasks complete. As soon as a task fails, the remaining tasks are canceled
+ * and the failure of that task is rethrown.
+ */
+public final class ProjectTaskExecutor {
+
+    /**
+     * A step of the negotiation that is performed for a single project.
+     *
+     * @param <P>
+     *            the type of the project
+     * @param <R>
+     *            the type of the result
+     */
+    public interface Task<P, R> {
+        public R run(P project, IProgressMonitor monitor) throws IOException,
+            SarosCancellationException;
+    }
+
+    private static final int MAX_THREADS = Math.max(1, Runtime.getRuntime()
+        .availableProcessors());
+
+    private ProjectTaskExecutor() {
+        // NOP
+    }
+
+    /**
+     * Runs the task for every given project and waits until all tasks are
+     * finished or one of them failed.
+     *
+     * @param projects
+     *            the projects to process
+     * @param task
+     *            the task to perform for each project
+     * @param monitor
+     *            the monitor to report the progress to, the caller must
+     *            already have begun a task on it
+     * @param work
+     *            the amount of work units of the given monitor each project
+     *            accounts for
+     * @return the results in the order of the given projects
+     * @throws IOException
+     *             if the first task that failed failed with an I/O error
+     * @throws SarosCancellationException
+     *             if the first task that failed was canceled or the calling
+     *             thread was interrupted
+     */
+    public static <P, R> List<R> execute(final List<P> projects,
+        final Task<P, R> task, final IProgressMonitor monitor, final int work)
+        throws IOException, SarosCancellationException {
+        return execute(projects, task, monitor, work, MAX_THREADS);
+    }
+
+    static <P, R> List<R> execute(final List<P> projects,
+        final Task<P, R> task, final IProgressMonitor monitor, final int work,
+        final int maxThreads) throws IOException, SarosCancellationException {
+
+        final List<R> results = new ArrayList<R>(projects.size());
+
+        if (projects.size() <= 1) {
+            for (P project : projects)
+                results.add(task.run(project, new SubProgressMonitor(monitor,
+                    work, SubProgressMonitor.SUPPRESS_BEGINTASK
+                        | SubProgressMonitor.SUPPRESS_SETTASKNAME)));
+
+            return results;
+        }
+
+        final SynchronizedMonitor synchronizedMonitor = new SynchronizedMonitor(
+            monitor);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(projects.size(), maxThreads), new NamedThreadFactory(
+                "ProjectNegotiationWorker-"));
+
+        final CompletionService<R> completionService = new ExecutorCompletionService<R>(
+            executor);
+
+        final Map<Future<R>, Integer> indices = new HashMap<Future<R>, Integer>();
+
+        try {
+            for (final P project : projects) {
+                final Future<R> future = completionService
+                    .submit(new Callable<R>() {
+                        @Override
+                        public R call() throws Exception {
+                            return task.run(project, new SubProgressMonitor(
+                                synchronizedMonitor, work,
+                                SubProgressMonitor.SUPPRESS_BEGINTASK
+                                    | SubProgressMonitor.SUPPRESS_SETTASKNAME));
+                        }
+                    });
+
+                indices.put(future, results.size());
+                results.add(null);
+            }
+
+            for (int i = 0; i < projects.size(); i++) {
+                final Future<R> future;
+
+                try {
+                    future = completionService.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new LocalCancellationException();
+                }
+
+                results.set(indices.get(future), getResult(future));
+            }
+
+        } finally {
+            /*
+             * if a task failed or the calling thread was interrupted, the tasks
+             * that are still running are interrupted and their monitors report
+             * a cancellation
+             */
+            synchronizedMonitor.canceled = true;
+
+            for (Future<R> future : indices.keySet())
+                future.cancel(true);
+
+            executor.shutdown();
+        }
+
+        return results;
+    }
+
+    /**
+     * Returns the result of the given completed task or rethrows its failure.
+     */
+    private static <R> R getResult(Future<R> future) throws IOException,
+        SarosCancellationException {
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // cannot happen, the task is already completed
+            Thread.currentThread().interrupt();
+            throw new LocalCancellationException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+
+            if (cause instanceof SarosCancellationException)
+                throw (SarosCancellationException) cause;
+
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    private static class SynchronizedMonitor implements IProgressMonitor {
+
+        private final IProgressMonitor delegate;
+
+        private volatile boolean canceled;
+
+        private SynchronizedMonitor(IProgressMonitor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized void done() {
+            delegate.done();
+        }
+
+        @Override
+        public synchronized void subTask(String name) {
+            delegate.subTask(name);
+        }
+
+        @Override
+        public synchronized void setTaskName(String name) {
+            delegate.setTaskName(name);
+        }
+
+        @Override
+        public synchronized void worked(int amount) {
+            delegate.worked(amount);
+        }
+
+        @Override
+        public synchronized void setCanceled(boolean canceled) {
+            delegate.setCanceled(canceled);
+        }
+
+        @Override
+        public synchronized boolean isCanceled() {
+            return canceled || delegate.isCanceled();
+        }
+
+        @Override
+        public synchronized void beginTask(String name, int size) {
+            delegate.beginTask(name, size);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package de.fu_berlin.inf.dpp.net;
+
+import org.jivesoftware.smack.filter.PacketFilter;
+import org.jivesoftware.smack.packet.Packet;
+
+/**
+ * A filter for packets which contain a packet extension with a given element
+ * name and namespace. Additional conditions can be added by using
+ * {@link #and(PacketFilter)}.
+ * <p>
+ * As the element name and namespace are known in advance, an
+ * {@link IReceiver} is able to route packets to the listeners that are
+ * registered with such a filter without evaluating the filters of all other
+ * listeners.
+ * </p>
+ */
+public final class ExtensionPacketFilter implements PacketFilter {
+
+    private final String elementName;
+
+    private final String namespace;
+
+    private final PacketFilter condition;
+
+    /**
+     * Creates a filter that accepts all packets which contain a packet
+     * extension with the given element name and namespace.
+     * 
+     * @param elementName
+     *            the element name of the packet extension
+     * @param namespace
+     *            the namespace of the packet extension
+     */
+    public ExtensionPacketFilter(String elementName, String namespace) {
+        this(elementName, namespace, null);
+    }
+
+    private ExtensionPacketFilter(String elementName, String namespace,
+        PacketFilter condition) {
+
+        if (elementName == null)
+            throw new NullPointerException("elementName is null");
+
+        if (namespace == null)
+            throw new NullPointerException("namespace is null");
+
+        this.elementName = elementName;
+        this.namespace = namespace;
+        this.condition = condition;
+    }
+
+    /**
+     * Returns a filter for the same packet extension that additionally only
+     * accepts packets which are accepted by the given filter.
+     * 
+     * @param filter
+     *            the additional condition
+     * @return the combined filter
+     */
+    public ExtensionPacketFilter and(final PacketFilter filter) {
+        if (condition == null)
+            return new ExtensionPacketFilter(elementName, namespace, filter);
+
+        final PacketFilter previous = condition;
+
+        return new ExtensionPacketFilter(elementName, namespace,
+            new PacketFilter() {
+                @Override
+                public boolean accept(Packet packet) {
+                    return previous.accept(packet) && filter.accept(packet);
+                }
+            });
+    }
+
+    public String getElementName() {
+        return elementName;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    @Override
+    public boolean accept(Packet packet) {
+        if (packet.getExtension(elementName, namespace) == null)
+            return false;
+
+        return condition == null || condition.accept(packet);
+    }
+
+    @Override
+    public String toString() {
+        return "ExtensionPacketFilter [elementName=" + elementName
+            + ", namespace=" + namespace + "]";
+    }
+}
@@ -13,6 +13,8 @@ public interface IConnectionManager {
 
     public static final int SOCKS5_TRANSPORT = 2;
 
+    public static final int TCP_TRANSPORT = 4;
+
     /**
      * Sets the transport that should be used to establish direct connections.
      * 
@@ -1,6 +1,5 @@
 package de.fu_berlin.inf.dpp.net.internal;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.ArrayList;
@@ -12,9 +11,6 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.zip.DataFormatException;
-import java.util.zip.Deflater;
-import java.util.zip.Inflater;
 
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.Connection;
@@ -49,8 +45,6 @@ public class DataTransferManager implements IConnectionListener,
     private static final Logger LOG = Logger
         .getLogger(DataTransferManager.class);
 
-    private static final int CHUNKSIZE = 16 * 1024;
-
     private static final String DEFAULT_CONNECTION_ID = "default";
 
     private static final String IN = "in";
@@ -65,7 +59,11 @@ public class DataTransferManager implements IConnectionListener,
 
     private Connection connection;
 
-    private int transportMask = -1;
+    /*
+     * the local network transport announces the local endpoint via mDNS, so it
+     * must be enabled explicitly
+     */
+    private int transportMask = ~TCP_TRANSPORT;
 
     private final IReceiver receiver;
 
@@ -73,6 +71,8 @@ public class DataTransferManager implements IConnectionListener,
 
     private final ITransport fallbackTransport;
 
+    private final TCPTransport lanTransport;
+
     private final Lock connectLock = new ReentrantLock();
 
     private final ConnectionPool connectionPool = new ConnectionPool();
@@ -106,7 +106,7 @@ public class DataTransferManager implements IConnectionListener,
                 long compressedPayloadLength = payload.length;
 
                 try {
-                    payload = inflate(payload);
+                    payload = PayloadCompression.inflate(payload);
                 } catch (IOException e) {
                     LOG.error("could not decompress extension payload", e);
                     return;
@@ -171,10 +171,25 @@ public class DataTransferManager implements IConnectionListener,
         IReceiver receiver,
         @Nullable @Socks5Transport ITransport mainTransport,
         @Nullable @IBBTransport ITransport fallbackTransport) {
+        this(connectionService, receiver, mainTransport, fallbackTransport,
+            null);
+    }
+
+    /**
+     * Creates a manager that first tries to connect to peers in the local
+     * network using the given TCP transport before falling back to the main
+     * and the fallback transport.
+     */
+    public DataTransferManager(XMPPConnectionService connectionService,
+        IReceiver receiver,
+        @Nullable @Socks5Transport ITransport mainTransport,
+        @Nullable @IBBTransport ITransport fallbackTransport,
+        @Nullable TCPTransport lanTransport) {
 
         this.receiver = receiver;
         this.fallbackTransport = fallbackTransport;
         this.mainTransport = mainTransport;
+        this.lanTransport = lanTransport;
         this.initTransports();
 
         connectionService.addListener(this);
@@ -260,7 +275,7 @@ public class DataTransferManager implements IConnectionListener,
         long sizeUncompressed = payload.length;
 
         if (description.compressContent())
-            payload = deflate(payload);
+            payload = PayloadCompression.deflate(payload);
 
         final long transferStartTime = System.currentTimeMillis();
 
@@ -406,6 +421,15 @@ public class DataTransferManager implements IConnectionListener,
                 availableTransports);
 
             for (ITransport transport : transportModesToUse) {
+
+                /*
+                 * only dial the local network if the peer announced an
+                 * endpoint, otherwise this would just add a failed attempt
+                 */
+                if (transport == lanTransport
+                    && !lanTransport.isReachable(peer))
+                    continue;
+
                 LOG.info("establishing connection to " + peer + " from "
                     + connectionJID + " using transport " + transport);
                 try {
@@ -450,14 +474,19 @@ public class DataTransferManager implements IConnectionListener,
     private void initTransports() {
         boolean useIBB;
         boolean useSocks5;
+        boolean useTCP;
 
         synchronized (this) {
             useIBB = (transportMask & IBB_TRANSPORT) != 0;
             useSocks5 = (transportMask & SOCKS5_TRANSPORT) != 0;
+            useTCP = (transportMask & TCP_TRANSPORT) != 0;
         }
 
         availableTransports.clear();
 
+        if (useTCP && lanTransport != null)
+            availableTransports.add(lanTransport);
+
         if (useSocks5 && mainTransport != null)
             availableTransports.add(mainTransport);
 
@@ -605,43 +634,4 @@ public class DataTransferManager implements IConnectionListener,
             }
         }
     }
-
-    private static byte[] deflate(byte[] input) {
-
-        Deflater compressor = new Deflater(Deflater.DEFLATED);
-        compressor.setInput(input);
-        compressor.finish();
-
-        ByteArrayOutputStream bos = new ByteArrayOutputStream(input.length);
-
-        byte[] buf = new byte[CHUNKSIZE];
-
-        while (!compressor.finished()) {
-            int count = compressor.deflate(buf);
-            bos.write(buf, 0, count);
-        }
-
-        return bos.toByteArray();
-    }
-
-    private static byte[] inflate(byte[] input) throws IOException {
-
-        ByteArrayOutputStream bos;
-        Inflater decompressor = new Inflater();
-
-        decompressor.setInput(input, 0, input.length);
-        bos = new ByteArrayOutputStream(input.length);
-
-        byte[] buf = new byte[CHUNKSIZE];
-
-        try {
-            while (!decompressor.finished()) {
-                int count = decompressor.inflate(buf);
-                bos.write(buf, 0, count);
-            }
-            return bos.toByteArray();
-        } catch (DataFormatException e) {
-            throw new IOException("failed to inflate data", e);
-        }
-    }
 }
@@ -0,0 +1,144 @@
+package de.fu_berlin.inf.dpp.net.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the payloads of the transferred packet extensions.
+ * <p>
+ * Most payloads are short XStream documents, e.g a single activity, which
+ * contain nearly nothing but element and attribute names. Deflating them
+ * separately yields almost no gain as the compressor has no history to refer
+ * to. Therefore the payloads are deflated with a preset dictionary containing
+ * the common fragments of these documents.
+ * </p>
+ * <p>
+ * The compressors are reused by every thread as their initialization is far
+ * more expensive than compressing a short payload.
+ * </p>
+ * <p>
+ * <b>The preset dictionary is not compatible with older Saros versions.</b>
+ * Their receivers inflate without a dictionary and fail on every payload. The
+ * dictionary is not negotiated, so the version introducing it must not be
+ * declared compatible to any earlier version in the compatibility chart of
+ * the {@link de.fu_berlin.inf.dpp.versioning.VersionManager VersionManager}.
+ * </p>
+ */
+final class PayloadCompression {
+
+    private static final int CHUNKSIZE = 16 * 1024;
+
+    /**
+     * The preset dictionary, the most common fragments must be placed at the
+     * end. <b>Changing the dictionary breaks the compatibility with other
+     * Saros versions.</b> The next release must then not be declared
+     * compatible to the previous ones.
+     */
+    private static final byte[] DICTIONARY = toBytes("<stopFollowingActivity "
+        + "<startFollowingActivity <permissionActivity <changeColorActivity "
+        + "<progressActivity <editorActivity type=\"ACTIVATED\" "
+        + "<checksumErrorActivity <fileActivity type=\"CREATED\" "
+        + "purpose=\"ACTIVITY\" encoding=\"UTF-8\" <folderActivity "
+        + "<vcsActivity <nopActivity <checksumActivity hash=\"\" length=\"\" "
+        + "jupiterTimestamp=\"\" <viewportActivity <textSelectionActivity "
+        + "<o class=\"deleteOp\" position=\"\"><text></text></o>"
+        + "<o class=\"insertOp\" position=\"\" origin=\"\"><text></text></o>"
+        + "</jupiterActivity><jupiterActivity source=\"%40%2FSaros\">"
+        + "<p i=\"\" p=\"src%2F.java\"/><t class=\"vectorTime\" local=\"\" "
+        + "remote=\"\"/></payload></ados><ados xmlns=\"de.fu_berlin.inf.dpp\">"
+        + "<payload class=\"ADOS\" v=\"SPXV1\" sid=\"\" seq=\"\">");
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.DEFLATED);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private PayloadCompression() {
+        // NOP
+    }
+
+    /**
+     * Deflates the given payload using the preset dictionary.
+     */
+    static byte[] deflate(byte[] input) {
+        Deflater compressor = DEFLATER.get();
+
+        compressor.reset();
+        compressor.setDictionary(DICTIONARY);
+        compressor.setInput(input);
+        compressor.finish();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(
+            input.length / 2 + 16);
+
+        byte[] buf = new byte[Math.min(CHUNKSIZE, input.length + 64)];
+
+        while (!compressor.finished()) {
+            int count = compressor.deflate(buf);
+            bos.write(buf, 0, count);
+        }
+
+        return bos.toByteArray();
+    }
+
+    /**
+     * Inflates the given payload. Payloads that were deflated without the
+     * preset dictionary are supported, too.
+     *
+     * @throws IOException
+     *             if the payload is corrupted
+     */
+    static byte[] inflate(byte[] input) throws IOException {
+        Inflater decompressor = INFLATER.get();
+
+        decompressor.reset();
+        decompressor.setInput(input, 0, input.length);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(input.length * 3);
+
+        byte[] buf = new byte[CHUNKSIZE];
+
+        try {
+            while (!decompressor.finished()) {
+                int count = decompressor.inflate(buf);
+
+                if (count == 0 && decompressor.needsDictionary()) {
+                    decompressor.setDictionary(DICTIONARY);
+                    continue;
+                }
+
+                if (count == 0 && decompressor.needsInput())
+                    throw new IOException("failed to inflate data: truncated");
+
+                bos.write(buf, 0, count);
+            }
+            return bos.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("failed to inflate data", e);
+        } catch (IllegalArgumentException e) {
+            // thrown if the payload was deflated with another dictionary
+            throw new IOException("failed to inflate data", e);
+        }
+    }
+
+    private static byte[] toBytes(String dictionary) {
+        try {
+            return dictionary.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
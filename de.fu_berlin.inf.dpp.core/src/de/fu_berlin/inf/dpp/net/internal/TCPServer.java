@@ -6,9 +6,15 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
+import de.fu_berlin.inf.dpp.util.NamedThreadFactory;
 import de.fu_berlin.inf.dpp.util.ThreadUtils;
 
 // TODO JavaDoc
@@ -16,12 +22,43 @@ import de.fu_berlin.inf.dpp.util.ThreadUtils;
 // Accepts incoming TCP connections
 public class TCPServer {
 
+    /**
+     * Handler for accepted client connections.
+     */
+    public interface ClientHandler {
+
+        /**
+         * Called for every accepted client connection. This method is called
+         * from a pooled thread and may block, but should return as soon as
+         * the connection is established, as only
+         * {@value TCPServer#MAX_CONCURRENT_CLIENTS} clients are handled at the
+         * same time. The handler is responsible for closing the socket.
+         * 
+         * @param client
+         *            the socket of the client
+         */
+        public void clientAccepted(Socket client);
+    }
+
     private static final Logger LOG = Logger.getLogger(TCPServer.class);
 
+    /**
+     * maximum number of clients that are handled at the same time, further
+     * clients are closed immediately
+     */
+    static final int MAX_CONCURRENT_CLIENTS = 4;
+
+    /** time in seconds an idle client thread is kept alive */
+    private static final long CLIENT_THREAD_KEEP_ALIVE = 30;
+
     private ServerSocket server;
 
+    private volatile ClientHandler clientHandler;
+
     private Thread connectionAcceptThread;
 
+    private ExecutorService clientExecutor;
+
     private volatile boolean running;
 
     private final Runnable acceptRunnable = new Runnable() {
@@ -45,16 +82,41 @@ public class TCPServer {
                 LOG.debug("accept request from: "
                     + client.getRemoteSocketAddress());
 
-                // TODO pass to logic
+                final ClientHandler handler = clientHandler;
+
+                if (handler == null) {
+                    closeClientSocket(client);
+                    continue;
+                }
+
                 try {
-                    client.close();
-                } catch (Exception e) {
-                    // ignore
+                    clientExecutor.execute(ThreadUtils.wrapSafe(LOG,
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                handler.clientAccepted(client);
+                            }
+                        }));
+                } catch (RejectedExecutionException e) {
+                    LOG.warn("too many pending clients, closing connection "
+                        + "from: " + client.getRemoteSocketAddress());
+                    closeClientSocket(client);
                 }
             }
         }
     };
 
+    /**
+     * Sets the handler for accepted client connections. If no handler is set
+     * all client connections are closed immediately.
+     * 
+     * @param handler
+     *            the handler to use or <code>null</code>
+     */
+    public void setClientHandler(ClientHandler handler) {
+        clientHandler = handler;
+    }
+
     /**
      * Starts a server on the given address and port.
      * 
@@ -121,6 +183,11 @@ public class TCPServer {
 
         running = true;
 
+        clientExecutor = new ThreadPoolExecutor(0, MAX_CONCURRENT_CLIENTS,
+            CLIENT_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new NamedThreadFactory(
+                "TCP-Server-Client-"));
+
         connectionAcceptThread = ThreadUtils.runSafeAsync("TCP-Server-Accept",
             LOG, acceptRunnable);
 
@@ -147,13 +214,24 @@ public class TCPServer {
             return;
         }
 
+        clientExecutor.shutdown();
+
         LOG.info("server stopped on: " + server.getLocalSocketAddress());
 
         server = null;
         connectionAcceptThread = null;
+        clientExecutor = null;
         running = false;
     }
 
+    private static void closeClientSocket(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
     private static void closeServerSocket(ServerSocket socket) {
         if (socket == null)
             return;
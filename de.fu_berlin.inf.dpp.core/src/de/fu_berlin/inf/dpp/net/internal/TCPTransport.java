@@ -1,63 +1,567 @@
 package de.fu_berlin.inf.dpp.net.internal;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.jmdns.ServiceInfo;
+
+import org.apache.log4j.Logger;
 import org.jivesoftware.smack.Connection;
 
 import de.fu_berlin.inf.dpp.net.ConnectionMode;
+import de.fu_berlin.inf.dpp.net.mdns.MDNSService;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
 
 // TODO rewrite ITransport interface
 
+/**
+ * Transport that establishes direct TCP connections to peers in the local
+ * network. Every client publishes its endpoint under a random service name via
+ * mDNS. Neither the announcement nor the handshake reveal the JID of the user
+ * to the local network.
+ * <p>
+ * mDNS announcements are not authenticated, so they are only used to find the
+ * endpoint of a peer. The service name and a secret shared by both peers are
+ * exchanged over the XMPP connection during the session negotiation, see
+ * {@link #addPeer}. A connection is only tried to peers with a known secret
+ * whose service is resolved, otherwise {@link #connect} fails immediately so
+ * that the next transport can be used.
+ * <p>
+ * The dialing side identifies itself by a HMAC of the connection ID and a
+ * fresh nonce instead of its JID. The accepting side finds the dialing peer by
+ * checking this value against the secrets of all known peers. Both sides then
+ * prove the knowledge of the secret by a HMAC over fresh nonces of both sides,
+ * the connection ID and the addresses each side sees. A host that announces a
+ * foreign service name therefore can neither accept nor open a connection in
+ * the name of the peer.
+ */
 public class TCPTransport implements ITransport {
 
+    private static final Logger LOG = Logger.getLogger(TCPTransport.class);
+
+    /** the mDNS service type used to publish the endpoints */
+    public static final String SERVICE_TYPE = "_dpp._tcp.local.";
+
+    /** service property containing the capability of the announcing client */
+    public static final String PROPERTY_CAPABILITY = "cap";
+
+    /** capability value of clients that accept session connections */
+    public static final String CAPABILITY_SESSION = "session-1";
+
+    private static final int DEFAULT_PORT = 7777;
+
+    private static final int CONNECT_TIMEOUT = 3000;
+
+    private static final int HANDSHAKE_TIMEOUT = 5000;
+
+    private static final int HANDSHAKE_MAGIC = 0x44505003;
+
+    private static final int CONNECTION_ACCEPTED = 1;
+
+    private static final int CONNECTION_REJECTED = 0;
+
+    private static final int CONNECTION_CHALLENGED = 2;
+
+    private static final int ROLE_ACCEPTOR = 1;
+
+    private static final int ROLE_DIALER = 2;
+
+    private static final int ROLE_IDENTIFIER = 3;
+
+    private static final int NONCE_LENGTH = 16;
+
+    /** length of the secret in bytes that is shared with a peer */
+    public static final int SECRET_LENGTH = 32;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * The service name and the shared secret of a peer, both exchanged over
+     * the XMPP connection.
+     */
+    private static class Peer {
+        private final String serviceName;
+        private final byte[] secret;
+
+        private Peer(String serviceName, byte[] secret) {
+            this.serviceName = serviceName;
+            this.secret = secret;
+        }
+    }
+
+    private final MDNSService mDNSService;
+
+    private final TCPServer tcpServer;
+
+    private final Map<JID, Peer> peers = Collections
+        .synchronizedMap(new HashMap<JID, Peer>());
+
     private volatile IByteStreamConnectionListener currentListener;
 
+    private volatile JID currentLocalJID;
+
+    private volatile String currentServiceName;
+
+    private boolean started;
+
+    private final TCPServer.ClientHandler clientHandler = new TCPServer.ClientHandler() {
+
+        @Override
+        public void clientAccepted(Socket client) {
+            try {
+                acceptConnection(client);
+            } catch (IOException e) {
+                LOG.debug("rejected TCP connection from "
+                    + client.getRemoteSocketAddress() + ": " + e.getMessage());
+                closeQuietly(client);
+            }
+        }
+    };
+
+    public TCPTransport(MDNSService mDNSService, TCPServer tcpServer) {
+        this.mDNSService = mDNSService;
+        this.tcpServer = tcpServer;
+    }
+
     @Override
     public IByteStreamConnection connect(String connectionID, JID peer)
         throws IOException, InterruptedException {
 
-        // TODO this should be configurable;
+        final IByteStreamConnectionListener listener = currentListener;
+        final JID localJID = currentLocalJID;
 
-        final Socket socket = new Socket(Proxy.NO_PROXY);
+        if (listener == null || localJID == null)
+            throw new IOException(this + " transport is not initialized");
 
-        final InetSocketAddress address = new InetSocketAddress("localhost",
-            4711);
+        final Peer info = peers.get(peer);
 
-        socket.connect(address, 30000);
-        socket.setTcpNoDelay(true);
+        if (info == null)
+            throw new IOException("no secret was negotiated with " + peer);
 
-        final IByteStreamConnectionListener listener = currentListener;
+        final List<ServiceInfo> services = getSessionServices(info);
 
-        if (listener == null) {
-            socket.close();
-            throw new IOException(this + " transport is not initialized");
+        if (services.isEmpty())
+            throw new IOException("no local network endpoint is known for "
+                + peer);
+
+        IOException lastException = null;
+
+        for (ServiceInfo service : services) {
+            for (InetAddress address : service.getInetAddresses()) {
+
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+
+                final InetSocketAddress endpoint = new InetSocketAddress(
+                    address, service.getPort());
+
+                try {
+                    final Socket socket = connect(endpoint, connectionID,
+                        localJID, peer, info.secret);
+
+                    LOG.debug("established TCP connection to " + peer
+                        + " on " + endpoint);
+
+                    return new BinaryChannelConnection(peer, connectionID,
+                        new TCPByteStream(socket), ConnectionMode.TCP,
+                        listener);
+                } catch (IOException e) {
+                    LOG.debug("failed to connect to " + peer + " on "
+                        + endpoint + ": " + e.getMessage());
+                    lastException = e;
+                }
+            }
         }
 
-        final IByteStreamConnection connection = new BinaryChannelConnection(
-            peer, connectionID, new TCPByteStream(socket), ConnectionMode.TCP,
-            listener);
+        if (lastException == null)
+            lastException = new IOException(
+                "no address is known for the local network endpoint of "
+                    + peer);
+
+        throw lastException;
+    }
+
+    /**
+     * Returns <code>true</code> if a secret was negotiated with the given peer
+     * and the peer announced an endpoint in the local network that accepts
+     * session connections.
+     *
+     * @param peer
+     *            the JID of the peer
+     */
+    public boolean isReachable(JID peer) {
+        final Peer info = peers.get(peer);
+
+        return currentListener != null && info != null
+            && !getSessionServices(info).isEmpty();
+    }
+
+    /**
+     * Returns the name under which the local endpoint is published.
+     *
+     * @return the service name or <code>null</code> if this transport is not
+     *         running
+     */
+    public String getServiceName() {
+        return currentServiceName;
+    }
+
+    /**
+     * Allows connections from and to the given peer. The arguments must have
+     * been received over an authenticated channel, i.e the XMPP connection.
+     *
+     * @param peer
+     *            the JID of the peer
+     * @param serviceName
+     *            the name under which the peer publishes its endpoint
+     * @param secret
+     *            the secret shared with the peer
+     */
+    public void addPeer(JID peer, String serviceName, byte[] secret) {
+        if (secret.length < SECRET_LENGTH)
+            throw new IllegalArgumentException("secret is too short");
+
+        peers.put(peer, new Peer(serviceName, secret.clone()));
+    }
 
-        return connection;
+    /**
+     * Forgets the secrets of all peers. Connections that are already
+     * established are not affected.
+     */
+    public void removeAllPeers() {
+        peers.clear();
+    }
+
+    /**
+     * Returns a new random secret that can be shared with a peer.
+     */
+    public static byte[] createSecret() {
+        final byte[] secret = new byte[SECRET_LENGTH];
+        RANDOM.nextBytes(secret);
+        return secret;
     }
 
     @Override
-    public void initialize(Connection connection,
+    public synchronized void initialize(Connection connection,
         IByteStreamConnectionListener listener) {
 
+        currentLocalJID = new JID(connection.getUser());
         currentListener = listener;
+
+        final int port;
+
+        try {
+            port = tcpServer.start(null, -DEFAULT_PORT);
+        } catch (IOException e) {
+            LOG.warn("failed to start TCP server, " + this + " is disabled: "
+                + e.getMessage());
+            return;
+        }
+
+        if (port == -1) {
+            LOG.warn("TCP server is already in use, " + this + " is disabled");
+            return;
+        }
+
+        final Map<String, String> properties = new HashMap<String, String>();
+
+        properties.put(PROPERTY_CAPABILITY, CAPABILITY_SESSION);
+
+        tcpServer.setClientHandler(clientHandler);
+
+        final String serviceName = "saros-"
+            + Long.toHexString(RANDOM.nextLong());
+
+        try {
+            mDNSService.configure(SERVICE_TYPE, serviceName, port, properties);
+
+            mDNSService.start();
+        } catch (Exception e) {
+            LOG.warn("failed to publish the local network endpoint, " + this
+                + " is disabled: " + e.getMessage());
+
+            tcpServer.setClientHandler(null);
+            tcpServer.stop();
+            return;
+        }
+
+        currentServiceName = serviceName;
+        started = true;
     }
 
     @Override
-    public void uninitialize() {
+    public synchronized void uninitialize() {
         currentListener = null;
+        currentLocalJID = null;
+        currentServiceName = null;
+
+        peers.clear();
+
+        if (!started)
+            return;
+
+        started = false;
+
+        mDNSService.stop();
+        tcpServer.setClientHandler(null);
+        tcpServer.stop();
     }
 
     @Override
     public String toString() {
         return "TCP-Transport";
     }
+
+    private Socket connect(InetSocketAddress endpoint, String connectionID,
+        JID localJID, JID peer, byte[] secret) throws IOException {
+
+        final Socket socket = new Socket(Proxy.NO_PROXY);
+
+        try {
+            socket.connect(endpoint, CONNECT_TIMEOUT);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+
+            final DataInputStream in = new DataInputStream(
+                socket.getInputStream());
+
+            final DataOutputStream out = new DataOutputStream(
+                socket.getOutputStream());
+
+            final byte[] dialerNonce = createNonce();
+
+            out.writeInt(HANDSHAKE_MAGIC);
+            out.writeUTF(connectionID);
+            out.write(dialerNonce);
+            out.write(computeIdentifier(secret, connectionID, dialerNonce));
+            out.flush();
+
+            if (in.readUnsignedByte() != CONNECTION_CHALLENGED)
+                throw new IOException("remote side rejected the connection");
+
+            final byte[] acceptorNonce = new byte[NONCE_LENGTH];
+            in.readFully(acceptorNonce);
+
+            final byte[] acceptorProof = new byte[getProofLength()];
+            in.readFully(acceptorProof);
+
+            /*
+             * the acceptor must know the secret and must see the address we
+             * are using, otherwise someone relays the connection
+             */
+            if (!MessageDigest.isEqual(
+                acceptorProof,
+                computeProof(secret, ROLE_ACCEPTOR, localJID, peer,
+                    connectionID, dialerNonce, acceptorNonce,
+                    socket.getLocalAddress())))
+                throw new IOException("remote side could not authenticate");
+
+            out.write(computeProof(secret, ROLE_DIALER, localJID, peer,
+                connectionID, dialerNonce, acceptorNonce,
+                socket.getInetAddress()));
+            out.flush();
+
+            if (in.readUnsignedByte() != CONNECTION_ACCEPTED)
+                throw new IOException("remote side rejected the connection");
+
+            socket.setSoTimeout(0);
+            return socket;
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    private void acceptConnection(Socket client) throws IOException {
+        client.setSoTimeout(HANDSHAKE_TIMEOUT);
+
+        final DataInputStream in = new DataInputStream(client.getInputStream());
+
+        final DataOutputStream out = new DataOutputStream(
+            client.getOutputStream());
+
+        if (in.readInt() != HANDSHAKE_MAGIC)
+            throw new IOException("invalid handshake");
+
+        final String connectionID = in.readUTF();
+
+        final byte[] dialerNonce = new byte[NONCE_LENGTH];
+        in.readFully(dialerNonce);
+
+        final byte[] identifier = new byte[getProofLength()];
+        in.readFully(identifier);
+
+        final IByteStreamConnectionListener listener = currentListener;
+        final JID localJID = currentLocalJID;
+        final Map.Entry<JID, Peer> entry = findPeer(connectionID,
+            dialerNonce, identifier);
+
+        if (listener == null || localJID == null || entry == null) {
+            out.write(CONNECTION_REJECTED);
+            out.flush();
+            throw new IOException("no secret was negotiated with the peer");
+        }
+
+        final JID peer = entry.getKey();
+        final Peer info = entry.getValue();
+
+        final byte[] acceptorNonce = createNonce();
+
+        out.write(CONNECTION_CHALLENGED);
+        out.write(acceptorNonce);
+        out.write(computeProof(info.secret, ROLE_ACCEPTOR, peer, localJID,
+            connectionID, dialerNonce, acceptorNonce, client.getInetAddress()));
+        out.flush();
+
+        final byte[] dialerProof = new byte[getProofLength()];
+        in.readFully(dialerProof);
+
+        if (!MessageDigest.isEqual(
+            dialerProof,
+            computeProof(info.secret, ROLE_DIALER, peer, localJID,
+                connectionID, dialerNonce, acceptorNonce,
+                client.getLocalAddress()))) {
+            out.write(CONNECTION_REJECTED);
+            out.flush();
+            throw new IOException(peer + " could not authenticate");
+        }
+
+        out.write(CONNECTION_ACCEPTED);
+        out.flush();
+        client.setTcpNoDelay(true);
+        client.setSoTimeout(0);
+
+        LOG.debug("accepted TCP connection from " + peer + " on "
+            + client.getRemoteSocketAddress());
+
+        listener.connectionChanged(connectionID, peer,
+            new BinaryChannelConnection(peer, connectionID, new TCPByteStream(
+                client), ConnectionMode.TCP, listener), true);
+    }
+
+    /**
+     * Returns the known peer whose secret was used to compute the given
+     * identifier or <code>null</code> if there is none.
+     */
+    private Map.Entry<JID, Peer> findPeer(String connectionID, byte[] dialerNonce,
+        byte[] identifier) throws IOException {
+
+        final Map<JID, Peer> knownPeers;
+
+        synchronized (peers) {
+            knownPeers = new HashMap<JID, Peer>(peers);
+        }
+
+        for (Map.Entry<JID, Peer> entry : knownPeers.entrySet()) {
+            if (MessageDigest.isEqual(
+                identifier,
+                computeIdentifier(entry.getValue().secret, connectionID,
+                    dialerNonce)))
+                return entry;
+        }
+
+        return null;
+    }
+
+    private List<ServiceInfo> getSessionServices(Peer peer) {
+        final List<ServiceInfo> services = new ArrayList<ServiceInfo>();
+
+        for (ServiceInfo service : mDNSService.getResolvedServices()) {
+            if (peer.serviceName.equals(service.getName())
+                && CAPABILITY_SESSION.equals(service
+                    .getPropertyString(PROPERTY_CAPABILITY)))
+                services.add(service);
+        }
+
+        return services;
+    }
+
+    private static byte[] createNonce() {
+        final byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    private static int getProofLength() throws IOException {
+        return createMac(new byte[SECRET_LENGTH]).getMacLength();
+    }
+
+    /**
+     * Computes the value by which the dialing side identifies itself. It does
+     * not reveal anything about the dialing side to anyone who does not know
+     * the secret and differs for every connection attempt.
+     */
+    private static byte[] computeIdentifier(byte[] secret,
+        String connectionID, byte[] dialerNonce) throws IOException {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(bytes);
+
+        data.writeInt(ROLE_IDENTIFIER);
+        data.writeUTF(connectionID);
+        data.write(dialerNonce);
+        data.flush();
+
+        return createMac(secret).doFinal(bytes.toByteArray());
+    }
+
+    /**
+     * Computes the proof of the given role. The proof covers the identities of
+     * both sides, the connection ID, the nonces of both sides and the address
+     * of the other side as seen by the proving side.
+     */
+    private static byte[] computeProof(byte[] secret, int role, JID dialer,
+        JID acceptor, String connectionID, byte[] dialerNonce,
+        byte[] acceptorNonce, InetAddress address) throws IOException {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(bytes);
+
+        data.writeInt(role);
+        data.writeUTF(dialer.toString());
+        data.writeUTF(acceptor.toString());
+        data.writeUTF(connectionID);
+        data.write(dialerNonce);
+        data.write(acceptorNonce);
+        data.write(address.getAddress());
+        data.flush();
+
+        return createMac(secret).doFinal(bytes.toByteArray());
+    }
+
+    private static Mac createMac(byte[] secret) throws IOException {
+        try {
+            final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, MAC_ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("could not initialize " + MAC_ALGORITHM, e);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
 }
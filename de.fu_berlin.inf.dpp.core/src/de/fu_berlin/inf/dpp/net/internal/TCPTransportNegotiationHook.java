@@ -0,0 +1,121 @@
+package de.fu_berlin.inf.dpp.net.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.log4j.Logger;
+
+import de.fu_berlin.inf.dpp.negotiation.hooks.ISessionNegotiationHook;
+import de.fu_berlin.inf.dpp.negotiation.hooks.SessionNegotiationHookManager;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.net.xmpp.XMPPConnectionService;
+import de.fu_berlin.inf.dpp.session.ISarosSession;
+import de.fu_berlin.inf.dpp.session.ISarosSessionListener;
+import de.fu_berlin.inf.dpp.session.ISarosSessionManager;
+import de.fu_berlin.inf.dpp.session.NullSarosSessionListener;
+
+/**
+ * Exchanges the mDNS service names of the host and the client and a secret
+ * shared by both during the session negotiation, so the {@link TCPTransport}
+ * can authenticate connections in the local network. The exchange only takes
+ * place if the transport is running on both sides.
+ */
+public class TCPTransportNegotiationHook implements ISessionNegotiationHook {
+
+    private static final Logger LOG = Logger
+        .getLogger(TCPTransportNegotiationHook.class);
+
+    private static final String HOOK_IDENTIFIER = "lanTransport";
+
+    private static final String KEY_CLIENT_SERVICE = "clientService";
+    private static final String KEY_HOST_SERVICE = "hostService";
+    private static final String KEY_HOST_JID = "hostJID";
+    private static final String KEY_SECRET = "secret";
+
+    private final TCPTransport transport;
+    private final XMPPConnectionService connectionService;
+
+    private final ISarosSessionListener sessionListener = new NullSarosSessionListener() {
+        @Override
+        public void sessionEnded(ISarosSession oldSarosSession) {
+            transport.removeAllPeers();
+        }
+    };
+
+    public TCPTransportNegotiationHook(TCPTransport transport,
+        SessionNegotiationHookManager hooks,
+        ISarosSessionManager sessionManager,
+        XMPPConnectionService connectionService) {
+        this.transport = transport;
+        this.connectionService = connectionService;
+
+        hooks.addHook(this);
+        sessionManager.addSarosSessionListener(sessionListener);
+    }
+
+    @Override
+    public Map<String, String> tellClientPreferences() {
+        final String serviceName = transport.getServiceName();
+
+        if (serviceName == null)
+            return null;
+
+        return Collections.singletonMap(KEY_CLIENT_SERVICE, serviceName);
+    }
+
+    @Override
+    public Map<String, String> considerClientPreferences(JID client,
+        Map<String, String> input) {
+
+        final String hostServiceName = transport.getServiceName();
+        final JID localJID = connectionService.getJID();
+
+        if (input == null || hostServiceName == null || localJID == null)
+            return null;
+
+        final String clientServiceName = input.get(KEY_CLIENT_SERVICE);
+
+        if (clientServiceName == null)
+            return null;
+
+        final byte[] secret = TCPTransport.createSecret();
+
+        transport.addPeer(client, clientServiceName, secret);
+
+        final Map<String, String> result = new HashMap<String, String>();
+
+        result.put(KEY_HOST_SERVICE, hostServiceName);
+        result.put(KEY_HOST_JID, localJID.toString());
+        result.put(KEY_SECRET, new String(Base64.encodeBase64(secret)));
+
+        return result;
+    }
+
+    @Override
+    public void applyActualParameters(Map<String, String> settings) {
+        if (settings == null)
+            return;
+
+        final String hostServiceName = settings.get(KEY_HOST_SERVICE);
+        final String host = settings.get(KEY_HOST_JID);
+        final String secret = settings.get(KEY_SECRET);
+
+        if (hostServiceName == null || host == null || secret == null)
+            return;
+
+        try {
+            transport.addPeer(new JID(host), hostServiceName,
+                Base64.decodeBase64(secret.getBytes()));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("host sent an invalid secret, " + transport
+                + " is not used: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String getIdentifier() {
+        return HOOK_IDENTIFIER;
+    }
+}
@@ -1,10 +1,16 @@
 package de.fu_berlin.inf.dpp.net.internal;
 
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.Connection;
@@ -21,11 +27,13 @@ import org.xmlpull.v1.XmlPullParser;
 import de.fu_berlin.inf.dpp.annotations.Component;
 import de.fu_berlin.inf.dpp.net.ConnectionState;
 import de.fu_berlin.inf.dpp.net.DispatchThreadContext;
+import de.fu_berlin.inf.dpp.net.ExtensionPacketFilter;
 import de.fu_berlin.inf.dpp.net.IReceiver;
 import de.fu_berlin.inf.dpp.net.PacketCollector;
 import de.fu_berlin.inf.dpp.net.PacketCollector.CancelHook;
 import de.fu_berlin.inf.dpp.net.xmpp.IConnectionListener;
 import de.fu_berlin.inf.dpp.net.xmpp.XMPPConnectionService;
+import de.fu_berlin.inf.dpp.util.Pair;
 
 @Component(module = "net")
 public class XMPPReceiver implements IReceiver {
@@ -34,8 +42,68 @@ public class XMPPReceiver implements IReceiver {
 
     private final DispatchThreadContext dispatchThreadContext;
 
-    private Map<PacketListener, PacketFilter> listeners = Collections
-        .synchronizedMap(new HashMap<PacketListener, PacketFilter>());
+    /**
+     * Immutable snapshot of the registered listeners. Listeners with an
+     * {@link ExtensionPacketFilter} are indexed by the namespace and element
+     * name of the packet extension they are interested in, so only their
+     * filters have to be evaluated for a packet containing such an extension.
+     */
+    private static class Routes {
+
+        private static final Routes EMPTY = new Routes(
+            Collections.<PacketListener, PacketFilter> emptyMap());
+
+        /** (namespace, element name) -> listeners */
+        private final Map<Pair<String, String>, List<Pair<PacketListener, PacketFilter>>> extensionRoutes = new HashMap<Pair<String, String>, List<Pair<PacketListener, PacketFilter>>>();
+
+        /** listeners with an arbitrary or no filter */
+        private final List<Pair<PacketListener, PacketFilter>> otherRoutes = new ArrayList<Pair<PacketListener, PacketFilter>>();
+
+        private Routes(Map<PacketListener, PacketFilter> listeners) {
+            for (Entry<PacketListener, PacketFilter> entry : listeners
+                .entrySet()) {
+
+                Pair<PacketListener, PacketFilter> route = new Pair<PacketListener, PacketFilter>(
+                    entry.getKey(), entry.getValue());
+
+                if (!(route.v instanceof ExtensionPacketFilter)) {
+                    otherRoutes.add(route);
+                    continue;
+                }
+
+                ExtensionPacketFilter filter = (ExtensionPacketFilter) route.v;
+
+                Pair<String, String> key = new Pair<String, String>(
+                    filter.getNamespace(), filter.getElementName());
+
+                List<Pair<PacketListener, PacketFilter>> routes = extensionRoutes
+                    .get(key);
+
+                if (routes == null) {
+                    routes = new ArrayList<Pair<PacketListener, PacketFilter>>(
+                        1);
+                    extensionRoutes.put(key, routes);
+                }
+
+                routes.add(route);
+            }
+        }
+
+        private List<Pair<PacketListener, PacketFilter>> get(
+            Pair<String, String> key) {
+            List<Pair<PacketListener, PacketFilter>> routes = extensionRoutes
+                .get(key);
+
+            return routes == null ? Collections
+                .<Pair<PacketListener, PacketFilter>> emptyList() : routes;
+        }
+    }
+
+    /** all registered listeners, guarded by this receiver */
+    private final Map<PacketListener, PacketFilter> listeners = new LinkedHashMap<PacketListener, PacketFilter>();
+
+    /** copy-on-write snapshot of {@link #listeners} */
+    private volatile Routes routes = Routes.EMPTY;
 
     private XmlPullParser parser;
 
@@ -76,13 +144,19 @@ public class XMPPReceiver implements IReceiver {
     }
 
     @Override
-    public void addPacketListener(PacketListener listener, PacketFilter filter) {
+    public synchronized void addPacketListener(PacketListener listener,
+        PacketFilter filter) {
         listeners.put(listener, filter);
+        routes = new Routes(listeners);
     }
 
     @Override
-    public void removePacketListener(PacketListener listener) {
+    public synchronized void removePacketListener(PacketListener listener) {
+        if (!listeners.containsKey(listener))
+            return;
+
         listeners.remove(listener);
+        routes = new Routes(listeners);
     }
 
     @Override
@@ -131,14 +205,38 @@ public class XMPPReceiver implements IReceiver {
      * @sarosThread must be called from the Dispatch Thread
      */
     private void forwardPacket(Packet packet) {
-        Map<PacketListener, PacketFilter> copy;
+        final Routes current = routes;
+
+        if (!current.extensionRoutes.isEmpty()) {
+            Collection<PacketExtension> extensions = packet.getExtensions();
+
+            if (extensions.size() == 1) {
+                PacketExtension extension = extensions.iterator().next();
 
-        synchronized (listeners) {
-            copy = new HashMap<PacketListener, PacketFilter>(listeners);
+                forwardPacket(packet, current.get(new Pair<String, String>(
+                    extension.getNamespace(), extension.getElementName())));
+
+            } else if (!extensions.isEmpty()) {
+                Set<Pair<String, String>> keys = new LinkedHashSet<Pair<String, String>>();
+
+                for (PacketExtension extension : extensions)
+                    keys.add(new Pair<String, String>(extension.getNamespace(),
+                        extension.getElementName()));
+
+                for (Pair<String, String> key : keys)
+                    forwardPacket(packet, current.get(key));
+            }
         }
-        for (Entry<PacketListener, PacketFilter> entry : copy.entrySet()) {
-            PacketListener listener = entry.getKey();
-            PacketFilter filter = entry.getValue();
+
+        forwardPacket(packet, current.otherRoutes);
+    }
+
+    private static void forwardPacket(Packet packet,
+        List<Pair<PacketListener, PacketFilter>> routes) {
+
+        for (Pair<PacketListener, PacketFilter> route : routes) {
+            PacketListener listener = route.p;
+            PacketFilter filter = route.v;
 
             if (filter == null || filter.accept(packet)) {
                 listener.processPacket(packet);
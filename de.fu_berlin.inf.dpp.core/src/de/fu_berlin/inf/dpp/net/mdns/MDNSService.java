@@ -19,6 +19,12 @@ import org.apache.log4j.Logger;
 
 /**
  * MDNS Service using {@link JmDNS} library.
+ * <p>
+ * Services of peers that unregister their service are removed as soon as
+ * their goodbye announcement is received. Services of peers that vanished
+ * without a goodbye are removed by JmDNS when their records expire. The
+ * services are deliberately not probed on their advertised port, as every
+ * probe would appear as a failed connection attempt to the peer.
  */
 // TODO use JmmDNS to support all network interfaces that are currently
 // installed
@@ -162,7 +168,6 @@ public class MDNSService {
          * it is safe to install the listener at this point
          */
         currentmDNS.addServiceListener(currentServiceType, forwarder);
-
     }
 
     /**
@@ -238,5 +243,4 @@ public class MDNSService {
     public void removeServiceListener(ServiceListener listener) {
         serviceListeners.remove(listener);
     }
-
 }
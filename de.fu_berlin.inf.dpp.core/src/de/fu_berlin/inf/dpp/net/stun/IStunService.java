@@ -2,6 +2,7 @@ package de.fu_berlin.inf.dpp.net.stun;
 
 import java.net.InetSocketAddress;
 import java.util.Collection;
+import java.util.concurrent.Future;
 
 public interface IStunService {
 
@@ -18,13 +19,14 @@ public interface IStunService {
     public boolean isDirectConnectionAvailable();
 
     /**
-     * Returns the currently discovered public IP addresses. The collection will
-     * be empty if no discovery has performed yet, is still running or failed.
-     * The collection may also be incomplete if the discovery process has not
-     * finished for all network interfaces at the time this method is called.
+     * Returns the last known public IP addresses of the current network
+     * environment. The collection will be empty if no discovery was performed
+     * yet or all discoveries failed in the current network environment. This
+     * method does not block and can therefore be used to obtain candidates
+     * while a new discovery is still running.
      * 
-     * @return the currently discovered public IP addresses and the port
-     *         associated with this IP.
+     * @return the last known public IP addresses and the port associated with
+     *         this IP.
      */
     public Collection<InetSocketAddress> getPublicIpAddresses();
 
@@ -40,7 +42,8 @@ public interface IStunService {
      *            timeout in milliseconds before the discovery is aborted
      * 
      * @return the currently discovered public IP addresses and the port
-     *         associated with this IP.
+     *         associated with this IP. If the discovery failed the last known
+     *         addresses of the current network environment are returned.
      * 
      * @blocking this method blocks until the discovery has finished or the
      *           timeout is exceeded
@@ -48,4 +51,13 @@ public interface IStunService {
     public Collection<InetSocketAddress> discover(String stunAddress,
         int stunPort, int timeout);
 
+    /**
+     * Performs the same discovery as {@link #discover(String, int, int)} in the
+     * background.
+     * 
+     * @return a future holding the result of the discovery
+     */
+    public Future<Collection<InetSocketAddress>> discoverAsync(
+        String stunAddress, int stunPort, int timeout);
+
 }
@@ -14,25 +14,48 @@ import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
+import org.picocontainer.Disposable;
 
 import de.fu_berlin.inf.dpp.net.stun.IStunService;
 import de.fu_berlin.inf.dpp.net.util.NetworkingUtils;
+import de.fu_berlin.inf.dpp.util.NamedThreadFactory;
 
-public final class StunServiceImpl implements IStunService {
+public final class StunServiceImpl implements IStunService, Disposable {
 
     private static final Logger log = Logger.getLogger(StunServiceImpl.class);
 
+    /**
+     * Additional time granted to the probes to finish after the timeout has
+     * been exceeded before they are canceled.
+     */
+    private static final int DEADLINE_GRACE_PERIOD = 1000;
+
+    private final ExecutorService executor = Executors
+        .newCachedThreadPool(new NamedThreadFactory("dpp-stun-discovery-"));
+
     private boolean isDirectConnection = false;
 
-    private Set<InetSocketAddress> publicIPAddresses = new HashSet<InetSocketAddress>();
+    /**
+     * The last known public IP addresses for every network environment that
+     * was discovered so far, see {@link NetworkingUtils#getNetworkFingerprint}
+     */
+    private final Map<String, Set<InetSocketAddress>> publicIPAddresses = new HashMap<String, Set<InetSocketAddress>>();
 
     @Override
     public synchronized boolean isDirectConnectionAvailable() {
@@ -40,8 +63,18 @@ public final class StunServiceImpl implements IStunService {
     }
 
     @Override
-    public synchronized Collection<InetSocketAddress> getPublicIpAddresses() {
-        return new ArrayList<InetSocketAddress>(publicIPAddresses);
+    public Collection<InetSocketAddress> getPublicIpAddresses() {
+        String fingerprint = NetworkingUtils.getNetworkFingerprint();
+
+        synchronized (this) {
+            Set<InetSocketAddress> addresses = publicIPAddresses
+                .get(fingerprint);
+
+            if (addresses == null)
+                return new ArrayList<InetSocketAddress>();
+
+            return new ArrayList<InetSocketAddress>(addresses);
+        }
     }
 
     @Override
@@ -58,10 +91,7 @@ public final class StunServiceImpl implements IStunService {
             throw new IllegalArgumentException(
                 "stun port is not in range of 1 - 65535");
 
-        synchronized (this) {
-            publicIPAddresses.clear();
-            isDirectConnection = false;
-        }
+        String fingerprint = NetworkingUtils.getNetworkFingerprint();
 
         List<InetAddress> localInetAddresses;
         InetAddress stunInetAddress = null;
@@ -75,40 +105,112 @@ public final class StunServiceImpl implements IStunService {
             log.error(
                 "error retrieving local IP addresses or STUN Server IP address: "
                     + e.getMessage(), e);
-            return new ArrayList<InetSocketAddress>();
+            return getPublicIpAddresses();
         }
 
-        List<Thread> discoveryThreads = new ArrayList<Thread>();
+        List<StunDiscovery> discoveries = new ArrayList<StunDiscovery>();
+
+        for (InetAddress address : localInetAddresses)
+            discoveries.add(new StunDiscovery(address, stunInetAddress,
+                stunPort, timeout));
 
-        for (InetAddress address : localInetAddresses) {
-            Thread discoveryThread = new Thread(new StunDiscovery(address,
-                stunInetAddress, stunPort, timeout));
+        List<Future<InetSocketAddress>> results;
 
-            discoveryThreads.add(discoveryThread);
-            discoveryThread
-                .setName("StunDiscovery-" + address.getHostAddress());
-            discoveryThread.start();
+        try {
+            // all interfaces are probed in parallel
+            results = executor.invokeAll(discoveries, timeout
+                + DEADLINE_GRACE_PERIOD, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return getPublicIpAddresses();
+        } catch (RejectedExecutionException e) {
+            log.warn("STUN discovery rejected, service is already disposed");
+            return getPublicIpAddresses();
         }
 
-        while (!discoveryThreads.isEmpty()) {
+        Set<InetSocketAddress> discoveredAddresses = new HashSet<InetSocketAddress>();
+
+        boolean isDirect = false;
+
+        for (int i = 0; i < results.size(); i++) {
+            Future<InetSocketAddress> result = results.get(i);
+
+            if (result.isCancelled())
+                continue;
+
+            InetSocketAddress publicInetAddress;
+
             try {
-                Thread discoveryThread = discoveryThreads.remove(0);
-                discoveryThread.join();
+                publicInetAddress = result.get();
+            } catch (ExecutionException e) {
+                log.error("an internal error occurred while performing a"
+                    + " STUN discovery: " + e.getCause().getMessage(),
+                    e.getCause());
+                continue;
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
             }
+
+            if (publicInetAddress == null)
+                continue;
+
+            InetAddress localAddress = discoveries.get(i).localAddress;
+
+            if (publicInetAddress.getAddress().equals(localAddress))
+                isDirect = true;
+
+            log.debug("discovered public WAN-IP: "
+                + publicInetAddress.getAddress().getHostAddress()
+                + " through interface " + localAddress.getHostAddress());
+
+            discoveredAddresses.add(publicInetAddress);
+        }
+
+        synchronized (this) {
+            /*
+             * keep the last known addresses of this network environment if the
+             * STUN server is currently not reachable
+             */
+            if (!discoveredAddresses.isEmpty()) {
+                publicIPAddresses.put(fingerprint, discoveredAddresses);
+                isDirectConnection = isDirect;
+            } else if (publicIPAddresses.containsKey(fingerprint)) {
+                log.debug("STUN discovery yield no results, using last known"
+                    + " public IP addresses");
+            }
+
+            Set<InetSocketAddress> addresses = publicIPAddresses
+                .get(fingerprint);
+
+            if (addresses == null)
+                return new ArrayList<InetSocketAddress>();
+
+            return new ArrayList<InetSocketAddress>(addresses);
         }
+    }
 
-        return getPublicIpAddresses();
+    @Override
+    public Future<Collection<InetSocketAddress>> discoverAsync(
+        final String stunAddress, final int stunPort, final int timeout) {
+        return executor.submit(new Callable<Collection<InetSocketAddress>>() {
+            @Override
+            public Collection<InetSocketAddress> call() {
+                return discover(stunAddress, stunPort, timeout);
+            }
+        });
+    }
 
+    @Override
+    public void dispose() {
+        executor.shutdownNow();
     }
 
     /**
-     * Thread class for performing STUN discovery to retrieve public IP
-     * addresses
+     * Task for performing a STUN discovery over a specific local address to
+     * retrieve the public IP address
      */
-    private class StunDiscovery implements Runnable {
+    private class StunDiscovery implements Callable<InetSocketAddress> {
 
         private static final short BINDING_REQUEST = 0x0001;
         private static final short BINDING_RESPONSE = 0x0101;
@@ -142,8 +244,12 @@ public final class StunServiceImpl implements IStunService {
             this.timeout = timeout;
         }
 
+        /**
+         * @return the public IP address and port or <code>null</code> if the
+         *         discovery failed
+         */
         @Override
-        public void run() {
+        public InetSocketAddress call() {
 
             InetSocketAddress publicInetAddress = null;
 
@@ -155,27 +261,14 @@ public final class StunServiceImpl implements IStunService {
                 log.error(
                     "an error occurred while performing a STUN discovery: "
                         + e.getMessage(), e);
-                return;
-            } catch (Exception e) {
-                log.error(
-                    "an internal error occurred while performing a STUN discovery: "
-                        + e.getMessage(), e);
-                return;
+                return null;
             }
 
-            if (publicInetAddress.getAddress().isAnyLocalAddress())
-                return;
-
-            synchronized (StunServiceImpl.this) {
-                if (publicInetAddress.getAddress().equals(localAddress))
-                    isDirectConnection = true;
-
-                log.debug("discovered public WAN-IP: "
-                    + publicInetAddress.getAddress().getHostAddress()
-                    + " through interface " + localAddress.getHostAddress());
-                publicIPAddresses.add(publicInetAddress);
-            }
+            if (publicInetAddress.getAddress() == null
+                || publicInetAddress.getAddress().isAnyLocalAddress())
+                return null;
 
+            return publicInetAddress;
         }
 
         /**
@@ -198,7 +291,7 @@ public final class StunServiceImpl implements IStunService {
             SocketAddress stunServer, SocketAddress localAddress, int timeout)
             throws IOException {
 
-            Thread senderThread = null;
+            Future<?> sender = null;
 
             InetAddress mappedInetAddress = null;
             InetAddress xorMappedInetAddress = null;
@@ -245,7 +338,7 @@ public final class StunServiceImpl implements IStunService {
 
                 // we are using UDP, and since there is no guarantee that these
                 // packets ever reach their destination we have to resent them
-                senderThread = new Thread(new Runnable() {
+                sender = executor.submit(new Runnable() {
                     @Override
                     public void run() {
                         long sendDelay = 500;
@@ -270,9 +363,6 @@ public final class StunServiceImpl implements IStunService {
                     }
                 });
 
-                senderThread.setName("StunSender-" + localAddress);
-                senderThread.start();
-
                 DatagramPacket response = new DatagramPacket(
                     new byte[MINIMUM_IP6_MTU_SIZE], MINIMUM_IP6_MTU_SIZE);
 
@@ -301,7 +391,7 @@ public final class StunServiceImpl implements IStunService {
                 }
 
                 responseReceived.countDown();
-                senderThread.interrupt();
+                sender.cancel(true);
                 socket.close();
 
                 if (retries == 0)
@@ -420,8 +510,8 @@ public final class StunServiceImpl implements IStunService {
                 log.warn("received no response from STUN server " + stunServer
                     + " at local address " + localAddress);
             } finally {
-                if (senderThread != null && senderThread.isAlive())
-                    senderThread.interrupt();
+                if (sender != null)
+                    sender.cancel(true);
 
                 socket.close();
             }
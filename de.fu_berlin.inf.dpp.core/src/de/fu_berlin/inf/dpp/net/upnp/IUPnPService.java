@@ -16,7 +16,8 @@ public interface IUPnPService {
      * 
      * @param forceRefresh
      *            if <code>true</code> the current network environment will be
-     *            rescanned instead of using cached data
+     *            rescanned instead of using cached data of the current network
+     *            environment
      * @return {@link List} of {@link GatewayDevice} found during UPnP discovery
      *         or <code>null</code> if the operation failed
      */
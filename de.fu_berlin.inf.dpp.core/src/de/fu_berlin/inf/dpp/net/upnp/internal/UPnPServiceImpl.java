@@ -12,7 +12,11 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.log4j.Logger;
 import org.bitlet.weupnp.GatewayDevice;
@@ -22,6 +26,9 @@ import org.picocontainer.Disposable;
 import de.fu_berlin.inf.dpp.annotations.Component;
 import de.fu_berlin.inf.dpp.net.upnp.IUPnPAccess;
 import de.fu_berlin.inf.dpp.net.upnp.IUPnPService;
+import de.fu_berlin.inf.dpp.net.util.NetworkingUtils;
+import de.fu_berlin.inf.dpp.util.NamedThreadFactory;
+import de.fu_berlin.inf.dpp.util.ThreadUtils;
 
 /*
  *  Class for performing UPnP functions (using the weupnp library) and managing the mapping state.
@@ -47,7 +54,35 @@ public class UPnPServiceImpl implements IUPnPService, Disposable {
 
     private Timer mappingRefreshTimer;
 
-    private AtomicReference<List<GatewayDevice>> discoveredGateways = new AtomicReference<List<GatewayDevice>>();
+    /**
+     * Cached gateways older than this value (in milliseconds) are revalidated
+     * in the background when they are requested.
+     */
+    private static final long GATEWAY_REVALIDATION_INTERVAL = 60 * 1000;
+
+    /**
+     * The discovered gateways for every network environment, see
+     * {@link NetworkingUtils#getNetworkFingerprint()}
+     */
+    private final Map<String, DiscoveredGateways> discoveredGateways = new ConcurrentHashMap<String, DiscoveredGateways>();
+
+    private final Object discoveryLock = new Object();
+
+    private final ExecutorService revalidationExecutor = Executors
+        .newSingleThreadExecutor(new NamedThreadFactory(
+            "dpp-upnp-revalidation", false));
+
+    private final AtomicBoolean isRevalidating = new AtomicBoolean();
+
+    private static class DiscoveredGateways {
+        private final List<GatewayDevice> devices;
+        private final long timestamp;
+
+        private DiscoveredGateways(List<GatewayDevice> devices) {
+            this.devices = devices;
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
 
     private class MappingRefreshTask extends TimerTask {
         private final GatewayDevice device;
@@ -207,40 +242,82 @@ public class UPnPServiceImpl implements IUPnPService, Disposable {
         return false;
     }
 
-    // TODO this may could take a few seconds and may cause hanging if a GUI
-    // thread accesses other methods in the meantime
+    /**
+     * {@inheritDoc} Cached results are kept per network environment. If cached
+     * results are returned and they are outdated a new discovery is performed
+     * in the background.
+     */
     @Override
     public List<GatewayDevice> getGateways(boolean forceRefresh) {
 
-        List<GatewayDevice> gateways = discoveredGateways.get();
+        final String fingerprint = NetworkingUtils.getNetworkFingerprint();
+
+        DiscoveredGateways gateways = discoveredGateways.get(fingerprint);
 
         if (gateways != null && !forceRefresh) {
             LOG.debug("aborting gateway discovery due to cached results");
-            return new ArrayList<GatewayDevice>(gateways);
+
+            long age = System.currentTimeMillis() - gateways.timestamp;
+
+            if (age > GATEWAY_REVALIDATION_INTERVAL)
+                revalidateGateways(fingerprint);
+
+            return new ArrayList<GatewayDevice>(gateways.devices);
         }
 
-        LOG.debug("performing gateways discovery");
+        List<GatewayDevice> devices = discoverGateways(fingerprint);
+
+        return devices == null ? null : new ArrayList<GatewayDevice>(devices);
+    }
+
+    private void revalidateGateways(final String fingerprint) {
+        if (!isRevalidating.compareAndSet(false, true))
+            return;
 
         try {
-            // perform discovery
-            gateways = new ArrayList<GatewayDevice>(
-                upnpAccess.performDiscovery());
-        } catch (Exception e) {
-            LOG.error("performing gateway discovery failed: " + e.getMessage(),
-                e);
-            return null;
+            revalidationExecutor.execute(ThreadUtils.wrapSafe(LOG,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            discoverGateways(fingerprint);
+                        } finally {
+                            isRevalidating.set(false);
+                        }
+                    }
+                }));
+        } catch (RejectedExecutionException e) {
+            isRevalidating.set(false);
         }
+    }
 
-        LOG.info("discovered " + gateways.size() + " gateway(s)");
+    private List<GatewayDevice> discoverGateways(String fingerprint) {
+        // avoid concurrent discoveries, they would only flood the network
+        synchronized (discoveryLock) {
+            LOG.debug("performing gateways discovery");
+
+            List<GatewayDevice> gateways;
+
+            try {
+                gateways = new ArrayList<GatewayDevice>(
+                    upnpAccess.performDiscovery());
+            } catch (Exception e) {
+                LOG.error(
+                    "performing gateway discovery failed: " + e.getMessage(),
+                    e);
+                return null;
+            }
 
-        discoveredGateways.set(gateways);
+            LOG.info("discovered " + gateways.size() + " gateway(s)");
 
-        gateways = new ArrayList<GatewayDevice>(gateways);
+            discoveredGateways.put(fingerprint, new DiscoveredGateways(
+                gateways));
 
-        if (!gateways.isEmpty() && LOG.isTraceEnabled())
-            LOG.trace("discovered gateways devices: " + gateways);
+            if (!gateways.isEmpty() && LOG.isTraceEnabled())
+                LOG.trace("discovered gateways devices: " + gateways);
 
-        return gateways;
+            return gateways;
+        }
     }
 
     @Override
@@ -292,6 +369,8 @@ public class UPnPServiceImpl implements IUPnPService, Disposable {
 
     @Override
     public synchronized void dispose() {
+        revalidationExecutor.shutdownNow();
+
         LOG.debug("deleting existing port mappings");
 
         for (Entry<GatewayDevice, Map<String, Set<Integer>>> mappedPortsEntry : currentMappedPorts
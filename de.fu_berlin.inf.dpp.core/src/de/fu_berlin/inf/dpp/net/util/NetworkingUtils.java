@@ -5,6 +5,7 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.LinkedList;
 import java.util.List;
@@ -119,4 +120,29 @@ public class NetworkingUtils {
         proxy.replaceLocalAddresses(list);
     }
 
+    /**
+     * Returns a fingerprint of the current network environment. The
+     * fingerprint changes whenever a local (non-loopback) IP address is added
+     * or removed, e.g after connecting to another network. It can be used to
+     * cache network related information that is only valid for a specific
+     * network environment.
+     * 
+     * @return a fingerprint of the current network environment, never
+     *         <code>null</code>
+     */
+    public static String getNetworkFingerprint() {
+        List<String> addresses = new ArrayList<String>();
+
+        for (InetAddress address : getAllNonLoopbackLocalIPAddresses(true))
+            addresses.add(address.getHostAddress());
+
+        Collections.sort(addresses);
+
+        StringBuilder fingerprint = new StringBuilder();
+
+        for (String address : addresses)
+            fingerprint.append(address).append(';');
+
+        return fingerprint.toString();
+    }
 }
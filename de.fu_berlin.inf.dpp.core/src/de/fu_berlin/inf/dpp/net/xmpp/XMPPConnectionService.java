@@ -198,14 +198,16 @@ public class XMPPConnectionService {
 
         /*
          * perform blocking tasks in the background meanwhile to speed up first
-         * connection attempt, currently it is only UPNP discovery
+         * connection attempt, currently it is only UPNP discovery which is
+         * cached per network environment and so only blocks for unknown
+         * network environments
          */
 
         ThreadUtils.runSafeAsync("dpp-upnp-resolver", LOG, new Runnable() {
             @Override
             public void run() {
                 if (upnpService != null)
-                    upnpService.getGateways(true);
+                    upnpService.getGateways(false);
             }
         });
     }
@@ -464,11 +466,14 @@ public class XMPPConnectionService {
         /*
          * The public IP address from the STUN result may be added to late but
          * this is definitely better then blocking the connection establishment
-         * for several seconds. Also it is very uncommon the a connection
-         * attempt to another is done just several seconds after the connection
-         * to the XMPP server is established
+         * for several seconds. So start with the last known addresses of the
+         * current network environment and revalidate them in the background.
          */
         if (stunService != null && stunServer != null) {
+            for (InetSocketAddress address : stunService.getPublicIpAddresses())
+                NetworkingUtils.addProxyAddress(address.getAddress()
+                    .getHostAddress(), true);
+
             ThreadUtils.runSafeAsync("dpp-stun-discovery", LOG, new Runnable() {
                 @Override
                 public void run() {
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -18,10 +19,14 @@ import org.jivesoftware.smack.Roster;
 import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smackx.ServiceDiscoveryManager;
+import org.jivesoftware.smackx.entitycaps.EntityCapsManager;
+import org.jivesoftware.smackx.entitycaps.packet.CapsExtension;
 import org.jivesoftware.smackx.packet.DiscoverInfo;
 import org.picocontainer.Disposable;
 
 import de.fu_berlin.inf.dpp.annotations.Component;
+import de.fu_berlin.inf.dpp.net.ConnectionState;
+import de.fu_berlin.inf.dpp.net.xmpp.IConnectionListener;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
 import de.fu_berlin.inf.dpp.net.xmpp.XMPPConnectionService;
 import de.fu_berlin.inf.dpp.net.xmpp.roster.IRosterListener;
@@ -38,6 +43,12 @@ import de.fu_berlin.inf.dpp.util.ThreadUtils;
  * 
  * DiscoveryManager caches for each JID a DiscoverInfo entry, so it can be asked
  * which features the different XMPP clients of a particular JID supports.
+ * <p>
+ * In addition the entity capabilities (XEP-0115
+ * http://xmpp.org/extensions/xep-0115.html) announced in the presences of the
+ * contacts are tracked by Smack's {@link EntityCapsManager}. The features of
+ * already known capabilities are taken from its cache so that only clients
+ * with unknown capabilities have to be queried.
  */
 @Component(module = "net")
 public class DiscoveryManager implements Disposable {
@@ -152,12 +163,56 @@ public class DiscoveryManager implements Disposable {
             if (last == null)
                 return false;
 
+            // the client was updated or its features have changed
+            if (!getCapsVersion(last).equals(getCapsVersion(presence)))
+                return true;
+
             return last.isAvailable() ^ presence.isAvailable();
         }
 
+        private String getCapsVersion(Presence presence) {
+            CapsExtension caps = (CapsExtension) presence.getExtension(
+                EntityCapsManager.ELEMENT, EntityCapsManager.NAMESPACE);
+
+            return caps == null ? "" : caps.getNode() + "#" + caps.getVer();
+        }
+
         @Override
         public void rosterChanged(Roster roster) {
-            cache.clear();
+            if (roster == null) {
+                cache.clear();
+                return;
+            }
+
+            /*
+             * the roster is replaced on every login, only forget the contacts
+             * that were removed in the meantime, the presences of all others
+             * clear their entries if necessary
+             */
+            synchronized (cache) {
+                for (Iterator<String> it = cache.keySet().iterator(); it
+                    .hasNext();) {
+                    if (roster.getEntry(new JID(it.next()).getBase()) == null)
+                        it.remove();
+                }
+            }
+        }
+    };
+
+    private final IConnectionListener connectionListener = new IConnectionListener() {
+
+        @Override
+        public void connectionStateChanged(Connection connection,
+            ConnectionState state) {
+
+            /*
+             * Smack only tracks the capabilities of other clients if the
+             * announcement of our own ones is enabled, this must happen before
+             * the initial presence is sent
+             */
+            if (state == ConnectionState.CONNECTING)
+                EntityCapsManager.getInstanceFor(connection)
+                    .enableEntityCaps();
         }
     };
 
@@ -166,11 +221,13 @@ public class DiscoveryManager implements Disposable {
         this.connectionService = connectionService;
         this.rosterTracker = rosterTracker;
         this.rosterTracker.addRosterListener(rosterListener);
+        this.connectionService.addListener(connectionListener);
     }
 
     @Override
     public void dispose() {
         rosterTracker.removeRosterListener(rosterListener);
+        connectionService.removeListener(connectionListener);
         threadPoolExecutor.shutdownNow();
     }
 
@@ -230,10 +287,13 @@ public class DiscoveryManager implements Disposable {
         for (JID rqJID : jidsToQuery) {
 
             DiscoverInfoWrapper info = cache.get(rqJID.toString());
-            if (info == null)
-                continue;
 
-            DiscoverInfo disco = info.item;
+            DiscoverInfo disco = info == null ? null : info.item;
+
+            // the capabilities of the client may already be known
+            if (disco == null)
+                disco = EntityCapsManager.getDiscoverInfoByUser(rqJID
+                    .toString());
 
             if (disco == null)
                 continue;
@@ -422,8 +482,9 @@ public class DiscoveryManager implements Disposable {
      * 
      * @blocking This method blocks until the ServiceDiscovery returns.
      * @reentrant This method can be called concurrently.
-     * @nonCaching This method does not use a cache, but queries the server
-     *             directly.
+     * @caching Only the entity capabilities cache of Smack is used. It also
+     *          stores the result if it matches the capabilities announced by
+     *          the recipient.
      */
     private DiscoverInfo performServiceDiscovery(final JID jid) {
 
@@ -40,6 +40,12 @@ public class PreferenceConstants {
 
     public static final String DISABLE_VERSION_CONTROL = "disable_version_control";
 
+    public static final String LAZY_PARTIAL_SHARING = "lazy_partial_sharing";
+
+    public static final String PERSISTENT_CHAT_HISTORY = "persistent_chat_history";
+
+    public static final String ENABLE_LAN_TRANSPORT = "enable_lan_transport";
+
     /**
      * color ID that should be used in a session if it is not already occupied
      */
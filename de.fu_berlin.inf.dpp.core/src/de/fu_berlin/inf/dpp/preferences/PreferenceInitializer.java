@@ -38,6 +38,9 @@ public class PreferenceInitializer {
         store.setDefault(PreferenceConstants.STUN_PORT, 0);
         store.setDefault(PreferenceConstants.CONCURRENT_UNDO, false);
         store.setDefault(PreferenceConstants.DISABLE_VERSION_CONTROL, false);
+        store.setDefault(PreferenceConstants.LAZY_PARTIAL_SHARING, false);
+        store.setDefault(PreferenceConstants.PERSISTENT_CHAT_HISTORY, false);
+        store.setDefault(PreferenceConstants.ENABLE_LAN_TRANSPORT, false);
 
         store.setDefault(PreferenceConstants.FAVORITE_SESSION_COLOR_ID,
             UserColorID.UNKNOWN);
@@ -179,6 +179,38 @@ public abstract class Preferences {
         store.setValue(PreferenceConstants.DISABLE_VERSION_CONTROL, !value);
     }
 
+    /**
+     * Returns whether the files of partially shared projects that do not exist
+     * locally are received in the background after the project negotiation
+     * instead of up front.
+     * 
+     * @return true if the files are received in the background
+     */
+    public boolean isLazyPartialSharingEnabled() {
+        return store.getBoolean(PreferenceConstants.LAZY_PARTIAL_SHARING);
+    }
+
+    /**
+     * Returns whether the histories of session chats are stored on disk, so
+     * they are available again in later sessions with the same host.
+     * 
+     * @return true if the chat histories are stored on disk
+     */
+    public boolean isChatHistoryPersistent() {
+        return store.getBoolean(PreferenceConstants.PERSISTENT_CHAT_HISTORY);
+    }
+
+    /**
+     * Returns whether direct TCP connections to session participants in the
+     * local network are enabled. The local endpoint is announced via mDNS if
+     * enabled.
+     * 
+     * @return true if the local network transport is enabled
+     */
+    public boolean isLANTransportEnabled() {
+        return store.getBoolean(PreferenceConstants.ENABLE_LAN_TRANSPORT);
+    }
+
     /**
      * Returns whether local SOCKS5 proxy is enabled or not.
      * 
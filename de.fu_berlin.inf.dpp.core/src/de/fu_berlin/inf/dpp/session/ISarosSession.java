@@ -65,6 +65,13 @@ public interface ISarosSession {
      */
     public static final String SESSION_CONNECTION_ID = "saros-main-session";
 
+    /**
+     * Connection identifier to use for transferring file contents so they do
+     * not delay the data sent over the {@link #SESSION_CONNECTION_ID
+     * session connection}.
+     */
+    public static final String CONTENT_CONNECTION_ID = "saros-session-content";
+
     /**
      * @return a list of all users of this session
      */
@@ -541,6 +548,20 @@ public interface ISarosSession {
      */
     public void disableQueuing();
 
+    /**
+     * FOR INTERNAL USE ONLY !
+     * <p>
+     * Disables queuing for the given project and flushes the activities that
+     * were queued for it.
+     * 
+     * @param project
+     *            the project for which project-related activities should no
+     *            longer be queued
+     * 
+     * @see #enableQueuing(IProject)
+     */
+    public void disableQueuing(IProject project);
+
     /**
      * Returns the id of the current session.
      * 
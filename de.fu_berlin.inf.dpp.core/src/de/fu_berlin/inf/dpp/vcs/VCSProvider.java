@@ -55,4 +55,28 @@ public interface VCSProvider {
      */
     public String getUrl(IResource resource);
 
+    /**
+     * Returns whether the content of the file differs from its revision in the
+     * repository, e.g because of uncommitted changes.
+     * 
+     * @param resource
+     * @return <code>true</code> if the file was modified, is not managed or
+     *         its state cannot be determined, <code>false</code> otherwise
+     */
+    public boolean isModified(IResource resource);
+
+    /**
+     * Returns whether the content of the file in the working copy may differ
+     * from its content in the repository although the file is not modified,
+     * e.g. for SVN because of the <code>svn:eol-style</code> or
+     * <code>svn:keywords</code> property. Such a file may have a different
+     * content on every working copy of the same revision.
+     * 
+     * @param resource
+     * @return <code>true</code> if the content may be translated, the file is
+     *         not managed or its state cannot be determined,
+     *         <code>false</code> otherwise
+     */
+    public boolean isContentTranslated(IResource resource);
+
 }
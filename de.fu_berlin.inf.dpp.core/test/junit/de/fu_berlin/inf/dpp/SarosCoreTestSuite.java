@@ -10,6 +10,8 @@ de.fu_berlin.inf.dpp.account.TestSuite.class,
 
 de.fu_berlin.inf.dpp.activities.TestSuite.class,
 
+de.fu_berlin.inf.dpp.communication.chat.TestSuite.class,
+
 de.fu_berlin.inf.dpp.communication.extensions.TestSuite.class,
 
 de.fu_berlin.inf.dpp.concurrent.TestSuite.class,
@@ -28,6 +30,8 @@ de.fu_berlin.inf.dpp.net.TestSuite.class,
 
 de.fu_berlin.inf.dpp.net.internal.TestSuite.class,
 
+de.fu_berlin.inf.dpp.net.xmpp.discovery.TestSuite.class,
+
 de.fu_berlin.inf.dpp.synchronize.TestSuite.class,
 
 de.fu_berlin.inf.dpp.util.TestSuite.class,
@@ -10,6 +10,7 @@ import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
 
+import de.fu_berlin.inf.dpp.activities.ProgressActivity.ProgressAction;
 import de.fu_berlin.inf.dpp.filesystem.IPath;
 import de.fu_berlin.inf.dpp.filesystem.IProject;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
@@ -162,6 +163,84 @@ public class ActivityOptimizerTest {
         assertRange(23, 23, optimized, nop);
     }
 
+    @Test
+    public void testOptimizeKeepsSelectionsOfDifferentUsers() {
+        SPath path = new SPath(fooProject, fooPath);
+
+        TextSelectionActivity aliceChange0 = new TextSelectionActivity(alice,
+            0, 1, path);
+        TextSelectionActivity bobChange = new TextSelectionActivity(bob, 0, 1,
+            path);
+        TextSelectionActivity aliceChange1 = new TextSelectionActivity(alice,
+            1, 1, path);
+
+        List<IActivity> activities = new ArrayList<IActivity>();
+
+        activities.add(aliceChange0);
+        activities.add(bobChange);
+        activities.add(aliceChange1);
+
+        List<IActivity> optimized = ActivityOptimizer.optimize(activities);
+
+        assertEquals(2, optimized.size());
+        assertSame(bobChange, optimized.get(0));
+        assertSame(aliceChange1, optimized.get(1));
+    }
+
+    @Test
+    public void testOptimizeProgressUpdates() {
+        ProgressActivity begin = progress(bob, "foo", 0,
+            ProgressAction.BEGINTASK);
+        ProgressActivity fooUpdate0 = progress(bob, "foo", 1,
+            ProgressAction.UPDATE);
+        ProgressActivity barUpdate0 = progress(bob, "bar", 1,
+            ProgressAction.UPDATE);
+        ProgressActivity fooUpdate1 = progress(bob, "foo", 2,
+            ProgressAction.UPDATE);
+        ProgressActivity fooSubTask = progress(bob, "foo", 2,
+            ProgressAction.SUBTASK);
+        ProgressActivity fooUpdate2 = progress(bob, "foo", 3,
+            ProgressAction.UPDATE);
+        ProgressActivity fooUpdate3 = progress(bob, "foo", 4,
+            ProgressAction.UPDATE);
+        ProgressActivity fooAliceUpdate = progress(alice, "foo", 4,
+            ProgressAction.UPDATE);
+        ProgressActivity done = progress(bob, "foo", 0,
+            ProgressAction.DONE);
+
+        List<IActivity> activities = new ArrayList<IActivity>();
+
+        activities.add(begin);
+        activities.add(fooUpdate0);
+        activities.add(barUpdate0);
+        activities.add(fooUpdate1);
+        activities.add(fooSubTask);
+        activities.add(fooUpdate2);
+        activities.add(nop);
+        activities.add(fooUpdate3);
+        activities.add(fooAliceUpdate);
+        activities.add(done);
+
+        List<IActivity> optimized = ActivityOptimizer.optimize(activities);
+
+        assertEquals(8, optimized.size());
+
+        assertSame(begin, optimized.get(0));
+        assertSame(barUpdate0, optimized.get(1));
+        assertSame(fooUpdate1, optimized.get(2));
+        assertSame(fooSubTask, optimized.get(3));
+        assertSame(nop, optimized.get(4));
+        assertSame(fooUpdate3, optimized.get(5));
+        assertSame(fooAliceUpdate, optimized.get(6));
+        assertSame(done, optimized.get(7));
+    }
+
+    private ProgressActivity progress(User target, String id, int worked,
+        ProgressAction action) {
+        return new ProgressActivity(alice, target, id, worked, 10, null,
+            action);
+    }
+
     private void assertRange(int l, int h, List<IActivity> activities,
         IActivity activity) {
         for (int i = l; i <= h; i++)
@@ -0,0 +1,92 @@
+package de.fu_berlin.inf.dpp.activities;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.concurrent.jupiter.Operation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.Jupiter;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.test.util.Document;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.test.util.JupiterTestCase;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.test.util.PathFake;
+import de.fu_berlin.inf.dpp.concurrent.management.ConcurrentDocumentClient;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.session.ISarosSession;
+import de.fu_berlin.inf.dpp.session.User;
+
+public class CompositeTextEditActivityTest {
+
+    private static final String TEXT = "int a;\nint b;\nint c;\n";
+
+    private final User source = JupiterTestCase.createUser("source");
+
+    private IProject project;
+
+    private PathFake projectPath;
+
+    private SPath path;
+
+    @Before
+    public void setUp() {
+        project = createMock(IProject.class);
+        replay(project);
+        projectPath = new PathFake("path");
+        path = new SPath(project, projectPath);
+    }
+
+    @Test
+    public void testCommandIsSentAsOneActivity() throws Exception {
+        ISarosSession session = createMock(ISarosSession.class);
+        expect(session.getLocalUser()).andStubReturn(source);
+        replay(session);
+
+        // e.g. a replace all of "int" with "long", in descending order
+        List<TextEditActivity> edits = new ArrayList<TextEditActivity>();
+        edits.add(new TextEditActivity(source, 14, "long", "int", path));
+        edits.add(new TextEditActivity(source, 7, "long", "int", path));
+        edits.add(new TextEditActivity(source, 0, "long", "int", path));
+
+        IActivity activity = new ConcurrentDocumentClient(session)
+            .transformToJupiter(new CompositeTextEditActivity(source, path,
+                edits));
+
+        assertTrue(activity instanceof JupiterActivity);
+
+        // the receiving side of the host
+        Operation operation = new Jupiter(false)
+            .receiveJupiterActivity((JupiterActivity) activity);
+
+        Document document = new Document(TEXT, project, projectPath);
+        document.execOperation(operation);
+
+        assertEquals("long a;\nlong b;\nlong c;\n", document.getDocument());
+    }
+
+    @Test
+    public void testEditsAreAppliedInOrder() {
+        List<TextEditActivity> edits = new ArrayList<TextEditActivity>();
+        // the offset of the second edit is only valid after the first one
+        edits.add(new TextEditActivity(source, 0, "", "int ", path));
+        edits.add(new TextEditActivity(source, 3, "", "int ", path));
+
+        Document document = new Document(TEXT, project, projectPath);
+        document.execOperation(new CompositeTextEditActivity(source, path,
+            edits).toOperation());
+
+        assertEquals("a;\nb;\nint c;\n", document.getDocument());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyEdits() {
+        new CompositeTextEditActivity(source, path,
+            new ArrayList<TextEditActivity>());
+    }
+}
@@ -0,0 +1,144 @@
+package de.fu_berlin.inf.dpp.activities;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.activities.FileActivity.Purpose;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.session.User;
+import de.fu_berlin.inf.dpp.util.Pair;
+
+public class FileContentStoreTest {
+
+    private static final JID ALICE = new JID("alice@junit");
+    private static final JID BOB = new JID("bob@junit");
+
+    private final User alice = new User(ALICE, null, true, true, 0, 0);
+
+    private final FileContentStore aliceStore = new FileContentStore();
+    private final FileContentStore bobStore = new FileContentStore();
+
+    private SPath path;
+
+    @Before
+    public void setup() {
+        IProject project = EasyMock.createNiceMock(IProject.class);
+        IPath projectRelativePath = EasyMock.createNiceMock(IPath.class);
+
+        EasyMock.replay(project, projectRelativePath);
+
+        path = new SPath(project, projectRelativePath);
+    }
+
+    @Test
+    public void testSmallContentIsNotReferenced() {
+        List<IActivity> activities = Collections
+            .<IActivity> singletonList(created(content(1, 100)));
+
+        List<Pair<String, byte[]>> transfers = new ArrayList<Pair<String, byte[]>>();
+
+        assertSame(activities,
+            aliceStore.toReferences(BOB, activities, transfers));
+        assertEquals(0, transfers.size());
+    }
+
+    @Test
+    public void testContentIsTransferredOnce() {
+        byte[] content = content(1, FileContentStore.MIN_CONTENT_SIZE);
+
+        FileActivity first = created(content);
+        FileActivity second = created(content.clone());
+
+        List<Pair<String, byte[]>> transfers = new ArrayList<Pair<String, byte[]>>();
+
+        List<IActivity> sent = aliceStore.toReferences(BOB,
+            Arrays.<IActivity> asList(first, second), transfers);
+
+        assertEquals(1, transfers.size());
+
+        FileActivity reference = (FileActivity) sent.get(0);
+
+        assertNull(reference.getContent());
+        assertEquals(FileContentStore.hash(content), reference.getContentHash());
+
+        // the content has not arrived yet
+        assertNull(bobStore.resolve(ALICE, reference));
+
+        bobStore.addContent(ALICE, transfers.get(0).p, transfers.get(0).v);
+
+        assertEquals(first, bobStore.resolve(ALICE, sent.get(0)));
+        assertEquals(second, bobStore.resolve(ALICE, sent.get(1)));
+    }
+
+    @Test
+    public void testEvictedContentIsTransferredAgain() {
+        int size = (int) (FileContentStore.PEER_CAPACITY / 2);
+
+        byte[] a = content(1, size);
+        byte[] b = content(2, size);
+        byte[] c = content(3, size);
+
+        // c evicts a, so a must be sent again
+        List<IActivity> activities = Arrays.<IActivity> asList(created(a),
+            created(b), created(c), created(a), created(b));
+
+        List<Pair<String, byte[]>> transfers = new ArrayList<Pair<String, byte[]>>();
+
+        List<IActivity> sent = aliceStore.toReferences(BOB, activities,
+            transfers);
+
+        assertEquals(5, transfers.size());
+
+        for (Pair<String, byte[]> transfer : transfers)
+            bobStore.addContent(ALICE, transfer.p, transfer.v);
+
+        for (int i = 0; i < sent.size(); i++) {
+            IActivity resolved = bobStore.resolve(ALICE, sent.get(i));
+
+            assertNotNull(resolved);
+            assertArrayEquals(((FileActivity) activities.get(i)).getContent(),
+                ((FileActivity) resolved).getContent());
+        }
+    }
+
+    @Test
+    public void testRemovedPeerGetsContentAgain() {
+        byte[] content = content(1, FileContentStore.MIN_CONTENT_SIZE);
+
+        List<IActivity> activities = Collections
+            .<IActivity> singletonList(created(content));
+
+        List<Pair<String, byte[]>> transfers = new ArrayList<Pair<String, byte[]>>();
+
+        aliceStore.toReferences(BOB, activities, transfers);
+        aliceStore.remove(BOB);
+        aliceStore.toReferences(BOB, activities, transfers);
+
+        assertEquals(2, transfers.size());
+    }
+
+    private FileActivity created(byte[] content) {
+        return FileActivity.created(alice, path, content, "UTF-8",
+            Purpose.ACTIVITY);
+    }
+
+    private static byte[] content(int seed, int length) {
+        byte[] content = new byte[length];
+        Arrays.fill(content, (byte) seed);
+        return content;
+    }
+}
@@ -0,0 +1,242 @@
+package de.fu_berlin.inf.dpp.communication.chat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.jivesoftware.smackx.ChatState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.communication.chat.ChatElement.ChatElementType;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+
+public class ChatHistoryTest {
+
+    private static final JID ALICE = new JID("alice@foo/Saros");
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("saros_chat_history", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testInMemoryHistory() {
+        ChatHistory history = new ChatHistory();
+
+        for (int i = 0; i < 10; i++)
+            history.addEntry(message(i));
+
+        assertEquals(10, history.size());
+        assertEquals(10, history.getEntries().size());
+        assertBodies(history.getEntries(2, 3), 5, 6, 7);
+
+        history.release();
+        assertEquals(0, history.size());
+    }
+
+    @Test
+    public void testWindowIsBounded() {
+        ChatHistory history = createHistory(4);
+
+        for (int i = 0; i < 10; i++)
+            history.addEntry(message(i));
+
+        assertEquals(10, history.size());
+        assertBodies(history.getEntries(), 6, 7, 8, 9);
+        assertBodies(history.getEntries(7, 2), 1, 2);
+        assertBodies(history.getEntries(8, 5), 0, 1);
+        assertTrue(history.getEntries(10, 5).isEmpty());
+    }
+
+    @Test
+    public void testReversePaging() {
+        ChatHistory history = createHistory(10);
+
+        int count = ChatHistoryStore.SEGMENT_SIZE * 2 + 17;
+
+        for (int i = 0; i < count; i++)
+            history.addEntry(message(i));
+
+        List<ChatElement> all = new ArrayList<ChatElement>();
+
+        int expectedPageStart = count;
+
+        List<ChatElement> page;
+
+        while (!(page = history.getEntries(all.size(), 100)).isEmpty()) {
+            expectedPageStart -= page.size();
+            assertEquals(String.valueOf(expectedPageStart), page.get(0)
+                .getMessage().getBody());
+            all.addAll(0, page);
+        }
+
+        assertEquals(count, all.size());
+
+        for (int i = 0; i < count; i++)
+            assertEquals(String.valueOf(i), all.get(i).getMessage().getBody());
+    }
+
+    @Test
+    public void testHistorySurvivesRelease() {
+        ChatHistory history = createHistory(3);
+
+        history.addEntry(message(0));
+        history.addEntry(new ChatElement(ALICE, new Date(1),
+            ChatElementType.JOIN));
+        history.addEntry(new ChatElement(ALICE, new Date(2),
+            ChatState.composing));
+        history.addEntry(message(3));
+        history.release();
+
+        history = createHistory(3);
+
+        assertEquals(4, history.size());
+
+        List<ChatElement> entries = history.getEntries(0, 4);
+
+        assertEquals(ChatElementType.MESSAGE, entries.get(0)
+            .getChatElementType());
+        assertEquals(ChatElementType.JOIN, entries.get(1).getChatElementType());
+        assertEquals(ALICE, entries.get(1).getSender());
+        assertEquals(1, entries.get(1).getDate().getTime());
+        assertEquals(ChatState.composing, entries.get(2).getChatState());
+        assertBodies(entries.subList(3, 4), 3);
+
+        history.addEntry(message(4));
+
+        entries = history.getEntries();
+        assertEquals(ChatElementType.STATECHANGE, entries.get(0)
+            .getChatElementType());
+        assertBodies(entries.subList(1, 3), 3, 4);
+        assertEquals(5, history.size());
+    }
+
+    @Test
+    public void testClear() {
+        ChatHistory history = createHistory(3);
+
+        for (int i = 0; i < 5; i++)
+            history.addEntry(message(i));
+
+        history.clear();
+        assertEquals(0, history.size());
+
+        history = createHistory(3);
+        assertEquals(0, history.size());
+        assertTrue(history.getEntries().isEmpty());
+    }
+
+    @Test
+    public void testOldestSegmentsAreDiscarded() {
+        ChatHistory history = new ChatHistory(new ChatHistoryStore(directory,
+            2), 10);
+
+        int count = ChatHistoryStore.SEGMENT_SIZE * 2 + 3;
+
+        for (int i = 0; i < count; i++)
+            history.addEntry(message(i));
+
+        assertEquals(ChatHistoryStore.SEGMENT_SIZE + 3, history.size());
+        assertBodies(history.getEntries(history.size() - 1, 1),
+            ChatHistoryStore.SEGMENT_SIZE);
+        assertBodies(history.getEntries(0, 2), count - 2, count - 1);
+
+        history.release();
+
+        history = new ChatHistory(new ChatHistoryStore(directory, 2), 10);
+
+        assertEquals(ChatHistoryStore.SEGMENT_SIZE + 3, history.size());
+        assertBodies(history.getEntries(history.size() - 1, 1),
+            ChatHistoryStore.SEGMENT_SIZE);
+    }
+
+    @Test
+    public void testStoreIsTruncatedAtFirstInvalidEntry() throws IOException {
+        ChatHistory history = createHistory(3);
+
+        for (int i = 0; i < 3; i++)
+            history.addEntry(message(i));
+
+        history.release();
+
+        // an entry of an unknown type followed by some garbage
+        byte[] garbage = new byte[32];
+        garbage[0] = 0x7f;
+
+        FileUtils.writeByteArrayToFile(getSingleSegment(),
+            concat(FileUtils.readFileToByteArray(getSingleSegment()), garbage));
+
+        history = createHistory(3);
+        assertEquals(3, history.size());
+
+        history.addEntry(message(3));
+        history.release();
+
+        history = createHistory(3);
+        assertEquals(4, history.size());
+        assertBodies(history.getEntries(0, 4), 0, 1, 2, 3);
+    }
+
+    @Test
+    public void testFailedAppendIsNotCounted() throws IOException {
+        // the store cannot create its directory if a file is in the way
+        FileUtils.writeStringToFile(directory, "foo", "UTF-8");
+
+        try {
+            ChatHistory history = createHistory(3);
+
+            history.addEntry(message(0));
+
+            assertEquals(0, history.size());
+            assertTrue(history.getEntries().isEmpty());
+        } finally {
+            directory.delete();
+        }
+    }
+
+    private ChatHistory createHistory(int windowSize) {
+        return new ChatHistory(new ChatHistoryStore(directory), windowSize);
+    }
+
+    private File getSingleSegment() {
+        File[] segments = directory.listFiles();
+        assertEquals(1, segments.length);
+        return segments[0];
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static ChatElement message(int i) {
+        return new ChatElement(String.valueOf(i), ALICE, new Date(i));
+    }
+
+    private static void assertBodies(List<ChatElement> elements,
+        int... expected) {
+        assertEquals(expected.length, elements.size());
+
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(String.valueOf(expected[i]), elements.get(i)
+                .getMessage().getBody());
+    }
+}
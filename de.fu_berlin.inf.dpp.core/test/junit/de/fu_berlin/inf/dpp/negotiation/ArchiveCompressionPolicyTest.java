@@ -0,0 +1,88 @@
+package de.fu_berlin.inf.dpp.negotiation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+public class ArchiveCompressionPolicyTest {
+
+    private static final byte[] TEXT = createText(8192);
+
+    private static final byte[] RANDOM = createRandom(8192);
+
+    @Test
+    public void testCompressedExtensionIsStored() {
+        assertEquals(Deflater.NO_COMPRESSION,
+            ArchiveCompressionPolicy.getLevel("lib/foo.JAR", TEXT,
+                TEXT.length));
+
+        assertEquals(Deflater.NO_COMPRESSION,
+            ArchiveCompressionPolicy.getLevel("icons/bar.png", new byte[0], 0));
+    }
+
+    @Test
+    public void testTextIsCompressed() {
+        assertEquals(Deflater.DEFAULT_COMPRESSION,
+            ArchiveCompressionPolicy.getLevel("src/Foo.java", TEXT,
+                TEXT.length));
+    }
+
+    @Test
+    public void testRandomContentIsStored() {
+        assertEquals(Deflater.NO_COMPRESSION,
+            ArchiveCompressionPolicy.getLevel("data/foo.bin", RANDOM,
+                RANDOM.length));
+    }
+
+    @Test
+    public void testSmallSampleIsCompressed() {
+        assertEquals(Deflater.DEFAULT_COMPRESSION,
+            ArchiveCompressionPolicy.getLevel("data/foo.bin", RANDOM,
+                ArchiveCompressionPolicy.MIN_SAMPLE_SIZE - 1));
+    }
+
+    @Test
+    public void testExtensionOfFolderIsIgnored() {
+        assertEquals(Deflater.DEFAULT_COMPRESSION,
+            ArchiveCompressionPolicy.getLevel("foo.zip/README", TEXT,
+                TEXT.length));
+    }
+
+    @Test
+    public void testEntropy() {
+        assertEquals(0D, ArchiveCompressionPolicy.getEntropy(new byte[16], 16),
+            0D);
+
+        byte[] allBytes = new byte[256];
+
+        for (int i = 0; i < allBytes.length; i++)
+            allBytes[i] = (byte) i;
+
+        assertEquals(8D,
+            ArchiveCompressionPolicy.getEntropy(allBytes, allBytes.length),
+            1E-9);
+
+        assertTrue(ArchiveCompressionPolicy.getEntropy(TEXT, TEXT.length) < 5D);
+    }
+
+    private static byte[] createText(int length) {
+        String text = "public class Foo { private int bar = 42; }\n";
+
+        byte[] data = new byte[length];
+
+        for (int i = 0; i < length; i++)
+            data[i] = (byte) text.charAt(i % text.length());
+
+        return data;
+    }
+
+    private static byte[] createRandom(int length) {
+        byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+}
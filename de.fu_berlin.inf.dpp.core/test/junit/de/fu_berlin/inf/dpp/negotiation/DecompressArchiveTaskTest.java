@@ -0,0 +1,128 @@
+package de.fu_berlin.inf.dpp.negotiation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.filesystem.IFile;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.filesystem.IResource;
+import de.fu_berlin.inf.dpp.monitoring.NullProgressMonitor;
+
+public class DecompressArchiveTaskTest {
+
+    private File archive;
+
+    private final Map<String, byte[]> written = new ConcurrentHashMap<String, byte[]>();
+
+    @Before
+    public void setUp() throws IOException {
+        archive = File.createTempFile("saros_archive", ".zip");
+    }
+
+    @After
+    public void tearDown() {
+        archive.delete();
+    }
+
+    @Test
+    public void testDecompress() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+
+        for (int i = 0; i < 100; i++)
+            entries.put("1:src/File" + i + ".java",
+                ("class File" + i + " {}").getBytes("UTF-8"));
+
+        byte[] large = new byte[2 * 1024 * 1024 + 1];
+
+        for (int i = 0; i < large.length; i++)
+            large[i] = (byte) i;
+
+        entries.put("1:large.bin", large);
+        entries.put("2:unknown.txt", new byte[1]);
+        entries.put("invalid", new byte[1]);
+
+        writeArchive(entries);
+
+        IProject project = createProjectMock();
+
+        new DecompressArchiveTask(archive, Collections.singletonMap("1",
+            project), ":", null).run(new NullProgressMonitor());
+
+        assertEquals(101, written.size());
+
+        for (int i = 0; i < 100; i++)
+            assertArrayEquals(entries.get("1:src/File" + i + ".java"),
+                written.get("src/File" + i + ".java"));
+
+        assertArrayEquals(large, written.get("large.bin"));
+    }
+
+    private void writeArchive(Map<String, byte[]> entries) throws IOException {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+
+        try {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private IProject createProjectMock() {
+        IProject project = EasyMock.createMock(IProject.class);
+
+        EasyMock.expect(project.getFile(EasyMock.isA(String.class)))
+            .andStubAnswer(new IAnswer<IFile>() {
+                @Override
+                public IFile answer() throws Throwable {
+                    return createFileMock((String) EasyMock
+                        .getCurrentArguments()[0]);
+                }
+            });
+
+        EasyMock.replay(project);
+        return project;
+    }
+
+    private IFile createFileMock(final String path) throws IOException {
+        IFile file = EasyMock.createMock(IFile.class);
+
+        EasyMock.expect(file.getType()).andStubReturn(IResource.FILE);
+        EasyMock.expect(file.getParent()).andStubReturn(null);
+        EasyMock.expect(file.exists()).andStubReturn(false);
+
+        file.create(EasyMock.isA(InputStream.class), EasyMock.eq(false));
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+            @Override
+            public Object answer() throws Throwable {
+                written.put(path, IOUtils.toByteArray((InputStream) EasyMock
+                    .getCurrentArguments()[0]));
+                return null;
+            }
+        });
+
+        EasyMock.replay(file);
+        return file;
+    }
+}
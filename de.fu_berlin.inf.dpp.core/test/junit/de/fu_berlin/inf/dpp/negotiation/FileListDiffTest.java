@@ -9,6 +9,8 @@ import de.fu_berlin.inf.dpp.filesystem.IResource;
 import de.fu_berlin.inf.dpp.negotiation.FileList;
 import de.fu_berlin.inf.dpp.negotiation.FileListDiff;
 import de.fu_berlin.inf.dpp.negotiation.FileListFactory;
+import de.fu_berlin.inf.dpp.negotiation.FileList.MetaData;
+import de.fu_berlin.inf.dpp.vcs.VCSResourceInfo;
 
 public class FileListDiffTest extends AbstractFileListTest {
 
@@ -129,4 +131,50 @@ public class FileListDiffTest extends AbstractFileListTest {
         assertPaths(diff.getAlteredPaths());
         assertPaths(diff.getUnalteredPaths());
     }
+
+    @Test
+    public void sameUnmodifiedRevision() {
+        FileList base = createVCSList(1, "42", false);
+        FileList target = createVCSList(2, "42", false);
+
+        FileListDiff diff = FileListDiff.diff(base, target);
+
+        assertPaths(diff.getAlteredPaths());
+        assertPaths(diff.getUnalteredPaths(), ROOT1);
+    }
+
+    @Test
+    public void differentRevision() {
+        FileList base = createVCSList(1, "42", false);
+        FileList target = createVCSList(2, "43", false);
+
+        FileListDiff diff = FileListDiff.diff(base, target);
+
+        assertPaths(diff.getAlteredPaths(), ROOT1);
+        assertPaths(diff.getUnalteredPaths());
+    }
+
+    @Test
+    public void sameModifiedRevision() {
+        FileList base = createVCSList(1, "42", false);
+        FileList target = createVCSList(2, "42", true);
+
+        FileListDiff diff = FileListDiff.diff(base, target);
+
+        assertPaths(diff.getAlteredPaths(), ROOT1);
+        assertPaths(diff.getUnalteredPaths());
+    }
+
+    private FileList createVCSList(long checksum, String revision,
+        boolean modified) {
+        MetaData data = new MetaData();
+        data.checksum = checksum;
+        data.vcsInfo = new VCSResourceInfo("http://svn.example.org/" + ROOT1,
+            revision);
+        data.modified = modified;
+
+        FileList list = FileListFactory.createEmptyFileList();
+        list.addPath(ROOT1, data, false);
+        return list;
+    }
 }
@@ -0,0 +1,141 @@
+package de.fu_berlin.inf.dpp.negotiation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.filesystem.IFile;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+
+public class FileListSnapshotStoreTest {
+
+    private File directory;
+    private File projectDirectory;
+
+    private IProject project;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("saros_file_lists", "");
+        directory.delete();
+
+        projectDirectory = File.createTempFile("saros_project", "");
+        projectDirectory.delete();
+        projectDirectory.mkdirs();
+
+        project = EasyMock.createMock(IProject.class);
+        EasyMock.expect(project.getLocationURI())
+            .andStubReturn(projectDirectory.toURI());
+        EasyMock.replay(project);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+        FileUtils.deleteDirectory(projectDirectory);
+    }
+
+    @Test
+    public void testChecksumIsReusedAfterRestart() throws IOException {
+        IFile file = createFile("a.txt", "foo", true);
+
+        FileListSnapshotStore store = createStore();
+        store.addChecksum(file, 42L);
+        store.save(project);
+
+        assertEquals(Long.valueOf(42L), createStore().getChecksum(file));
+    }
+
+    @Test
+    public void testChangedFileIsNotReused() throws IOException {
+        IFile file = createFile("a.txt", "foo", true);
+
+        FileListSnapshotStore store = createStore();
+        store.addChecksum(file, 42L);
+
+        createFile("a.txt", "foobar", true);
+
+        assertNull(store.getChecksum(file));
+    }
+
+    @Test
+    public void testRecentlyModifiedFileIsNotRecorded() throws IOException {
+        IFile file = createFile("a.txt", "foo", false);
+
+        FileListSnapshotStore store = createStore();
+        store.addChecksum(file, 42L);
+
+        assertNull(store.getChecksum(file));
+    }
+
+    @Test
+    public void testRetain() throws IOException {
+        IFile a = createFile("a.txt", "foo", true);
+        IFile b = createFile("b.txt", "bar", true);
+
+        FileListSnapshotStore store = createStore();
+        store.addChecksum(a, 1L);
+        store.addChecksum(b, 2L);
+        store.retain(project, Collections.singletonList("a.txt"));
+        store.save(project);
+
+        store = createStore();
+
+        assertEquals(Long.valueOf(1L), store.getChecksum(a));
+        assertNull(store.getChecksum(b));
+    }
+
+    @Test
+    public void testInMemoryStore() throws IOException {
+        IFile file = createFile("a.txt", "foo", true);
+
+        FileListSnapshotStore store = new FileListSnapshotStore();
+        store.addChecksum(file, 42L);
+        store.save(project);
+
+        assertEquals(Long.valueOf(42L), store.getChecksum(file));
+        assertFalse(directory.exists());
+    }
+
+    private FileListSnapshotStore createStore() {
+        FileListSnapshotStore store = new FileListSnapshotStore();
+        store.setDirectory(directory);
+        return store;
+    }
+
+    private IFile createFile(String name, String content, boolean isOld)
+        throws IOException {
+        File localFile = new File(projectDirectory, name);
+
+        FileUtils.writeStringToFile(localFile, content, "UTF-8");
+
+        if (isOld)
+            localFile.setLastModified(System.currentTimeMillis() - 60000);
+
+        IPath location = EasyMock.createMock(IPath.class);
+        EasyMock.expect(location.toFile()).andStubReturn(localFile);
+
+        IPath path = EasyMock.createMock(IPath.class);
+        EasyMock.expect(path.toPortableString()).andStubReturn(name);
+
+        IFile file = EasyMock.createMock(IFile.class);
+        EasyMock.expect(file.getLocation()).andStubReturn(location);
+        EasyMock.expect(file.getProject()).andStubReturn(project);
+        EasyMock.expect(file.getProjectRelativePath()).andStubReturn(path);
+
+        EasyMock.replay(location, path, file);
+
+        return file;
+    }
+}
@@ -22,7 +22,6 @@ package de.fu_berlin.inf.dpp.negotiation;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
-import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -38,7 +37,9 @@ import com.thoughtworks.xstream.converters.basic.BooleanConverter;
 import com.thoughtworks.xstream.io.xml.CompactWriter;
 
 import de.fu_berlin.inf.dpp.negotiation.FileList;
+import de.fu_berlin.inf.dpp.negotiation.FileList.MetaData;
 import de.fu_berlin.inf.dpp.negotiation.FileListFactory;
+import de.fu_berlin.inf.dpp.vcs.VCSResourceInfo;
 
 /**
  * TODO [TEST] Add Testcases for non-existing files florianthiel: Does FileList
@@ -78,7 +79,7 @@ public class FileListTest extends AbstractFileListTest {
     }
 
     @Test
-    public void testEquals() throws IOException {
+    public void testEquals() throws Exception {
         FileList sameFileList = FileListFactory.createFileList(null,
             threeFileList, null, null, null);
         assertEquals(threeEntryList, sameFileList);
@@ -119,6 +120,45 @@ public class FileListTest extends AbstractFileListTest {
         assertEquals(list, listFromXml);
     }
 
+    @Test
+    public void testRoundtripWithMetaData() {
+        FileList list = FileListFactory.createEmptyFileList();
+
+        list.setVcsProviderID("svn");
+        list.setVcsRepositoryRoot("http://svn.example.org/repo");
+        list.setVcsRepositoryRoot(new VCSResourceInfo(
+            "http://svn.example.org/repo/trunk", "42"));
+        list.setProjectID("1");
+        list.addEncoding("UTF-8");
+
+        for (int i = 0; i < 10; i++) {
+            MetaData data = new MetaData();
+            data.checksum = 0xFFFFFFFFL - i;
+            data.vcsInfo = new VCSResourceInfo(
+                "http://svn.example.org/repo/trunk/src/File" + i + ".java",
+                "42");
+            data.modified = i % 3 == 0;
+
+            list.addPath("src/File" + i + ".java", data, false);
+        }
+
+        list.addPath("empty", null, true);
+
+        FileList replicated = fromXML(toXML(list));
+
+        assertEquals(list, replicated);
+        assertEquals(list.getPaths(), replicated.getPaths());
+        assertEquals(list.getEncodings(), replicated.getEncodings());
+        assertEquals(list.getProjectInfo(), replicated.getProjectInfo());
+        assertEquals("svn", replicated.getVcsProviderID());
+        assertEquals("1", replicated.getProjectID());
+        assertEquals("http://svn.example.org/repo",
+            replicated.getRepositoryRoot());
+        assertEquals("http://svn.example.org/repo/trunk/src/File3.java",
+            replicated.getVCSUrl("src/File3.java"));
+        assertEquals("42", replicated.getVCSRevision("src/File3.java"));
+    }
+
     private String toXML(FileList list) {
         StringWriter writer = new StringWriter(512 * 1024);
         xstream.marshal(list, new CompactWriter(writer));
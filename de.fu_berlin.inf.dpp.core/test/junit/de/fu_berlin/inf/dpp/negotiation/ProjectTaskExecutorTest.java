@@ -0,0 +1,116 @@
+package de.fu_berlin.inf.dpp.negotiation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.exceptions.SarosCancellationException;
+import de.fu_berlin.inf.dpp.monitoring.IProgressMonitor;
+import de.fu_berlin.inf.dpp.monitoring.NullProgressMonitor;
+
+public class ProjectTaskExecutorTest {
+
+    private static class TestMonitor extends NullProgressMonitor {
+
+        private int worked;
+
+        @Override
+        public void worked(int amount) {
+            worked += amount;
+        }
+    }
+
+    private static final ProjectTaskExecutor.Task<String, String> UPPER_CASE = new ProjectTaskExecutor.Task<String, String>() {
+        @Override
+        public String run(String project, IProgressMonitor monitor) {
+            monitor.beginTask("ignored", 2);
+            monitor.worked(1);
+            monitor.worked(1);
+            monitor.done();
+            return project.toUpperCase();
+        }
+    };
+
+    @Test
+    public void testResultsAreOrdered() throws Exception {
+        TestMonitor monitor = new TestMonitor();
+        monitor.beginTask("test", 4 * 100);
+
+        List<String> results = ProjectTaskExecutor.execute(
+            Arrays.asList("a", "b", "c", "d"), UPPER_CASE, monitor, 100);
+
+        assertEquals(Arrays.asList("A", "B", "C", "D"), results);
+        assertEquals(4 * 100, monitor.worked);
+    }
+
+    @Test
+    public void testSingleProject() throws Exception {
+        TestMonitor monitor = new TestMonitor();
+        monitor.beginTask("test", 100);
+
+        List<String> results = ProjectTaskExecutor.execute(
+            Arrays.asList("a"), UPPER_CASE, monitor, 100);
+
+        assertEquals(Arrays.asList("A"), results);
+        assertEquals(100, monitor.worked);
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailure() throws Exception {
+        ProjectTaskExecutor.execute(Arrays.asList("a", "b"),
+            new ProjectTaskExecutor.Task<String, String>() {
+                @Override
+                public String run(String project, IProgressMonitor monitor)
+                    throws IOException, SarosCancellationException {
+
+                    if (project.equals("b"))
+                        throw new IOException("b failed");
+
+                    return project;
+                }
+            }, new NullProgressMonitor(), 1);
+    }
+
+    @Test
+    public void testFirstFailureIsReportedAndSiblingsAreCanceled()
+        throws Exception {
+
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        try {
+            ProjectTaskExecutor.execute(Arrays.asList("late", "early"),
+                new ProjectTaskExecutor.Task<String, String>() {
+                    @Override
+                    public String run(String project, IProgressMonitor monitor)
+                        throws IOException, SarosCancellationException {
+
+                        if (project.equals("early"))
+                            throw new IOException("early failed");
+
+                        try {
+                            Thread.sleep(10000);
+                        } catch (InterruptedException e) {
+                            interrupted.countDown();
+                        }
+
+                        throw new IOException("late failed");
+                    }
+                }, new NullProgressMonitor(), 1, 2);
+
+            fail("failure was not reported");
+        } catch (IOException e) {
+            assertEquals("early failed", e.getMessage());
+        }
+
+        assertTrue("sibling task was not canceled",
+            interrupted.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,403 @@
+package de.fu_berlin.inf.dpp.negotiation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.exceptions.OperationCanceledException;
+import de.fu_berlin.inf.dpp.filesystem.IFile;
+import de.fu_berlin.inf.dpp.filesystem.IFolder;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.filesystem.IResource;
+import de.fu_berlin.inf.dpp.vcs.VCSProvider;
+import de.fu_berlin.inf.dpp.vcs.VCSResourceInfo;
+
+/**
+ * Compares the file lists of two working copies of a local, file based SVN
+ * repository like the project negotiation does. The fixture is created with
+ * the <code>svnadmin</code> and <code>svn</code> command line tools, the tests
+ * are skipped if they are not installed.
+ */
+public class SVNFileListTest {
+
+    private static final String PLAIN = "plain.txt";
+    private static final String EOL_STYLE = "eol.txt";
+    private static final String KEYWORDS = "src/keywords.txt";
+
+    /**
+     * Answers the VCS queries of {@link FileListFactory} with the
+     * <code>svn</code> command line tool.
+     */
+    private static class SVNCommandLineProvider implements VCSProvider {
+
+        private final Map<IResource, File> files;
+
+        private SVNCommandLineProvider(Map<IResource, File> files) {
+            this.files = files;
+        }
+
+        @Override
+        public String getID() {
+            return "svn";
+        }
+
+        @Override
+        public String getRepositoryString(IResource resource) {
+            return info(resource, "repos-root-url");
+        }
+
+        @Override
+        public VCSResourceInfo getResourceInfo(IResource resource) {
+            return getInfo(resource, "last-changed-revision");
+        }
+
+        @Override
+        public VCSResourceInfo getCurrentResourceInfo(IResource resource) {
+            return getInfo(resource, "revision");
+        }
+
+        @Override
+        public String getUrl(IResource resource) {
+            return info(resource, "url");
+        }
+
+        @Override
+        public boolean isModified(IResource resource) {
+            try {
+                return svn(files.get(resource), "status", "-q").length() > 0;
+            } catch (IOException e) {
+                return true;
+            }
+        }
+
+        @Override
+        public boolean isContentTranslated(IResource resource) {
+            try {
+                String properties = svn(files.get(resource), "proplist", "-q");
+
+                return properties.contains("svn:eol-style")
+                    || properties.contains("svn:keywords");
+            } catch (IOException e) {
+                return true;
+            }
+        }
+
+        private VCSResourceInfo getInfo(IResource resource, String revision) {
+            String url = info(resource, "url");
+
+            if (url == null)
+                return null;
+
+            return new VCSResourceInfo(url, info(resource, revision));
+        }
+
+        private String info(IResource resource, String item) {
+            try {
+                return svn(files.get(resource), "info", "--show-item", item)
+                    .trim();
+            } catch (IOException e) {
+                // not under version control
+                return null;
+            }
+        }
+
+        private static String svn(File file, String... args)
+            throws IOException {
+            List<String> command = new ArrayList<String>();
+            command.add("svn");
+            Collections.addAll(command, args);
+            command.add(file.getAbsolutePath());
+
+            return run(file.getParentFile(),
+                command.toArray(new String[command.size()]));
+        }
+    }
+
+    private File directory;
+
+    private String url;
+
+    private File hostCopy;
+
+    private File clientCopy;
+
+    /** Project relative paths of the files whose content was read. */
+    private Set<String> readFiles;
+
+    @BeforeClass
+    public static void checkSVN() {
+        assumeTrue(isInstalled("svnadmin") && isInstalled("svn"));
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("saros_svn", "");
+        directory.delete();
+        directory.mkdirs();
+
+        File repository = new File(directory, "repository");
+
+        run(directory, "svnadmin", "create", repository.getAbsolutePath());
+
+        url = "file://" + repository.toURI().getPath();
+
+        hostCopy = checkout("host");
+
+        write(hostCopy, PLAIN, "plain\n");
+        write(hostCopy, EOL_STYLE, "eol\n");
+        write(hostCopy, KEYWORDS, "$Id$\n");
+
+        run(hostCopy, "svn", "add", "-q", PLAIN, EOL_STYLE, "src");
+        run(hostCopy, "svn", "propset", "-q", "svn:eol-style", "native",
+            EOL_STYLE);
+        run(hostCopy, "svn", "propset", "-q", "svn:keywords", "Id", KEYWORDS);
+        commit(hostCopy);
+
+        clientCopy = checkout("client");
+
+        readFiles = new HashSet<String>();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testUnmodifiedFileIsNotRead() throws Exception {
+        FileListDiff diff = diff();
+
+        assertEquals(Collections.emptyList(), diff.getAlteredPaths());
+        assertTrue(diff.getUnalteredPaths().contains(PLAIN));
+
+        assertFalse("unmodified file was checksummed",
+            readFiles.contains(PLAIN));
+    }
+
+    @Test
+    public void testTranslatedFilesAreChecksummed() throws Exception {
+        diff();
+
+        assertTrue(readFiles.contains(EOL_STYLE));
+        assertTrue(readFiles.contains(KEYWORDS));
+    }
+
+    @Test
+    public void testTranslatedFileWithOtherLineEndingsIsAltered()
+        throws Exception {
+        // e.g. the host checked out the same revision on another platform
+        write(hostCopy, EOL_STYLE, "eol\r\n");
+
+        assertEquals(Collections.singletonList(EOL_STYLE), diff()
+            .getAlteredPaths());
+    }
+
+    @Test
+    public void testModifiedFileIsAltered() throws Exception {
+        write(hostCopy, PLAIN, "modified\n");
+
+        assertEquals(Collections.singletonList(PLAIN), diff()
+            .getAlteredPaths());
+    }
+
+    @Test
+    public void testOtherRevisionIsAltered() throws Exception {
+        write(hostCopy, PLAIN, "committed\n");
+        commit(hostCopy);
+
+        assertEquals(Collections.singletonList(PLAIN), diff()
+            .getAlteredPaths());
+    }
+
+    /**
+     * Compares the file list of the client working copy against the file list
+     * of the host working copy.
+     */
+    private FileListDiff diff() throws IOException,
+        OperationCanceledException {
+        Map<IResource, File> hostFiles = new HashMap<IResource, File>();
+        IProject hostProject = createProject(hostCopy, hostFiles, false);
+
+        FileList hostList = FileListFactory.createFileList(hostProject, null,
+            null, new SVNCommandLineProvider(hostFiles), null);
+
+        Map<IResource, File> clientFiles = new HashMap<IResource, File>();
+        IProject clientProject = createProject(clientCopy, clientFiles, true);
+
+        FileList clientList = FileListFactory.createVCSFileList(clientProject,
+            null, null, new SVNCommandLineProvider(clientFiles), null);
+
+        return FileListDiff.diff(clientList, hostList);
+    }
+
+    private File checkout(String name) throws IOException {
+        File workingCopy = new File(directory, name);
+
+        run(directory, "svn", "checkout", "-q", url,
+            workingCopy.getAbsolutePath());
+
+        return workingCopy;
+    }
+
+    private static void commit(File workingCopy) throws IOException {
+        run(workingCopy, "svn", "commit", "-q", "-m", "fixture");
+        run(workingCopy, "svn", "update", "-q");
+    }
+
+    private static void write(File workingCopy, String path, String content)
+        throws IOException {
+        FileUtils.writeStringToFile(new File(workingCopy, path), content,
+            "UTF-8");
+    }
+
+    /**
+     * Creates a project whose resources are backed by the given working copy.
+     *
+     * @param record
+     *            if <code>true</code>, reading the content of a file is
+     *            recorded in {@link #readFiles}
+     */
+    private IProject createProject(File workingCopy,
+        Map<IResource, File> files, boolean record) throws IOException {
+
+        IProject project = EasyMock.createNiceMock(IProject.class);
+        EasyMock.expect(project.getName()).andStubReturn(workingCopy.getName());
+        EasyMock.expect(project.getDefaultCharset()).andStubReturn("UTF-8");
+        EasyMock.expect(project.members()).andStubReturn(
+            createMembers(project, workingCopy, "", files, record));
+        EasyMock.replay(project);
+
+        files.put(project, workingCopy);
+
+        return project;
+    }
+
+    private IResource[] createMembers(IProject project, File folder,
+        String prefix, Map<IResource, File> files, boolean record)
+        throws IOException {
+
+        List<IResource> members = new ArrayList<IResource>();
+
+        for (File file : folder.listFiles()) {
+            // the administrative area is not a member in the IDE either
+            if (file.getName().equals(".svn"))
+                continue;
+
+            String path = prefix + file.getName();
+            IResource resource;
+
+            if (file.isDirectory()) {
+                IFolder folderMock = EasyMock.createNiceMock(IFolder.class);
+                EasyMock.expect(folderMock.getType()).andStubReturn(
+                    IResource.FOLDER);
+                EasyMock.expect(folderMock.members()).andStubReturn(
+                    createMembers(project, file, path + "/", files, record));
+                resource = folderMock;
+            } else {
+                IFile fileMock = EasyMock.createNiceMock(IFile.class);
+                EasyMock.expect(fileMock.getType()).andStubReturn(
+                    IResource.FILE);
+                EasyMock.expect(fileMock.getName()).andStubReturn(
+                    file.getName());
+                EasyMock.expect(fileMock.getCharset()).andStubReturn("UTF-8");
+                EasyMock.expect(fileMock.getContents()).andStubAnswer(
+                    createContentAnswer(file, path, record));
+                resource = fileMock;
+            }
+
+            EasyMock.expect(resource.getProject()).andStubReturn(project);
+            EasyMock.expect(resource.exists()).andStubReturn(true);
+            EasyMock.expect(resource.getProjectRelativePath()).andStubReturn(
+                createPath(path));
+            EasyMock.replay(resource);
+
+            files.put(resource, file);
+            members.add(resource);
+        }
+
+        return members.toArray(new IResource[members.size()]);
+    }
+
+    private IAnswer<InputStream> createContentAnswer(final File file,
+        final String path, final boolean record) {
+
+        return new IAnswer<InputStream>() {
+            @Override
+            public InputStream answer() throws Throwable {
+                if (record)
+                    readFiles.add(path);
+
+                return new FileInputStream(file);
+            }
+        };
+    }
+
+    private static IPath createPath(String path) {
+        IPath pathMock = EasyMock.createNiceMock(IPath.class);
+        EasyMock.expect(pathMock.toPortableString()).andStubReturn(path);
+        EasyMock.replay(pathMock);
+        return pathMock;
+    }
+
+    private static boolean isInstalled(String tool) {
+        try {
+            run(new File("."), tool, "--version", "--quiet");
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs the command and returns its output.
+     *
+     * @throws IOException
+     *             if the command cannot be run or fails
+     */
+    private static String run(File workingDirectory, String... command)
+        throws IOException {
+
+        Process process = new ProcessBuilder(command)
+            .directory(workingDirectory).redirectErrorStream(true).start();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try {
+            IOUtils.copy(process.getInputStream(), out);
+
+            if (process.waitFor() != 0)
+                throw new IOException(command[0] + " failed: " + out);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(command[0] + " was interrupted");
+        } finally {
+            process.destroy();
+        }
+
+        return out.toString();
+    }
+}
@@ -4,7 +4,10 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses({ FileListTest.class, FileListDiffTest.class })
+@Suite.SuiteClasses({ FileListTest.class, FileListDiffTest.class,
+    FileListSnapshotStoreTest.class, ProjectTaskExecutorTest.class,
+    DecompressArchiveTaskTest.class, ArchiveCompressionPolicyTest.class,
+    SVNFileListTest.class })
 public class TestSuite {
     // the class remains completely empty,
     // being used only as a holder for the above annotations
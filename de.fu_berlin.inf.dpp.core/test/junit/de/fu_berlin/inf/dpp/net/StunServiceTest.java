@@ -0,0 +1,177 @@
+package de.fu_berlin.inf.dpp.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.net.stun.internal.StunServiceImpl;
+import de.fu_berlin.inf.dpp.net.util.NetworkingUtils;
+
+/**
+ * Tests the STUN discovery against a local fake STUN server that replies with
+ * a fixed public address.
+ */
+public class StunServiceTest {
+
+    private static final int MAGIC_COOKIE = 0x2112A442;
+
+    private static final byte[] PUBLIC_ADDRESS = { (byte) 203, 0, 113, 7 };
+
+    private static final int PUBLIC_PORT = 4711;
+
+    /**
+     * Minimal STUN server that answers every binding request with a
+     * XOR-MAPPED-ADDRESS attribute containing {@link #PUBLIC_ADDRESS}.
+     */
+    private static class FakeStunServer extends Thread {
+
+        private final DatagramSocket socket;
+
+        private final AtomicInteger requests = new AtomicInteger();
+
+        public FakeStunServer() throws SocketException {
+            socket = new DatagramSocket(0);
+            setName("FakeStunServer");
+            setDaemon(true);
+        }
+
+        public int getPort() {
+            return socket.getLocalPort();
+        }
+
+        public void shutdown() {
+            socket.close();
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[1500];
+
+            while (!socket.isClosed()) {
+                DatagramPacket request = new DatagramPacket(buffer,
+                    buffer.length);
+
+                try {
+                    socket.receive(request);
+                    requests.incrementAndGet();
+
+                    byte[] response = createResponse(request.getData());
+                    socket.send(new DatagramPacket(response, response.length,
+                        request.getSocketAddress()));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private byte[] createResponse(byte[] request) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DataOutputStream dout = new DataOutputStream(out);
+
+            dout.writeShort(0x0101); // BINDING_RESPONSE
+            dout.writeShort(12); // attributes length
+            dout.write(request, 4, 16); // cookie and transaction id
+
+            dout.writeShort(0x0020); // XOR_MAPPED_ADDRESS
+            dout.writeShort(8);
+            dout.writeShort(0x0001); // IP4
+            dout.writeShort(PUBLIC_PORT ^ (MAGIC_COOKIE >>> 16));
+
+            for (int i = 0; i < 4; i++)
+                dout.writeByte(PUBLIC_ADDRESS[i]
+                    ^ (MAGIC_COOKIE >>> (24 - i * 8)));
+
+            dout.close();
+            return out.toByteArray();
+        }
+    }
+
+    private FakeStunServer server;
+
+    private StunServiceImpl stunService;
+
+    private String serverAddress;
+
+    @Before
+    public void setUp() throws Exception {
+        List<InetAddress> addresses = NetworkingUtils
+            .getAllNonLoopbackLocalIPAddresses(false);
+
+        assumeTrue(!addresses.isEmpty());
+
+        serverAddress = addresses.get(0).getHostAddress();
+
+        server = new FakeStunServer();
+        server.start();
+
+        stunService = new StunServiceImpl();
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null)
+            server.shutdown();
+
+        if (stunService != null)
+            stunService.dispose();
+    }
+
+    @Test
+    public void testDiscovery() throws Exception {
+        Collection<InetSocketAddress> result = stunService.discover(
+            serverAddress, server.getPort(), 2000);
+
+        InetSocketAddress expected = new InetSocketAddress(
+            InetAddress.getByAddress(PUBLIC_ADDRESS), PUBLIC_PORT);
+
+        assertTrue("public address not discovered: " + result,
+            result.contains(expected));
+
+        assertTrue(stunService.getPublicIpAddresses().contains(expected));
+    }
+
+    @Test
+    public void testLastKnownAddressesAreKept() throws Exception {
+        int port = server.getPort();
+
+        stunService.discover(serverAddress, port, 2000);
+
+        assertTrue(server.requests.get() > 0);
+
+        server.shutdown();
+
+        Collection<InetSocketAddress> result = stunService.discover(
+            serverAddress, port, 500);
+
+        InetSocketAddress expected = new InetSocketAddress(
+            InetAddress.getByAddress(PUBLIC_ADDRESS), PUBLIC_PORT);
+
+        assertTrue("last known address was discarded: " + result,
+            result.contains(expected));
+    }
+
+    @Test
+    public void testDiscoverAsync() throws Exception {
+        Collection<InetSocketAddress> result = stunService.discoverAsync(
+            serverAddress, server.getPort(), 2000).get();
+
+        assertEquals(stunService.getPublicIpAddresses().size(), result.size());
+        assertTrue(!result.isEmpty());
+    }
+}
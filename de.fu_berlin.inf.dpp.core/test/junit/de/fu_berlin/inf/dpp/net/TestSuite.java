@@ -4,7 +4,8 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses({ JIDTest.class, RosterTrackerTest.class, UPnPTest.class })
+@Suite.SuiteClasses({ JIDTest.class, RosterTrackerTest.class,
+    StunServiceTest.class, UPnPTest.class })
 public class TestSuite {
     // the class remains completely empty,
     // being used only as a holder for the above annotations
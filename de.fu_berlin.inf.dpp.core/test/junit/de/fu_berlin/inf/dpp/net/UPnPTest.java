@@ -37,6 +37,7 @@ public class UPnPTest {
     private static class UPnPAccessStub implements IUPnPAccess {
         Collection<GatewayDevice> gatewaysToServe = new ArrayList<GatewayDevice>();
         Map<Integer, PortMappingEntry> portmappings = new HashMap<Integer, PortMappingEntry>();
+        int discoveries;
 
         /**
          * Adds a {@link GatewayDevice} object to the list of gateways to be
@@ -50,6 +51,7 @@ public class UPnPTest {
         public Collection<GatewayDevice> performDiscovery()
             throws SocketException, UnknownHostException, IOException,
             SAXException, ParserConfigurationException {
+            discoveries++;
             return gatewaysToServe;
         }
 
@@ -130,6 +132,24 @@ public class UPnPTest {
         assertEquals(testUpnpManager.getGateways(false).get(2), testGateway3);
     }
 
+    @Test
+    public void testDiscoveryIsCached() {
+
+        upnpAccess.addGatewayDevice(testGateway1);
+
+        assertEquals(1, testUpnpManager.getGateways(false).size());
+        assertEquals(1, upnpAccess.discoveries);
+
+        upnpAccess.addGatewayDevice(testGateway2);
+
+        assertEquals(1, testUpnpManager.getGateways(false).size());
+        assertEquals("cached gateways were not used", 1,
+            upnpAccess.discoveries);
+
+        assertEquals(2, testUpnpManager.getGateways(true).size());
+        assertEquals(2, upnpAccess.discoveries);
+    }
+
     @Test
     public void testAddAndRemovePortmapping() {
 
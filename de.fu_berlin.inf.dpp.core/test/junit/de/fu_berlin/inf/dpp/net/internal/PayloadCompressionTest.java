@@ -0,0 +1,74 @@
+package de.fu_berlin.inf.dpp.net.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+public class PayloadCompressionTest {
+
+    private static final String ACTIVITY = "<ados xmlns=\"de.fu_berlin.inf.dpp\">"
+        + "<payload class=\"ADOS\" v=\"SPXV1\" sid=\"4711\" seq=\"1\">"
+        + "<jupiterActivity source=\"alice%40junit%2FSaros\">"
+        + "<p i=\"3Fa2\" p=\"src%2FFoo.java\"/>"
+        + "<t class=\"vectorTime\" local=\"1\" remote=\"0\"/>"
+        + "<o class=\"insertOp\" position=\"101\" origin=\"101\">"
+        + "<text>x</text></o></jupiterActivity></payload></ados>";
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] payload = ACTIVITY.getBytes("UTF-8");
+
+        byte[] deflated = PayloadCompression.deflate(payload);
+
+        assertArrayEquals(payload, PayloadCompression.inflate(deflated));
+
+        assertTrue("dictionary is not used: " + deflated.length,
+            deflated.length < payload.length / 2);
+    }
+
+    @Test
+    public void testRoundTripLargePayload() throws IOException {
+        byte[] payload = new byte[100 * 1024];
+        new Random(0).nextBytes(payload);
+        Arrays.fill(payload, 0, 50 * 1024, (byte) 'a');
+
+        assertArrayEquals(payload,
+            PayloadCompression.inflate(PayloadCompression.deflate(payload)));
+    }
+
+    @Test
+    public void testInflateWithoutDictionary() throws IOException {
+        byte[] payload = ACTIVITY.getBytes("UTF-8");
+
+        Deflater compressor = new Deflater(Deflater.DEFLATED);
+        compressor.setInput(payload);
+        compressor.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+
+        while (!compressor.finished())
+            out.write(buf, 0, compressor.deflate(buf));
+
+        compressor.end();
+
+        assertArrayEquals(payload,
+            PayloadCompression.inflate(out.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInflateTruncatedPayload() throws IOException {
+        byte[] deflated = PayloadCompression.deflate(ACTIVITY
+            .getBytes("UTF-8"));
+
+        PayloadCompression.inflate(Arrays.copyOf(deflated,
+            deflated.length / 2));
+    }
+}
@@ -0,0 +1,133 @@
+package de.fu_berlin.inf.dpp.net.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TCPServerTest {
+
+    private static class BlockingHandler implements TCPServer.ClientHandler {
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private final CountDownLatch handled;
+
+        private BlockingHandler(int count) {
+            handled = new CountDownLatch(count);
+        }
+
+        @Override
+        public void clientAccepted(Socket client) {
+            handled.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private TCPServer server;
+
+    private InetAddress loopback;
+
+    private int port;
+
+    private final List<Socket> clients = new ArrayList<Socket>();
+
+    @Before
+    public void setUp() throws IOException {
+        loopback = InetAddress.getByName("127.0.0.1");
+        server = new TCPServer();
+        port = server.start(loopback, -40000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Socket client : clients)
+            client.close();
+
+        server.stop();
+    }
+
+    @Test
+    public void testClientsAboveLimitAreClosed() throws Exception {
+        final BlockingHandler handler = new BlockingHandler(
+            TCPServer.MAX_CONCURRENT_CLIENTS);
+
+        server.setClientHandler(handler);
+
+        try {
+            for (int i = 0; i < TCPServer.MAX_CONCURRENT_CLIENTS; i++)
+                connect();
+
+            assertTrue("clients below the limit were not handled",
+                handler.handled.await(10, TimeUnit.SECONDS));
+
+            final Socket rejected = connect();
+            rejected.setSoTimeout(10000);
+
+            assertEquals("client above the limit was not closed", -1,
+                rejected.getInputStream().read());
+        } finally {
+            handler.release.countDown();
+        }
+    }
+
+    @Test
+    public void testClientIsHandledAfterOtherClientFinished()
+        throws Exception {
+        final BlockingHandler first = new BlockingHandler(
+            TCPServer.MAX_CONCURRENT_CLIENTS);
+
+        server.setClientHandler(first);
+
+        for (int i = 0; i < TCPServer.MAX_CONCURRENT_CLIENTS; i++)
+            connect();
+
+        assertTrue(first.handled.await(10, TimeUnit.SECONDS));
+
+        first.release.countDown();
+
+        final BlockingHandler second = new BlockingHandler(1);
+
+        server.setClientHandler(second);
+
+        try {
+            // the threads of the first clients may not be idle yet
+            for (int i = 0; i < 50 && second.handled.getCount() > 0; i++) {
+                connect();
+                second.handled.await(100, TimeUnit.MILLISECONDS);
+            }
+
+            assertEquals("client was not handled", 0,
+                second.handled.getCount());
+        } finally {
+            second.release.countDown();
+        }
+    }
+
+    private Socket connect() throws IOException {
+        final Socket client = new Socket(loopback, port);
+        clients.add(client);
+        return client;
+    }
+}
@@ -0,0 +1,299 @@
+package de.fu_berlin.inf.dpp.net.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jmdns.ServiceInfo;
+
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.jivesoftware.smack.Connection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.net.ConnectionMode;
+import de.fu_berlin.inf.dpp.net.mdns.MDNSService;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+
+public class TCPTransportTest {
+
+    private static final JID ALICE = new JID("alice@localhost/Saros");
+
+    private static final JID BOB = new JID("bob@localhost/Saros");
+
+    private static class Listener implements IByteStreamConnectionListener {
+
+        private final CountDownLatch incoming = new CountDownLatch(1);
+
+        private volatile IByteStreamConnection connection;
+
+        private volatile String connectionID;
+
+        private volatile JID peer;
+
+        @Override
+        public void receive(BinaryXMPPExtension extension) {
+            // NOP
+        }
+
+        @Override
+        public void connectionChanged(String connectionID, JID peer,
+            IByteStreamConnection connection, boolean incomingRequest) {
+            this.connectionID = connectionID;
+            this.peer = peer;
+            this.connection = connection;
+            incoming.countDown();
+        }
+
+        @Override
+        public void connectionClosed(String connectionID, JID peer,
+            IByteStreamConnection connection) {
+            // NOP
+        }
+    }
+
+    private TCPTransport alice;
+
+    private TCPTransport bob;
+
+    private Listener bobListener;
+
+    private int bobPort;
+
+    private final List<ServiceInfo> servicesSeenByAlice = new ArrayList<ServiceInfo>();
+
+    private final List<ServiceInfo> servicesSeenByBob = new ArrayList<ServiceInfo>();
+
+    @Before
+    public void setUp() throws Exception {
+        Capture<Integer> port = new Capture<Integer>();
+
+        bobListener = new Listener();
+        bob = new TCPTransport(createMDNSServiceMock(servicesSeenByBob, port),
+            new TCPServer());
+        bob.initialize(createConnectionMock(BOB), bobListener);
+        bobPort = port.getValue();
+
+        alice = new TCPTransport(createMDNSServiceMock(servicesSeenByAlice,
+            new Capture<Integer>()), new TCPServer());
+        alice.initialize(createConnectionMock(ALICE), new Listener());
+    }
+
+    @After
+    public void tearDown() {
+        alice.uninitialize();
+        bob.uninitialize();
+    }
+
+    @Test
+    public void testConnectToAuthenticatedPeer() throws Exception {
+        byte[] secret = TCPTransport.createSecret();
+
+        announce();
+
+        alice.addPeer(BOB, bob.getServiceName(), secret);
+        bob.addPeer(ALICE, alice.getServiceName(), secret);
+
+        assertTrue(alice.isReachable(BOB));
+
+        IByteStreamConnection connection = alice.connect("test", BOB);
+
+        try {
+            assertEquals(ConnectionMode.TCP, connection.getMode());
+            assertEquals(BOB, connection.getPeer());
+
+            assertTrue("incoming connection was not announced",
+                bobListener.incoming.await(10, TimeUnit.SECONDS));
+
+            assertEquals("test", bobListener.connectionID);
+            assertEquals(ALICE, bobListener.peer);
+            assertEquals(ConnectionMode.TCP,
+                bobListener.connection.getMode());
+        } finally {
+            connection.close();
+
+            if (bobListener.connection != null)
+                bobListener.connection.close();
+        }
+    }
+
+    @Test
+    public void testConnectWithoutSecretFails() throws Exception {
+        announce();
+
+        assertFalse(alice.isReachable(BOB));
+
+        try {
+            alice.connect("test", BOB);
+            fail("connection without a negotiated secret succeeded");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConnectionFromUnknownPeerIsRejected() throws Exception {
+        announce();
+
+        alice.addPeer(BOB, bob.getServiceName(), TCPTransport.createSecret());
+
+        try {
+            alice.connect("test", BOB).close();
+            fail("connection from an unknown peer was accepted");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals(1, bobListener.incoming.getCount());
+    }
+
+    @Test
+    public void testConnectionWithWrongSecretIsRejected() throws Exception {
+        announce();
+
+        /*
+         * Bob may be an impostor that announced the service name of the real
+         * Bob and does not know the secret
+         */
+        alice.addPeer(BOB, bob.getServiceName(), TCPTransport.createSecret());
+        bob.addPeer(ALICE, alice.getServiceName(), TCPTransport.createSecret());
+
+        try {
+            alice.connect("test", BOB).close();
+            fail("connection with a wrong secret was accepted");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals(1, bobListener.incoming.getCount());
+    }
+
+    @Test
+    public void testHandshakeDoesNotRevealJID() throws Exception {
+        final ServerSocket eavesdropper = new ServerSocket(0, 1,
+            InetAddress.getByName("127.0.0.1"));
+
+        final ByteArrayOutputStream handshake = new ByteArrayOutputStream();
+
+        Thread listener = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Socket client = eavesdropper.accept();
+                    client.setSoTimeout(1000);
+                    try {
+                        InputStream in = client.getInputStream();
+                        byte[] buffer = new byte[1024];
+                        int read;
+                        while ((read = in.read(buffer)) > 0)
+                            handshake.write(buffer, 0, read);
+                    } catch (IOException e) {
+                        // timeout, the dialer waits for the challenge
+                    } finally {
+                        client.close();
+                    }
+                } catch (IOException e) {
+                    // test fails below
+                }
+            }
+        });
+
+        listener.start();
+
+        try {
+            servicesSeenByAlice.add(createServiceInfo("eavesdropper",
+                eavesdropper.getInetAddress(), eavesdropper.getLocalPort()));
+
+            alice.addPeer(BOB, "eavesdropper", TCPTransport.createSecret());
+
+            try {
+                alice.connect("test", BOB).close();
+                fail("connection to a side without the secret succeeded");
+            } catch (IOException e) {
+                // expected
+            }
+
+            listener.join(10000);
+        } finally {
+            eavesdropper.close();
+        }
+
+        String content = new String(handshake.toByteArray(), "ISO-8859-1");
+
+        assertTrue("nothing was received", content.contains("test"));
+        assertFalse("the JID was sent in plaintext", content.contains("alice"));
+    }
+
+    private void announce() throws IOException {
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+
+        servicesSeenByAlice.add(createServiceInfo(bob.getServiceName(),
+            loopback, bobPort));
+
+        servicesSeenByBob.add(createServiceInfo(alice.getServiceName(),
+            loopback, 1));
+    }
+
+    private static MDNSService createMDNSServiceMock(
+        final List<ServiceInfo> services, Capture<Integer> port) {
+
+        MDNSService service = EasyMock.createNiceMock(MDNSService.class);
+
+        service.configure(EasyMock.eq(TCPTransport.SERVICE_TYPE),
+            EasyMock.anyObject(String.class), EasyMock.captureInt(port),
+            EasyMock.<Map<String, String>> anyObject());
+
+        EasyMock.expect(service.getResolvedServices()).andStubAnswer(
+            new IAnswer<List<ServiceInfo>>() {
+                @Override
+                public List<ServiceInfo> answer() throws Throwable {
+                    return new ArrayList<ServiceInfo>(services);
+                }
+            });
+
+        EasyMock.replay(service);
+        return service;
+    }
+
+    private static ServiceInfo createServiceInfo(String name,
+        InetAddress address, int port) {
+        ServiceInfo info = EasyMock.createNiceMock(ServiceInfo.class);
+
+        EasyMock.expect(info.getName()).andStubReturn(name);
+
+        EasyMock.expect(
+            info.getPropertyString(TCPTransport.PROPERTY_CAPABILITY))
+            .andStubReturn(TCPTransport.CAPABILITY_SESSION);
+
+        EasyMock.expect(info.getInetAddresses()).andStubReturn(
+            new InetAddress[] { address });
+
+        EasyMock.expect(info.getPort()).andStubReturn(port);
+
+        EasyMock.replay(info);
+        return info;
+    }
+
+    private static Connection createConnectionMock(JID jid) {
+        Connection connection = EasyMock.createNiceMock(Connection.class);
+        EasyMock.expect(connection.getUser()).andStubReturn(jid.toString());
+        EasyMock.replay(connection);
+        return connection;
+    }
+}
@@ -5,7 +5,10 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({ BinaryChannelConnectionTest.class,
-    ConnectionPoolTest.class, DataTransferManagerTest.class })
+    ConnectionPoolTest.class, DataTransferManagerTest.class,
+    PayloadCompressionTest.class, TCPServerTest.class,
+    TCPTransportTest.class,
+    XMPPReceiverTest.class })
 public class TestSuite {
     // the class remains completely empty,
     // being used only as a holder for the above annotations
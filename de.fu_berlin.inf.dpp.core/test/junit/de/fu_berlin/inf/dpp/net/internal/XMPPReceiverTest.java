@@ -0,0 +1,130 @@
+package de.fu_berlin.inf.dpp.net.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.filter.PacketFilter;
+import org.jivesoftware.smack.packet.DefaultPacketExtension;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Packet;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.net.DispatchThreadContext;
+import de.fu_berlin.inf.dpp.net.ExtensionPacketFilter;
+import de.fu_berlin.inf.dpp.net.xmpp.XMPPConnectionService;
+
+public class XMPPReceiverTest {
+
+    private static final String NAMESPACE = "junit";
+
+    private static class RecordingListener implements PacketListener {
+        private final List<Packet> packets = new ArrayList<Packet>();
+
+        @Override
+        public void processPacket(Packet packet) {
+            packets.add(packet);
+        }
+    }
+
+    private XMPPReceiver receiver;
+
+    @Before
+    public void setUp() {
+        DispatchThreadContext dispatchThreadContext = new DispatchThreadContext() {
+            @Override
+            public void executeAsDispatch(Runnable runnable) {
+                runnable.run();
+            }
+        };
+
+        XMPPConnectionService connectionService = EasyMock
+            .createNiceMock(XMPPConnectionService.class);
+
+        EasyMock.replay(connectionService);
+
+        receiver = new XMPPReceiver(dispatchThreadContext, connectionService);
+    }
+
+    @Test
+    public void testRouteByExtension() {
+        RecordingListener fooListener = new RecordingListener();
+        RecordingListener barListener = new RecordingListener();
+        RecordingListener allListener = new RecordingListener();
+
+        receiver.addPacketListener(fooListener, new ExtensionPacketFilter(
+            "foo", NAMESPACE));
+        receiver.addPacketListener(barListener, new ExtensionPacketFilter(
+            "bar", NAMESPACE));
+        receiver.addPacketListener(allListener, null);
+
+        receiver.processPacket(createPacket("foo"));
+        receiver.processPacket(createPacket("bar"));
+        receiver.processPacket(createPacket("baz"));
+        receiver.processPacket(createPacket("foo", "bar"));
+
+        assertEquals(2, fooListener.packets.size());
+        assertEquals(2, barListener.packets.size());
+        assertEquals(4, allListener.packets.size());
+    }
+
+    @Test
+    public void testAdditionalConditionIsEvaluated() {
+        RecordingListener listener = new RecordingListener();
+
+        receiver.addPacketListener(listener, new ExtensionPacketFilter("foo",
+            NAMESPACE).and(new PacketFilter() {
+            @Override
+            public boolean accept(Packet packet) {
+                return "alice@junit".equals(packet.getFrom());
+            }
+        }));
+
+        Packet packet = createPacket("foo");
+
+        receiver.processPacket(packet);
+        assertEquals(0, listener.packets.size());
+
+        packet.setFrom("alice@junit");
+
+        receiver.processPacket(packet);
+        assertEquals(1, listener.packets.size());
+    }
+
+    @Test
+    public void testRemovePacketListener() {
+        RecordingListener fooListener = new RecordingListener();
+        RecordingListener otherListener = new RecordingListener();
+
+        receiver.addPacketListener(fooListener, new ExtensionPacketFilter(
+            "foo", NAMESPACE));
+        receiver.addPacketListener(otherListener, new PacketFilter() {
+            @Override
+            public boolean accept(Packet packet) {
+                return true;
+            }
+        });
+
+        receiver.removePacketListener(fooListener);
+        receiver.removePacketListener(otherListener);
+
+        receiver.processPacket(createPacket("foo"));
+
+        assertEquals(0, fooListener.packets.size());
+        assertEquals(0, otherListener.packets.size());
+    }
+
+    private static Packet createPacket(String... elementNames) {
+        Packet packet = new Message();
+
+        for (String elementName : elementNames)
+            packet.addExtension(new DefaultPacketExtension(elementName,
+                NAMESPACE));
+
+        return packet;
+    }
+}
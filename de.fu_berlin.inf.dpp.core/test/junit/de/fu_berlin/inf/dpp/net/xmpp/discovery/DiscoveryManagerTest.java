@@ -0,0 +1,229 @@
+package de.fu_berlin.inf.dpp.net.xmpp.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.jivesoftware.smack.Connection;
+import org.jivesoftware.smack.PacketCollector;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.Roster;
+import org.jivesoftware.smack.RosterEntry;
+import org.jivesoftware.smack.filter.PacketFilter;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smackx.entitycaps.EntityCapsManager;
+import org.jivesoftware.smackx.entitycaps.packet.CapsExtension;
+import org.jivesoftware.smackx.packet.DiscoverInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.net.ConnectionState;
+import de.fu_berlin.inf.dpp.net.xmpp.IConnectionListener;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.net.xmpp.XMPPConnectionService;
+import de.fu_berlin.inf.dpp.net.xmpp.roster.IRosterListener;
+import de.fu_berlin.inf.dpp.net.xmpp.roster.RosterTracker;
+
+public class DiscoveryManagerTest {
+
+    private static final String FEATURE = "urn:saros";
+
+    private static final String OTHER_FEATURE = "urn:other";
+
+    private static final JID ALICE = new JID("alice@example.org/Saros");
+
+    private static final JID BOB = new JID("bob@example.org/Saros");
+
+    private static final String NODE = "http://saros-project.org";
+
+    private static final String KNOWN_VER = "known";
+
+    static {
+        DiscoverInfo info = new DiscoverInfo();
+        info.addFeature(FEATURE);
+
+        EntityCapsManager.addDiscoverInfoByNode(NODE + "#" + KNOWN_VER, info);
+    }
+
+    private DiscoveryManager discoveryManager;
+
+    private IRosterListener rosterListener;
+
+    private List<PacketListener> packetListeners;
+
+    private List<PacketFilter> packetFilters;
+
+    /** Number of service discoveries that were sent to the server. */
+    private AtomicInteger discoveries;
+
+    @Before
+    public void setUp() {
+        discoveries = new AtomicInteger();
+
+        DiscoverInfo result = new DiscoverInfo();
+        result.setType(IQ.Type.RESULT);
+        result.addFeature(FEATURE);
+
+        final PacketCollector collector = EasyMock
+            .createNiceMock(PacketCollector.class);
+
+        EasyMock.expect(collector.nextResult(EasyMock.anyLong()))
+            .andReturn(result).anyTimes();
+
+        Connection connection = EasyMock.createNiceMock(Connection.class);
+
+        Capture<PacketListener> listeners = new Capture<PacketListener>(
+            CaptureType.ALL);
+
+        Capture<PacketFilter> filters = new Capture<PacketFilter>(
+            CaptureType.ALL);
+
+        connection.addPacketListener(EasyMock.capture(listeners),
+            EasyMock.capture(filters));
+
+        EasyMock.expectLastCall().anyTimes();
+
+        EasyMock.expect(connection.getUser())
+            .andReturn("carl@example.org/Saros").anyTimes();
+
+        EasyMock.expect(
+            connection.createPacketCollector(EasyMock
+                .anyObject(PacketFilter.class)))
+            .andAnswer(new IAnswer<PacketCollector>() {
+                @Override
+                public PacketCollector answer() throws Throwable {
+                    discoveries.incrementAndGet();
+                    return collector;
+                }
+            }).anyTimes();
+
+        XMPPConnectionService connectionService = EasyMock
+            .createNiceMock(XMPPConnectionService.class);
+
+        Capture<IConnectionListener> connectionListener = new Capture<IConnectionListener>();
+
+        connectionService.addListener(EasyMock.capture(connectionListener));
+
+        EasyMock.expect(connectionService.getConnection())
+            .andReturn(connection).anyTimes();
+
+        Capture<IRosterListener> listener = new Capture<IRosterListener>();
+
+        RosterTracker rosterTracker = EasyMock
+            .createNiceMock(RosterTracker.class);
+
+        rosterTracker.addRosterListener(EasyMock.capture(listener));
+
+        EasyMock.replay(collector, connection, connectionService,
+            rosterTracker);
+
+        discoveryManager = new DiscoveryManager(connectionService,
+            rosterTracker);
+
+        rosterListener = listener.getValue();
+
+        // let Smack install its packet listeners on the connection
+        connectionListener.getValue().connectionStateChanged(connection,
+            ConnectionState.CONNECTING);
+
+        packetListeners = listeners.getValues();
+        packetFilters = filters.getValues();
+    }
+
+    @Test
+    public void testKnownCapsAreAnsweredFromCache() {
+        receive(presence(ALICE, KNOWN_VER, "sha-1"));
+
+        assertEquals(Boolean.TRUE,
+            discoveryManager.isFeatureSupported(ALICE, FEATURE));
+
+        assertEquals(Boolean.FALSE,
+            discoveryManager.isFeatureSupported(ALICE, OTHER_FEATURE));
+
+        assertEquals(Boolean.TRUE,
+            discoveryManager.queryFeatureSupport(ALICE, FEATURE, false));
+
+        assertEquals("no service discovery must be performed", 0,
+            discoveries.get());
+    }
+
+    @Test
+    public void testUnknownCapsAreNotAnswered() {
+        receive(presence(ALICE, "unknown", "sha-1"));
+
+        assertNull(discoveryManager.isFeatureSupported(ALICE, FEATURE));
+    }
+
+    @Test
+    public void testCapsAreForgottenWhenGoingOffline() {
+        receive(presence(ALICE, KNOWN_VER, "sha-1"));
+
+        Presence unavailable = new Presence(Presence.Type.unavailable);
+        unavailable.setFrom(ALICE.toString());
+
+        receive(unavailable);
+
+        assertNull(discoveryManager.isFeatureSupported(ALICE, FEATURE));
+    }
+
+    @Test
+    public void testRosterChangeKeepsUnchangedContacts() {
+        Presence available = new Presence(Presence.Type.available);
+        available.setFrom(BOB.toString());
+
+        receive(available);
+
+        assertEquals(Boolean.TRUE,
+            discoveryManager.queryFeatureSupport(BOB, FEATURE, false));
+
+        assertEquals(1, discoveries.get());
+
+        Roster roster = EasyMock.createNiceMock(Roster.class);
+
+        EasyMock.expect(roster.getEntry(BOB.getBase()))
+            .andReturn(EasyMock.createNiceMock(RosterEntry.class));
+
+        EasyMock.replay(roster);
+
+        rosterListener.rosterChanged(roster);
+
+        assertEquals(Boolean.TRUE,
+            discoveryManager.isFeatureSupported(BOB, FEATURE));
+
+        // BOB was removed from the roster
+        roster = EasyMock.createNiceMock(Roster.class);
+        EasyMock.replay(roster);
+
+        rosterListener.rosterChanged(roster);
+
+        assertNull(discoveryManager.isFeatureSupported(BOB, FEATURE));
+    }
+
+    /**
+     * Delivers the packet like the connection and the roster would do.
+     */
+    private void receive(Packet packet) {
+        for (int i = 0; i < packetListeners.size(); i++) {
+            if (packetFilters.get(i).accept(packet))
+                packetListeners.get(i).processPacket(packet);
+        }
+
+        if (packet instanceof Presence)
+            rosterListener.presenceChanged((Presence) packet);
+    }
+
+    private static Presence presence(JID from, String ver, String hash) {
+        Presence presence = new Presence(Presence.Type.available);
+        presence.setFrom(from.toString());
+        presence.addExtension(new CapsExtension(NODE, ver, hash));
+        return presence;
+    }
+}
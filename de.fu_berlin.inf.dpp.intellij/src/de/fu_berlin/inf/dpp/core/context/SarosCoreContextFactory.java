@@ -36,6 +36,7 @@ import de.fu_berlin.inf.dpp.core.net.business.CancelProjectSharingHandler;
 import de.fu_berlin.inf.dpp.core.net.business.InvitationHandler;
 import de.fu_berlin.inf.dpp.core.net.business.LeaveAndKickHandler;
 import de.fu_berlin.inf.dpp.core.vcs.NullVCSProviderFactoryImpl;
+import de.fu_berlin.inf.dpp.negotiation.FileListSnapshotStore;
 import de.fu_berlin.inf.dpp.negotiation.hooks.SessionNegotiationHookManager;
 import de.fu_berlin.inf.dpp.net.DispatchThreadContext;
 import de.fu_berlin.inf.dpp.net.IReceiver;
@@ -45,6 +46,8 @@ import de.fu_berlin.inf.dpp.net.internal.IBBTransport;
 import de.fu_berlin.inf.dpp.net.internal.ITransport;
 import de.fu_berlin.inf.dpp.net.internal.Socks5Transport;
 import de.fu_berlin.inf.dpp.net.internal.TCPServer;
+import de.fu_berlin.inf.dpp.net.internal.TCPTransport;
+import de.fu_berlin.inf.dpp.net.internal.TCPTransportNegotiationHook;
 import de.fu_berlin.inf.dpp.net.internal.XMPPReceiver;
 import de.fu_berlin.inf.dpp.net.internal.XMPPTransmitter;
 import de.fu_berlin.inf.dpp.net.mdns.MDNSService;
@@ -91,6 +94,7 @@ public class SarosCoreContextFactory extends AbstractSarosContextFactory {
         Component.create(SingleUserChatService.class),
 
         Component.create(XMPPAccountStore.class),
+        Component.create(FileListSnapshotStore.class),
 
         // Invitation hooks
         Component.create(SessionNegotiationHookManager.class),
@@ -118,6 +122,8 @@ public class SarosCoreContextFactory extends AbstractSarosContextFactory {
         Component.create(XMPPConnectionService.class),
         Component.create(MDNSService.class),
         Component.create(TCPServer.class),
+        Component.create(TCPTransport.class),
+        Component.create(TCPTransportNegotiationHook.class),
         Component.create(IStunService.class, StunServiceImpl.class),
 
         Component.create(SubscriptionHandler.class),
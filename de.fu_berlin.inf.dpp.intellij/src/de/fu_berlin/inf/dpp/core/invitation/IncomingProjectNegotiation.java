@@ -19,9 +19,11 @@ import de.fu_berlin.inf.dpp.negotiation.DecompressArchiveTask;
 import de.fu_berlin.inf.dpp.negotiation.FileList;
 import de.fu_berlin.inf.dpp.negotiation.FileListDiff;
 import de.fu_berlin.inf.dpp.negotiation.FileListFactory;
+import de.fu_berlin.inf.dpp.negotiation.FileListSnapshotStore;
 import de.fu_berlin.inf.dpp.negotiation.ProcessTools.CancelOption;
 import de.fu_berlin.inf.dpp.negotiation.ProjectNegotiation;
 import de.fu_berlin.inf.dpp.negotiation.ProjectNegotiationData;
+import de.fu_berlin.inf.dpp.negotiation.ProjectTaskExecutor;
 import de.fu_berlin.inf.dpp.net.PacketCollector;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
 import de.fu_berlin.inf.dpp.observables.FileReplacementInProgressObservable;
@@ -42,9 +44,14 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * TODO: Refactor when merging with Saros/E IPN.
@@ -62,6 +69,9 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
 
     @Inject
     private IChecksumCache checksumCache;
+
+    @Inject
+    private FileListSnapshotStore fileListSnapshots;
     @Inject
     private IWorkspace workspace;
     @Inject
@@ -143,8 +153,10 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
 
         fileReplacementInProgressObservable.startReplacement();
 
+        boolean replacementInProgress = true;
+
         ArchiveTransferListener archiveTransferListener = new ArchiveTransferListener(
-            ARCHIVE_TRANSFER_ID + getID());
+            ARCHIVE_TRANSFER_ID + getID() + PATH_DELIMITER);
 
         Exception exception = null;
 
@@ -194,43 +206,33 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
                     new StartActivityQueuingResponse(getSessionID(), getID()))
             );
 
-            checkCancellation(CancelOption.NOTIFY_PEER);
+            fileReplacementInProgressObservable.replacementDone();
+            replacementInProgress = false;
 
-            boolean filesMissing = false;
+            checkCancellation(CancelOption.NOTIFY_PEER);
 
-            for (FileList list : missingFiles)
-                filesMissing |= !list.getPaths().isEmpty();
+            final Set<String> projectsToReceive = new HashSet<String>();
 
-            // Host/Inviter decided to transmit files with one big archive
-            if (filesMissing)
-                acceptArchive(archiveTransferListener, monitor);
+            for (FileList list : missingFiles) {
+                if (!list.getPaths().isEmpty())
+                    projectsToReceive.add(list.getProjectID());
+            }
 
             /*
-             * We are finished with the exchanging process. Add all projects
-             * resources to the session.
+             * The projects that are already synchronized can be used right
+             * away. The host sends the files of every other project in its own
+             * archive and each of these projects is added to the session as
+             * soon as its archive is unpacked.
              */
-            for (Entry<String, IProject> entry : localProjectMapping
-                .entrySet()) {
-
-                final String projectID = entry.getKey();
-                final IProject project = entry.getValue();
-
-                List<IResource> resources = null;
-
-                if (isPartialRemoteProject(projectID)) {
-
-                    final List<String> paths = getRemoteFileList(projectID)
-                        .getPaths();
-
-                    resources = new ArrayList<IResource>(paths.size());
+            for (final String projectID : localProjectMapping.keySet()) {
+                if (!projectsToReceive.contains(projectID))
+                    addProjectToSession(projectID);
+            }
 
-                    for (final String path : paths)
-                        resources.add(getResource(project, path));
-                }
+            if (!projectsToReceive.isEmpty())
+                acceptArchives(archiveTransferListener, projectsToReceive,
+                    monitor);
 
-                session.addSharedResources(project, projectID, resources);
-                sessionManager.projectAdded(projectID);
-            }
         } catch (Exception e) {
             exception = e;
         } finally {
@@ -244,7 +246,10 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
                 fileTransferManager
                     .removeFileTransferListener(archiveTransferListener);
 
-            fileReplacementInProgressObservable.replacementDone();
+            archiveTransferListener.cancelTransfers();
+
+            if (replacementInProgress)
+                fileReplacementInProgressObservable.replacementDone();
 
             deleteCollectors();
             monitor.done();
@@ -262,40 +267,87 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
     }
 
     /**
-     * Accepts the archive with all missing files and decompress it.
+     * Adds the resources of the project with the given ID to the session and
+     * flushes the activities that were queued for it.
      */
-    private void acceptArchive(ArchiveTransferListener archiveTransferListener,
-        IProgressMonitor monitor) throws IOException,
-        SarosCancellationException {
+    private void addProjectToSession(final String projectID) {
+        final IProject project = localProjectMapping.get(projectID);
 
-        // waiting for the big archive to come in
+        List<IResource> resources = null;
 
-        monitor.beginTask("Receiving project files...", 100);
+        if (isPartialRemoteProject(projectID)) {
 
-        File archiveFile = receiveArchive(archiveTransferListener, getID(),
-            new SubProgressMonitor(monitor, 50));
+            final List<String> paths = getRemoteFileList(projectID).getPaths();
 
-        /*
-         * FIXME at this point it makes no sense to report the cancellation to
-         * the remote side, because his negotiation is already finished !
-         */
+            resources = new ArrayList<IResource>(paths.size());
 
-        try {
-            unpackArchive(archiveFile, new SubProgressMonitor(monitor, 50));
-            monitor.done();
-        } finally {
-            if (archiveFile != null) {
-                boolean result = archiveFile.delete();
-                if (!result) {
+            for (final String path : paths)
+                resources.add(getResource(project, path));
+        }
+
+        session.addSharedResources(project, projectID, resources);
+        sessionManager.projectAdded(projectID);
+
+        session.disableQueuing(project);
+    }
+
+    /**
+     * Accepts the archives of the given projects in the order they arrive.
+     * Every project is decompressed and added to the session as soon as its
+     * archive is received, while the archives of the remaining projects are
+     * still transferred.
+     *
+     * @param projectIDs
+     *            the IDs of the projects whose archives are expected
+     */
+    private void acceptArchives(
+        ArchiveTransferListener archiveTransferListener,
+        Set<String> projectIDs, IProgressMonitor monitor)
+        throws IOException, SarosCancellationException {
+
+        final Set<String> pendingProjectIDs = new HashSet<String>(projectIDs);
+
+        monitor.beginTask("Receiving project files...",
+            projectIDs.size() * 100);
+
+        while (!pendingProjectIDs.isEmpty()) {
+            final ArchiveTransfer transfer = awaitArchive(
+                archiveTransferListener, monitor);
+
+            final String projectID = transfer.getProjectID();
+
+            try {
+                if (!pendingProjectIDs.remove(projectID))
+                    throw new IOException("received unexpected archive for "
+                        + "project with id " + projectID);
+
+                receiveArchive(transfer, new SubProgressMonitor(monitor, 50));
+
+                /*
+                 * FIXME if this was the last archive it makes no sense to
+                 * report the cancellation to the remote side, because his
+                 * negotiation is already finished !
+                 */
+                unpackArchive(transfer.getArchive(), projectID,
+                    new SubProgressMonitor(monitor, 50));
+            } finally {
+                final File archiveFile = transfer.getArchive();
+
+                if (archiveFile.exists() && !archiveFile.delete()) {
                     LOG.warn("could not delete archive File "
                         + archiveFile.getAbsolutePath());
                 }
             }
+
+            addProjectToSession(projectID);
         }
+
+        monitor.done();
     }
 
     /**
-     * calculates all the files the host/inviter has to send for synchronization
+     * calculates all the files the host/inviter has to send for synchronization.
+     * The required files of the projects are computed concurrently.
      *
      * @param projectMapping
      *            projectID => projectName (in local workspace)
@@ -305,17 +357,14 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
         IProgressMonitor monitor) throws SarosCancellationException,
         IOException {
 
-        monitor.beginTask(null, 100);
-        int numberOfLoops = projectMapping.size();
-        List<FileList> missingFiles = new ArrayList<FileList>();
+        monitor.beginTask(null, projectMapping.size() * MONITOR_WORK_SCALE);
 
-  /*
-         * this for loop sets up all the projects needed for the session and
-         * computes the missing files.
+        final Map<String, FileList> remoteFileLists = new HashMap<String, FileList>();
+
+        /*
+         * this for loop sets up all the projects needed for the session
          */
         for (Entry<String, IProject> entry : projectMapping.entrySet()) {
-            SubProgressMonitor lMonitor = new SubProgressMonitor(monitor,
-                100 / numberOfLoops);
 
             checkCancellation(CancelOption.NOTIFY_PEER);
 
@@ -339,25 +388,40 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
                 );
             }
 
-            VCSProvider vcs = null;
-
             localProjectMapping.put(projectID, project);
+            remoteFileLists.put(projectID, projectInfo.getFileList());
+        }
 
-            checkCancellation(CancelOption.NOTIFY_PEER);
+        checkCancellation(CancelOption.NOTIFY_PEER);
+
+        /*
+         * computes the missing files, a large project does not delay the
+         * computation of the other projects
+         */
+        List<FileList> missingFiles = ProjectTaskExecutor.execute(
+            new ArrayList<String>(projectMapping.keySet()),
+            new ProjectTaskExecutor.Task<String, FileList>() {
+                @Override
+                public FileList run(String projectID,
+                    IProgressMonitor projectMonitor) throws IOException,
+                    SarosCancellationException {
 
-            LOG.debug("compute required Files for project " + project.getName()
-                + " with ID: " + projectID);
+                    IProject project = localProjectMapping.get(projectID);
 
-            FileList requiredFiles = computeRequiredFiles(project,
-                projectInfo.getFileList(), projectID, vcs,
-                new SubProgressMonitor(lMonitor, MONITOR_WORK_SCALE));
+                    VCSProvider vcs = null;
 
-            requiredFiles.setProjectID(projectID);
-            checkCancellation(CancelOption.NOTIFY_PEER);
-            missingFiles.add(requiredFiles);
+                    LOG.debug("compute required Files for project "
+                        + project.getName() + " with ID: " + projectID);
 
-            lMonitor.done();
-        }
+                    FileList requiredFiles = computeRequiredFiles(project,
+                        remoteFileLists.get(projectID), projectID, vcs,
+                        projectMonitor);
+
+                    requiredFiles.setProjectID(projectID);
+                    checkCancellation(CancelOption.NOTIFY_PEER);
+                    return requiredFiles;
+                }
+            }, monitor, MONITOR_WORK_SCALE);
 
         monitor.done();
         return missingFiles;
@@ -427,11 +491,20 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
 
         monitor.beginTask("Compute required Files...", 1 * MONITOR_WORK_SCALE);
 
-        FileList localFileList = FileListFactory
-            .createFileList(project, null, checksumCache, provider,
-                new SubProgressMonitor(monitor, 1 * MONITOR_WORK_SCALE,
-                    SubProgressMonitor.SUPPRESS_BEGINTASK)
-            );
+        FileList localFileList;
+
+        try {
+            localFileList = FileListFactory
+                .createFileList(project, null, checksumCache, fileListSnapshots,
+                    provider, new SubProgressMonitor(monitor,
+                        1 * MONITOR_WORK_SCALE,
+                        SubProgressMonitor.SUPPRESS_BEGINTASK)
+                );
+        } catch (OperationCanceledException e) {
+            LocalCancellationException canceled = new LocalCancellationException();
+            canceled.initCause(e);
+            throw canceled;
+        }
 
         FileListDiff filesToSynchronize = computeDiff(localFileList,
             remoteFileList, project, projectID);
@@ -514,15 +587,13 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
         }
     }
 
-    private void unpackArchive(final File archiveFile,
+    private void unpackArchive(final File archiveFile, final String projectID,
         final IProgressMonitor monitor) throws LocalCancellationException,
         IOException {
 
         final Map<String, de.fu_berlin.inf.dpp.filesystem.IProject> projectMapping = new HashMap<String, de.fu_berlin.inf.dpp.filesystem.IProject>();
 
-        for (Entry<String, IProject> entry : localProjectMapping.entrySet())
-            projectMapping.put(entry.getKey(), entry.getValue());
-
+        projectMapping.put(projectID, localProjectMapping.get(projectID));
 
         final DecompressArchiveTask decompressTask = new DecompressArchiveTask(
             archiveFile, projectMapping, PATH_DELIMITER, monitor);
@@ -539,11 +610,20 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
          * after it finished!
          */
 
+        /*
+         * the replaced files must not be reported as local changes, this
+         * suppresses the local changes of the projects that are already added
+         * to the session for the time of the decompression too
+         */
+        fileReplacementInProgressObservable.startReplacement();
+
         try {
             workspace.run(decompressTask);
         } catch (OperationCanceledException e) {
             throw new LocalCancellationException(null,
                 CancelOption.DO_NOT_NOTIFY_PEER);
+        } finally {
+            fileReplacementInProgressObservable.replacementDone();
         }
 
         LOG.debug(String.format("unpacked archive in %d s",
@@ -589,64 +669,57 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
         startActivityQueuingRequestCollector.cancel();
     }
 
-    private File receiveArchive(
-        ArchiveTransferListener archiveTransferListener, String transferID,
+    /**
+     * Waits until the host started the transfer of the next archive.
+     */
+    private ArchiveTransfer awaitArchive(
+        ArchiveTransferListener archiveTransferListener,
         IProgressMonitor monitor) throws IOException,
         SarosCancellationException {
 
-        monitor.beginTask("Receiving archive file...", 100);
         LOG.debug("waiting for incoming archive stream request");
 
         monitor
             .subTask("Host is compressing project files. Waiting for the archive file...");
 
         try {
-            while (!archiveTransferListener.hasReceived()) {
+            while (true) {
                 checkCancellation(CancelOption.NOTIFY_PEER);
-                Thread.sleep(200);
+
+                final ArchiveTransfer transfer = archiveTransferListener
+                    .nextTransfer(200);
+
+                if (transfer != null)
+                    return transfer;
             }
         } catch (InterruptedException e) {
             monitor.setCanceled(true);
-            monitor.done();
             Thread.currentThread().interrupt();
             throw new LocalCancellationException();
         }
+    }
 
-        monitor.subTask("Receiving archive file...");
-
-        LOG.debug(this + " : receiving archive");
-
-        IncomingFileTransfer transfer = archiveTransferListener.getRequest()
-            .accept();
+    /**
+     * Waits until the given archive is completely received.
+     */
+    private void receiveArchive(ArchiveTransfer transfer,
+        IProgressMonitor monitor) throws IOException,
+        SarosCancellationException {
 
-        File archiveFile = File.createTempFile(
-            "saros_archive_" + System.currentTimeMillis(), null);
+        monitor.beginTask("Receiving archive file...", 100);
 
-        boolean transferFailed = true;
+        LOG.debug(this + " : receiving archive of project "
+            + transfer.getProjectID());
 
         try {
-            transfer.recieveFile(archiveFile);
-
-            monitorFileTransfer(transfer, monitor);
-            transferFailed = false;
-        } catch (XMPPException e) {
-            throw new IOException(e.getMessage(), e.getCause());
+            monitorFileTransfer(transfer.getTransfer(), monitor);
         } finally {
-            if (transferFailed) {
-                boolean result = archiveFile.delete();
-                if (!result) {
-                    LOG.warn("could not delete archive File "
-                        + archiveFile.getAbsolutePath());
-                }
-            }
             monitor.done();
         }
 
         LOG.debug(this + " : stored archive in file "
-            + archiveFile.getAbsolutePath() + ", size: "
-            + CoreUtils.formatByte(archiveFile.length()));
-
-        return archiveFile;
+            + transfer.getArchive().getAbsolutePath() + ", size: "
+            + CoreUtils.formatByte(transfer.getArchive().length()));
     }
 
     private void checkProjectMapping(final Map<String, IProject> mapping) {
@@ -674,28 +747,136 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
         return "IPN [remote side: " + peer + "]";
     }
 
+    private static class ArchiveTransfer {
+        private final String projectID;
+        private final IncomingFileTransfer transfer;
+        private final File archive;
+
+        private ArchiveTransfer(String projectID,
+            IncomingFileTransfer transfer, File archive) {
+            this.projectID = projectID;
+            this.transfer = transfer;
+            this.archive = archive;
+        }
+
+        public String getProjectID() {
+            return projectID;
+        }
+
+        public IncomingFileTransfer getTransfer() {
+            return transfer;
+        }
+
+        public File getArchive() {
+            return archive;
+        }
+    }
+
+    /**
+     * Accepts the archives of a negotiation as soon as the host starts their
+     * transfer, so the transfer of an archive does not wait until the previous
+     * archive is decompressed.
+     */
     private static class ArchiveTransferListener implements
         FileTransferListener {
-        private final String description;
-        private volatile FileTransferRequest request;
 
-        public ArchiveTransferListener(String description) {
-            this.description = description;
+        private final String prefix;
+
+        private final BlockingQueue<ArchiveTransfer> transfers = new LinkedBlockingQueue<ArchiveTransfer>();
+
+        private final List<ArchiveTransfer> acceptedTransfers = new ArrayList<ArchiveTransfer>();
+
+        private boolean canceled;
+
+        private volatile IOException error;
+
+        /**
+         * @param prefix
+         *            the prefix of the descriptions of the transfers to accept,
+         *            the remaining part of a description is the ID of the
+         *            project whose files are contained in the archive
+         */
+        public ArchiveTransferListener(String prefix) {
+            this.prefix = prefix;
         }
 
         @Override
-        public void fileTransferRequest(FileTransferRequest request) {
-            if (request.getDescription().equals(description)) {
-                this.request = request;
+        public synchronized void fileTransferRequest(
+            FileTransferRequest request) {
+
+            final String description = request.getDescription();
+
+            if (description == null || !description.startsWith(prefix))
+                return;
+
+            if (canceled) {
+                request.reject();
+                return;
             }
+
+            final File archive;
+
+            try {
+                archive = File.createTempFile(
+                    "saros_archive_" + System.currentTimeMillis(), null);
+            } catch (IOException e) {
+                request.reject();
+                error = e;
+                return;
+            }
+
+            final IncomingFileTransfer transfer = request.accept();
+
+            try {
+                transfer.recieveFile(archive);
+            } catch (XMPPException e) {
+                archive.delete();
+                error = new IOException(e.getMessage(), e.getCause());
+                return;
+            }
+
+            final ArchiveTransfer archiveTransfer = new ArchiveTransfer(
+                description.substring(prefix.length()), transfer, archive);
+
+            acceptedTransfers.add(archiveTransfer);
+            transfers.add(archiveTransfer);
         }
 
-        public boolean hasReceived() {
-            return request != null;
+        /**
+         * Returns the next accepted transfer, waiting up to the given time if
+         * necessary.
+         *
+         * @return the next transfer or <code>null</code> if no transfer was
+         *         accepted in the given time
+         * @throws IOException
+         *             if a transfer could not be accepted
+         */
+        public ArchiveTransfer nextTransfer(long timeout) throws IOException,
+            InterruptedException {
+
+            final IOException e = error;
+
+            if (e != null)
+                throw new IOException("failed to receive archive", e);
+
+            return transfers.poll(timeout, TimeUnit.MILLISECONDS);
         }
 
-        public FileTransferRequest getRequest() {
-            return request;
+        /**
+         * Cancels all transfers that are still running and deletes their
+         * archives. Transfers that are requested afterwards are rejected.
+         */
+        public synchronized void cancelTransfers() {
+            canceled = true;
+
+            for (final ArchiveTransfer transfer : acceptedTransfers) {
+                if (!transfer.getTransfer().isDone())
+                    transfer.getTransfer().cancel();
+
+                transfer.getArchive().delete();
+            }
+
+            acceptedTransfers.clear();
         }
     }
 }
@@ -13,13 +13,14 @@ import de.fu_berlin.inf.dpp.filesystem.IChecksumCache;
 import de.fu_berlin.inf.dpp.filesystem.IFile;
 import de.fu_berlin.inf.dpp.filesystem.IProject;
 import de.fu_berlin.inf.dpp.monitoring.IProgressMonitor;
-import de.fu_berlin.inf.dpp.monitoring.SubProgressMonitor;
 import de.fu_berlin.inf.dpp.negotiation.CreateArchiveTask;
 import de.fu_berlin.inf.dpp.negotiation.FileList;
 import de.fu_berlin.inf.dpp.negotiation.FileListFactory;
+import de.fu_berlin.inf.dpp.negotiation.FileListSnapshotStore;
 import de.fu_berlin.inf.dpp.negotiation.ProcessTools.CancelOption;
 import de.fu_berlin.inf.dpp.negotiation.ProjectNegotiation;
 import de.fu_berlin.inf.dpp.negotiation.ProjectNegotiationData;
+import de.fu_berlin.inf.dpp.negotiation.ProjectTaskExecutor;
 import de.fu_berlin.inf.dpp.net.PacketCollector;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
 import de.fu_berlin.inf.dpp.session.ISarosSession;
@@ -37,6 +38,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -60,6 +63,8 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
     private IEditorManager editorManager;
     @Inject
     private IChecksumCache checksumCache;
+    @Inject
+    private FileListSnapshotStore fileListSnapshots;
 
     private PacketCollector remoteFileListResponseCollector;
 
@@ -82,7 +87,12 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
 
         createCollectors();
 
-        File zipArchive = null;
+        /*
+         * projectID => archive of the files of that project, filled while the
+         * archives are created
+         */
+        final Map<String, File> archives = Collections
+            .synchronizedMap(new HashMap<String, File>());
 
         observeMonitor(monitor);
 
@@ -129,7 +139,7 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
                  */
                 sarosSession.userStartedQueuing(user);
 
-                zipArchive = createProjectArchive(fileLists, monitor);
+                createProjectArchives(fileLists, archives, monitor);
                 monitor.subTask("");
             } finally {
                 if (stoppedUsers != null) {
@@ -139,9 +149,16 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
 
             checkCancellation(CancelOption.NOTIFY_PEER);
 
-            if (zipArchive != null) {
-                sendArchive(zipArchive, peer, ARCHIVE_TRANSFER_ID + getID(),
-                    monitor);
+            /*
+             * every project is sent in its own archive, the smallest first, so
+             * the remote side can already work on the small projects while the
+             * large ones are still transferred
+             */
+            for (final String projectID : sortBySize(archives)) {
+                checkCancellation(CancelOption.NOTIFY_PEER);
+
+                sendArchive(archives.get(projectID), peer, ARCHIVE_TRANSFER_ID
+                    + getID() + PATH_DELIMITER + projectID, monitor);
             }
 
             User user = sarosSession.getUser(peer);
@@ -157,10 +174,15 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
             exception = e;
         } finally {
 
-            if (zipArchive != null && !zipArchive.delete()) {
-                LOG.warn("could not delete archive file: "
-                    + zipArchive.getAbsolutePath());
+            synchronized (archives) {
+                for (final File archive : archives.values()) {
+                    if (!archive.delete()) {
+                        LOG.warn("could not delete archive file: "
+                            + archive.getAbsolutePath());
+                    }
+                }
             }
+
             deleteCollectors();
             monitor.done();
         }
@@ -311,39 +333,30 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
     }
 
     /**
+     * Creates an archive for every project whose file list contains files. The
+     * archives of the projects are created concurrently.
+     *
      * @param fileLists
      *            a list of file lists containing the files to archive
-     * @return zip file containing all files denoted by the file lists or
-     *         <code>null</code> if the file lists do not contain any files
+     * @param archives
+     *            projectID => archive, the created archives are added to this
+     *            map as soon as they are created so they can be deleted even if
+     *            the creation of another archive fails
      */
+    private void createProjectArchives(final List<FileList> fileLists,
+        final Map<String, File> archives, final IProgressMonitor monitor)
+        throws IOException, SarosCancellationException {
 
-    private File createProjectArchive(final List<FileList> fileLists,
-        final IProgressMonitor monitor) throws IOException,
-        SarosCancellationException {
-
-        boolean skip = true;
-
-        int fileCount = 0;
+        final List<FileList> nonEmptyLists = new ArrayList<FileList>();
 
         for (final FileList list : fileLists) {
-            skip &= list.getPaths().isEmpty();
-            fileCount += list.getPaths().size();
-        }
-
-        if (skip) {
-            return null;
-        }
-
-        checkCancellation(CancelOption.NOTIFY_PEER);
-
-        final List<IFile> filesToCompress = new ArrayList<IFile>(fileCount);
-        final List<String> fileAlias = new ArrayList<String>(fileCount);
+            if (list.getPaths().isEmpty()) {
+                continue;
+            }
 
-        for (final FileList list : fileLists) {
             final String projectID = list.getProjectID();
 
             final IProject project = sarosSession.getProject(projectID);
-            project.refreshLocal();
 
             if (project == null) {
                 throw new LocalCancellationException("project with id "
@@ -351,43 +364,106 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
                     CancelOption.NOTIFY_PEER);
             }
 
-            if (editorManager != null)
+            project.refreshLocal();
+
+            if (editorManager != null) {
                 editorManager.saveEditors(project);
+            }
+
+            nonEmptyLists.add(list);
+        }
 
-            final StringBuilder aliasBuilder = new StringBuilder();
+        if (nonEmptyLists.isEmpty()) {
+            return;
+        }
 
-            aliasBuilder.append(projectID).append(PATH_DELIMITER);
+        checkCancellation(CancelOption.NOTIFY_PEER);
 
-            final int prefixLength = aliasBuilder.length();
+        LOG.debug(this + " : creating archives");
 
-            for (final String path : list.getPaths()) {
-                // assert path is relative !
-                filesToCompress.add(project.getFile(path));
-                aliasBuilder.append(path);
-                fileAlias.add(aliasBuilder.toString());
-                aliasBuilder.setLength(prefixLength);
-            }
+        monitor.beginTask("Compressing files...", nonEmptyLists.size() * 100);
+
+        ProjectTaskExecutor.execute(nonEmptyLists,
+            new ProjectTaskExecutor.Task<FileList, File>() {
+                @Override
+                public File run(FileList list, IProgressMonitor projectMonitor)
+                    throws IOException, SarosCancellationException {
+
+                    return createProjectArchive(list, archives, projectMonitor);
+                }
+            }, monitor, 100);
+
+        monitor.done();
+    }
+
+    private File createProjectArchive(final FileList list,
+        final Map<String, File> archives, final IProgressMonitor monitor)
+        throws IOException, SarosCancellationException {
+
+        final String projectID = list.getProjectID();
+        final IProject project = sarosSession.getProject(projectID);
+
+        final List<IFile> filesToCompress = new ArrayList<IFile>(list
+            .getPaths().size());
+        final List<String> fileAlias = new ArrayList<String>(list.getPaths()
+            .size());
+
+        final StringBuilder aliasBuilder = new StringBuilder();
+
+        aliasBuilder.append(projectID).append(PATH_DELIMITER);
+
+        final int prefixLength = aliasBuilder.length();
+
+        for (final String path : list.getPaths()) {
+            // assert path is relative !
+            filesToCompress.add(project.getFile(path));
+            aliasBuilder.append(path);
+            fileAlias.add(aliasBuilder.toString());
+            aliasBuilder.setLength(prefixLength);
         }
 
-        LOG.debug(this + " : creating archive");
+        final File tempArchive = File.createTempFile("saros_" + getID(),
+            ".zip");
 
-        File tempArchive;
+        archives.put(projectID, tempArchive);
 
         try {
-            tempArchive = File.createTempFile("saros_" + getID(), ".zip");
-
             // TODO run inside workspace ?
             new CreateArchiveTask(tempArchive, filesToCompress, fileAlias,
                 monitor).run(null);
         } catch (OperationCanceledException e) {
-            throw new LocalCancellationException();
+            LocalCancellationException canceled = new LocalCancellationException();
+            canceled.initCause(e);
+            throw canceled;
         }
 
-        monitor.done();
-
         return tempArchive;
     }
 
+    /**
+     * Returns the IDs of the projects ordered by the size of their archives,
+     * the smallest first.
+     */
+    private static List<String> sortBySize(final Map<String, File> archives) {
+        final List<String> projectIDs;
+
+        synchronized (archives) {
+            projectIDs = new ArrayList<String>(archives.keySet());
+        }
+
+        Collections.sort(projectIDs, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                long sizeA = archives.get(a).length();
+                long sizeB = archives.get(b).length();
+
+                return sizeA < sizeB ? -1 : (sizeA == sizeB ? 0 : 1);
+            }
+        });
+
+        return projectIDs;
+    }
+
     private void createCollectors() {
         remoteFileListResponseCollector = xmppReceiver
             .createCollector(ProjectNegotiationMissingFilesExtension.PROVIDER
@@ -407,7 +483,7 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
         String transferID, IProgressMonitor monitor)
         throws SarosCancellationException, IOException {
 
-        LOG.debug(this + " : sending archive");
+        LOG.debug(this + " : sending archive " + transferID);
         monitor.beginTask("Sending archive file...", 100);
 
         assert fileTransferManager != null;
@@ -428,14 +504,15 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
     }
 
     /**
-     * Method to create list of ProjectExchangeInfo.
+     * Method to create list of ProjectExchangeInfo. The file lists of the
+     * projects are created concurrently.
      *
      * @param projectsToShare
      *            List of projects to share
      */
     private List<ProjectNegotiationData> createProjectExchangeInfoList(
         List<IProject> projectsToShare, IProgressMonitor monitor)
-        throws IOException, LocalCancellationException {
+        throws IOException, SarosCancellationException {
 
         // *stretch* progress bar so it will increment smoothly
         final int scale = 1000;
@@ -445,49 +522,70 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
                 "Creating file list and calculating file checksums. This may take a while...",
                 projectsToShare.size() * scale);
 
-        List<ProjectNegotiationData> pInfos = new ArrayList<ProjectNegotiationData>(
-            projectsToShare.size());
+        if (monitor.isCanceled()) {
+            throw new LocalCancellationException(null,
+                CancelOption.DO_NOT_NOTIFY_PEER);
+        }
 
-        for (IProject project : projectsToShare) {
+        List<ProjectNegotiationData> pInfos;
 
-            if (monitor.isCanceled()) {
-                throw new LocalCancellationException(null,
-                    CancelOption.DO_NOT_NOTIFY_PEER);
-            }
-            try {
+        try {
+            pInfos = ProjectTaskExecutor.execute(projectsToShare,
+                new ProjectTaskExecutor.Task<IProject, ProjectNegotiationData>() {
+                    @Override
+                    public ProjectNegotiationData run(IProject project,
+                        IProgressMonitor projectMonitor) throws IOException,
+                        SarosCancellationException {
+                        return createProjectExchangeInfo(project,
+                            projectMonitor);
+                    }
+                }, monitor, scale);
+        } catch (IOException e) {
+            /*
+             * avoid that the error is send to remote side (which is default
+             * for IOExceptions) at this point because the remote side has
+             * no existing project negotiation yet
+             */
+            localCancel(e.getMessage(), CancelOption.DO_NOT_NOTIFY_PEER);
+            // throw to LOG this error in the CancelableProcess class
+            throw new IOException(e.getMessage(), e);
+        }
 
-                VCSProvider vcs = null;
-                FileList projectFileList = FileListFactory.createFileList(
-                    project, sarosSession.getSharedResources(project),
-                    checksumCache, vcs, new SubProgressMonitor(monitor, scale,
-                        SubProgressMonitor.SUPPRESS_BEGINTASK
-                            | SubProgressMonitor.SUPPRESS_SETTASKNAME));
+        monitor.done();
 
-                boolean partial = !sarosSession.isCompletelyShared(project);
+        return pInfos;
+    }
 
-                String projectID = sarosSession.getProjectID(project);
-                projectFileList.setProjectID(projectID);
+    private ProjectNegotiationData createProjectExchangeInfo(IProject project,
+        IProgressMonitor monitor) throws IOException,
+        LocalCancellationException {
 
-                ProjectNegotiationData negotiationData = new ProjectNegotiationData(
-                    projectID, project.getName(), partial, projectFileList);
+        if (monitor.isCanceled()) {
+            throw new LocalCancellationException(null,
+                CancelOption.DO_NOT_NOTIFY_PEER);
+        }
 
-                pInfos.add(negotiationData);
+        VCSProvider vcs = null;
+        final FileList projectFileList;
 
-            } catch (IOException e) {
-                /*
-                 * avoid that the error is send to remote side (which is default
-                 * for IOExceptions) at this point because the remote side has
-                 * no existing project negotiation yet
-                 */
-                localCancel(e.getMessage(), CancelOption.DO_NOT_NOTIFY_PEER);
-                // throw to LOG this error in the CancelableProcess class
-                throw new IOException(e.getMessage(), e);
-            }
+        try {
+            projectFileList = FileListFactory.createFileList(project,
+                sarosSession.getSharedResources(project), checksumCache,
+                fileListSnapshots, vcs, monitor);
+        } catch (OperationCanceledException e) {
+            LocalCancellationException canceled = new LocalCancellationException(
+                null, CancelOption.DO_NOT_NOTIFY_PEER);
+            canceled.initCause(e);
+            throw canceled;
         }
 
-        monitor.done();
+        boolean partial = !sarosSession.isCompletelyShared(project);
 
-        return pInfos;
+        String projectID = sarosSession.getProjectID(project);
+        projectFileList.setProjectID(projectID);
+
+        return new ProjectNegotiationData(projectID, project.getName(),
+            partial, projectFileList);
     }
 
     /**
@@ -146,6 +146,7 @@ final class RemoteProgress {
             switch (activity.getAction()) {
             case BEGINTASK:
                 monitor.beginTask(taskName, activity.getWorkTotal());
+                firstTime = false;
                 continue update;
             case SETTASKNAME:
                 monitor.setTaskName(taskName);
@@ -9,12 +9,30 @@ import de.fu_berlin.inf.dpp.util.StackTrace;
 import org.apache.log4j.Logger;
 
 import java.util.Collection;
+import java.util.Timer;
+import java.util.TimerTask;
 
 class RemoteProgressMonitor implements IProgressMonitor {
 
     private static final Logger LOG = Logger
         .getLogger(RemoteProgressMonitor.class);
 
+    /**
+     * Minimum time in milliseconds between two progress updates that are
+     * reported to the remote users.
+     */
+    private static final long UPDATE_INTERVAL = 250;
+
+    /**
+     * Minimum progress in percent of the total work between two progress
+     * updates that are reported to the remote users.
+     */
+    private static final int UPDATE_STEP = 1;
+
+    /** reports the updates that were suppressed by the coalescing */
+    private static final Timer FLUSH_TIMER = new Timer(
+        "RemoteProgressMonitor-Flush", true);
+
     private final RemoteProgressManager rpm;
     private final User source;
     private final Collection<User> targets;
@@ -22,8 +40,16 @@ class RemoteProgressMonitor implements IProgressMonitor {
 
     private final String id;
 
-    private int worked = 0;
-    private int totalWorked = -1;
+    // volatile as they are also read by the flush timer
+    private volatile int worked = 0;
+    private volatile int totalWorked = -1;
+
+    /** the work and the time of the last report to the remote users */
+    private int reportedWorked = 0;
+    private long reportedTime = 0;
+
+    /** reports the latest work if no other report is made before */
+    private TimerTask pendingFlush;
 
     RemoteProgressMonitor(final RemoteProgressManager rpm, final String id,
         final User source, final Collection<User> targets,
@@ -85,6 +111,10 @@ class RemoteProgressMonitor implements IProgressMonitor {
     @Override
     public void worked(int work) {
         monitor.worked(work);
+        reportWorked(work);
+    }
+
+    private synchronized void reportWorked(int work) {
         worked += work;
 
         if (worked > totalWorked) {
@@ -94,12 +124,90 @@ class RemoteProgressMonitor implements IProgressMonitor {
             );
         }
 
+        if (!isUpdateDue()) {
+            if (worked != reportedWorked) {
+                scheduleFlush();
+            }
+
+            return;
+        }
+
         createProgressActivityForUsers(worked, totalWorked, null,
             ProgressAction.UPDATE);
     }
 
-    private void createProgressActivityForUsers(int workCurrent, int workTotal,
-        String taskName, ProgressAction action) {
+    /**
+     * Progress updates are coalesced as reporting every single call of
+     * {@link #worked(int)} would flood the remote users with activities. The
+     * next update that is reported always carries the latest work done. If no
+     * further update is due, the latest work is reported by a trailing flush
+     * once the update interval has passed.
+     */
+    private boolean isUpdateDue() {
+        if (worked == reportedWorked) {
+            return false;
+        }
+
+        if (totalWorked > 0 && worked >= totalWorked) {
+            return true;
+        }
+
+        if (System.currentTimeMillis() - reportedTime < UPDATE_INTERVAL) {
+            return false;
+        }
+
+        if (totalWorked <= 0) {
+            return true;
+        }
+
+        return (long) (worked - reportedWorked) * 100 >= (long) totalWorked
+            * UPDATE_STEP;
+    }
+
+    /**
+     * Schedules the report of the latest work for the end of the current
+     * update interval, unless such a report is already scheduled.
+     */
+    private void scheduleFlush() {
+        if (pendingFlush != null) {
+            return;
+        }
+
+        pendingFlush = new TimerTask() {
+            @Override
+            public void run() {
+                flush(this);
+            }
+        };
+
+        FLUSH_TIMER.schedule(pendingFlush, Math.max(0, reportedTime
+            + UPDATE_INTERVAL - System.currentTimeMillis()));
+    }
+
+    private synchronized void flush(TimerTask task) {
+        if (pendingFlush != task) {
+            return;
+        }
+
+        pendingFlush = null;
+
+        if (worked != reportedWorked) {
+            createProgressActivityForUsers(worked, totalWorked, null,
+                ProgressAction.UPDATE);
+        }
+    }
+
+    private synchronized void createProgressActivityForUsers(int workCurrent,
+        int workTotal, String taskName, ProgressAction action) {
+
+        // this report supersedes the scheduled one
+        if (pendingFlush != null) {
+            pendingFlush.cancel();
+            pendingFlush = null;
+        }
+
+        reportedWorked = workCurrent;
+        reportedTime = System.currentTimeMillis();
 
         for (final User target : targets)
             rpm.monitorUpdated(
@@ -39,11 +39,14 @@ public class ActivityQueuer {
 
     private final Set<IProject> projectsThatShouldBeQueued;
 
+    private final Set<IProject> projectsToFlush;
+
     private boolean stopQueuing;
 
     public ActivityQueuer() {
         activityQueue = new ArrayList<IResourceActivity>();
         projectsThatShouldBeQueued = new HashSet<IProject>();
+        projectsToFlush = new HashSet<IProject>();
         stopQueuing = false;
     }
 
@@ -56,7 +59,9 @@ public class ActivityQueuer {
      * <p/>
      * If a flushing of the queue was previously requested by calling
      * {@link #disableQueuing()} than the method will return a list of all
-     * queued activities.
+     * queued activities. If it was requested for single projects by calling
+     * {@link #disableQueuing(IProject)}, the queued activities of these
+     * projects are returned in addition.
      *
      * @param activities
      * @return the activities that are not queued
@@ -68,55 +73,32 @@ public class ActivityQueuer {
             if (activityQueue.isEmpty())
                 return activities;
 
-            /*
-             * HACK: ensure that an editor activated activity is included for
-             * all queued JupiterActivities and EditorActivities. Otherwise we
-             * will get lost updates because the changes are not saved. See the
-             * editor package and its classes for additional details. As we can
-             * start queuing at any point we might miss the editor activated
-             * activity or we joined the session after those activities were
-             * fired on the remote sides.
-             */
-
-            final Map<SPath, List<User>> editorActivities = new HashMap<SPath, List<User>>();
-
-            for (IResourceActivity resourceActivity : activityQueue) {
-
-                // path cannot be null, see for-loop below
-                SPath path = resourceActivity.getPath();
-                User source = resourceActivity.getSource();
-
-                if (resourceActivity instanceof EditorActivity) {
+            flush(activityQueue, activitiesThatWillBeExecuted);
 
-                    EditorActivity ea = (EditorActivity) resourceActivity;
+            activitiesThatWillBeExecuted.addAll(activities);
+            projectsThatShouldBeQueued.clear();
+            projectsToFlush.clear();
+            activityQueue.clear();
+            return activitiesThatWillBeExecuted;
+        }
 
-                    if (!alreadyRememberedEditorActivity(editorActivities, path,
-                        source) && ea.getType() != Type.ACTIVATED) {
-                        activitiesThatWillBeExecuted.add(
-                            new EditorActivity(ea.getSource(), Type.ACTIVATED,
-                                path)
-                        );
-                    }
+        if (!projectsToFlush.isEmpty()) {
+            final List<IResourceActivity> flushed = new ArrayList<IResourceActivity>();
 
-                    rememberEditorActivity(editorActivities, path, source);
-                } else if (resourceActivity instanceof JupiterActivity
-                    && !alreadyRememberedEditorActivity(editorActivities, path,
-                    source)) {
+            for (Iterator<IResourceActivity> it = activityQueue.iterator(); it
+                .hasNext();) {
 
-                    activitiesThatWillBeExecuted.add(
-                        new EditorActivity(resourceActivity.getSource(),
-                            Type.ACTIVATED, path)
-                    );
+                IResourceActivity resourceActivity = it.next();
 
-                    rememberEditorActivity(editorActivities, path, source);
+                if (projectsToFlush.contains(resourceActivity.getPath()
+                    .getProject())) {
+                    flushed.add(resourceActivity);
+                    it.remove();
                 }
-                activitiesThatWillBeExecuted.add(resourceActivity);
             }
 
-            activitiesThatWillBeExecuted.addAll(activities);
-            projectsThatShouldBeQueued.clear();
-            activityQueue.clear();
-            return activitiesThatWillBeExecuted;
+            flush(flushed, activitiesThatWillBeExecuted);
+            projectsToFlush.clear();
         }
 
         for (IActivity activity : activities) {
@@ -156,16 +138,75 @@ public class ActivityQueuer {
      *
      * @Note This method <b>MUST</b> be called at the end of an invitation
      * process because it stops the queuing for all projects which at
-     * least releases the queued activities to prevent memory leaks. At
-     * the moment stopping the queuing for each project separately is not
-     * needed, since the projects are added after the invitation process
-     * at the same time. When multiple invitations at the same moment will
-     * be possible, this implementation needs to be changed.
+     * least releases the queued activities to prevent memory leaks. When
+     * multiple invitations at the same moment will be possible, this
+     * implementation needs to be changed.
      */
     public synchronized void disableQueuing() {
         stopQueuing = true;
     }
 
+    /**
+     * Disables the queuing for the given project, e.g because it was already
+     * received while the other projects of the invitation are still
+     * transferred. The activities that are currently queued for this project
+     * will be flushed after the next invocation of {@link #process(List)}.
+     *
+     * @param project
+     */
+    public synchronized void disableQueuing(IProject project) {
+        if (projectsThatShouldBeQueued.remove(project))
+            projectsToFlush.add(project);
+    }
+
+    /**
+     * Adds the given queued activities to the activities that will be executed.
+     */
+    private void flush(List<IResourceActivity> queuedActivities,
+        List<IActivity> activitiesThatWillBeExecuted) {
+
+        /*
+         * HACK: ensure that an editor activated activity is included for all
+         * queued JupiterActivities and EditorActivities. Otherwise we will get
+         * lost updates because the changes are not saved. See the editor
+         * package and its classes for additional details. As we can start
+         * queuing at any point we might miss the editor activated activity or
+         * we joined the session after those activities were fired on the
+         * remote sides.
+         */
+
+        final Map<SPath, List<User>> editorActivities = new HashMap<SPath, List<User>>();
+
+        for (IResourceActivity resourceActivity : queuedActivities) {
+
+            // path cannot be null, see process(List)
+            SPath path = resourceActivity.getPath();
+            User source = resourceActivity.getSource();
+
+            if (resourceActivity instanceof EditorActivity) {
+
+                EditorActivity ea = (EditorActivity) resourceActivity;
+
+                if (!alreadyRememberedEditorActivity(editorActivities, path,
+                    source) && ea.getType() != Type.ACTIVATED) {
+                    activitiesThatWillBeExecuted.add(new EditorActivity(ea
+                        .getSource(), Type.ACTIVATED, path));
+                }
+
+                rememberEditorActivity(editorActivities, path, source);
+            } else if (resourceActivity instanceof JupiterActivity
+                && !alreadyRememberedEditorActivity(editorActivities, path,
+                    source)) {
+
+                activitiesThatWillBeExecuted.add(new EditorActivity(
+                    resourceActivity.getSource(), Type.ACTIVATED, path));
+
+                rememberEditorActivity(editorActivities, path, source);
+            }
+            activitiesThatWillBeExecuted.add(resourceActivity);
+        }
+    }
+
     private boolean alreadyRememberedEditorActivity(
         Map<SPath, List<User>> editorActivities, SPath spath, User user) {
 
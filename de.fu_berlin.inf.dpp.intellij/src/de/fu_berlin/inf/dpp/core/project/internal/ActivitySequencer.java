@@ -22,29 +22,49 @@
 
 package de.fu_berlin.inf.dpp.core.project.internal;
 
+import de.fu_berlin.inf.dpp.activities.FileContentStore;
 import de.fu_berlin.inf.dpp.activities.IActivity;
+import de.fu_berlin.inf.dpp.activities.TextSelectionActivity;
+import de.fu_berlin.inf.dpp.activities.ViewportActivity;
 import de.fu_berlin.inf.dpp.communication.extensions.ActivitiesExtension;
+import de.fu_berlin.inf.dpp.communication.extensions.FileContentExtension;
 import de.fu_berlin.inf.dpp.core.util.ActivityUtils;
 import de.fu_berlin.inf.dpp.net.DispatchThreadContext;
+import de.fu_berlin.inf.dpp.net.IConnectionManager;
 import de.fu_berlin.inf.dpp.net.IReceiver;
 import de.fu_berlin.inf.dpp.net.ITransmitter;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
 import de.fu_berlin.inf.dpp.session.ISarosSession;
 import de.fu_berlin.inf.dpp.session.User;
+import de.fu_berlin.inf.dpp.util.NamedThreadFactory;
+import de.fu_berlin.inf.dpp.util.Pair;
 import de.fu_berlin.inf.dpp.util.ThreadUtils;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.PacketListener;
 import org.jivesoftware.smack.packet.Packet;
 import org.jivesoftware.smack.packet.PacketExtension;
 import org.picocontainer.Startable;
+import org.picocontainer.annotations.Nullable;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The ActivitySequencer is responsible for making sure that transformed
  * {@linkplain IActivity activities} are sent and received in the
  * right order.
+ * <p/>
+ * Large file contents are transferred separately over the
+ * {@linkplain ISarosSession#CONTENT_CONNECTION_ID content connection}, the
+ * activities only reference them. Received activities are not executed before
+ * all referenced contents are available.
+ * <p/>
+ * Awareness information, i.e. text selections and viewports, is sent to a user
+ * less frequently if the transmissions to this user are slow. Such activities
+ * are only delayed if they are not accompanied by other activities and the
+ * latest of them is always sent.
  *
  * @author rdjemili
  * @author coezbek
@@ -65,6 +85,19 @@ public class ActivitySequencer implements Startable {
      * with this value.
      */
     private static final int FIRST_SEQUENCE_NUMBER = 0;
+
+    /**
+     * Upper bound in milliseconds for delaying the transmission of awareness
+     * information.
+     */
+    private static final long MAX_AWARENESS_INTERVAL = 1000;
+
+    /**
+     * Additional delay in milliseconds for awareness information per activity
+     * that was queued up while the previous activities were transmitted.
+     */
+    private static final long AWARENESS_INTERVAL_PER_QUEUED_ACTIVITY = 10;
+
     private final PacketListener activitiesPacketListener = new PacketListener() {
 
         @Override
@@ -77,6 +110,8 @@ public class ActivitySequencer implements Startable {
     private final ITransmitter transmitter;
     private final IReceiver receiver;
     private final DispatchThreadContext dispatchThread;
+    private final IConnectionManager connectionManager;
+    private final FileContentStore contentStore = new FileContentStore();
     private final Map<JID, ActivityBuffer<SequencedActivity>> bufferedIncomingActivities;
     private final Map<JID, ActivityBuffer<IActivity>> bufferedOutgoingActivities;
     private volatile IActivitySequencerCallback callback;
@@ -99,6 +134,9 @@ public class ActivitySequencer implements Startable {
                         return;
                     }
 
+                    long now = System.currentTimeMillis();
+                    long timeout = 0;
+
                     for (Map.Entry<JID, ActivityBuffer<IActivity>> entry : bufferedOutgoingActivities
                         .entrySet()) {
 
@@ -108,24 +146,38 @@ public class ActivitySequencer implements Startable {
                             continue;
                         }
 
+                        long delay = buffer.lastSendStart
+                            + buffer.getAwarenessInterval() - now;
+
+                        if (delay > 0 && isAwarenessOnly(buffer.activities)) {
+                            timeout = timeout == 0 ?
+                                delay :
+                                Math.min(timeout, delay);
+                            continue;
+                        }
+
+                        int queueDepth = buffer.activities.size();
+
                         List<IActivity> optimizedActivities = ActivityUtils
                             .optimize(buffer.activities);
 
                         buffer.activities.clear();
                         buffer.isInTransmission = true;
+                        buffer.lastSendStart = now;
 
                         int currentSequenceNumber = buffer.nextSequenceNumber;
                         buffer.nextSequenceNumber += optimizedActivities.size();
 
                         activitiesToSend.put(entry.getKey(),
                             new SequencedActivities(optimizedActivities,
-                                currentSequenceNumber)
+                                currentSequenceNumber, queueDepth)
                         );
                     }
 
                     if (activitiesToSend.isEmpty()) {
                         try {
-                            bufferedOutgoingActivities.wait();
+                            // timeout == 0 waits until new activities arrive
+                            bufferedOutgoingActivities.wait(timeout);
                             continue send;
                         } catch (InterruptedException e) {
                             return;
@@ -135,8 +187,12 @@ public class ActivitySequencer implements Startable {
 
                 for (Map.Entry<JID, SequencedActivities> e : activitiesToSend
                     .entrySet()) {
+                    long start = System.currentTimeMillis();
+
                     sendActivities(e.getKey(), e.getValue().activites,
                         e.getValue().sequenceNumber);
+
+                    e.getValue().sendTime = System.currentTimeMillis() - start;
                 }
 
                 synchronized (bufferedOutgoingActivities) {
@@ -150,6 +206,14 @@ public class ActivitySequencer implements Startable {
                         }
 
                         buffer.isInTransmission = false;
+
+                        SequencedActivities sent = activitiesToSend
+                            .get(entry.getKey());
+
+                        if (sent != null) {
+                            buffer.updateStatistics(sent.sendTime,
+                                sent.queueDepth);
+                        }
                     }
 
                     // notify waiting threads in flush method that we are done
@@ -158,13 +222,23 @@ public class ActivitySequencer implements Startable {
             }
         }
     };
+    private final PacketListener contentPacketListener = new PacketListener() {
+
+        @Override
+        public void processPacket(Packet packet) {
+            receiveContent(packet);
+        }
+    };
     private Thread activitySendThread;
+    private ExecutorService contentSender;
 
     public ActivitySequencer(final ISarosSession sarosSession,
         final ITransmitter transmitter, final IReceiver receiver,
-        final DispatchThreadContext threadContext) {
+        final DispatchThreadContext threadContext,
+        final @Nullable IConnectionManager connectionManager) {
 
         this.dispatchThread = threadContext;
+        this.connectionManager = connectionManager;
         this.sarosSession = sarosSession;
         this.transmitter = transmitter;
         this.receiver = receiver;
@@ -222,6 +296,12 @@ public class ActivitySequencer implements Startable {
         receiver.addPacketListener(activitiesPacketListener,
             ActivitiesExtension.PROVIDER.getPacketFilter(currentSessionID));
 
+        receiver.addPacketListener(contentPacketListener,
+            FileContentExtension.PROVIDER.getPacketFilter(currentSessionID));
+
+        contentSender = Executors.newSingleThreadExecutor(
+            new NamedThreadFactory("FileContentSender", false));
+
         activitySendThread = ThreadUtils
             .runSafeAsync("ActivitySender", LOG, activitySender);
     }
@@ -249,6 +329,7 @@ public class ActivitySequencer implements Startable {
         }
 
         receiver.removePacketListener(activitiesPacketListener);
+        receiver.removePacketListener(contentPacketListener);
 
         synchronized (bufferedOutgoingActivities) {
             stopSending = true;
@@ -273,15 +354,23 @@ public class ActivitySequencer implements Startable {
                 activitySendThread.getName() + " thread is still running");
         }
 
+        contentSender.shutdownNow();
+
         synchronized (bufferedOutgoingActivities) {
             bufferedOutgoingActivities.clear();
             bufferedOutgoingActivities.notifyAll();
         }
 
         synchronized (bufferedIncomingActivities) {
+            for (JID jid : bufferedIncomingActivities.keySet()) {
+                closeContentConnection(jid);
+            }
+
             bufferedIncomingActivities.clear();
         }
 
+        contentStore.clear();
+
         activitySendThread = null;
 
         if (isStoppingInterrupted) {
@@ -302,7 +391,7 @@ public class ActivitySequencer implements Startable {
 
         assert sequencedActivity != null;
 
-        List<IActivity> serializedActivities = new ArrayList<IActivity>();
+        List<IActivity> serializedActivities;
 
         synchronized (bufferedIncomingActivities) {
             ActivityBuffer<SequencedActivity> buffer = bufferedIncomingActivities
@@ -317,46 +406,81 @@ public class ActivitySequencer implements Startable {
 
             buffer.activities.add(sequencedActivity);
 
-            /*
-             * it is very VERY uncommon to receive an activity with a sequence
-             * number that is 2^32 steps apart from the current expected
-             * sequencer number, so this algorithm does not check for duplicate
-             * sequence numbers
-             */
-            while (true) {
+            serializedActivities = serializeActivities(sender, buffer);
+        }
 
-                sequencedActivity = null;
+        if (!serializedActivities.isEmpty()) {
+            sarosSession.exec(serializedActivities);
+        }
+    }
 
-                for (Iterator<SequencedActivity> it = buffer.activities
-                    .iterator(); it.hasNext(); ) {
+    /**
+     * Removes the activities from the buffer in the order of their sequence
+     * numbers until an activity is missing or its content was not received
+     * yet.
+     *
+     * @return the removed activities including their contents
+     */
+    private List<IActivity> serializeActivities(JID sender,
+        ActivityBuffer<SequencedActivity> buffer) {
 
-                    sequencedActivity = it.next();
+        List<IActivity> serializedActivities = new ArrayList<IActivity>();
 
-                    if (sequencedActivity.sequenceNumber
-                        == buffer.nextSequenceNumber) {
-                        it.remove();
-                        break;
-                    }
+        /*
+         * it is very VERY uncommon to receive an activity with a sequence
+         * number that is 2^32 steps apart from the current expected
+         * sequencer number, so this algorithm does not check for duplicate
+         * sequence numbers
+         */
+        while (true) {
 
-                    sequencedActivity = null;
-                }
+            SequencedActivity sequencedActivity = null;
 
-                if (sequencedActivity == null) {
-                    /*
-                     * TODO shut down the session if a activity does not arrive
-                     * in a given timeout
-                     */
+            for (SequencedActivity candidate : buffer.activities) {
+                if (candidate.sequenceNumber == buffer.nextSequenceNumber) {
+                    sequencedActivity = candidate;
                     break;
                 }
+            }
+
+            if (sequencedActivity == null) {
+                /*
+                 * TODO shut down the session if a activity does not arrive
+                 * in a given timeout
+                 */
+                break;
+            }
+
+            IActivity activity = contentStore
+                .resolve(sender, sequencedActivity.activity);
 
-                serializedActivities.add(sequencedActivity.activity);
-                buffer.nextSequenceNumber++;
+            if (activity == null) {
+                LOG.debug("waiting for the content of "
+                    + sequencedActivity.activity);
+                break;
             }
+
+            buffer.activities.remove(sequencedActivity);
+            serializedActivities.add(activity);
+            buffer.nextSequenceNumber++;
         }
 
-        if (!serializedActivities.isEmpty()) {
-            sarosSession.exec(serializedActivities);
+        return serializedActivities;
+    }
+
+    /**
+     * Returns <code>true</code> if the given activities only contain awareness
+     * information which may be delayed.
+     */
+    private static boolean isAwarenessOnly(Iterable<IActivity> activities) {
+        for (IActivity activity : activities) {
+            if (!(activity instanceof TextSelectionActivity)
+                && !(activity instanceof ViewportActivity)) {
+                return false;
+            }
         }
+
+        return true;
     }
 
     /**
@@ -441,6 +565,7 @@ public class ActivitySequencer implements Startable {
      */
     public void unregisterUser(User user) {
         unregisterUser(user.getJID());
+        closeContentConnection(user.getJID());
     }
 
     /**
@@ -487,6 +612,8 @@ public class ActivitySequencer implements Startable {
         synchronized (bufferedIncomingActivities) {
             bufferedIncomingActivities.put(jid, null);
         }
+
+        contentStore.remove(jid);
     }
 
     private void sendActivities(JID recipient, List<IActivity> activities,
@@ -496,6 +623,14 @@ public class ActivitySequencer implements Startable {
             return;
         }
 
+        List<Pair<String, byte[]>> contents = new ArrayList<Pair<String, byte[]>>();
+
+        activities = contentStore.toReferences(recipient, activities, contents);
+
+        for (Pair<String, byte[]> content : contents) {
+            sendContent(recipient, content.p, content.v);
+        }
+
         PacketExtension activityPacketExtension = ActivitiesExtension.PROVIDER
             .create(new ActivitiesExtension(currentSessionID, activities,
                 sequenceNumber));
@@ -529,6 +664,87 @@ public class ActivitySequencer implements Startable {
         }
     }
 
+    private void sendContent(final JID recipient, final String hash,
+        final byte[] content) {
+
+        final PacketExtension contentPacketExtension = FileContentExtension.PROVIDER
+            .create(new FileContentExtension(currentSessionID, hash, content));
+
+        contentSender.execute(ThreadUtils.wrapSafe(LOG, new Runnable() {
+            @Override
+            public void run() {
+                LOG.debug("send content " + hash + " (" + content.length
+                    + " byte(s)) to " + recipient);
+
+                try {
+                    if (connectionManager != null) {
+                        connectionManager
+                            .connect(ISarosSession.CONTENT_CONNECTION_ID,
+                                recipient);
+                    }
+
+                    transmitter.send(ISarosSession.CONTENT_CONNECTION_ID,
+                        recipient, contentPacketExtension);
+                } catch (IOException e) {
+                    LOG.error(
+                        "failed to sent content " + hash + " to " + recipient,
+                        e);
+
+                    unregisterUser(recipient);
+
+                    IActivitySequencerCallback currentCallback = callback;
+
+                    if (currentCallback != null) {
+                        currentCallback.transmissionFailed(recipient);
+                    }
+                }
+            }
+        }));
+    }
+
+    private void closeContentConnection(JID jid) {
+        if (connectionManager != null) {
+            connectionManager
+                .closeConnection(ISarosSession.CONTENT_CONNECTION_ID, jid);
+        }
+    }
+
+    private void receiveContent(Packet contentPacket) {
+        FileContentExtension payload = FileContentExtension.PROVIDER
+            .getPayload(contentPacket);
+
+        if (payload == null) {
+            LOG.warn("content packet payload is corrupted");
+            return;
+        }
+
+        JID from = new JID(contentPacket.getFrom());
+
+        LOG.debug("rcvd content " + payload.getHash() + " from " + from);
+
+        List<IActivity> serializedActivities;
+
+        synchronized (bufferedIncomingActivities) {
+            ActivityBuffer<SequencedActivity> buffer = bufferedIncomingActivities
+                .get(from);
+
+            if (buffer == null) {
+                LOG.warn("dropping received content from " + from
+                    + " because it is currently not registered");
+                return;
+            }
+
+            contentStore
+                .addContent(from, payload.getHash(), payload.getContent());
+
+            serializedActivities = serializeActivities(from, buffer);
+        }
+
+        if (!serializedActivities.isEmpty()) {
+            sarosSession.exec(serializedActivities);
+        }
+    }
+
     private void receiveActivities(Packet activityPacket) {
 
         /* *
@@ -607,11 +823,14 @@ public class ActivitySequencer implements Startable {
     private static class SequencedActivities {
         private final int sequenceNumber;
         private final List<IActivity> activites;
+        private final int queueDepth;
+        private long sendTime;
 
         private SequencedActivities(List<IActivity> activites,
-            int sequenceNumber) {
+            int sequenceNumber, int queueDepth) {
             this.activites = activites;
             this.sequenceNumber = sequenceNumber;
+            this.queueDepth = queueDepth;
         }
     }
 
@@ -624,8 +843,38 @@ public class ActivitySequencer implements Startable {
         private boolean isInTransmission;
         private int nextSequenceNumber;
 
+        /**
+         * smoothed duration of the transmissions to the user
+         */
+        private long averageSendTime;
+
+        /**
+         * number of activities that were queued up during the last send
+         */
+        private int queueDepth;
+
+        /**
+         * time the last activities were handed to the sender
+         */
+        private long lastSendStart;
+
         private ActivityBuffer(int firstSequenceNumber) {
             nextSequenceNumber = firstSequenceNumber;
         }
+
+        /**
+         * Returns the minimum time between two transmissions that only
+         * contain awareness information. The interval grows with the duration
+         * of the transmissions and the number of queued up activities.
+         */
+        private long getAwarenessInterval() {
+            return Math.min(MAX_AWARENESS_INTERVAL, 2 * averageSendTime
+                + queueDepth * AWARENESS_INTERVAL_PER_QUEUED_ACTIVITY);
+        }
+
+        private void updateStatistics(long sendTime, int queueDepth) {
+            averageSendTime = (3 * averageSendTime + sendTime) / 4;
+            this.queueDepth = queueDepth;
+        }
     }
 }
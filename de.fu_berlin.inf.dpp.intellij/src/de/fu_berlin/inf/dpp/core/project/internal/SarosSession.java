@@ -1082,6 +1082,14 @@ public final class SarosSession implements ISarosSession {
             localUser, localUser, 0));
     }
 
+    @Override
+    public void disableQueuing(IProject project) {
+        activityQueuer.disableQueuing(project);
+        // send us a dummy activity to ensure the queue gets flushed
+        sendActivity(Collections.singletonList(localUser), new NOPActivity(
+            localUser, localUser, 0));
+    }
+
     /**
      * This method is only meant to be used by a unit tests to verify the
      * cleanup of activity providers.
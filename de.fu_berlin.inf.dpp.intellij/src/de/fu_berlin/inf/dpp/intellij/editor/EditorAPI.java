@@ -35,10 +35,13 @@ import com.intellij.openapi.editor.markup.RangeHighlighter;
 import com.intellij.openapi.editor.markup.TextAttributes;
 import com.intellij.openapi.project.Project;
 import com.intellij.util.ui.UIUtil;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.DeleteOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.ITextOperation;
 import de.fu_berlin.inf.dpp.core.Saros;
 import de.fu_berlin.inf.dpp.intellij.editor.colorstorage.ColorModel;
 
 import java.awt.Color;
+import java.util.List;
 
 /**
  * IntellJ editor API. An Editor is a window for editing source files.
@@ -117,6 +120,47 @@ public class EditorAPI {
         UIUtil.invokeAndWaitIfNeeded(action);
     }
 
+    /**
+     * Applies all given text operations to the document in one command and
+     * write action inside the UI thread. The position of every operation
+     * refers to the document after the preceding operations were applied.
+     *
+     * @param doc
+     * @param operations
+     */
+    public void applyTextOperations(final Document doc,
+        final List<ITextOperation> operations) {
+
+        Runnable action = new Runnable() {
+            @Override
+            public void run() {
+                commandProcessor.executeCommand(project, new Runnable() {
+                    @Override
+                    public void run() {
+                        application.runWriteAction(new Runnable() {
+                            @Override
+                            public void run() {
+                                for (ITextOperation op : operations) {
+                                    if (op instanceof DeleteOperation) {
+                                        doc.deleteString(op.getPosition(),
+                                            op.getPosition() + op
+                                                .getTextLength());
+                                    } else {
+                                        doc.insertString(op.getPosition(),
+                                            op.getText());
+                                    }
+                                }
+                            }
+                        });
+                    }
+                }, "applyTextOperations()",
+                    commandProcessor.getCurrentCommandGroupId());
+            }
+        };
+
+        UIUtil.invokeAndWaitIfNeeded(action);
+    }
+
     /**
      * Overwrites the content of the document with text inside the UI thread.
      *
@@ -27,6 +27,7 @@ import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.event.SelectionEvent;
 import com.intellij.openapi.vfs.LocalFileSystem;
+import de.fu_berlin.inf.dpp.activities.CompositeTextEditActivity;
 import de.fu_berlin.inf.dpp.activities.EditorActivity;
 import de.fu_berlin.inf.dpp.activities.IActivity;
 import de.fu_berlin.inf.dpp.activities.SPath;
@@ -43,6 +44,7 @@ import de.fu_berlin.inf.dpp.filesystem.IProject;
 import de.fu_berlin.inf.dpp.intellij.editor.colorstorage.ColorManager;
 import de.fu_berlin.inf.dpp.intellij.editor.colorstorage.ColorModel;
 import de.fu_berlin.inf.dpp.intellij.editor.text.LineRange;
+import de.fu_berlin.inf.dpp.intellij.editor.text.TextChangeCollector;
 import de.fu_berlin.inf.dpp.intellij.editor.text.TextSelection;
 import de.fu_berlin.inf.dpp.intellij.ui.util.NotificationPanel;
 import de.fu_berlin.inf.dpp.session.AbstractActivityConsumer;
@@ -58,7 +60,10 @@ import de.fu_berlin.inf.dpp.session.User;
 import de.fu_berlin.inf.dpp.synchronize.Blockable;
 import org.apache.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -703,6 +708,44 @@ public class EditorManager extends AbstractActivityProducer implements
         TextEditActivity textEdit = new TextEditActivity(session.getLocalUser(),
             offset, newText, replacedText, path);
 
+        fireTextEdits(textEdit, Collections.singletonList(textEdit));
+    }
+
+    /**
+     * Generates one activity for all replacements of a command and fires it.
+     *
+     * @param replacements the replacements in the order they were applied,
+     *                     see {@link TextChangeCollector#finish(CharSequence)}
+     */
+    void generateTextEdits(List<TextChangeCollector.Replacement> replacements,
+        SPath path) {
+
+        if (session == null || replacements.isEmpty()) {
+            return;
+        }
+
+        if (replacements.size() == 1) {
+            TextChangeCollector.Replacement replacement = replacements.get(0);
+            generateTextEdit(replacement.getOffset(), replacement.getNewText(),
+                replacement.getReplacedText(), path);
+            return;
+        }
+
+        List<TextEditActivity> textEdits = new ArrayList<TextEditActivity>();
+
+        for (TextChangeCollector.Replacement replacement : replacements) {
+            textEdits.add(new TextEditActivity(session.getLocalUser(),
+                replacement.getOffset(), replacement.getNewText(),
+                replacement.getReplacedText(), path));
+        }
+
+        fireTextEdits(new CompositeTextEditActivity(session.getLocalUser(),
+            path, textEdits), textEdits);
+    }
+
+    private void fireTextEdits(IActivity activity,
+        List<TextEditActivity> textEdits) {
+
         if (!hasWriteAccess || isLocked) {
            /*
              * TODO If we don't have {@link User.Permission#WRITE_ACCESS}, then
@@ -713,18 +756,20 @@ public class EditorManager extends AbstractActivityProducer implements
              * But watch out for changes because of a consistency check!
              */
 
-            LOG.warn("local user caused text changes: " + textEdit
+            LOG.warn("local user caused text changes: " + activity
                 + " | write access : " + hasWriteAccess + ", session locked : "
                 + isLocked);
             return;
         }
 
-        fireActivity(textEdit);
+        fireActivity(activity);
 
-        editorListenerDispatch
-            .textEditRecieved(session.getLocalUser(), textEdit.getPath(),
-                textEdit.getText(), textEdit.getReplacedText(),
-                textEdit.getOffset());
+        for (TextEditActivity textEdit : textEdits) {
+            editorListenerDispatch
+                .textEditRecieved(session.getLocalUser(), textEdit.getPath(),
+                    textEdit.getText(), textEdit.getReplacedText(),
+                    textEdit.getOffset());
+        }
     }
 
     /**
@@ -31,12 +31,14 @@ import de.fu_berlin.inf.dpp.concurrent.jupiter.Operation;
 import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.DeleteOperation;
 import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.ITextOperation;
 import de.fu_berlin.inf.dpp.intellij.editor.colorstorage.ColorModel;
+import de.fu_berlin.inf.dpp.intellij.editor.text.InsertedTextRanges;
 import de.fu_berlin.inf.dpp.intellij.editor.text.LineRange;
 import de.fu_berlin.inf.dpp.intellij.editor.text.TextSelection;
 import de.fu_berlin.inf.dpp.intellij.project.fs.ResourceConverter;
 import org.apache.log4j.Logger;
 
 import java.awt.Color;
+import java.util.List;
 
 /**
  * This class applies the logic for activities that were received from remote.
@@ -141,7 +143,9 @@ public class LocalEditorManipulator {
     }
 
     /**
-     * Applies the text operations on the path and marks them in color.
+     * Applies the text operations on the path and marks them in color. All
+     * text operations are applied at once in a single write action and the
+     * inserted text is marked with one highlighter per contiguous range.
      *
      * @param path
      * @param operations
@@ -156,33 +160,49 @@ public class LocalEditorManipulator {
             VirtualFile virtualFile = ResourceConverter.toVirtualFile(path);
             doc = projectAPI.createDocument(virtualFile);
         }
+
+        List<ITextOperation> textOperations = operations.getTextOperations();
+        if (textOperations.isEmpty()) {
+            return;
+        }
+
+        InsertedTextRanges insertedRanges = new InsertedTextRanges();
+        for (ITextOperation op : textOperations) {
+            if (op instanceof DeleteOperation) {
+                insertedRanges.deleted(op.getPosition(), op.getTextLength());
+            } else {
+                insertedRanges.inserted(op.getPosition(), op.getTextLength());
+            }
+        }
+
          /*
          * Disable documentListener temporarily to avoid being notified of the
          * change
          */
         manager.disableDocumentListener();
-        for (ITextOperation op : operations.getTextOperations()) {
-            if (op instanceof DeleteOperation) {
-                editorAPI.deleteText(doc, op.getPosition(),
-                    op.getPosition() + op.getTextLength());
-            } else {
-                boolean writePermission = doc.isWritable();
-                if (!writePermission) {
-                    doc.setReadOnly(false);
-                }
-                editorAPI.insertText(doc, op.getPosition(), op.getText());
-                if (!writePermission) {
-                    doc.setReadOnly(true);
-                }
-                Editor editor = editorPool.getEditor(path);
-                if (editor != null) {
-                    editorAPI.textMarkAdd(editor, op.getPosition(),
-                        op.getPosition() + op.getTextLength(), color);
-                }
+
+        boolean writePermission = doc.isWritable();
+        if (!writePermission) {
+            doc.setReadOnly(false);
+        }
+
+        try {
+            editorAPI.applyTextOperations(doc, textOperations);
+        } finally {
+            if (!writePermission) {
+                doc.setReadOnly(true);
             }
+
+            manager.enableDocumentListener();
         }
 
-        manager.enableDocumentListener();
+        Editor editor = editorPool.getEditor(path);
+        if (editor != null) {
+            for (TextSelection range : insertedRanges.getRanges()) {
+                editorAPI.textMarkAdd(editor, range.getOffset(),
+                    range.getOffset() + range.getLength(), color);
+            }
+        }
     }
 
     /**
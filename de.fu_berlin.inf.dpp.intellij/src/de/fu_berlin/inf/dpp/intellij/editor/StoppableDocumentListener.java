@@ -22,11 +22,16 @@
 
 package de.fu_berlin.inf.dpp.intellij.editor;
 
+import com.intellij.openapi.command.CommandAdapter;
+import com.intellij.openapi.command.CommandEvent;
+import com.intellij.openapi.command.CommandListener;
+import com.intellij.openapi.command.CommandProcessor;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.editor.event.DocumentListener;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.intellij.editor.text.TextChangeCollector;
 import org.apache.log4j.Logger;
 
 /**
@@ -34,6 +39,9 @@ import org.apache.log4j.Logger;
  * they occur in a document (using documentAboutToBeChanged). The DocumentListener
  * is only added to the document that is currently being edited.
  * <p/>
+ * Changes that occur while a command is executed (e.g. reformat code,
+ * optimize imports or replace all) are collected and reported as one
+ * activity when the command has finished.
  */
 public class StoppableDocumentListener extends AbstractStoppableListener
     implements DocumentListener {
@@ -43,13 +51,46 @@ public class StoppableDocumentListener extends AbstractStoppableListener
     private static final Logger LOG = Logger
         .getLogger(StoppableDocumentListener.class);
 
+    private final CommandProcessor commandProcessor;
+
+    private final TextChangeCollector pendingChanges = new TextChangeCollector();
+
+    /**
+     * Document and path of the pending changes, <code>null</code> if there
+     * are none.
+     */
+    private Document pendingDocument;
+    private SPath pendingPath;
+
+    private final CommandListener commandListener = new CommandAdapter() {
+        @Override
+        public void commandFinished(CommandEvent event) {
+            flushPendingChanges();
+        }
+    };
+
     public StoppableDocumentListener(EditorManager editorManager) {
         super(editorManager);
+        commandProcessor = CommandProcessor.getInstance();
+    }
+
+    /**
+     * Reports the pending changes before the listener gets disabled, as the
+     * following changes (e.g. remote ones) must not be mixed with them.
+     */
+    @Override
+    public void setEnabled(boolean enabled) {
+        if (!enabled) {
+            flushPendingChanges();
+        }
+
+        super.setEnabled(enabled);
     }
 
     /**
      * Calls
      * {@link EditorManager#generateTextEdit(int, String, String, SPath)}
+     * or collects the change if a command is currently executed.
      *
      * @param event
      */
@@ -68,8 +109,41 @@ public class StoppableDocumentListener extends AbstractStoppableListener
         String newText = event.getNewFragment().toString();
         String replacedText = event.getOldFragment().toString();
 
-        editorManager
-            .generateTextEdit(event.getOffset(), newText, replacedText, path);
+        if (pendingPath != null && !pendingPath.equals(path)) {
+            flushPendingChanges();
+        }
+
+        if (commandProcessor.getCurrentCommand() == null) {
+            editorManager
+                .generateTextEdit(event.getOffset(), newText, replacedText,
+                    path);
+            return;
+        }
+
+        pendingDocument = event.getDocument();
+        pendingPath = path;
+        pendingChanges
+            .beforeChange(pendingDocument.getCharsSequence(), event.getOffset(),
+                replacedText, newText);
+    }
+
+    /**
+     * Reports the collected changes of the last command to the EditorManager
+     * as one activity.
+     */
+    private void flushPendingChanges() {
+        if (pendingPath == null) {
+            return;
+        }
+
+        SPath path = pendingPath;
+        Document document = pendingDocument;
+
+        pendingPath = null;
+        pendingDocument = null;
+
+        editorManager.generateTextEdits(
+            pendingChanges.finish(document.getCharsSequence()), path);
     }
 
     /**
@@ -90,8 +164,11 @@ public class StoppableDocumentListener extends AbstractStoppableListener
      * Removes this listener from the document.
      */
     public void stopListening() {
+        flushPendingChanges();
+
         if (document != null) {
             document.removeDocumentListener(this);
+            commandProcessor.removeCommandListener(commandListener);
             document = null;
         }
     }
@@ -105,8 +182,10 @@ public class StoppableDocumentListener extends AbstractStoppableListener
         if (document == null) {
             document = newDocument;
             document.addDocumentListener(this);
+            commandProcessor.addCommandListener(commandListener);
             //TODO: replace by equals?
         } else if (document != newDocument) {
+            flushPendingChanges();
             document.removeDocumentListener(this);
             document = newDocument;
             document.addDocumentListener(this);
@@ -0,0 +1,143 @@
+/*
+ *
+ *  DPP - Serious Distributed Pair Programming
+ *  (c) Freie Universität Berlin - Fachbereich Mathematik und Informatik - 2010
+ *  (c) NFQ (www.nfq.com) - 2014
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 1, or (at your option)
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ * /
+ */
+
+package de.fu_berlin.inf.dpp.intellij.editor.text;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tracks the ranges of text inserted by a sequence of text operations. The
+ * ranges are shifted by every following insertion and deletion and contiguous
+ * ranges are merged, so one highlighter per range is enough to mark all
+ * inserted text once the sequence was applied.
+ */
+public class InsertedTextRanges {
+
+    /* sorted, disjoint and non-adjacent ranges as {start, end} */
+    private final List<int[]> ranges = new ArrayList<int[]>();
+
+    /**
+     * Records an insertion of <code>length</code> characters at
+     * <code>offset</code>.
+     *
+     * @param offset
+     * @param length
+     */
+    public void inserted(int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+
+        int[] inserted = { offset, offset + length };
+
+        int index = 0;
+
+        for (Iterator<int[]> it = ranges.iterator(); it.hasNext(); ) {
+            int[] range = it.next();
+
+            if (range[1] < offset) {
+                index++;
+                continue;
+            }
+
+            if (range[0] > offset) {
+                range[0] += length;
+                range[1] += length;
+                continue;
+            }
+
+            // the insertion touches or is inside this range
+            inserted[0] = range[0];
+            inserted[1] = range[1] + length;
+            it.remove();
+        }
+
+        ranges.add(index, inserted);
+        mergeAdjacent();
+    }
+
+    /**
+     * Records a deletion of <code>length</code> characters at
+     * <code>offset</code>.
+     *
+     * @param offset
+     * @param length
+     */
+    public void deleted(int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+
+        for (Iterator<int[]> it = ranges.iterator(); it.hasNext(); ) {
+            int[] range = it.next();
+
+            range[0] = shift(range[0], offset, length);
+            range[1] = shift(range[1], offset, length);
+
+            if (range[0] == range[1]) {
+                it.remove();
+            }
+        }
+
+        mergeAdjacent();
+    }
+
+    /**
+     * @return the merged ranges in ascending order
+     */
+    public List<TextSelection> getRanges() {
+        List<TextSelection> result = new ArrayList<TextSelection>(
+            ranges.size());
+
+        for (int[] range : ranges) {
+            result.add(new TextSelection(range[0], range[1] - range[0]));
+        }
+
+        return result;
+    }
+
+    private static int shift(int position, int offset, int length) {
+        if (position <= offset) {
+            return position;
+        }
+
+        if (position >= offset + length) {
+            return position - length;
+        }
+
+        return offset;
+    }
+
+    private void mergeAdjacent() {
+        for (int i = ranges.size() - 1; i > 0; i--) {
+            int[] previous = ranges.get(i - 1);
+            int[] current = ranges.get(i);
+
+            if (current[0] <= previous[1]) {
+                previous[1] = Math.max(previous[1], current[1]);
+                ranges.remove(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ *
+ *  DPP - Serious Distributed Pair Programming
+ *  (c) Freie Universität Berlin - Fachbereich Mathematik und Informatik - 2010
+ *  (c) NFQ (www.nfq.com) - 2014
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 1, or (at your option)
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ * /
+ */
+
+package de.fu_berlin.inf.dpp.intellij.editor.text;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects consecutive changes of a document and composes them into as few
+ * replacements as possible. Changes that overlap or touch each other are
+ * merged into one replacement. Changes separated by unchanged text are kept
+ * apart, so a replacement never carries text that was not changed and
+ * concurrent edits of other users in between are not overwritten.
+ * <p/>
+ * All changes must be reported before they are applied to the document.
+ */
+public class TextChangeCollector {
+
+    /**
+     * A replacement of text in the document.
+     */
+    public static class Replacement {
+        private final int offset;
+        private final String newText;
+        private final String replacedText;
+
+        public Replacement(int offset, String newText, String replacedText) {
+            this.offset = offset;
+            this.newText = newText;
+            this.replacedText = replacedText;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public String getNewText() {
+            return newText;
+        }
+
+        public String getReplacedText() {
+            return replacedText;
+        }
+
+        @Override
+        public String toString() {
+            return "Replacement(" + offset + ", '" + newText + "', '"
+                + replacedText + "')";
+        }
+    }
+
+    /* changed region in the coordinates of the current document */
+    private static class Region {
+        int start;
+        int end;
+        String originalText;
+
+        Region(int start, int end, String originalText) {
+            this.start = start;
+            this.end = end;
+            this.originalText = originalText;
+        }
+    }
+
+    /* sorted and separated by unchanged text */
+    private final List<Region> regions = new ArrayList<Region>();
+
+    /**
+     * Records a change that is about to be applied to the document.
+     *
+     * @param documentText the text of the document before the change
+     * @param offset       the offset of the change
+     * @param replacedText the text that will be replaced
+     * @param newText      the text that will be inserted
+     */
+    public void beforeChange(CharSequence documentText, int offset,
+        String replacedText, String newText) {
+
+        int changeEnd = offset + replacedText.length();
+        int delta = newText.length() - replacedText.length();
+
+        int first = 0;
+        while (first < regions.size() && regions.get(first).end < offset) {
+            first++;
+        }
+
+        int last = first;
+        while (last < regions.size() && regions.get(last).start <= changeEnd) {
+            last++;
+        }
+
+        Region merged;
+
+        if (first == last) {
+            merged = new Region(offset, changeEnd, replacedText);
+        } else {
+            int start = Math.min(offset, regions.get(first).start);
+            int end = Math.max(changeEnd, regions.get(last - 1).end);
+
+            /*
+             * text outside of the known regions is still unchanged, so the
+             * original text can be composed of the current document text and
+             * the original text of the regions
+             */
+            StringBuilder originalText = new StringBuilder();
+            int position = start;
+
+            for (int i = first; i < last; i++) {
+                Region region = regions.get(i);
+                originalText
+                    .append(documentText.subSequence(position, region.start));
+                originalText.append(region.originalText);
+                position = region.end;
+            }
+
+            originalText.append(documentText.subSequence(position, end));
+
+            merged = new Region(start, end, originalText.toString());
+        }
+
+        merged.end += delta;
+
+        for (int i = last; i < regions.size(); i++) {
+            regions.get(i).start += delta;
+            regions.get(i).end += delta;
+        }
+
+        regions.subList(first, last).clear();
+        regions.add(first, merged);
+    }
+
+    /**
+     * @return <code>true</code> if no change was recorded since the last call
+     * of {@link #finish(CharSequence)}
+     */
+    public boolean isEmpty() {
+        return regions.isEmpty();
+    }
+
+    /**
+     * Returns the replacements that transform the document text before the
+     * first recorded change into the given text and resets this collector.
+     * <p/>
+     * The replacements are returned in descending order of their offsets, so
+     * their offsets are valid if they are applied one after another on the
+     * original text.
+     *
+     * @param documentText the text of the document after all changes
+     * @return the replacements to apply in the returned order
+     */
+    public List<Replacement> finish(CharSequence documentText) {
+        List<Replacement> replacements = new ArrayList<Replacement>();
+
+        int delta = 0;
+
+        for (Region region : regions) {
+            String newText = documentText.subSequence(region.start, region.end)
+                .toString();
+
+            if (!newText.equals(region.originalText)) {
+                replacements.add(new Replacement(region.start - delta, newText,
+                    region.originalText));
+            }
+
+            delta += newText.length() - region.originalText.length();
+        }
+
+        regions.clear();
+
+        Collections.reverse(replacements);
+        return replacements;
+    }
+}
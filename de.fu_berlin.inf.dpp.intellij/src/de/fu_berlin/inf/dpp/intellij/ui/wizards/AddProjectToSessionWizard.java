@@ -44,6 +44,7 @@ import de.fu_berlin.inf.dpp.negotiation.CancelListener;
 import de.fu_berlin.inf.dpp.negotiation.FileList;
 import de.fu_berlin.inf.dpp.negotiation.FileListDiff;
 import de.fu_berlin.inf.dpp.negotiation.FileListFactory;
+import de.fu_berlin.inf.dpp.negotiation.FileListSnapshotStore;
 import de.fu_berlin.inf.dpp.negotiation.ProcessTools;
 import de.fu_berlin.inf.dpp.negotiation.ProjectNegotiation;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
@@ -95,6 +96,9 @@ public class AddProjectToSessionWizard extends Wizard {
     @Inject
     private IChecksumCache checksumCache;
 
+    @Inject
+    private FileListSnapshotStore fileListSnapshots;
+
     @Inject
     private ISarosSessionManager sessionManager;
 
@@ -416,7 +420,7 @@ public class AddProjectToSessionWizard extends Wizard {
 
                     FileList sharedFileList = FileListFactory
                         .createFileList(project, eclipseResources,
-                            checksumCache, null,
+                            checksumCache, fileListSnapshots, null,
                             new SubProgressMonitor(monitor, 1,
                                 SubProgressMonitor.SUPPRESS_SETTASKNAME)
                         );
@@ -0,0 +1,100 @@
+/*
+ *
+ *  DPP - Serious Distributed Pair Programming
+ *  (c) Freie Universität Berlin - Fachbereich Mathematik und Informatik - 2010
+ *  (c) NFQ (www.nfq.com) - 2014
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 1, or (at your option)
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ * /
+ */
+
+package de.fu_berlin.inf.dpp.intellij.editor.text;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InsertedTextRangesTest {
+
+    @Test
+    public void mergesContiguousInsertions() {
+        InsertedTextRanges ranges = new InsertedTextRanges();
+
+        ranges.inserted(10, 3);
+        ranges.inserted(13, 2);
+        ranges.inserted(10, 1);
+
+        assertRanges(ranges, 10, 6);
+    }
+
+    @Test
+    public void shiftsRangesBehindInsertion() {
+        InsertedTextRanges ranges = new InsertedTextRanges();
+
+        ranges.inserted(20, 5);
+        ranges.inserted(0, 3);
+
+        assertRanges(ranges, 0, 3, 23, 5);
+    }
+
+    @Test
+    public void extendsRangeOnInsertionInside() {
+        InsertedTextRanges ranges = new InsertedTextRanges();
+
+        ranges.inserted(5, 4);
+        ranges.inserted(7, 10);
+
+        assertRanges(ranges, 5, 14);
+    }
+
+    @Test
+    public void deletionShrinksAndJoinsRanges() {
+        InsertedTextRanges ranges = new InsertedTextRanges();
+
+        ranges.inserted(0, 5);
+        ranges.inserted(10, 5);
+
+        // delete the gap and one character of each range
+        ranges.deleted(4, 7);
+
+        assertRanges(ranges, 0, 8);
+    }
+
+    @Test
+    public void deletionRemovesCoveredRanges() {
+        InsertedTextRanges ranges = new InsertedTextRanges();
+
+        ranges.inserted(5, 5);
+        ranges.deleted(0, 20);
+
+        assertTrue(ranges.getRanges().isEmpty());
+    }
+
+    private static void assertRanges(InsertedTextRanges ranges,
+        int... offsetsAndLengths) {
+        List<TextSelection> result = ranges.getRanges();
+
+        assertEquals(offsetsAndLengths.length / 2, result.size());
+
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals(offsetsAndLengths[2 * i], result.get(i).getOffset());
+            assertEquals(offsetsAndLengths[2 * i + 1],
+                result.get(i).getLength());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *
+ *  DPP - Serious Distributed Pair Programming
+ *  (c) Freie Universität Berlin - Fachbereich Mathematik und Informatik - 2010
+ *  (c) NFQ (www.nfq.com) - 2014
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 1, or (at your option)
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ * /
+ */
+
+package de.fu_berlin.inf.dpp.intellij.editor.text;
+
+import de.fu_berlin.inf.dpp.intellij.editor.text.TextChangeCollector.Replacement;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TextChangeCollectorTest {
+
+    private final TextChangeCollector collector = new TextChangeCollector();
+
+    private StringBuilder document;
+
+    @Test
+    public void composesOverlappingChangesToOneReplacement() {
+        document = new StringBuilder("public void foo() {}");
+
+        change(7, 4, "int");
+        change(7, 3, "long");
+        change(11, 0, " ");
+
+        List<Replacement> replacements = collector
+            .finish(document.toString());
+
+        assertEquals(1, replacements.size());
+        assertEquals(7, replacements.get(0).getOffset());
+        assertEquals("void", replacements.get(0).getReplacedText());
+        assertEquals("long ", replacements.get(0).getNewText());
+        assertTrue(collector.isEmpty());
+    }
+
+    @Test
+    public void keepsSeparatedChangesSeparate() {
+        document = new StringBuilder("xxxx");
+        String original = document.toString();
+
+        change(0, 1, "ab");
+        change(3, 1, "");
+
+        List<Replacement> replacements = collector
+            .finish(document.toString());
+
+        assertEquals(2, replacements.size());
+        // descending order
+        assertTrue(replacements.get(0).getOffset() > replacements.get(1)
+            .getOffset());
+        // the unchanged text in between is not part of any replacement
+        assertEquals("x", replacements.get(0).getReplacedText());
+        assertEquals("x", replacements.get(1).getReplacedText());
+        assertEquals(document.toString(), apply(original, replacements));
+    }
+
+    @Test
+    public void mergesTouchingChanges() {
+        document = new StringBuilder("abcd");
+
+        change(1, 1, "x");
+        change(2, 1, "y");
+
+        List<Replacement> replacements = collector
+            .finish(document.toString());
+
+        assertEquals(1, replacements.size());
+        assertEquals("bc", replacements.get(0).getReplacedText());
+        assertEquals("xy", replacements.get(0).getNewText());
+    }
+
+    @Test
+    public void revertedChangesAreDropped() {
+        document = new StringBuilder("abc");
+
+        change(1, 0, "x");
+        change(1, 1, "");
+
+        assertTrue(collector.finish(document.toString()).isEmpty());
+    }
+
+    @Test
+    public void randomChangesAreComposedCorrectly() {
+        Random random = new Random(42);
+
+        for (int run = 0; run < 200; run++) {
+            document = new StringBuilder(randomText(random, 1000));
+            String original = document.toString();
+
+            int changes = 1 + random.nextInt(50);
+
+            for (int i = 0; i < changes; i++) {
+                int offset = random.nextInt(document.length() + 1);
+                int length = random.nextInt(
+                    Math.min(20, document.length() - offset) + 1);
+                change(offset, length, randomText(random, 10));
+            }
+
+            List<Replacement> replacements = collector
+                .finish(document.toString());
+
+            assertEquals(document.toString(), apply(original, replacements));
+        }
+    }
+
+    private void change(int offset, int length, String newText) {
+        String replaced = document.substring(offset, offset + length);
+        collector.beforeChange(document, offset, replaced, newText);
+        document.replace(offset, offset + length, newText);
+    }
+
+    private static String apply(String text, List<Replacement> replacements) {
+        StringBuilder result = new StringBuilder(text);
+
+        for (Replacement replacement : replacements) {
+            int offset = replacement.getOffset();
+            int end = offset + replacement.getReplacedText().length();
+
+            assertEquals(replacement.getReplacedText(),
+                result.substring(offset, end));
+
+            result.replace(offset, end, replacement.getNewText());
+        }
+
+        return result.toString();
+    }
+
+    private static String randomText(Random random, int maxLength) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(maxLength + 1);
+
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + random.nextInt(4)));
+        }
+
+        return text.toString();
+    }
+}
@@ -86,8 +86,41 @@ app.controller('ContactListCtrl', function ($scope) {
 
     $scope.selected = null;
 
-    $scope.add = function (contact, presence, addition) {
-        $scope.contacts.push({name: contact, presence: presence, addition: addition})
+    $scope.compare = function (a, b) {
+        var result = a.name.toLowerCase().localeCompare(b.name.toLowerCase());
+        return result !== 0 ? result : a.jid.localeCompare(b.jid);
+    };
+
+    // keeps the contacts sorted by their name
+    $scope.add = function (jid, contact, presence, addition) {
+        var entry = {jid: jid, name: contact, presence: presence, addition: addition};
+        var index = 0;
+        while (index < $scope.contacts.length && $scope.compare($scope.contacts[index], entry) < 0) {
+            index++;
+        }
+        $scope.contacts.splice(index, 0, entry);
+    };
+
+    $scope.indexOf = function (jid) {
+        for (var i = 0; i < $scope.contacts.length; i++) {
+            if ($scope.contacts[i].jid === jid) {
+                return i;
+            }
+        }
+        return -1;
+    };
+
+    $scope.update = function (jid, contact, presence, addition) {
+        // the name may have changed, so the position may have changed as well
+        $scope.remove(jid);
+        $scope.add(jid, contact, presence, addition);
+    };
+
+    $scope.remove = function (jid) {
+        var index = $scope.indexOf(jid);
+        if (index !== -1) {
+            $scope.contacts.splice(index, 1);
+        }
     };
 
     $scope.displayRoot = function (account) {
@@ -116,7 +149,19 @@ app.controller('ContactListCtrl', function ($scope) {
             $scope.displayRoot(contactList.account);
             $scope.clearAll();
             contactList.contactList.forEach(function (contact) {
-                $scope.add(contact.displayName, contact.presence, contact.addition);
+                $scope.add(contact.jid, contact.displayName, contact.presence, contact.addition);
+            });
+        });
+    });
+
+    Saros.on('updateContactList', function (delta) {
+
+        $scope.$apply( function () {
+            delta.removed.forEach(function (jid) {
+                $scope.remove(jid);
+            });
+            delta.added.concat(delta.updated).forEach(function (contact) {
+                $scope.update(contact.jid, contact.displayName, contact.presence, contact.addition);
             });
         });
     });
@@ -104,6 +104,11 @@ var Saros;
         displayContactList: function (contactList) {
 
             this.trigger('displayContactList', contactList);
+        },
+
+        updateContactList: function (delta) {
+
+            this.trigger('updateContactList', delta);
         }
 	});
 
@@ -12,6 +12,8 @@ import org.jivesoftware.smack.packet.RosterPacket;
  */
 public class Contact {
 
+    private final String jid;
+
     private final String displayName;
 
     private final String presence;
@@ -19,11 +21,14 @@ public class Contact {
     private final String addition;
 
     /**
+     * @param jid the bare JID of the contact, used to identify the contact
      * @param displayName the name of the contact as it should be displayed
      * @param presence a string indicating the online status
      * @param addition a string containing subscription status
      */
-    public Contact(String displayName, String presence, String addition) {
+    public Contact(String jid, String displayName, String presence,
+        String addition) {
+        this.jid = jid;
         this.displayName = displayName;
         this.presence = presence;
         this.addition = addition;
@@ -40,7 +45,8 @@ public class Contact {
         String displayableName = XMPPUtils.getDisplayableName(entry);
         String addition = createAdditionString(entry, presence);
         String presenceString = createPresenceString(presence);
-        return new Contact(displayableName, presenceString, addition);
+        return new Contact(entry.getUser(), displayableName, presenceString,
+            addition);
     }
 
     private static String createPresenceString(Presence presence) {
@@ -83,6 +89,10 @@ public class Contact {
         return addition;
     }
 
+    public String getJid() {
+        return jid;
+    }
+
     public String getDisplayName() {
             return displayName;
         }
@@ -94,4 +104,28 @@ public class Contact {
     public String getAddition() {
         return addition;
     }
+
+    @Override
+    public int hashCode() {
+        return jid == null ? 0 : jid.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+
+        if (!(obj instanceof Contact))
+            return false;
+
+        Contact other = (Contact) obj;
+
+        return equal(jid, other.jid) && equal(displayName, other.displayName)
+            && equal(presence, other.presence)
+            && equal(addition, other.addition);
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
 }
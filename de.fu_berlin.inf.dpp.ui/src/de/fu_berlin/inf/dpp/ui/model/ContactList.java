@@ -53,6 +53,20 @@ public class ContactList {
         return account.getBareJid();
     }
 
+    /**
+     * @return the account the contact list belongs to
+     */
+    public Account getAccount() {
+        return account;
+    }
+
+    /**
+     * @return an unmodifiable view of the contacts
+     */
+    public List<Contact> getContacts() {
+        return Collections.unmodifiableList(contactList);
+    }
+
     /**
      * Re-create the contact list according to the roster. The associated account
      * remains the same.
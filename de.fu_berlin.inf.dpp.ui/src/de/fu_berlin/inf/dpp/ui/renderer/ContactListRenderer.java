@@ -3,31 +3,92 @@ package de.fu_berlin.inf.dpp.ui.renderer;
 import com.google.gson.Gson;
 import de.fu_berlin.inf.ag_se.browser.extensions.IJQueryBrowser;
 import de.fu_berlin.inf.ag_se.browser.functions.CallbackFunction;
-import de.fu_berlin.inf.dpp.synchronize.UISynchronizer;
 import de.fu_berlin.inf.dpp.ui.manager.BrowserManager;
 import de.fu_berlin.inf.dpp.net.ConnectionState;
+import de.fu_berlin.inf.dpp.ui.model.Account;
+import de.fu_berlin.inf.dpp.ui.model.Contact;
 import de.fu_berlin.inf.dpp.ui.model.ContactList;
 import de.fu_berlin.inf.dpp.ui.renderer.Renderer;
+import org.apache.log4j.Logger;
 import org.jivesoftware.smack.Roster;
+import org.picocontainer.Disposable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 
 /**
  * This class is responsible for transferring the contact list and connection
  * state to the browser so that they can be displayed.
  * It holds the connection and the contact list state so that the current state
  * can be re-rendered when the browser instance changes.
+ * <p/>
+ * Changes of the roster are not rendered immediately. They are coalesced and
+ * flushed at most every {@link #FLUSH_DELAY} milliseconds. A flush only
+ * transfers the contacts that were added, updated or removed since the last
+ * rendered contact list.
  */
-public class ContactListRenderer implements Renderer {
+public class ContactListRenderer implements Renderer, Disposable {
+
+    private static final Logger LOG = Logger
+        .getLogger(ContactListRenderer.class);
+
+    /**
+     * Minimum delay in milliseconds between two contact list updates.
+     */
+    static final long FLUSH_DELAY = 100;
+
+    private static final Gson GSON = new Gson();
 
     private final BrowserManager browserManager;
 
+    private final Timer flushTimer = new Timer(
+        "ContactListRenderer-flush", true);
+
     private ConnectionState connectionState = ConnectionState.NOT_CONNECTED;
 
     private ContactList contactList = ContactList.EMPTY_CONTACT_LIST;
 
+    /**
+     * The contacts currently displayed in the browser indexed by their JID or
+     * <code>null</code> if the whole contact list must be transferred on the
+     * next flush.
+     */
+    private Map<String, Contact> renderedContacts;
+
+    private Account renderedAccount;
+
+    private boolean flushScheduled;
+
+    /** Whether the flush timer was cancelled. */
+    private boolean disposed;
+
+    /**
+     * The delta between two contact lists as it is transferred to Javascript.
+     */
+    private static class ContactListDelta {
+        private final List<Contact> added = new ArrayList<Contact>();
+        private final List<Contact> updated = new ArrayList<Contact>();
+        private final List<String> removed = new ArrayList<String>();
+
+        private boolean isEmpty() {
+            return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+        }
+    }
+
     public ContactListRenderer(BrowserManager browserManager) {
         this.browserManager = browserManager;
     }
 
+    @Override
+    public synchronized void dispose() {
+        disposed = true;
+        flushTimer.cancel();
+    }
+
     /**
      * Displays the given connection state and contact list in the browser.
      *
@@ -54,17 +115,34 @@ public class ContactListRenderer implements Renderer {
      */
     public synchronized void renderConnectionState(ConnectionState state) {
         connectionState = state;
-        render();
+        renderConnectionState();
     }
 
     /**
      * Displays the contact list respresented by the given roster in the browser.
+     * The contact list is not displayed immediately, instead all changes
+     * that occur until the next flush are displayed at once.
      *
      * @param roster the roster containing the contact list
      */
     public synchronized void renderContactList(Roster roster) {
         contactList = contactList.rebuild(roster);
-        render();
+
+        if (flushScheduled || disposed)
+            return;
+
+        flushScheduled = true;
+
+        flushTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    LOG.error("failed to render the contact list", e);
+                }
+            }
+        }, FLUSH_DELAY);
     }
 
     private synchronized void renderConnectionState() {
@@ -92,15 +170,81 @@ public class ContactListRenderer implements Renderer {
      * is transformed into a JSON string and then transmitted to Javascript.
      */
     private synchronized void renderContactList() {
-        Gson gson = new Gson();
-        final String jsonString = gson.toJson(contactList);
-        executeInBrowser("Saros.displayContactList(" + jsonString + ");");
+        final String jsonString = GSON.toJson(contactList);
+
+        if (executeInBrowser("Saros.displayContactList(" + jsonString + ");"))
+            setRendered(contactList);
+        else
+            renderedContacts = null;
+    }
+
+    /**
+     * Transfers the changes of the contact list since it was rendered the last
+     * time to the HTML UI. Falls back to the whole contact list if the
+     * currently displayed contacts are unknown.
+     */
+    private synchronized void flush() {
+        flushScheduled = false;
+
+        if (renderedContacts == null
+            || renderedAccount != contactList.getAccount()) {
+            renderContactList();
+            return;
+        }
+
+        ContactListDelta delta = new ContactListDelta();
+
+        Map<String, Contact> contacts = index(contactList);
+
+        for (Contact contact : contacts.values()) {
+            Contact rendered = renderedContacts.get(contact.getJid());
+
+            if (rendered == null)
+                delta.added.add(contact);
+            else if (!rendered.equals(contact))
+                delta.updated.add(contact);
+        }
+
+        for (String jid : renderedContacts.keySet()) {
+            if (!contacts.containsKey(jid))
+                delta.removed.add(jid);
+        }
+
+        if (delta.isEmpty())
+            return;
+
+        final String jsonString = GSON.toJson(delta);
+
+        if (executeInBrowser("Saros.updateContactList(" + jsonString + ");"))
+            renderedContacts = contacts;
+        else
+            renderedContacts = null;
+    }
+
+    private void setRendered(ContactList contactList) {
+        renderedAccount = contactList.getAccount();
+        renderedContacts = index(contactList);
     }
 
-    private void executeInBrowser(final String script) {
+    private static Map<String, Contact> index(ContactList contactList) {
+        Map<String, Contact> contacts = new LinkedHashMap<String, Contact>();
+
+        for (Contact contact : contactList.getContacts())
+            contacts.put(contact.getJid(), contact);
+
+        return contacts;
+    }
+
+    /**
+     * @return <code>true</code> if the script was passed to the browser,
+     *         <code>false</code> if there is currently no browser
+     */
+    private boolean executeInBrowser(final String script) {
         IJQueryBrowser browser = browserManager.getMainViewBrowser();
         if (browser != null) {
             browser.run(script, CallbackFunction.ERROR_LOGGING_CALLBACK);
+            return true;
         }
+        return false;
     }
 }
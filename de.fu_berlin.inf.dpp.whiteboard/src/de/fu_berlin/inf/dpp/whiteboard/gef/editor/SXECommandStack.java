@@ -12,18 +12,57 @@ import de.fu_berlin.inf.dpp.whiteboard.gef.commands.SXECompoundCommand;
  * {@link org.eclipse.gef.commands.CompoundCommand} to the SXE correspondent to
  * transmit only a single list of <code>IRecord</code>s to the controller.
  * 
+ * <p>
+ * Commands read the document to create their records, thus they are executed
+ * while holding the monitor of the controller, as remote records are applied
+ * by another thread.
+ * </p>
+ * 
  * @author jurke
  * 
  * @see de.fu_berlin.inf.dpp.whiteboard.gef.commands.SXECompoundCommand
  */
 public class SXECommandStack extends CommandStack {
 
+    private final Object documentLock;
+
+    /**
+     * @param documentLock
+     *            the monitor guarding the document, i.e. the controller
+     */
+    public SXECommandStack(Object documentLock) {
+        this.documentLock = documentLock;
+    }
+
     @Override
     public void execute(Command command) {
         if (command instanceof CompoundCommand) {
             command = getSXECompoundCommand((CompoundCommand) command);
         }
-        super.execute(command);
+        synchronized (documentLock) {
+            super.execute(command);
+        }
+    }
+
+    @Override
+    public void undo() {
+        synchronized (documentLock) {
+            super.undo();
+        }
+    }
+
+    @Override
+    public void redo() {
+        synchronized (documentLock) {
+            super.redo();
+        }
+    }
+
+    @Override
+    public boolean canUndo() {
+        synchronized (documentLock) {
+            return super.canUndo();
+        }
     }
 
     /**
@@ -66,11 +105,12 @@ public class SXECommandStack extends CommandStack {
      */
     @Override
     public boolean canRedo() {
-        Command c = getRedoCommand();
-        if (c != null && !c.canExecute())
-            return false;
-        return super.canRedo();
-
+        synchronized (documentLock) {
+            Command c = getRedoCommand();
+            if (c != null && !c.canExecute())
+                return false;
+            return super.canRedo();
+        }
     }
 
 }
@@ -64,6 +64,7 @@ import de.fu_berlin.inf.dpp.whiteboard.gef.tools.TextboxCreationTool;
 import de.fu_berlin.inf.dpp.whiteboard.gef.util.IconUtils;
 import de.fu_berlin.inf.dpp.whiteboard.net.WhiteboardManager;
 import de.fu_berlin.inf.dpp.whiteboard.standalone.WhiteboardContextMenuProvider;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.ISXEMessageHandler;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.ISXEMessageHandler.MessageAdapter;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.ISXEMessageHandler.NotificationListener;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.net.SXEMessage;
@@ -91,7 +92,8 @@ public class WhiteboardEditor extends SarosPermissionsGraphicalEditor {
      */
     public WhiteboardEditor() {
         DefaultEditDomain editDomain = new DefaultEditDomain(this);
-        editDomain.setCommandStack(new SXECommandStack());
+        editDomain.setCommandStack(new SXECommandStack(WhiteboardManager
+            .getInstance().getSXEMessageHandler()));
         setEditDomain(editDomain);
         // initColors();
     }
@@ -128,8 +130,13 @@ public class WhiteboardEditor extends SarosPermissionsGraphicalEditor {
 
             });
 
-        viewer.setContents(WhiteboardManager.getInstance()
-            .getSXEMessageHandler().getDocumentRecord().getRoot());
+        ISXEMessageHandler handler = WhiteboardManager.getInstance()
+            .getSXEMessageHandler();
+
+        // the edit parts read the document, see SXEController
+        synchronized (handler) {
+            viewer.setContents(handler.getDocumentRecord().getRoot());
+        }
 
         viewer.addDropTargetListener(new TemplateTransferDropTargetListener(
             viewer) {
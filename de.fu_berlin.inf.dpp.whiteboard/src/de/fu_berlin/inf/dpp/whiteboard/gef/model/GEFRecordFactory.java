@@ -29,7 +29,7 @@ public class GEFRecordFactory extends SXEDefaultRecordFactory {
     @Override
     public ElementRecord createElementRecord(DocumentRecord documentRecord,
         String ns, String tag) {
-        if (documentRecord != null) {
+        if (documentRecord != null && log.isDebugEnabled()) {
             List<IRecord> state = documentRecord.getState();
             List<RecordDataObject> list = SXEUtils.toDataObjects(state);
             log.debug("new Documentstate: " + list);
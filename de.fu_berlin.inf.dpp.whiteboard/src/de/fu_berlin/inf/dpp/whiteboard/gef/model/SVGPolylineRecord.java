@@ -11,6 +11,7 @@ import org.eclipse.draw2d.geometry.PointList;
 import org.eclipse.draw2d.geometry.Rectangle;
 
 import de.fu_berlin.inf.dpp.whiteboard.gef.util.ColorUtils;
+import de.fu_berlin.inf.dpp.whiteboard.gef.util.PolylineUtils;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.records.DocumentRecord;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.records.IRecord;
 
@@ -19,6 +20,8 @@ import de.fu_berlin.inf.dpp.whiteboard.sxe.records.IRecord;
  * on every access would be pretty expensive because this attribute quickly
  * grows to some thousand points.
  * 
+ * Freehand strokes are simplified before they are created to keep the
+ * attribute and thus the records sent for every change small.
  * 
  * @author jurke
  * 
@@ -41,13 +44,15 @@ public class SVGPolylineRecord extends LayoutElementRecord {
 
     /**
      * Returns the record to add the points attribute to this ElementRecord.
+     * The points are simplified by the given tolerance.
      * 
      * @param points
      * @return the points record
      */
     public List<IRecord> createPointsRecord(PointList points) {
         List<IRecord> l = new LinkedList<IRecord>();
-        String newPoints = generatePointsAttribute(points);
+        String newPoints = PolylineUtils.toPointsAttribute(PolylineUtils
+            .simplify(points.toIntArray(), PolylineUtils.DEFAULT_TOLERANCE));
         l.add(createNewOrSetAttributeRecord(null,
             SVGConstants.SVG_POINTS_ATTRIBUTE, newPoints, false));
 
@@ -57,10 +62,6 @@ public class SVGPolylineRecord extends LayoutElementRecord {
         return l;
     }
 
-    protected static boolean isOdd(int x) {
-        return (x & 1) == 1;
-    }
-
     public PointList getPoints() {
         generatePointList();
         return points;
@@ -74,20 +75,8 @@ public class SVGPolylineRecord extends LayoutElementRecord {
             if (rawPoints == getAttributeValue(SVGConstants.SVG_POINTS_ATTRIBUTE))
                 return;
 
-        points = new PointList();
         rawPoints = getAttributeValue(SVGConstants.SVG_POINTS_ATTRIBUTE);
-        if (rawPoints == null)
-            return;
-
-        String[] rawList = rawPoints.split(" ");
-        String[] tmpPoint = null;
-        for (String s : rawList) {
-            tmpPoint = s.split(",");
-            if (tmpPoint.length > 1)
-                points.addPoint(Integer.parseInt(tmpPoint[0]),
-                    Integer.parseInt(tmpPoint[1]));
-        }
-
+        points = new PointList(PolylineUtils.parsePoints(rawPoints));
     }
 
     protected static int scaleMaintainPosition(int anchor, int x, double scale) {
@@ -120,16 +109,7 @@ public class SVGPolylineRecord extends LayoutElementRecord {
      * @return the PointList as SVG point attribute String
      */
     protected static String generatePointsAttribute(PointList points) {
-        int[] rawInts = points.toIntArray();
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < rawInts.length; i++) {
-            sb.append(rawInts[i]);
-            if (isOdd(i))
-                sb.append(" ");
-            else
-                sb.append(",");
-        }
-        return sb.toString();
+        return PolylineUtils.toPointsAttribute(points.toIntArray());
     }
 
     /**
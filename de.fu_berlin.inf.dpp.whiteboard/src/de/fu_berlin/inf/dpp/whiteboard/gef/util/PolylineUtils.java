@@ -0,0 +1,219 @@
+package de.fu_berlin.inf.dpp.whiteboard.gef.util;
+
+import java.util.Arrays;
+
+/**
+ * Utility methods for polylines stored as packed integer arrays of the form
+ * <code>{x0, y0, x1, y1, ...}</code>, like the ones of
+ * {@link org.eclipse.draw2d.geometry.PointList#toIntArray()}.
+ *
+ * The SXE representation is the SVG points attribute, so that other SVG
+ * clients (and older Saros versions) can still interpret it.
+ */
+public class PolylineUtils {
+
+    /**
+     * Default tolerance in pixels for simplifying freehand strokes, a point is
+     * only dropped if it is less than one pixel away from the simplified line.
+     */
+    public static final double DEFAULT_TOLERANCE = 1.0;
+
+    private static final int[] NO_POINTS = new int[0];
+
+    /**
+     * Parses a SVG points attribute without creating intermediate Strings.
+     * Coordinates may be separated by whitespace and/or commas. Fractions are
+     * truncated and an unpaired trailing coordinate is ignored.
+     *
+     * @param points
+     *            the SVG points attribute
+     * @return the packed coordinates
+     */
+    public static int[] parsePoints(String points) {
+        if (points == null)
+            return NO_POINTS;
+
+        int[] result = new int[Math.max(8, points.length() / 4)];
+        int count = 0;
+
+        final int length = points.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = points.charAt(i);
+
+            if (c != '-' && c != '+' && (c < '0' || c > '9')) {
+                i++;
+                continue;
+            }
+
+            boolean negative = c == '-';
+
+            if (c == '-' || c == '+')
+                i++;
+
+            int value = 0;
+            boolean hasDigits = false;
+
+            while (i < length && (c = points.charAt(i)) >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                hasDigits = true;
+                i++;
+            }
+
+            // skip the fraction
+            if (i < length && points.charAt(i) == '.') {
+                i++;
+                while (i < length && (c = points.charAt(i)) >= '0' && c <= '9') {
+                    hasDigits = true;
+                    i++;
+                }
+            }
+
+            if (!hasDigits)
+                continue;
+
+            if (count == result.length)
+                result = Arrays.copyOf(result, count * 2);
+
+            result[count++] = negative ? -value : value;
+        }
+
+        return Arrays.copyOf(result, count & ~1);
+    }
+
+    /**
+     * Returns the SVG points attribute for the given coordinates, i.e.
+     * <code>"x0,y0 x1,y1"</code>.
+     *
+     * @param points
+     *            the packed coordinates
+     */
+    public static String toPointsAttribute(int[] points) {
+        StringBuilder sb = new StringBuilder(points.length * 4);
+
+        for (int i = 0; i + 1 < points.length; i += 2) {
+            if (i > 0)
+                sb.append(' ');
+
+            sb.append(points[i]).append(',').append(points[i + 1]);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Simplifies the polyline with the Douglas-Peucker algorithm. The first and
+     * the last point are always kept, all other points are only kept if they
+     * are needed to keep the polyline within the given tolerance.
+     *
+     * @param points
+     *            the packed coordinates
+     * @param tolerance
+     *            maximum distance between a dropped point and the simplified
+     *            polyline
+     * @return the packed coordinates of the simplified polyline, the passed
+     *         array if nothing was dropped
+     */
+    public static int[] simplify(int[] points, double tolerance) {
+        final int count = points.length / 2;
+
+        if (count < 3)
+            return points;
+
+        final double squaredTolerance = tolerance * tolerance;
+
+        final boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+
+        // pending ranges, these never overlap so there are less than count
+        int[] stack = new int[2 * count];
+        int top = 0;
+
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+
+        while (top > 0) {
+            final int last = stack[--top];
+            final int first = stack[--top];
+
+            double maxDistance = -1;
+            int index = -1;
+
+            for (int i = first + 1; i < last; i++) {
+                double distance = squaredSegmentDistance(points, i, first,
+                    last);
+
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    index = i;
+                }
+            }
+
+            if (index == -1 || maxDistance <= squaredTolerance)
+                continue;
+
+            keep[index] = true;
+
+            stack[top++] = first;
+            stack[top++] = index;
+            stack[top++] = index;
+            stack[top++] = last;
+        }
+
+        int kept = 0;
+
+        for (boolean k : keep)
+            if (k)
+                kept++;
+
+        if (kept == count)
+            return points;
+
+        int[] result = new int[kept * 2];
+        int j = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (!keep[i])
+                continue;
+
+            result[j++] = points[2 * i];
+            result[j++] = points[2 * i + 1];
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the squared distance of the point with the given index to the
+     * segment between the points with the indices <code>first</code> and
+     * <code>last</code>.
+     */
+    private static double squaredSegmentDistance(int[] points, int index,
+        int first, int last) {
+
+        double x = points[2 * first];
+        double y = points[2 * first + 1];
+
+        final double dx = points[2 * last] - x;
+        final double dy = points[2 * last + 1] - y;
+
+        final double px = points[2 * index];
+        final double py = points[2 * index + 1];
+
+        if (dx != 0 || dy != 0) {
+            double t = ((px - x) * dx + (py - y) * dy) / (dx * dx + dy * dy);
+
+            if (t > 1) {
+                x += dx;
+                y += dy;
+            } else if (t > 0) {
+                x += dx * t;
+                y += dy * t;
+            }
+        }
+
+        return (px - x) * (px - x) + (py - y) * (py - y);
+    }
+}
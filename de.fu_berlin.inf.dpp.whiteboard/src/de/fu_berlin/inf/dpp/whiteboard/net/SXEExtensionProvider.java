@@ -51,6 +51,7 @@ public class SXEExtensionProvider implements PacketExtensionProvider {
     }
 
     public SXEPacketFilter getRecordsPacketFilter(SXESession session) {
-        return new SXEPacketFilter(session, SXEMessageType.RECORDS);
+        return new SXEPacketFilter(session, SXEMessageType.RECORDS,
+            SXEMessageType.COMPACT);
     }
 }
@@ -0,0 +1,258 @@
+package de.fu_berlin.inf.dpp.whiteboard.net;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.log4j.Logger;
+
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.util.ThreadUtils;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.RecordEntry;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.SXEMessageType;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.net.SXEMessage;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.RecordDataObject;
+
+/**
+ * <p>
+ * The messages that are not yet sent to one peer. At most one task per peer is
+ * sending, so the messages arrive in order while every peer makes progress
+ * independently of the others.
+ * </p>
+ *
+ * <p>
+ * If a peer lags behind, consecutive queued record messages are merged into
+ * one message of at most {@link #MAX_MERGED_RECORDS} records and
+ * {@link #MAX_MERGED_SIZE} characters, so the peer receives few packets of a
+ * bounded size instead of many small ones.
+ * </p>
+ *
+ * <p>
+ * No record is dropped because every SetRecord version is needed by the
+ * receiver. Instead {@link #add(SXEExtension)} blocks while the messages
+ * queued for the peer exceed {@link #MAX_QUEUED_SIZE} characters, so a peer
+ * that cannot keep up slows down the local changes rather than letting the
+ * queue grow without limit.
+ * </p>
+ *
+ * @see SarosSXETransmitter#sendAsync(SXEMessage)
+ */
+abstract class SXEPeerQueue implements Runnable {
+
+    private static final Logger log = Logger.getLogger(SXEPeerQueue.class);
+
+    /** maximum number of records that are merged into one message */
+    static final int MAX_MERGED_RECORDS = 500;
+
+    /** maximum estimated size of a merged message in characters */
+    static final int MAX_MERGED_SIZE = 64 * 1024;
+
+    /**
+     * estimated size of the queued messages in characters from which on
+     * adding a message blocks until the sending task has caught up
+     */
+    static final int MAX_QUEUED_SIZE = 1024 * 1024;
+
+    /** estimated size of the markup of a record besides its values */
+    private static final int RECORD_OVERHEAD = 32;
+
+    /** estimated size of the markup of a value besides its name and value */
+    private static final int VALUE_OVERHEAD = 4;
+
+    private static class QueuedMessage {
+        private final SXEExtension extension;
+        private final int size;
+
+        private QueuedMessage(SXEExtension extension, int size) {
+            this.extension = extension;
+            this.size = size;
+        }
+    }
+
+    private final JID peer;
+
+    private final Executor executor;
+
+    private final LinkedList<QueuedMessage> pending = new LinkedList<QueuedMessage>();
+
+    /** the estimated size of all pending messages */
+    private int pendingSize;
+
+    private boolean running;
+
+    private boolean closed;
+
+    /**
+     * @param peer
+     *            the peer to send the messages to
+     * @param executor
+     *            runs the task that sends the queued messages
+     */
+    SXEPeerQueue(JID peer, Executor executor) {
+        this.peer = peer;
+        this.executor = executor;
+    }
+
+    /**
+     * Sends the given extension after all previously added ones. Blocks while
+     * the messages queued for the peer exceed {@link #MAX_QUEUED_SIZE}, must
+     * therefore not be called by the sending task.
+     */
+    synchronized void add(SXEExtension extension) {
+        awaitCapacity();
+
+        if (closed)
+            return;
+
+        QueuedMessage message = new QueuedMessage(extension, size(extension));
+        QueuedMessage last = pending.peekLast();
+
+        if (last != null && canMerge(last, message)) {
+            pending.removeLast();
+            pendingSize -= last.size;
+
+            message = new QueuedMessage(merge(last.extension.getMessage(),
+                extension.getMessage()), last.size + message.size);
+        }
+
+        pending.add(message);
+        pendingSize += message.size;
+
+        if (running)
+            return;
+
+        try {
+            executor.execute(ThreadUtils.wrapSafe(log, this));
+            running = true;
+        } catch (RejectedExecutionException e) {
+            log.debug("discarding message to " + peer
+                + ", transmitter is disposed");
+            clear();
+        }
+    }
+
+    /**
+     * Discards all messages that are not sent yet and all that are added
+     * afterwards, i.e. because the peer left the session.
+     */
+    synchronized void close() {
+        closed = true;
+        clear();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            QueuedMessage next;
+
+            synchronized (this) {
+                next = pending.poll();
+
+                if (next == null) {
+                    running = false;
+                    return;
+                }
+
+                pendingSize -= next.size;
+                notifyAll();
+            }
+
+            send(peer, next.extension);
+        }
+    }
+
+    /**
+     * Sends the extension to the peer, called by the sending task.
+     */
+    protected abstract void send(JID peer, SXEExtension extension);
+
+    /**
+     * Waits until the pending messages fall below {@link #MAX_QUEUED_SIZE} or
+     * the queue is closed. On interruption the message is queued anyway, as
+     * it must not get lost.
+     */
+    private void awaitCapacity() {
+        if (!closed && pendingSize >= MAX_QUEUED_SIZE)
+            log.debug("waiting for the messages to " + peer
+                + " to be sent, queued: " + pendingSize + " characters");
+
+        while (!closed && pendingSize >= MAX_QUEUED_SIZE) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                log.warn("interrupted while waiting for the messages to "
+                    + peer + " to be sent");
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void clear() {
+        pending.clear();
+        pendingSize = 0;
+        notifyAll();
+    }
+
+    private static boolean canMerge(QueuedMessage first, QueuedMessage second) {
+        if (!isRecords(first.extension) || !isRecords(second.extension))
+            return false;
+
+        int records = first.extension.getMessage().getRecords().size()
+            + second.extension.getMessage().getRecords().size();
+
+        return records <= MAX_MERGED_RECORDS
+            && first.size + second.size <= MAX_MERGED_SIZE;
+    }
+
+    private static boolean isRecords(SXEExtension extension) {
+        return extension.getMessage().getMessageType() == SXEMessageType.RECORDS;
+    }
+
+    /**
+     * Estimates the size of the serialized extension in characters from the
+     * names and values of its records.
+     */
+    private static int size(SXEExtension extension) {
+        List<RecordDataObject> records = extension.getMessage().getRecords();
+
+        if (records == null)
+            return RECORD_OVERHEAD;
+
+        int size = 0;
+
+        for (RecordDataObject rdo : records) {
+            size += RECORD_OVERHEAD;
+
+            for (Entry<RecordEntry, String> value : rdo.getValuePairs()
+                .entrySet()) {
+                size += VALUE_OVERHEAD + value.getKey().toString().length()
+                    + value.getValue().length();
+            }
+        }
+
+        return size;
+    }
+
+    private static SXEExtension merge(SXEMessage first, SXEMessage second) {
+        SXEMessage merged = new SXEMessage(second.getSession(),
+            second.getMessageId());
+
+        merged.setMessageType(SXEMessageType.RECORDS);
+        merged.setTo(second.getTo());
+
+        List<RecordDataObject> records = new ArrayList<RecordDataObject>(first
+            .getRecords().size() + second.getRecords().size());
+
+        records.addAll(first.getRecords());
+        records.addAll(second.getRecords());
+        merged.setRecords(records);
+
+        SXEExtension extension = new SXEExtension();
+        extension.setMessage(merged);
+        return extension;
+    }
+}
@@ -1,8 +1,11 @@
 package de.fu_berlin.inf.dpp.whiteboard.net;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -20,9 +23,10 @@ import de.fu_berlin.inf.dpp.net.ITransmitter;
 import de.fu_berlin.inf.dpp.net.PacketCollector;
 import de.fu_berlin.inf.dpp.net.internal.XMPPTransmitter;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.session.AbstractSharedProjectListener;
 import de.fu_berlin.inf.dpp.session.ISarosSession;
+import de.fu_berlin.inf.dpp.session.ISharedProjectListener;
 import de.fu_berlin.inf.dpp.session.User;
-import de.fu_berlin.inf.dpp.ui.util.SWTUtils;
 import de.fu_berlin.inf.dpp.util.NamedThreadFactory;
 import de.fu_berlin.inf.dpp.util.ThreadUtils;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.SXEController;
@@ -58,11 +62,30 @@ public class SarosSXETransmitter implements ISXETransmitter {
     public static final Logger log = Logger
         .getLogger(SarosSXETransmitter.class);
 
-    /* we don't want to block the GUI for sending */
+    /*
+     * we don't want to block the GUI for sending, nor a peer by another slow
+     * one: every peer is served by its own task, see SXEPeerQueue
+     */
     protected ExecutorService sendingDispatch = Executors
-        .newSingleThreadExecutor(new NamedThreadFactory(
+        .newCachedThreadPool(new NamedThreadFactory(
             "Whiteboard-SXESending-Dispatch-"));
 
+    private final Map<JID, SXEPeerQueue> peerQueues = new HashMap<JID, SXEPeerQueue>();
+
+    /*
+     * nor for applying received records, the UI thread is only notified about
+     * the changes, see SXEController#setNotificationExecutor()
+     */
+    protected ExecutorService receivingDispatch = Executors
+        .newSingleThreadExecutor(new NamedThreadFactory(
+            "Whiteboard-SXEModel-Dispatch-"));
+
+    /*
+     * received messages not yet applied by the model thread, a batch is
+     * scheduled if not empty, see SXEController#executeRemoteRecords(List)
+     */
+    private final List<SXEMessage> receivedMessages = new ArrayList<SXEMessage>();
+
     private final SXEExtensionProvider provider = SXEExtensionProvider
         .getInstance();
 
@@ -74,9 +97,18 @@ public class SarosSXETransmitter implements ISXETransmitter {
 
     private final ISarosSession sarosSession;
 
+    /* a peer that left will not receive any further messages */
+    private final ISharedProjectListener sessionListener = new AbstractSharedProjectListener() {
+        @Override
+        public void userLeft(User user) {
+            removePeerQueue(user.getJID());
+        }
+    };
+
     public SarosSXETransmitter(ISarosSession sarosSession) {
         SarosPluginContext.initComponent(this);
         this.sarosSession = sarosSession;
+        this.sarosSession.addListener(sessionListener);
     }
 
     private PacketListener invitationListener;
@@ -91,20 +123,42 @@ public class SarosSXETransmitter implements ISXETransmitter {
             public void processPacket(Packet packet) {
                 final SXEExtension extension = (SXEExtension) packet
                     .getExtension(SXEMessage.SXE_TAG, SXEMessage.SXE_XMLNS);
+
+                final SXEMessageType type = extension.getMessage()
+                    .getMessageType();
+
+                // only the host decides about compaction, see SXEController
+                if (type == SXEMessageType.COMPACT
+                    && !sarosSession.getHost().getJID()
+                        .equals(new JID(packet.getFrom()))) {
+                    log.warn(prefix() + "ignoring compaction from "
+                        + packet.getFrom() + " who is not the host");
+                    return;
+                }
+
                 extension.getMessage().setFrom(packet.getFrom());
                 /*
                  * TODO consider the lastModifiedBy field: if not sent in the
                  * record it may be set here like the sender
                  */
                 setSender(extension.getMessage().getRecords(), packet.getFrom());
-                SWTUtils.runSafeSWTAsync(log, new Runnable() {
 
-                    @Override
-                    public void run() {
-                        controller.executeRemoteRecords(extension.getMessage());
-                    }
+                synchronized (receivedMessages) {
+                    receivedMessages.add(extension.getMessage());
+
+                    if (receivedMessages.size() > 1)
+                        return;
+                }
+
+                receivingDispatch.submit(ThreadUtils.wrapSafe(log,
+                    new Runnable() {
 
-                });
+                        @Override
+                        public void run() {
+                            applyReceivedMessages(controller);
+                        }
+
+                    }));
             }
         };
 
@@ -112,30 +166,67 @@ public class SarosSXETransmitter implements ISXETransmitter {
             provider.getRecordsPacketFilter(controller.getSession()));
     }
 
+    private void applyReceivedMessages(SXEController controller) {
+        List<SXEMessage> messages;
+
+        synchronized (receivedMessages) {
+            messages = new ArrayList<SXEMessage>(receivedMessages);
+            receivedMessages.clear();
+        }
+
+        if (!messages.isEmpty())
+            controller.executeRemoteRecords(messages);
+    }
+
+    /**
+     * Queues the message for every recipient. The message is only serialized
+     * once for all recipients that are not lagging behind.
+     */
     @Override
     public void sendAsync(final SXEMessage msg) {
-        sendingDispatch.submit(ThreadUtils.wrapSafe(log, new Runnable() {
+        SXEExtension extension = new SXEExtension();
+        extension.setMessage(msg);
 
-            @Override
-            public void run() {
-                sendWithoutDispatch(msg);
+        if (msg.getTo() == null) {
+            for (User u : sarosSession.getRemoteUsers())
+                getPeerQueue(u.getJID()).add(extension);
+        } else {
+            getPeerQueue(new JID(msg.getTo())).add(extension);
+        }
+    }
+
+    private SXEPeerQueue getPeerQueue(JID peer) {
+        synchronized (peerQueues) {
+            SXEPeerQueue queue = peerQueues.get(peer);
+
+            if (queue == null) {
+                queue = new SXEPeerQueue(peer, sendingDispatch) {
+                    @Override
+                    protected void send(JID peer, SXEExtension extension) {
+                        SarosSXETransmitter.this.send(peer, extension);
+                    }
+                };
+                peerQueues.put(peer, queue);
             }
-        }));
+
+            return queue;
+        }
     }
 
-    protected void sendWithoutDispatch(SXEMessage msg) {
-        SXEExtension extension = new SXEExtension();
-        extension.setMessage(msg);
+    private void removePeerQueue(JID peer) {
+        SXEPeerQueue queue;
+
+        synchronized (peerQueues) {
+            queue = peerQueues.remove(peer);
+        }
+
+        if (queue != null)
+            queue.close();
+    }
 
+    private void send(JID peer, SXEExtension extension) {
         try {
-            if (msg.getTo() == null) {
-                for (User u : sarosSession.getRemoteUsers()) {
-                    transmitter.send(u.getJID(), extension);
-                }
-            } else {
-                JID jid = new JID(msg.getTo());
-                transmitter.send(jid, extension);
-            }
+            transmitter.send(peer, extension);
         } catch (Exception e) {
             log.error(
                 prefix()
@@ -144,6 +235,18 @@ public class SarosSXETransmitter implements ISXETransmitter {
         }
     }
 
+    protected void sendWithoutDispatch(SXEMessage msg) {
+        SXEExtension extension = new SXEExtension();
+        extension.setMessage(msg);
+
+        if (msg.getTo() == null) {
+            for (User u : sarosSession.getRemoteUsers())
+                send(u.getJID(), extension);
+        } else {
+            send(new JID(msg.getTo()), extension);
+        }
+    }
+
     @Override
     public synchronized SXEMessage sendAndAwait(IProgressMonitor monitor,
         SXEMessage msg, SXEMessageType... awaitFor) throws IOException {
@@ -248,7 +351,21 @@ public class SarosSXETransmitter implements ISXETransmitter {
     public void dispose() {
         disconnect();
         receiver.removePacketListener(invitationListener);
+        sarosSession.removeListener(sessionListener);
         sendingDispatch.shutdown();
+        // may wait for a notification on the UI thread that will not come
+        receivingDispatch.shutdownNow();
+
+        synchronized (receivedMessages) {
+            receivedMessages.clear();
+        }
+
+        synchronized (peerQueues) {
+            for (SXEPeerQueue queue : peerQueues.values())
+                queue.close();
+
+            peerQueues.clear();
+        }
     }
 
     protected String prefix() {
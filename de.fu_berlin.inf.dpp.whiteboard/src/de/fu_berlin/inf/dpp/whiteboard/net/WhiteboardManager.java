@@ -2,6 +2,7 @@ package de.fu_berlin.inf.dpp.whiteboard.net;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.apache.log4j.Logger;
 import org.eclipse.swt.graphics.RGB;
@@ -20,6 +21,7 @@ import de.fu_berlin.inf.dpp.session.ISarosSessionListener;
 import de.fu_berlin.inf.dpp.session.NullSarosSessionListener;
 import de.fu_berlin.inf.dpp.session.User;
 import de.fu_berlin.inf.dpp.ui.util.SWTUtils;
+import de.fu_berlin.inf.dpp.util.ThreadUtils;
 import de.fu_berlin.inf.dpp.whiteboard.gef.model.GEFRecordFactory;
 import de.fu_berlin.inf.dpp.whiteboard.gef.util.ColorUtils;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.ISXEMessageHandler;
@@ -45,6 +47,13 @@ public class WhiteboardManager {
 
     private static final Object LOCK = new Object();
 
+    /**
+     * Delay in milliseconds before the editor is notified about remote
+     * changes, so that all changes received within about one display frame
+     * are refreshed at once.
+     */
+    private static final int REFRESH_DELAY = 16;
+
     private static final WhiteboardManager INSTANCE = new WhiteboardManager();
 
     protected SXEController controller;
@@ -194,6 +203,20 @@ public class WhiteboardManager {
         LOG.debug("WhiteboardManager instantiated");
 
         controller = new SXEController(new GEFRecordFactory());
+        controller.setNotificationExecutor(new Executor() {
+
+            @Override
+            public void execute(final Runnable command) {
+                SWTUtils.runSafeSWTAsync(LOG, new Runnable() {
+
+                    @Override
+                    public void run() {
+                        SWTUtils.getDisplay().timerExec(REFRESH_DELAY,
+                            ThreadUtils.wrapSafe(LOG, command));
+                    }
+                });
+            }
+        });
     }
 
     private void setupColorAndTransmitter(final ISarosSession session) {
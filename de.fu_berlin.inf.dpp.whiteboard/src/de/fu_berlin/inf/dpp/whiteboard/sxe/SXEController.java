@@ -1,9 +1,11 @@
 package de.fu_berlin.inf.dpp.whiteboard.sxe;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.apache.log4j.Logger;
 
@@ -38,6 +40,22 @@ import de.fu_berlin.inf.dpp.whiteboard.sxe.util.SXEUtils;
  * </ul>
  * </p>
  * 
+ * <p>
+ * The document is guarded by the monitor of the controller. Remote messages
+ * may be applied by any (but only one) thread, i.e. a dedicated model thread,
+ * in batches by {@link #executeRemoteRecords(List)}. Everybody else reading
+ * the document, i.e. the UI to execute commands or to refresh, has to hold
+ * the monitor, too.
+ * </p>
+ * 
+ * <p>
+ * If a notification executor is set, the listeners are not notified about the
+ * changes caused by remote records by the applying thread but by a task passed
+ * to this executor, i.e. one that runs on the UI thread. All changes applied
+ * until this task runs are notified at once.
+ * </p>
+ * 
+ * @see #setNotificationExecutor(Executor)
  * @author jurke
  * 
  */
@@ -61,12 +79,34 @@ public class SXEController extends AbstractSXEMessageHandler {
 
     protected SXESession session = null;
 
-    protected State connectionState;
+    protected volatile State connectionState;
 
     protected ISXETransmitter transmitter;
 
+    /**
+     * number of applied records after which the host compacts the document
+     * 
+     * @see DocumentRecord#getCompactionRecords()
+     */
+    public static final int COMPACTION_INTERVAL = 1000;
+
     protected List<SXEMessage> queuedMessagesWhileSynchronizing = new LinkedList<SXEMessage>();
 
+    /** records applied since the last compaction of the document */
+    protected int appliedRecordsSinceCompaction = 0;
+
+    /** whether this controller initialized the session and compacts */
+    protected boolean isHost = false;
+
+    /**
+     * executes the deferred notifications, <code>null</code> to notify
+     * synchronously
+     */
+    protected Executor notificationExecutor;
+
+    /** whether a deferred notification is pending */
+    protected boolean notificationScheduled = false;
+
     /*
      * TODO remove after time X and inform peers or request missing record from
      * peer
@@ -91,22 +131,47 @@ public class SXEController extends AbstractSXEMessageHandler {
         return document;
     }
 
+    /**
+     * Sets the executor that notifies the local listeners about changes caused
+     * by remote records. The executor is expected to run the task on the UI
+     * thread and to delay it, i.e. to the next display frame, so that the
+     * changes of all messages applied in the meantime are notified at once.
+     * The task acquires the monitor of this controller.
+     * 
+     * @param executor
+     *            the executor or <code>null</code> to notify the listeners
+     *            synchronously by the applying thread
+     */
+    public synchronized void setNotificationExecutor(Executor executor) {
+        this.notificationExecutor = executor;
+    }
+
+    /**
+     * Returns a snapshot of the current document state.
+     * 
+     * @see DocumentRecord#getSnapshot()
+     */
+    public synchronized List<RecordDataObject> getSnapshot() {
+        return document.getSnapshot();
+    }
+
     protected void initDocument() {
         document = recordFactory.createDocument(this);
         recordFactory.createRoot(document).apply(document);
     }
 
-    public void setDisconnected() {
+    public synchronized void setDisconnected() {
         connectionState = State.DISCONNECTED;
         session = null;
+        isHost = false;
     }
 
-    public void clear() {
+    public synchronized void clear() {
         document.clear();
         initDocument();
     }
 
-    public void initNetwork(ISXETransmitter transmitter) {
+    public synchronized void initNetwork(ISXETransmitter transmitter) {
         this.transmitter = transmitter;
         connectionState = State.INIT;
     }
@@ -114,8 +179,9 @@ public class SXEController extends AbstractSXEMessageHandler {
     /**
      * Initializes the session as host and starts to receive records from NOW.
      */
-    public void startSession() {
+    public synchronized void startSession() {
         session = new SXESession();
+        isHost = true;
 
         log.debug(prefix() + "initialize session at inviter side");
 
@@ -129,11 +195,14 @@ public class SXEController extends AbstractSXEMessageHandler {
      * previous content. </br>
      * 
      * Queues messages will be applied afterwards and the lists is cleared.
+     * Because the state only contains the latest version of every record,
+     * queued SetRecords with an older version are already part of it and
+     * ignored.
      * 
      * @param message
      *            the state message
      */
-    public void startSession(SXEMessage message) {
+    public synchronized void startSession(SXEMessage message) {
         log.debug(prefix() + "receive state and start session at invitee side");
 
         if (!(connectionState == State.CONNECTING)) {
@@ -152,6 +221,12 @@ public class SXEController extends AbstractSXEMessageHandler {
             apply(r);
         }
 
+        // called by the UI thread, that cannot wait for itself to notify
+        for (SXEMessage m : queuedMessagesWhileSynchronizing)
+            applyRemoteRecords(m, true);
+
+        queuedMessagesWhileSynchronizing.clear();
+
         connectionState = State.CONNECTED;
 
         if (unappliedBigVersionSetRecords.size() != 0)
@@ -162,17 +237,11 @@ public class SXEController extends AbstractSXEMessageHandler {
             log.warn(prefix()
                 + "Some records couldn't be inserted during start synchronization");
 
-        for (SXEMessage m : queuedMessagesWhileSynchronizing) {
-            for (RecordDataObject rdo : m.getRecords()) {
-                apply(rdo);
-            }
-        }
-        queuedMessagesWhileSynchronizing.clear();
-
         fireStateMessageApplied(message, document.getRoot());
 
         notifyLocalListeners();
 
+        compactDocumentIfNecessary();
     }
 
     /**
@@ -227,6 +296,12 @@ public class SXEController extends AbstractSXEMessageHandler {
 
             return applied;
         } catch (MissingRecordException e) {
+            if (document.isPurged(e.getMissingRid())) {
+                log.debug("Record " + rdo + " refers to a removed record "
+                    + e.getMissingRid() + " that was compacted. Ignored.");
+                return false;
+            }
+
             log.debug("Missing record: " + e.getMissingRid() + " for " + rdo
                 + ". Queued for the moment.");
             /*
@@ -281,9 +356,9 @@ public class SXEController extends AbstractSXEMessageHandler {
      * <p>
      * This may be expected behavior:</br>
      * 
-     * During start synchronization SetRecords may be missing (received version
-     * is too big) because they were discarded remotely due to previous
-     * conflicts.</br>
+     * During start synchronization SetRecords may be outdated (received
+     * version is too small) because the state already contains their
+     * changes.</br>
      * 
      * In a session, there may arise conflicts (received version is too small).<br>
      * 
@@ -308,10 +383,10 @@ public class SXEController extends AbstractSXEMessageHandler {
              */
             if (startSync) {
                 /*
-                 * do nothing, must be an inconvenience while creating the state
-                 * record list on the peer side
+                 * do nothing, the state contains the latest version of every
+                 * record and thus already this one
                  */
-                log.warn("Received an out-dated SetRecord during start synchronization. Ignored.");
+                log.debug("Received an out-dated SetRecord during start synchronization. Ignored.");
                 return true;
             } else {
                 // must be an conflict, apply it
@@ -320,28 +395,17 @@ public class SXEController extends AbstractSXEMessageHandler {
         } else if (versionDiff > 1) {
             /*
              * Remote version is too high, there have been SetRecords in between
-             * we don't have
+             * we don't have. As the state does not contain any SetRecords this
+             * is not different during start synchronization: Queue the record
+             * because there might be a record on the way.
              */
-            if (startSync) {
-                /*
-                 * set the target's version to the correct one because we expect
-                 * the gap occurred due to a previous conflict.
-                 */
-                log.debug("Received advanced SetRecord during start synchronization. Versions skipped");
-                r.getTarget().repairVersion(r.getVersion() - 1);
-                return false;
-            } else {
-                /*
-                 * Queue the record because there might be a record on the way.
-                 */
-                log.debug("Set record with out-of-order version. Should be "
-                    + (r.getTarget().getVersion() + 1) + " but is "
-                    + (r).getVersion() + ", set-record: " + r
-                    + ". Queued for the moment.");
+            log.debug("Set record with out-of-order version. Should be "
+                + (r.getTarget().getVersion() + 1) + " but is "
+                + (r).getVersion() + ", set-record: " + r
+                + ". Queued for the moment.");
 
-                unappliedBigVersionSetRecords.put(r.getTarget().getRid(), r);
-                return true;
-            }
+            unappliedBigVersionSetRecords.put(r.getTarget().getRid(), r);
+            return true;
         }
         return false;
     }
@@ -386,6 +450,7 @@ public class SXEController extends AbstractSXEMessageHandler {
         boolean applied = record.apply(document);
 
         if (applied) {
+            appliedRecordsSinceCompaction++;
             applyQueuedRecords(record);
         }
 
@@ -393,24 +458,151 @@ public class SXEController extends AbstractSXEMessageHandler {
     }
 
     /**
-     * Attempts to apply the records of a remote message
+     * Attempts to apply the records of a remote message and notifies the local
+     * listeners.
      * 
      * @param message
      *            message containing records to apply
      */
     public void executeRemoteRecords(SXEMessage message) {
+        executeRemoteRecords(Collections.singletonList(message));
+    }
+
+    /**
+     * Attempts to apply the records of several remote messages in the given
+     * order. The local listeners are notified once about the changes of all
+     * messages, by the notification executor if one is set.
+     * 
+     * @param messages
+     *            messages containing records to apply
+     */
+    public synchronized void executeRemoteRecords(List<SXEMessage> messages) {
         if (connectionState == State.CONNECTING) {
-            queuedMessagesWhileSynchronizing.add(message);
+            queuedMessagesWhileSynchronizing.addAll(messages);
+            return;
+        }
+
+        for (SXEMessage message : messages) {
+            applyRemoteRecords(message, notificationExecutor == null);
+            fireRecordMessageApplied(message);
+        }
+
+        if (notificationExecutor == null) {
+            notifyLocalListeners();
+            compactDocumentIfNecessary();
+        } else {
+            scheduleNotification();
+        }
+    }
+
+    /**
+     * Applies the records of a remote message. A {@link SXEMessageType#COMPACT}
+     * message compacts the document at exactly this point of the record order
+     * like it happened at the host. The listeners are notified before, so that
+     * they know about all removed records that are dropped, and afterwards
+     * about records that were recreated concurrently and removed again.
+     * 
+     * @param notifySynchronously
+     *            whether the calling thread notifies the listeners itself or
+     *            has to wait for the notification executor
+     */
+    protected void applyRemoteRecords(SXEMessage message,
+        boolean notifySynchronously) {
+        if (message.getMessageType() == SXEMessageType.COMPACT) {
+            if (notifySynchronously)
+                notifyLocalListeners();
+            else
+                awaitNotification();
+
+            document.compact(message.getRecords());
+
+            // the caller notifies about the records applied afterwards
+            if (notifySynchronously)
+                notifyLocalListeners();
             return;
         }
 
         for (RecordDataObject r : message.getRecords()) {
             apply(r);
         }
+    }
+
+    /**
+     * Passes a task to the notification executor that notifies the listeners
+     * about all changes applied until it runs and compacts the document
+     * afterwards if necessary. Does nothing if such a task is pending already.
+     */
+    protected void scheduleNotification() {
+        if (notificationScheduled)
+            return;
 
-        fireRecordMessageApplied(message);
+        notificationScheduled = true;
 
-        notifyLocalListeners();
+        notificationExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SXEController.this) {
+                    if (!notificationScheduled)
+                        return;
+
+                    notificationScheduled = false;
+                    SXEController.this.notifyAll();
+
+                    notifyLocalListeners();
+                    /*
+                     * compact only after the listeners know about all removed
+                     * records
+                     */
+                    compactDocumentIfNecessary();
+                }
+            }
+        });
+    }
+
+    /**
+     * Schedules the notification of the listeners about all changes applied so
+     * far and releases the monitor until the scheduled task has run. Must not
+     * be called by the thread the notification executor runs the task on.
+     */
+    protected void awaitNotification() {
+        scheduleNotification();
+
+        while (notificationScheduled) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                log.warn(prefix()
+                    + "interrupted while waiting for the listeners to be notified");
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Compacts the document if this is the host and enough records have been
+     * applied since the last compaction. The compaction is sent to the peers,
+     * which apply it at the same point of the record order, as it changes the
+     * outcome of later records. To be called after the listeners have been
+     * notified about the applied records.
+     */
+    protected void compactDocumentIfNecessary() {
+        if (!isHost || !isConnected()
+            || appliedRecordsSinceCompaction < COMPACTION_INTERVAL)
+            return;
+
+        appliedRecordsSinceCompaction = 0;
+
+        List<RecordDataObject> rdos = document.getCompactionRecords();
+
+        if (rdos.isEmpty())
+            return;
+
+        document.compact(rdos);
+
+        SXEMessage message = session.getNextMessage(SXEMessageType.COMPACT);
+        message.setRecords(rdos);
+        transmitter.sendAsync(message);
     }
 
     /**
@@ -425,7 +617,7 @@ public class SXEController extends AbstractSXEMessageHandler {
      * 
      * @param records
      */
-    public final void executeAndCommit(List<IRecord> records) {
+    public final synchronized void executeAndCommit(List<IRecord> records) {
         try {
 
             Iterator<IRecord> it = records.iterator();
@@ -459,11 +651,16 @@ public class SXEController extends AbstractSXEMessageHandler {
                 }
             }
 
-            // commit and notify the whole bunch of records
+            /*
+             * commit and notify the whole bunch of records, together with the
+             * remote ones applied since the last notification
+             */
             notifyLocalListeners();
 
             commitRecords(records);
 
+            compactDocumentIfNecessary();
+
         } catch (Exception e) {
             /*
              * A runtime Exception here means a critical error in the data
@@ -528,7 +725,7 @@ public class SXEController extends AbstractSXEMessageHandler {
      * @param session
      * @return whether the state change was successful
      */
-    public boolean switchToConnectingState(SXESession session) {
+    public synchronized boolean switchToConnectingState(SXESession session) {
         if (connectionState != State.INIT) {
             log.debug("Cannot change from " + connectionState + " to "
                 + State.CONNECTING);
@@ -548,9 +745,13 @@ public class SXEController extends AbstractSXEMessageHandler {
         return connectionState;
     }
 
-    public void dispose() {
+    public synchronized void dispose() {
         document.clear();
         queuedMessagesWhileSynchronizing.clear();
+        appliedRecordsSinceCompaction = 0;
+        // the pending task may never run, don't let the model thread wait
+        notificationScheduled = false;
+        notifyAll();
     }
 
     /**
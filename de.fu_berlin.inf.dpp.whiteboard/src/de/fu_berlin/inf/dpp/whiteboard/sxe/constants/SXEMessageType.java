@@ -6,6 +6,11 @@ package de.fu_berlin.inf.dpp.whiteboard.sxe.constants;
  * </p>
  * 
  * <p>
+ * {@link #COMPACT} is not part of the SXE specification. It carries the
+ * records by which the host requests all peers to compact their document.
+ * </p>
+ * 
+ * <p>
  * Each constant but {@link #RECORDS} is enhanced by its XML tag to be used when
  * serialized. Accessible by the toString()-method.</br>
  * 
@@ -21,7 +26,8 @@ public enum SXEMessageType {
 
     // Note, RECORDS do not have a corresponding tag name
     RECORDS("records"), STATE_OFFER("state-offer"), REFUSE_STATE("refuse-state"), ACCEPT_STATE(
-        "accept-state"), ACK_STATE("ack-state"), STATE("state");
+        "accept-state"), ACK_STATE("ack-state"), STATE("state"), COMPACT(
+        "compact");
 
     private String name;
 
@@ -72,6 +72,9 @@ public class SXEMessageWriter {
             case STATE_OFFER:
                 writer.writeStateOffer();
                 break;
+            case COMPACT:
+                writer.writeCompact(rdos);
+                break;
 
             }
             writer.endMessage();
@@ -185,6 +188,17 @@ public class SXEMessageWriter {
             handler.endElement("", "", "state");
         }
 
+        public void writeCompact(List<RecordDataObject> records)
+            throws SAXException {
+            handler.startElement("", "", "compact", null);
+
+            for (RecordDataObject record : records) {
+                writeRecord(record);
+            }
+
+            handler.endElement("", "", "compact");
+        }
+
         public void endMessage() throws SAXException {
             handler.endElement("", "", "sxe");
             handler.endDocument();
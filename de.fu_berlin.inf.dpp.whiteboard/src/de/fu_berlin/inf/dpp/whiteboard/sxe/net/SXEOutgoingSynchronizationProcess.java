@@ -2,16 +2,13 @@ package de.fu_berlin.inf.dpp.whiteboard.sxe.net;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.Callable;
 
 import org.apache.log4j.Logger;
 import org.eclipse.core.runtime.IProgressMonitor;
 
-import de.fu_berlin.inf.dpp.ui.util.SWTUtils;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.SXEController;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.SXEMessageType;
-import de.fu_berlin.inf.dpp.whiteboard.sxe.records.IRecord;
-import de.fu_berlin.inf.dpp.whiteboard.sxe.util.SXEUtils;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.RecordDataObject;
 
 /**
  * <p>
@@ -70,21 +67,16 @@ public class SXEOutgoingSynchronizationProcess extends SXESynchronization {
                 log.debug(prefix() + peer + " accepted state-offer");
 
                 try {
-                    List<IRecord> state = SWTUtils
-                        .runSWTSync(new Callable<List<IRecord>>() {
-
-                            @Override
-                            public List<IRecord> call() throws Exception {
-                                return controller.getDocumentRecord()
-                                    .getState();
-                            }
-
-                        });
+                    /*
+                     * only send the current state of the visible nodes instead
+                     * of their whole history
+                     */
+                    List<RecordDataObject> state = controller.getSnapshot();
 
                     /* send state */
 
                     msg = session.getNextMessage(SXEMessageType.STATE, peer);
-                    msg.setRecords(SXEUtils.toDataObjects(state));
+                    msg.setRecords(state);
 
                     log.debug(prefix() + "Sending state to " + msg.getTo());
 
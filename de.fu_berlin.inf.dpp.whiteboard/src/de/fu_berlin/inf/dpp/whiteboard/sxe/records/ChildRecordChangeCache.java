@@ -29,6 +29,8 @@ import de.fu_berlin.inf.dpp.whiteboard.sxe.SXEController;
  * 
  * <p>
  * The listeners are notified after a whole operation or message is applied.
+ * Remote changes may be notified later at once, after several messages were
+ * applied.
  * </p>
  * 
  * @see de.fu_berlin.inf.dpp.whiteboard.sxe.SXEController#notifyLocalListeners()
@@ -1,13 +1,20 @@
 package de.fu_berlin.inf.dpp.whiteboard.sxe.records;
 
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
 import de.fu_berlin.inf.dpp.whiteboard.sxe.SXEController;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.NodeType;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.RecordEntry;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.exceptions.MissingRecordException;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.RecordDataObject;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.SetRecordDataObject;
 
 /**
  * <p>
@@ -24,6 +31,13 @@ import de.fu_berlin.inf.dpp.whiteboard.sxe.exceptions.MissingRecordException;
  * package.
  * </p>
  * 
+ * <p>
+ * To bound the memory consumption in long sessions the document can be
+ * compacted by {@link #compact(List)}. As compaction changes the outcome of
+ * later records it has to take place at the same point on all peers, thus the
+ * host decides about it, see {@link #getCompactionRecords()}.
+ * </p>
+ * 
  * @author jurke
  * 
  */
@@ -33,9 +47,21 @@ public class DocumentRecord {
 
     private final SXEController controller;
 
+    /**
+     * the number of SetRecords every NodeRecord keeps after compaction to be
+     * able to revert conflicts
+     */
+    public static final int MAX_SET_RECORDS_PER_NODE = 16;
+
     /** linked map if NodeRecords contained in this document */
     protected LinkedHashMap<String, NodeRecord> newRecords;
 
+    /** removed NodeRecords found when the last compaction was created */
+    protected Set<NodeRecord> removedRecords = new HashSet<NodeRecord>();
+
+    /** RIDs of the NodeRecords that were dropped during compaction */
+    protected Set<String> purgedRids = new HashSet<String>();
+
     // TODO install document prolog etc
 
     public DocumentRecord(SXEController controller) {
@@ -138,6 +164,8 @@ public class DocumentRecord {
      */
     public void clear() {
         newRecords.clear();
+        removedRecords.clear();
+        purgedRids.clear();
     }
 
     /**
@@ -160,6 +188,190 @@ public class DocumentRecord {
         return records;
     }
 
+    /**
+     * <p>
+     * Provides a compact representation of the current state of this shared
+     * XML document that can be used for start synchronization.
+     * </p>
+     * <p>
+     * In difference to {@link #getState()} it contains each node as a single
+     * new-record with its current mutable fields and version instead of its
+     * history. Removed nodes are included as they may still be recreated by
+     * later records. The records are ordered so that every parent precedes its
+     * children.
+     * </p>
+     * 
+     * @return new-records defining the current state of the XML document
+     */
+    public List<RecordDataObject> getSnapshot() {
+        List<RecordDataObject> records = new LinkedList<RecordDataObject>();
+        ElementRecord root = getRoot();
+
+        if (root != null)
+            addSnapshot(root, records);
+
+        return records;
+    }
+
+    private void addSnapshot(ElementRecord element,
+        List<RecordDataObject> records) {
+        records.add(element.getSnapshotRecordDataObject());
+
+        /*
+         * a removed attribute may have been replaced by one with the same
+         * name, the visible one has to be inserted last
+         */
+        for (AttributeRecord attribute : element.getAttributes())
+            if (!attribute.isVisible())
+                records.add(attribute.getSnapshotRecordDataObject());
+
+        for (AttributeRecord attribute : element.getVisibleAttributes())
+            records.add(attribute.getSnapshotRecordDataObject());
+
+        for (ElementRecord child : element.getChildElements())
+            addSnapshot(child, records);
+    }
+
+    /**
+     * <p>
+     * Determines how this document should be compacted. To be called by the
+     * host only, who sends the result to all peers.
+     * </p>
+     * 
+     * <p>
+     * The history of every NodeRecord is folded to at most
+     * {@link #MAX_SET_RECORDS_PER_NODE} SetRecords. Removed NodeRecords are
+     * dropped together with their descendants if they were already removed
+     * when the previous compaction was created. Thus a removed record can still
+     * be recreated (i.e. by undo) until the next compaction.
+     * </p>
+     * 
+     * <p>
+     * Every compaction is described by a set-record that only contains the
+     * target and a version. The history of the target is folded up to this
+     * version. If the set-record sets the visibility to <code>false</code> the
+     * target is dropped instead.
+     * </p>
+     * 
+     * @return the records to pass to {@link #compact(List)}, empty if there is
+     *         nothing to compact
+     */
+    public List<RecordDataObject> getCompactionRecords() {
+        List<RecordDataObject> records = new LinkedList<RecordDataObject>();
+        Set<NodeRecord> removed = new HashSet<NodeRecord>();
+        ElementRecord root = getRoot();
+
+        for (NodeRecord record : newRecords.values()) {
+            if (record != root && !record.isVisible()) {
+                if (removedRecords.contains(record)) {
+                    records.add(createCompactionRecord(record,
+                        record.getVersion(), true));
+                    continue;
+                }
+
+                removed.add(record);
+            }
+
+            List<SetRecord> setRecords = record.getSetRecords();
+            int toFold = setRecords.size() - MAX_SET_RECORDS_PER_NODE;
+
+            if (toFold > 0)
+                records.add(createCompactionRecord(record,
+                    setRecords.get(toFold - 1).getVersion(), false));
+        }
+
+        removedRecords = removed;
+
+        return records;
+    }
+
+    private RecordDataObject createCompactionRecord(NodeRecord target,
+        int version, boolean purge) {
+        RecordDataObject rdo = new SetRecordDataObject();
+
+        rdo.putValue(RecordEntry.TARGET, target.getRid());
+        rdo.putValue(RecordEntry.VERSION, version);
+
+        if (purge)
+            rdo.putValue(RecordEntry.VISIBLE, false);
+
+        return rdo;
+    }
+
+    /**
+     * <p>
+     * Reduces the memory consumption of this document as determined by the
+     * host, see {@link #getCompactionRecords()}.
+     * </p>
+     * 
+     * <p>
+     * Versions are not touched by compaction. A dropped record that was
+     * recreated locally in the meantime is removed before it is dropped, so
+     * that the listeners are notified about it. The listeners have to be
+     * notified afterwards.
+     * </p>
+     * 
+     * @param records
+     *            the compaction records created by the host
+     */
+    public void compact(List<RecordDataObject> records) {
+        int size = newRecords.size();
+
+        for (RecordDataObject rdo : records) {
+            NodeRecord record = newRecords.get(rdo.getTargetRid());
+
+            if (record == null)
+                continue;
+
+            if (Boolean.FALSE.equals(rdo.getBoolean(RecordEntry.VISIBLE))) {
+                if (record.isVisible())
+                    record.getRemoveRecord().apply(this);
+
+                purge(record);
+            } else {
+                record.compactHistory(rdo.getInt(RecordEntry.VERSION));
+            }
+        }
+
+        // forget records that have been purged as part of a subtree
+        for (Iterator<NodeRecord> it = removedRecords.iterator(); it.hasNext();)
+            if (!contains(it.next()))
+                it.remove();
+
+        log.debug("compacted document, dropped " + (size - newRecords.size())
+            + " of " + size + " records");
+    }
+
+    private void purge(NodeRecord record) {
+        if (!contains(record))
+            return;
+
+        if (record.getNodeType() == NodeType.ELEMENT) {
+            for (NodeRecord descendant : ((ElementRecord) record)
+                .getAllDescendantNodes()) {
+                newRecords.remove(descendant.getRid());
+                purgedRids.add(descendant.getRid());
+            }
+        }
+
+        if (record.getParent() != null)
+            record.getParent().removeChild(record);
+
+        newRecords.remove(record.getRid());
+        purgedRids.add(record.getRid());
+    }
+
+    /**
+     * 
+     * @param rid
+     *            RecordID of a record
+     * @return whether the record with the passed RID was dropped during
+     *         compaction
+     */
+    public boolean isPurged(String rid) {
+        return purgedRids.contains(rid);
+    }
+
     public boolean contains(NodeRecord r) {
         return newRecords.containsKey(r.getRid());
     }
@@ -1,5 +1,7 @@
 package de.fu_berlin.inf.dpp.whiteboard.sxe.records;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -33,6 +35,12 @@ public class ElementRecord extends NodeRecord {
     private final NodeSet<ElementRecord> children = new NodeSet<ElementRecord>();
     private final AttributeSet attributes = new AttributeSet();
 
+    /**
+     * Cache of the visible child elements, <code>null</code> if it has to be
+     * recomputed.
+     */
+    private List<ElementRecord> visibleChildren;
+
     /**
      * Used to notify listeners only after a whole SXECommand/SXEMessage was
      * executed.
@@ -49,49 +57,87 @@ public class ElementRecord extends NodeRecord {
         return children;
     }
 
+    /**
+     * @return an unmodifiable list of the visible child elements in document
+     *         order, cached until a child is added, removed, reordered or
+     *         changes its visibility
+     */
     public List<ElementRecord> getVisibleChildElements() {
-        LinkedList<ElementRecord> visibleChildren = new LinkedList<ElementRecord>();
+        if (visibleChildren != null)
+            return visibleChildren;
+
+        List<ElementRecord> visible = new ArrayList<ElementRecord>(
+            children.size());
+
         for (ElementRecord e : children) {
             if (e.isVisible())
-                visibleChildren.add(e);
+                visible.add(e);
         }
+
+        visibleChildren = Collections.unmodifiableList(visible);
         return visibleChildren;
     }
 
-    protected List<ElementRecord> getAllDescendantElements() {
-        LinkedList<ElementRecord> descendants = new LinkedList<ElementRecord>();
-
-        descendants.addAll(getChildElements());
-
-        for (ElementRecord er : getChildElements()) {
-            descendants.addAll(er.getAllDescendantElements());
-        }
+    /**
+     * Discards the cache of visible child elements.
+     */
+    protected void invalidateVisibleChildElements() {
+        visibleChildren = null;
+    }
 
+    protected List<ElementRecord> getAllDescendantElements() {
+        List<ElementRecord> descendants = new ArrayList<ElementRecord>();
+        collectDescendantElements(descendants, false);
         return descendants;
     }
 
     public List<ElementRecord> getAllVisibleDescendantElements() {
-        LinkedList<ElementRecord> descendants = new LinkedList<ElementRecord>();
-
-        descendants.addAll(getVisibleChildElements());
+        List<ElementRecord> descendants = new ArrayList<ElementRecord>();
+        collectDescendantElements(descendants, true);
+        return descendants;
+    }
 
-        for (ElementRecord er : getVisibleChildElements()) {
-            descendants.addAll(er.getAllVisibleDescendantElements());
+    /*
+     * pre-order, so that every element is listed after its parent
+     */
+    private void collectDescendantElements(List<ElementRecord> descendants,
+        boolean onlyVisible) {
+        for (ElementRecord er : onlyVisible ? getVisibleChildElements()
+            : children) {
+            descendants.add(er);
+            er.collectDescendantElements(descendants, onlyVisible);
         }
-
-        return descendants;
     }
 
     protected List<NodeRecord> getAllDescendantNodes() {
-        List<NodeRecord> records = new LinkedList<NodeRecord>();
+        List<NodeRecord> records = new ArrayList<NodeRecord>();
+        collectDescendantNodes(records);
+        return records;
+    }
 
-        records.addAll(getAttributes());
-        records.addAll(getChildElements());
+    private void collectDescendantNodes(List<NodeRecord> records) {
+        records.addAll(attributes);
 
-        for (ElementRecord r : getChildElements())
-            records.addAll(r.getAllDescendantNodes());
+        for (ElementRecord er : children) {
+            records.add(er);
+            er.collectDescendantNodes(records);
+        }
+    }
 
-        return records;
+    /**
+     * Walks up the parent hierarchy of the passed record, i.e. takes
+     * O(depth).
+     * 
+     * @param record
+     * @return whether this record is a (direct or indirect) parent of the
+     *         passed record
+     */
+    public boolean isAncestorOf(NodeRecord record) {
+        for (ElementRecord p = record.getParent(); p != null; p = p.getParent()) {
+            if (equals(p))
+                return true;
+        }
+        return false;
     }
 
     protected AttributeSet getAttributes() {
@@ -254,6 +300,7 @@ public class ElementRecord extends NodeRecord {
         } else {
             children.remove(child);
             children.add((ElementRecord) child);
+            invalidateVisibleChildElements();
         }
     }
 
@@ -267,6 +314,7 @@ public class ElementRecord extends NodeRecord {
         super.clear();
         children.clear();
         attributes.clear();
+        invalidateVisibleChildElements();
     }
 
     @Override
@@ -305,7 +353,7 @@ public class ElementRecord extends NodeRecord {
         for (ElementRecord er : children) {
             eCopy = er.getCopy(true);
             eCopy.setParent(copy);
-            copy.children.add(eCopy);
+            copy.add(eCopy);
         }
         return copy;
     }
@@ -341,6 +389,7 @@ public class ElementRecord extends NodeRecord {
 
     protected void add(ElementRecord r) {
         children.add(r);
+        invalidateVisibleChildElements();
     }
 
     protected void add(AttributeRecord r) {
@@ -353,6 +402,7 @@ public class ElementRecord extends NodeRecord {
             attributes.remove(r);
         } else {
             this.children.remove(r);
+            invalidateVisibleChildElements();
         }
     }
 
@@ -412,10 +462,7 @@ public class ElementRecord extends NodeRecord {
         if (currentParent == newParent)
             return false;
 
-        if (this == newParent || getAllDescendantElements().contains(newParent))
-            return true;
-
-        return false;
+        return equals(newParent) || isAncestorOf(newParent);
     }
 
 }
@@ -248,6 +248,21 @@ public abstract class NodeRecord extends AbstractRecord implements
         if (isCommitted())
             throw new CommittedRecordException();
         this.version = version;
+        initialSet.setVersion(version);
+    }
+
+    /**
+     * Method for remote records initial visibility, i.e. of removed records
+     * in a snapshot
+     * 
+     * @param visible
+     *            the initial visibility
+     */
+    public void setVisible(boolean visible) {
+        if (isCommitted())
+            throw new CommittedRecordException();
+        this.visible = visible;
+        initialSet.setSetVisibilityTo(visible);
     }
 
     public String getNs() {
@@ -387,6 +402,53 @@ public abstract class NodeRecord extends AbstractRecord implements
         return true;
     }
 
+    /**
+     * <p>
+     * Folds all SetRecords up to the passed version into the initial state.
+     * </p>
+     * 
+     * <p>
+     * Conflicts that refer to a folded version will revert this record to the
+     * folded state instead of the exact previous one.
+     * </p>
+     * 
+     * @param version
+     *            the version of the most recent SetRecord to fold
+     */
+    protected void compactHistory(int version) {
+        int toFold = 0;
+
+        for (SetRecord setRecord : setRecords) {
+            if (setRecord.getVersion() > version)
+                break;
+            toFold++;
+        }
+
+        if (toFold == 0)
+            return;
+
+        LinkedList<SetRecord> folded = new LinkedList<SetRecord>();
+
+        for (int i = 0; i < toFold; i++)
+            folded.addFirst(setRecords.removeFirst());
+
+        SetRecord newInitialSet = new SetRecord(this, folded.getFirst()
+            .getVersion());
+
+        newInitialSet.setLastModifiedBy(folded.getFirst().getLastModifiedBy());
+
+        for (SetRecord setRecord : folded) {
+            newInitialSet.fillEmptyMutableFieldsFrom(setRecord);
+            if (newInitialSet.setsAllMutableFields())
+                break;
+        }
+
+        if (!newInitialSet.setsAllMutableFields())
+            newInitialSet.fillEmptyMutableFieldsFrom(initialSet);
+
+        initialSet = newInitialSet;
+    }
+
     /**
      * 
      * @return the current mutable fields as SetRecord
@@ -466,6 +528,9 @@ public abstract class NodeRecord extends AbstractRecord implements
         if (setRecord.getSetVisibilityTo() != null
             && !setRecord.getSetVisibilityTo().equals(visible)) {
             visible = setRecord.getSetVisibilityTo();
+
+            if (currentParent != null)
+                currentParent.invalidateVisibleChildElements();
         }
 
         // Because of SortedSet functionality we have to re-attach a child on
@@ -533,6 +598,34 @@ public abstract class NodeRecord extends AbstractRecord implements
         return rdo;
     }
 
+    /**
+     * Returns a new-record that creates this record with its current mutable
+     * fields and its current version, i.e. without the need to transmit its
+     * SetRecords.
+     * 
+     * @return the RecordDataObject describing the current state of this record
+     */
+    public RecordDataObject getSnapshotRecordDataObject() {
+        RecordDataObject rdo = new NewRecordDataObject();
+        SetRecord current = getCurrentMutableFields();
+
+        rdo.putValue(RecordEntry.TYPE, getNodeType().toString());
+        rdo.putValue(RecordEntry.RID, getRid());
+        rdo.putValue(RecordEntry.VERSION, getVersion());
+        if (current.getParentToChange() != null)
+            rdo.putValue(RecordEntry.PARENT, current.getParentToChange()
+                .getRid());
+        rdo.putValue(RecordEntry.VISIBLE, isVisible());
+        rdo.putValue(RecordEntry.PRIMARY_WEIGHT, current.getPrimaryWeight());
+        rdo.putValue(RecordEntry.NAME, getName());
+        rdo.putValue(RecordEntry.NS, getNs());
+        rdo.putValue(RecordEntry.CHDATA, current.getChdata());
+        rdo.putValue(RecordEntry.CREATOR, getCreator());
+        rdo.putValue(RecordEntry.LAST_MODIFIED_BY, getLastModifiedBy());
+
+        return rdo;
+    }
+
     /**
      * 
      * @return a new-record as copy of this one, without set-records and with a
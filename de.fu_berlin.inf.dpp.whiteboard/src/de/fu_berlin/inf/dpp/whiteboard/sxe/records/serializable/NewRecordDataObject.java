@@ -71,6 +71,11 @@ public class NewRecordDataObject extends RecordDataObject {
         if (parentRid != null)
             record.setParent(document.getElementRecordById(parentRid));
 
+        // removed records are part of a snapshot as they can be recreated
+        Boolean visible = getBoolean(RecordEntry.VISIBLE);
+        if (visible != null)
+            record.setVisible(visible);
+
         Float pw = getFloat(RecordEntry.PRIMARY_WEIGHT);
         if (pw == null)
             pw = 0f;
@@ -45,7 +45,9 @@ public class AttributeSet extends NodeSet<AttributeRecord> {
         AttributeRecord toRemove = (AttributeRecord) o;
 
         if (super.remove(toRemove)) {
-            map.remove(toRemove.getName());
+            // a removed attribute may have been replaced by one with same name
+            if (map.get(toRemove.getName()) == toRemove)
+                map.remove(toRemove.getName());
             return true;
         }
         return false;
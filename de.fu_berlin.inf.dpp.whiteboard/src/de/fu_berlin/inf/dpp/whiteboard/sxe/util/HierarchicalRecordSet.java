@@ -64,7 +64,7 @@ public class HierarchicalRecordSet {
             Iterator<ElementRecord> it = rootRecords.iterator();
             while (it.hasNext()) {
                 tmp = it.next();
-                if (children.contains(tmp)) {
+                if (record.isAncestorOf(tmp)) {
                     subtreeRecords.add(tmp);
                     it.remove();
                 }
@@ -14,7 +14,8 @@ import de.fu_berlin.inf.dpp.whiteboard.sxe.records.SetRecord;
  * 
  * <p>
  * It also overrides the contains() method to start searching at the and to
- * break if version reached or smaller than the provided one.
+ * break if version reached or smaller than the provided one. Versions outside
+ * of the range of this list are rejected without searching.
  * </p>
  * 
  */
@@ -27,8 +28,16 @@ public class SetRecordList extends LinkedList<SetRecord> {
         if (!(o instanceof SetRecord))
             return false;
 
-        ListIterator<SetRecord> it = listIterator(size());
+        if (isEmpty())
+            return false;
+
         SetRecord r = (SetRecord) o;
+
+        if (r.getVersion() > getLast().getVersion()
+            || r.getVersion() < getFirst().getVersion())
+            return false;
+
+        ListIterator<SetRecord> it = listIterator(size());
         SetRecord previous;
 
         while (it.hasPrevious()) {
@@ -0,0 +1,102 @@
+package de.fu_berlin.inf.dpp.whiteboard.gef.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PolylineUtilsTest {
+
+    @Test
+    public void testParsePoints() {
+        assertArrayEquals(new int[] { 1, 2, 30, -40 },
+            PolylineUtils.parsePoints("1,2 30,-40 "));
+
+        assertArrayEquals(new int[] { 1, 2, 3, 4 },
+            PolylineUtils.parsePoints(" 1 , 2\n3.75,+4 5"));
+
+        assertArrayEquals(new int[0], PolylineUtils.parsePoints(null));
+        assertArrayEquals(new int[0], PolylineUtils.parsePoints(""));
+    }
+
+    @Test
+    public void testPointsAttributeRoundTrip() {
+        int[] points = { 0, 0, -5, 17, 1024, 768 };
+
+        String attribute = PolylineUtils.toPointsAttribute(points);
+
+        assertEquals("0,0 -5,17 1024,768", attribute);
+        assertArrayEquals(points, PolylineUtils.parsePoints(attribute));
+    }
+
+    @Test
+    public void testSimplifyDropsCollinearPoints() {
+        int[] line = { 0, 0, 1, 1, 2, 2, 3, 3, 10, 10 };
+
+        assertArrayEquals(new int[] { 0, 0, 10, 10 },
+            PolylineUtils.simplify(line, PolylineUtils.DEFAULT_TOLERANCE));
+    }
+
+    @Test
+    public void testSimplifyKeepsCorners() {
+        int[] corner = { 0, 0, 5, 0, 10, 0, 10, 5, 10, 10 };
+
+        assertArrayEquals(new int[] { 0, 0, 10, 0, 10, 10 },
+            PolylineUtils.simplify(corner, PolylineUtils.DEFAULT_TOLERANCE));
+    }
+
+    @Test
+    public void testSimplifyWithoutDroppedPoints() {
+        int[] points = { 0, 0, 10, 0 };
+
+        assertSame(points, PolylineUtils.simplify(points, 1));
+    }
+
+    @Test
+    public void testSimplifiedStrokeStaysWithinTolerance() {
+        Random random = new Random(42);
+
+        int[] stroke = new int[2000];
+        int x = 0, y = 0;
+
+        for (int i = 0; i < stroke.length; i += 2) {
+            x += random.nextInt(5);
+            y += random.nextInt(5) - 2;
+            stroke[i] = x;
+            stroke[i + 1] = y;
+        }
+
+        int[] simplified = PolylineUtils.simplify(stroke, 2);
+
+        assertTrue(simplified.length < stroke.length);
+
+        // every original point is near the simplified polyline
+        for (int i = 0; i < stroke.length; i += 2) {
+            double min = Double.MAX_VALUE;
+
+            for (int j = 0; j + 3 < simplified.length; j += 2)
+                min = Math.min(min, distance(stroke[i], stroke[i + 1],
+                    simplified[j], simplified[j + 1], simplified[j + 2],
+                    simplified[j + 3]));
+
+            assertTrue("point " + i / 2 + " is " + min + " away", min <= 2);
+        }
+    }
+
+    private static double distance(double px, double py, double x1, double y1,
+        double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double t = 0;
+
+        if (dx != 0 || dy != 0)
+            t = Math.max(0, Math.min(1, ((px - x1) * dx + (py - y1) * dy)
+                / (dx * dx + dy * dy)));
+
+        return Math.hypot(px - (x1 + t * dx), py - (y1 + t * dy));
+    }
+}
@@ -0,0 +1,220 @@
+package de.fu_berlin.inf.dpp.whiteboard.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.RecordEntry;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.SXEMessageType;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.net.SXEMessage;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.net.SXESession;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.RecordDataObject;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.SetRecordDataObject;
+
+public class SXEPeerQueueTest {
+
+    private static final JID PEER = new JID("alice@example.org/Saros");
+
+    private final SXESession session = new SXESession();
+
+    /* tasks passed to the executor, run manually */
+    private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    private final List<SXEMessage> sent = new ArrayList<SXEMessage>();
+
+    private final SXEPeerQueue queue = new SXEPeerQueue(PEER, new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+    }) {
+        @Override
+        protected void send(JID peer, SXEExtension extension) {
+            assertEquals(PEER, peer);
+            sent.add(extension.getMessage());
+        }
+    };
+
+    @Test
+    public void testConsecutiveRecordsAreMergedInOrder() {
+        queue.add(records("a"));
+        queue.add(records("b", "c"));
+        queue.add(extension(session.getNextMessage(SXEMessageType.COMPACT)));
+        queue.add(records("d"));
+        queue.add(records("e"));
+
+        assertEquals("only one task may send to a peer", 1, tasks.size());
+
+        tasks.remove(0).run();
+
+        assertEquals(3, sent.size());
+        assertEquals(Arrays.asList("a", "b", "c"), targets(sent.get(0)));
+        assertEquals(SXEMessageType.COMPACT, sent.get(1).getMessageType());
+        assertEquals(Arrays.asList("d", "e"), targets(sent.get(2)));
+    }
+
+    @Test
+    public void testNewTaskIsStartedWhenQueueIsEmpty() {
+        queue.add(records("a"));
+        tasks.remove(0).run();
+
+        queue.add(records("b"));
+
+        assertEquals(1, tasks.size());
+
+        tasks.remove(0).run();
+
+        assertEquals(2, sent.size());
+        assertEquals(Arrays.asList("b"), targets(sent.get(1)));
+    }
+
+    @Test
+    public void testClosedQueueDiscardsMessages() {
+        queue.add(records("a"));
+        queue.close();
+        queue.add(records("b"));
+
+        for (Runnable task : tasks)
+            task.run();
+
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void testRejectedMessagesAreDiscarded() {
+        SXEPeerQueue rejecting = new SXEPeerQueue(PEER, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        }) {
+            @Override
+            protected void send(JID peer, SXEExtension extension) {
+                sent.add(extension.getMessage());
+            }
+        };
+
+        rejecting.add(records("a"));
+        rejecting.run();
+
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void testMergedMessagesAreLimited() {
+        for (int i = 0; i <= SXEPeerQueue.MAX_MERGED_RECORDS; i++)
+            queue.add(records("r" + i));
+
+        queue.add(largeRecords("a"));
+        queue.add(largeRecords("b"));
+
+        tasks.remove(0).run();
+
+        assertEquals(3, sent.size());
+        assertEquals(SXEPeerQueue.MAX_MERGED_RECORDS, sent.get(0).getRecords()
+            .size());
+        assertEquals(Arrays.asList("r" + SXEPeerQueue.MAX_MERGED_RECORDS, "a"),
+            targets(sent.get(1)));
+        assertEquals(Arrays.asList("b"), targets(sent.get(2)));
+    }
+
+    @Test
+    public void testAddBlocksWhileQueueIsFull() throws Exception {
+        final int count = 4 * SXEPeerQueue.MAX_QUEUED_SIZE
+            / SXEPeerQueue.MAX_MERGED_SIZE;
+
+        final List<Runnable> synchronizedTasks = Collections
+            .synchronizedList(tasks);
+
+        final SXEPeerQueue blockingQueue = new SXEPeerQueue(PEER,
+            new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    synchronizedTasks.add(command);
+                }
+            }) {
+            @Override
+            protected void send(JID peer, SXEExtension extension) {
+                sent.add(extension.getMessage());
+            }
+        };
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++)
+                    blockingQueue.add(largeRecords("large" + i));
+            }
+        });
+
+        producer.start();
+        producer.join(500);
+
+        assertTrue("adding to a full queue did not block", producer.isAlive());
+        assertTrue(sent.isEmpty());
+
+        while (producer.isAlive() || !synchronizedTasks.isEmpty()) {
+            if (synchronizedTasks.isEmpty())
+                producer.join(10);
+            else
+                synchronizedTasks.remove(0).run();
+        }
+
+        assertEquals("no message may be dropped", count, sent.size());
+
+        for (int i = 0; i < count; i++)
+            assertEquals(Arrays.asList("large" + i), targets(sent.get(i)));
+    }
+
+    /**
+     * Returns a message whose record is larger than half of
+     * {@link SXEPeerQueue#MAX_MERGED_SIZE}, so it is never merged with another
+     * one of its kind.
+     */
+    private SXEExtension largeRecords(String target) {
+        SXEExtension extension = records(target);
+        char[] data = new char[SXEPeerQueue.MAX_MERGED_SIZE / 2];
+        Arrays.fill(data, 'x');
+        extension.getMessage().getRecords().get(0)
+            .putValue(RecordEntry.CHDATA, new String(data));
+        return extension;
+    }
+
+    private SXEExtension records(String... targets) {
+        SXEMessage message = session.getNextMessage(SXEMessageType.RECORDS);
+        List<RecordDataObject> rdos = new ArrayList<RecordDataObject>();
+
+        for (String target : targets) {
+            RecordDataObject rdo = new SetRecordDataObject();
+            rdo.putValue(RecordEntry.TARGET, target);
+            rdos.add(rdo);
+        }
+
+        message.setRecords(rdos);
+        return extension(message);
+    }
+
+    private static SXEExtension extension(SXEMessage message) {
+        SXEExtension extension = new SXEExtension();
+        extension.setMessage(message);
+        return extension;
+    }
+
+    private static List<String> targets(SXEMessage message) {
+        List<String> targets = new ArrayList<String>();
+
+        for (RecordDataObject rdo : message.getRecords())
+            targets.add(rdo.getTargetRid());
+
+        return targets;
+    }
+}
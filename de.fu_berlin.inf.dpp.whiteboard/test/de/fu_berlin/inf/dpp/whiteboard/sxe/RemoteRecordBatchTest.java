@@ -0,0 +1,228 @@
+package de.fu_berlin.inf.dpp.whiteboard.sxe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.RecordEntry;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.SXEMessageType;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.net.SXEMessage;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.net.SXESession;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.ChildRecordChangeCache.ChildRecordChangeListener;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.DocumentRecord;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.ElementRecord;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.IRecord;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.NodeRecord;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.SXEDefaultRecordFactory;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.SetRecord;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.RecordDataObject;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.SetRecordDataObject;
+
+public class RemoteRecordBatchTest {
+
+    private final SXEDefaultRecordFactory recordFactory = new SXEDefaultRecordFactory();
+    private final SXEController controller = new SXEController(recordFactory);
+    private final SXESession session = new SXESession();
+
+    private final List<List<IRecord>> notified = new ArrayList<List<IRecord>>();
+
+    @Before
+    public void setUp() {
+        controller.getDocumentRecord().getRoot()
+            .addChildRecordChangeListener(new ChildRecordChangeListener() {
+
+                @Override
+                public void childElementRecordChanged(List<IRecord> records) {
+                    notified.add(new ArrayList<IRecord>(records));
+                }
+
+                @Override
+                public void attributeRecordChanged(List<IRecord> records) {
+                    // NOP
+                }
+
+                @Override
+                public void childRecordConflict(
+                    Map<NodeRecord, Set<SetRecord>> conflicts) {
+                    // NOP
+                }
+            });
+    }
+
+    @Test
+    public void testBatchIsNotifiedAtOnce() {
+        controller.executeRemoteRecords(Arrays.asList(createMessage(),
+            createMessage()));
+
+        assertEquals(1, notified.size());
+        assertEquals(2, notified.get(0).size());
+        assertEquals(2, controller.getDocumentRecord().getRoot()
+            .getVisibleChildElements().size());
+    }
+
+    @Test
+    public void testSingleMessageIsNotifiedImmediately() {
+        controller.executeRemoteRecords(createMessage());
+
+        assertEquals(1, notified.size());
+        assertEquals(1, notified.get(0).size());
+    }
+
+    @Test
+    public void testCompactionIsAppliedInOrder() throws Exception {
+        DocumentRecord document = controller.getDocumentRecord();
+
+        SXEMessage create = createMessage();
+        String rid = create.getRecords().get(0).getTargetRid();
+
+        controller.executeRemoteRecords(create);
+
+        ElementRecord record = document.getElementRecordById(rid);
+
+        SXEMessage remove = session.getNextMessage(SXEMessageType.RECORDS);
+        remove.setRecords(Collections.singletonList(record.getRemoveRecord()
+            .getRecordDataObject()));
+
+        SXEMessage compact = session.getNextMessage(SXEMessageType.COMPACT);
+        RecordDataObject purge = new SetRecordDataObject();
+        purge.putValue(RecordEntry.TARGET, rid);
+        purge.putValue(RecordEntry.VERSION, record.getVersion() + 1);
+        purge.putValue(RecordEntry.VISIBLE, false);
+        compact.setRecords(Collections.singletonList(purge));
+
+        SXEMessage recreate = session.getNextMessage(SXEMessageType.RECORDS);
+        SetRecord set = new SetRecord(record, record.getVersion() + 2);
+        set.setSetVisibilityTo(true);
+        recreate.setRecords(Collections.singletonList(set
+            .getRecordDataObject()));
+
+        controller.executeRemoteRecords(Arrays.asList(remove, compact,
+            recreate));
+
+        // the record was purged before the recreation arrived
+        assertFalse(document.contains(record));
+        assertTrue(document.isPurged(rid));
+        assertTrue(document.getRoot().getVisibleChildElements().isEmpty());
+    }
+
+    @Test
+    public void testNotificationIsDeferredToExecutor() {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        controller.setNotificationExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+
+        controller.executeRemoteRecords(createMessage());
+        controller.executeRemoteRecords(createMessage());
+
+        assertTrue(notified.isEmpty());
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+
+        assertEquals(1, notified.size());
+        assertEquals(2, notified.get(0).size());
+    }
+
+    @Test(timeout = 10000)
+    public void testCompactionWaitsForDeferredNotification() throws Exception {
+        // plays the UI thread that refreshes one display frame later
+        final ExecutorService ui = Executors.newSingleThreadExecutor();
+
+        try {
+            controller.setNotificationExecutor(new Executor() {
+                @Override
+                public void execute(final Runnable command) {
+                    ui.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                Thread.sleep(100);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            command.run();
+                        }
+                    });
+                }
+            });
+
+            DocumentRecord document = controller.getDocumentRecord();
+
+            SXEMessage create = createMessage();
+            String rid = create.getRecords().get(0).getTargetRid();
+
+            controller.executeRemoteRecords(create);
+            // wait for the refresh
+            ui.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // NOP
+                }
+            }).get();
+
+            assertEquals(1, notified.size());
+
+            ElementRecord record;
+
+            synchronized (controller) {
+                record = document.getElementRecordById(rid);
+            }
+
+            SXEMessage remove = session.getNextMessage(SXEMessageType.RECORDS);
+            remove.setRecords(Collections.singletonList(record
+                .getRemoveRecord().getRecordDataObject()));
+
+            SXEMessage compact = session
+                .getNextMessage(SXEMessageType.COMPACT);
+            RecordDataObject purge = new SetRecordDataObject();
+            purge.putValue(RecordEntry.TARGET, rid);
+            purge.putValue(RecordEntry.VERSION, record.getVersion() + 1);
+            purge.putValue(RecordEntry.VISIBLE, false);
+            compact.setRecords(Collections.singletonList(purge));
+
+            controller.executeRemoteRecords(Arrays.asList(remove, compact));
+
+            // the listeners knew about the removal before the purge
+            synchronized (controller) {
+                assertEquals(2, notified.size());
+                assertEquals(1, notified.get(1).size());
+                assertTrue(document.isPurged(rid));
+            }
+        } finally {
+            ui.shutdown();
+            ui.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private SXEMessage createMessage() {
+        DocumentRecord document = controller.getDocumentRecord();
+
+        ElementRecord record = recordFactory.createElementRecord(document,
+            null, "rect");
+        record.setParent(document.getRoot());
+
+        SXEMessage message = session.getNextMessage(SXEMessageType.RECORDS);
+        message.setRecords(Collections.singletonList(record
+            .getRecordDataObject()));
+        return message;
+    }
+}
@@ -56,6 +56,7 @@ public class MockedSXETransmitter implements ISXETransmitter {
 
             switch (message.getMessageType()) {
             case RECORDS:
+            case COMPACT:
                 this.handleReceiveRecords(message);
                 break;
             case STATE:
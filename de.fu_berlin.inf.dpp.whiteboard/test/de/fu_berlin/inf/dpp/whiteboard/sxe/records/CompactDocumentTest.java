@@ -0,0 +1,178 @@
+package de.fu_berlin.inf.dpp.whiteboard.sxe.records;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.whiteboard.sxe.SXEController;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.RecordDataObject;
+
+public class CompactDocumentTest {
+
+    private final SXEDefaultRecordFactory recordFactory = new SXEDefaultRecordFactory();
+    private final SXEController controller = new SXEController(recordFactory);
+    private final DocumentRecord document = recordFactory
+        .createDocument(controller);
+    private final ElementRecord root = recordFactory.createRoot(document);
+
+    {
+        root.apply(document);
+    }
+
+    @Test
+    public void testSnapshotContainsLatestStateOfAllNodes()
+        throws Exception {
+
+        ElementRecord rect = createElement(root);
+        AttributeRecord x = createAttribute(rect, "x", "1");
+
+        for (int i = 2; i <= 5; i++)
+            x.createSetRecord(String.valueOf(i)).apply(document);
+
+        ElementRecord removed = createElement(root);
+        createAttribute(removed, "x", "1");
+        createElement(removed);
+        removed.getRemoveRecord().apply(document);
+
+        List<RecordDataObject> snapshot = document.getSnapshot();
+
+        assertEquals(6, snapshot.size());
+
+        DocumentRecord copy = recordFactory.createDocument(new SXEController(
+            recordFactory));
+
+        for (RecordDataObject rdo : snapshot)
+            assertTrue(rdo.getIRecord(copy).apply(copy));
+
+        AttributeRecord copiedX = (AttributeRecord) copy.getRecordById(x
+            .getRid());
+
+        assertEquals("5", copiedX.getChdata());
+        assertEquals(x.getVersion(), copiedX.getVersion());
+        assertEquals(rect.getRid(), copiedX.getParent().getRid());
+
+        // removed nodes can still be recreated
+        NodeRecord copiedRemoved = copy.getRecordById(removed.getRid());
+        assertFalse(copiedRemoved.isVisible());
+        assertEquals(removed.getVersion(), copiedRemoved.getVersion());
+        assertTrue(copiedRemoved.getRecreateRecord().apply(copy));
+        assertTrue(copiedRemoved.isVisible());
+
+        // following SetRecords apply without a conflict
+        SetRecord set = new SetRecord(copiedX, x.getVersion() + 1);
+        set.setChdata("6");
+        assertTrue(set.apply(copy));
+        assertEquals("6", copiedX.getChdata());
+    }
+
+    @Test
+    public void testCompactionBoundsHistory() {
+        ElementRecord rect = createElement(root);
+        AttributeRecord x = createAttribute(rect, "x", "0");
+
+        int count = DocumentRecord.MAX_SET_RECORDS_PER_NODE * 3;
+
+        for (int i = 1; i <= count; i++)
+            x.createSetRecord(String.valueOf(i)).apply(document);
+
+        int version = x.getVersion();
+
+        compact();
+
+        assertEquals(DocumentRecord.MAX_SET_RECORDS_PER_NODE, x
+            .getSetRecords().size());
+        assertEquals(version, x.getVersion());
+        assertEquals(String.valueOf(count), x.getChdata());
+
+        // a conflict still reverts to the previous state
+        SetRecord set1 = new SetRecord(x, version + 1);
+        set1.setChdata("a");
+        SetRecord set2 = new SetRecord(x, version + 1);
+        set2.setChdata("b");
+
+        assertTrue(set1.apply(document));
+        assertTrue(set2.apply(document));
+        assertEquals(String.valueOf(count), x.getChdata());
+    }
+
+    @Test
+    public void testRemovedRecordsArePurgedOnSecondCompaction() {
+        ElementRecord rect = createElement(root);
+        AttributeRecord x = createAttribute(rect, "x", "1");
+        ElementRecord child = createElement(rect);
+
+        rect.getRemoveRecord().apply(document);
+
+        compact();
+
+        // can still be recreated
+        assertTrue(document.contains(rect));
+
+        compact();
+
+        assertFalse(document.contains(rect));
+        assertFalse(document.contains(x));
+        assertFalse(document.contains(child));
+        assertFalse(root.getChildElements().contains(rect));
+        assertTrue(document.isPurged(rect.getRid()));
+        assertTrue(document.isPurged(child.getRid()));
+    }
+
+    @Test
+    public void testRecreatedRecordsAreNotPurged() {
+        ElementRecord rect = createElement(root);
+
+        rect.getRemoveRecord().apply(document);
+        compact();
+
+        rect.getRecreateRecord().apply(document);
+        compact();
+        compact();
+
+        assertTrue(document.contains(rect));
+    }
+
+    @Test
+    public void testConcurrentlyRecreatedRecordsArePurgedOnAllPeers() {
+        ElementRecord rect = createElement(root);
+
+        rect.getRemoveRecord().apply(document);
+        compact();
+
+        List<RecordDataObject> compaction = document.getCompactionRecords();
+
+        // a peer recreated the record before it received the compaction
+        rect.getRecreateRecord().apply(document);
+        document.compact(compaction);
+
+        assertFalse(document.contains(rect));
+        assertFalse(root.getChildElements().contains(rect));
+        assertTrue(document.isPurged(rect.getRid()));
+    }
+
+    /**
+     * Compacts the document like the host does.
+     */
+    private void compact() {
+        document.compact(document.getCompactionRecords());
+    }
+
+    private ElementRecord createElement(ElementRecord parent) {
+        ElementRecord r = recordFactory.createElementRecord(document, null,
+            "rect");
+        r.setParent(parent);
+        r.apply(document);
+        return r;
+    }
+
+    private AttributeRecord createAttribute(ElementRecord parent, String name,
+        String chdata) {
+        AttributeRecord r = parent.createNewAttributeRecord(null, name, chdata);
+        r.apply(document);
+        return r;
+    }
+}
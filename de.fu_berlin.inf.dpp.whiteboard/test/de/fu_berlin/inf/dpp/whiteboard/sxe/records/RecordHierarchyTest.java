@@ -0,0 +1,91 @@
+package de.fu_berlin.inf.dpp.whiteboard.sxe.records;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.fu_berlin.inf.dpp.whiteboard.sxe.SXEController;
+
+public class RecordHierarchyTest {
+
+    private final SXEDefaultRecordFactory recordFactory = new SXEDefaultRecordFactory();
+    private final SXEController controller = new SXEController(recordFactory);
+    private final DocumentRecord document = recordFactory
+        .createDocument(controller);
+    private final ElementRecord root = recordFactory.createRoot(document);
+    private int rids;
+
+    {
+        root.apply(document);
+    }
+
+    @Test
+    public void testVisibleChildElementsFollowChanges() {
+        ElementRecord a = createElement(root);
+        ElementRecord b = createElement(root);
+
+        assertEquals(Arrays.asList(a, b), root.getVisibleChildElements());
+
+        a.getRemoveRecord().apply(document);
+        assertEquals(Arrays.asList(b), root.getVisibleChildElements());
+
+        a.getRecreateRecord().apply(document);
+        assertEquals(Arrays.asList(a, b), root.getVisibleChildElements());
+
+        // move a to the end
+        a.createMoveRecord(root).apply(document);
+        assertEquals(Arrays.asList(b, a), root.getVisibleChildElements());
+
+        // move a into b
+        a.createMoveRecord(b).apply(document);
+        assertEquals(Arrays.asList(b), root.getVisibleChildElements());
+        assertEquals(Arrays.asList(a), b.getVisibleChildElements());
+    }
+
+    @Test
+    public void testAncestors() {
+        ElementRecord a = createElement(root);
+        ElementRecord b = createElement(a);
+        ElementRecord c = createElement(b);
+        ElementRecord d = createElement(root);
+
+        assertTrue(root.isAncestorOf(c));
+        assertTrue(a.isAncestorOf(c));
+        assertFalse(c.isAncestorOf(a));
+        assertFalse(d.isAncestorOf(c));
+        assertFalse(c.isAncestorOf(c));
+
+        assertTrue(a.isCircularRelationship(c));
+        assertTrue(a.isCircularRelationship(a));
+        assertFalse(c.isCircularRelationship(d));
+
+        assertEquals(Arrays.asList(a, b, c, d),
+            root.getAllVisibleDescendantElements());
+    }
+
+    @Test
+    public void testDeepHierarchy() {
+        ElementRecord top = createElement(root);
+        ElementRecord current = top;
+
+        for (int i = 0; i < 2000; i++)
+            current = createElement(current);
+
+        assertTrue(top.isCircularRelationship(current));
+        assertEquals(2000, top.getAllVisibleDescendantElements().size());
+    }
+
+    private ElementRecord createElement(ElementRecord parent) {
+        ElementRecord r = recordFactory.createElementRecord(document, null,
+            "rect");
+        // random RIDs may collide when creating many records at once
+        r.setRid("rect" + (++rids));
+        r.setParent(parent);
+        r.apply(document);
+        return r;
+    }
+}
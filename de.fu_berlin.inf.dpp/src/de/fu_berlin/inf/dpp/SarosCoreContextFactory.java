@@ -14,6 +14,7 @@ import de.fu_berlin.inf.dpp.communication.chat.single.SingleUserChatService;
 import de.fu_berlin.inf.dpp.communication.connection.ConnectionHandler;
 import de.fu_berlin.inf.dpp.concurrent.watchdog.IsInconsistentObservable;
 import de.fu_berlin.inf.dpp.editor.colorstorage.ColorIDSetStorage;
+import de.fu_berlin.inf.dpp.negotiation.FileListSnapshotStore;
 import de.fu_berlin.inf.dpp.negotiation.hooks.SessionNegotiationHookManager;
 import de.fu_berlin.inf.dpp.net.DispatchThreadContext;
 import de.fu_berlin.inf.dpp.net.IConnectionManager;
@@ -25,6 +26,8 @@ import de.fu_berlin.inf.dpp.net.internal.IBBTransport;
 import de.fu_berlin.inf.dpp.net.internal.ITransport;
 import de.fu_berlin.inf.dpp.net.internal.Socks5Transport;
 import de.fu_berlin.inf.dpp.net.internal.TCPServer;
+import de.fu_berlin.inf.dpp.net.internal.TCPTransport;
+import de.fu_berlin.inf.dpp.net.internal.TCPTransportNegotiationHook;
 import de.fu_berlin.inf.dpp.net.internal.XMPPReceiver;
 import de.fu_berlin.inf.dpp.net.internal.XMPPTransmitter;
 import de.fu_berlin.inf.dpp.net.mdns.MDNSService;
@@ -74,6 +77,7 @@ public class SarosCoreContextFactory extends AbstractSarosContextFactory {
         Component.create(SarosSessionManager.class),
 
         Component.create(XMPPAccountStore.class),
+        Component.create(FileListSnapshotStore.class),
         Component.create(ColorIDSetStorage.class),
 
         // Invitation hooks
@@ -101,6 +105,8 @@ public class SarosCoreContextFactory extends AbstractSarosContextFactory {
         Component.create(XMPPConnectionService.class),
         Component.create(MDNSService.class),
         Component.create(TCPServer.class),
+        Component.create(TCPTransport.class),
+        Component.create(TCPTransportNegotiationHook.class),
         Component.create(SkypeManager.class),
 
         Component.create(IStunService.class, StunServiceImpl.class),
@@ -13,6 +13,7 @@ import de.fu_berlin.inf.dpp.communication.connection.IProxyResolver;
 import de.fu_berlin.inf.dpp.communication.connection.Socks5ProxyResolver;
 import de.fu_berlin.inf.dpp.concurrent.undo.UndoManager;
 import de.fu_berlin.inf.dpp.concurrent.watchdog.ConsistencyWatchdogClient;
+import de.fu_berlin.inf.dpp.concurrent.watchdog.LazyFileFetcher;
 import de.fu_berlin.inf.dpp.editor.EditorManager;
 import de.fu_berlin.inf.dpp.editor.IEditorManager;
 import de.fu_berlin.inf.dpp.editor.internal.EditorAPI;
@@ -54,6 +55,7 @@ public class SarosEclipseContextFactory extends AbstractSarosContextFactory {
     private final Component[] components = new Component[] {
         // Core Managers
         Component.create(ConsistencyWatchdogClient.class),
+        Component.create(LazyFileFetcher.class),
         Component.create(EditorAPI.class),
         Component.create(IEditorManager.class, EditorManager.class),
         // disabled because of privacy violations
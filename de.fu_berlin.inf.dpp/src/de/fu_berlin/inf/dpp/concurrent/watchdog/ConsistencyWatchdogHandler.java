@@ -1,6 +1,7 @@
 package de.fu_berlin.inf.dpp.concurrent.watchdog;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CancellationException;
 
@@ -33,6 +34,7 @@ import de.fu_berlin.inf.dpp.session.User;
 import de.fu_berlin.inf.dpp.synchronize.StartHandle;
 import de.fu_berlin.inf.dpp.ui.util.SWTUtils;
 import de.fu_berlin.inf.dpp.util.FileUtils;
+import de.fu_berlin.inf.dpp.util.ThreadUtils;
 
 /**
  * This component is responsible for handling Consistency Errors on the host. It
@@ -54,7 +56,12 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
     private final IActivityConsumer consumer = new AbstractActivityConsumer() {
         @Override
         public void receive(ChecksumErrorActivity checksumError) {
-            if (session.isHost())
+            if (!session.isHost())
+                return;
+
+            if (checksumError.isFileRequest())
+                sendRequestedFiles(checksumError);
+            else
                 triggerRecovery(checksumError);
         }
     };
@@ -137,6 +144,68 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
         });
     }
 
+    /**
+     * Sends the files a user did not receive during the project negotiation.
+     * Only the requesting user is locked while the files are sent, so it
+     * cannot change them while their Jupiter state is reset. Files that could
+     * not be sent are reported in the final ChecksumErrorActivity, which is
+     * sent in any case.
+     */
+    private void sendRequestedFiles(final ChecksumErrorActivity request) {
+
+        LOG.debug("received file request: " + request);
+
+        ThreadUtils.runSafeAsync("dpp-file-request", LOG, new Runnable() {
+            @Override
+            public void run() {
+                final User requester = request.getSource();
+                final List<SPath> failedPaths = new ArrayList<SPath>();
+
+                StartHandle startHandle = null;
+
+                try {
+                    startHandle = session.getStopManager().stop(requester,
+                        "Sending requested files");
+
+                    for (final SPath path : request.getPaths()) {
+                        final boolean[] sent = new boolean[1];
+
+                        SWTUtils.runSafeSWTSync(LOG, new Runnable() {
+                            @Override
+                            public void run() {
+                                sent[0] = recoverFile(requester, path);
+                            }
+                        });
+
+                        if (!sent[0])
+                            failedPaths.add(path);
+                    }
+                } catch (CancellationException e) {
+                    LOG.error("could not lock " + requester
+                        + ", the requested files are not sent", e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (startHandle == null)
+                        failedPaths.addAll(request.getPaths());
+
+                    if (!failedPaths.isEmpty())
+                        LOG.warn("could not send requested files to "
+                            + requester + ": " + failedPaths);
+
+                    // Tell the user that we sent all files we could send
+                    fireActivity(new ChecksumErrorActivity(
+                        session.getLocalUser(), requester,
+                        failedPaths.isEmpty() ? null : failedPaths, request
+                            .getRecoveryID()));
+
+                    if (startHandle != null)
+                        startHandle.startAndAwait();
+                }
+            }
+        });
+    }
+
     private void runRecovery(final ChecksumErrorActivity checksumError,
         final IProgressMonitor monitor) throws CancellationException {
 
@@ -164,22 +233,7 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
              */
             progress.subTask("unlocking session");
 
-            // find the StartHandle of the inconsistent user
-            StartHandle inconsistentStartHandle = null;
-            for (StartHandle startHandle : startHandles) {
-                if (checksumError.getSource().equals(startHandle.getUser())) {
-                    inconsistentStartHandle = startHandle;
-                    break;
-                }
-            }
-            if (inconsistentStartHandle == null) {
-                LOG.error("could not find start handle"
-                    + " of the inconsistent user");
-            } else {
-                // FIXME evaluate the return value
-                inconsistentStartHandle.startAndAwait();
-                startHandles.remove(inconsistentStartHandle);
-            }
+            startAndAwait(startHandles, checksumError.getSource());
         } finally {
             if (startHandles != null)
                 for (StartHandle startHandle : startHandles)
@@ -188,6 +242,31 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
         }
     }
 
+    /**
+     * Starts the inconsistent user and waits until it is started. The
+     * StartHandle of the user is removed from the given list.
+     */
+    private void startAndAwait(final List<StartHandle> startHandles,
+        final User inconsistentUser) {
+
+        // find the StartHandle of the inconsistent user
+        StartHandle inconsistentStartHandle = null;
+        for (StartHandle startHandle : startHandles) {
+            if (inconsistentUser.equals(startHandle.getUser())) {
+                inconsistentStartHandle = startHandle;
+                break;
+            }
+        }
+        if (inconsistentStartHandle == null) {
+            LOG.error("could not find start handle"
+                + " of the inconsistent user");
+        } else {
+            // FIXME evaluate the return value
+            inconsistentStartHandle.startAndAwait();
+            startHandles.remove(inconsistentStartHandle);
+        }
+    }
+
     private void recoverFiles(final ChecksumErrorActivity checksumError,
         final IProgressMonitor monitor) {
 
@@ -220,8 +299,10 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
     /**
      * Recover a single file for the given user (that is either send the file or
      * tell the user to remove it).
+     * 
+     * @return <code>false</code> if the file could not be read
      */
-    private void recoverFile(final User from, final SPath path) {
+    private boolean recoverFile(final User from, final SPath path) {
 
         final IFile file = ((EclipseFileImpl) path.getFile()).getDelegate();
 
@@ -235,7 +316,7 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
             // Tell the client to delete the file
             fireActivity(RecoveryFileActivity.removed(user, path, from, null));
             fireActivity(ChecksumActivity.missing(user, path));
-            return;
+            return true;
         }
 
         /*
@@ -256,7 +337,7 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
 
         if (content == null) {
             LOG.error("could not read file: " + file);
-            return;
+            return false;
         }
 
         fireActivity(RecoveryFileActivity.created(user, path, content, from,
@@ -287,5 +368,7 @@ public final class ConsistencyWatchdogHandler extends AbstractActivityProducer
         } finally {
             provider.disconnect(input);
         }
+
+        return true;
     }
 }
@@ -0,0 +1,392 @@
+package de.fu_berlin.inf.dpp.concurrent.watchdog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.picocontainer.Disposable;
+
+import de.fu_berlin.inf.dpp.activities.ChecksumErrorActivity;
+import de.fu_berlin.inf.dpp.activities.FileActivity;
+import de.fu_berlin.inf.dpp.activities.IActivity;
+import de.fu_berlin.inf.dpp.activities.IResourceActivity;
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.annotations.Component;
+import de.fu_berlin.inf.dpp.editor.EditorManager;
+import de.fu_berlin.inf.dpp.negotiation.IncomingProjectNegotiation;
+import de.fu_berlin.inf.dpp.preferences.Preferences;
+import de.fu_berlin.inf.dpp.session.AbstractActivityConsumer;
+import de.fu_berlin.inf.dpp.session.AbstractActivityProducer;
+import de.fu_berlin.inf.dpp.session.IActivityConsumer;
+import de.fu_berlin.inf.dpp.session.ISarosSession;
+import de.fu_berlin.inf.dpp.session.ISarosSessionListener;
+import de.fu_berlin.inf.dpp.session.ISarosSessionManager;
+import de.fu_berlin.inf.dpp.session.NullSarosSessionListener;
+import de.fu_berlin.inf.dpp.ui.util.DialogUtils;
+import de.fu_berlin.inf.dpp.ui.util.SWTUtils;
+import de.fu_berlin.inf.dpp.util.ThreadUtils;
+
+/**
+ * Requests the files of partially shared projects from the host that were not
+ * received during the {@link IncomingProjectNegotiation}, see
+ * {@link Preferences#isLazyPartialSharingEnabled()}.
+ * <p>
+ * The files are requested in small batches by a {@link ChecksumErrorActivity
+ * file request} which the host answers like a consistency recovery. Files that
+ * are touched by an activity are requested first, followed by the files the
+ * host has opened in an editor and all remaining files. Files the host did not
+ * send are requested again up to {@link #MAX_ATTEMPTS} times before the user is
+ * told that they are missing.
+ * <p>
+ * An activity that touches a file which is not received yet cannot wait for
+ * the file as the file is delivered by the same activity dispatching. Such an
+ * activity is applied as usual, the following recovery of the file resets the
+ * Jupiter state of both sides while the host locks the session.
+ */
+@Component(module = "consistency")
+public class LazyFileFetcher extends AbstractActivityProducer implements
+    Disposable {
+
+    private static final Logger LOG = Logger.getLogger(LazyFileFetcher.class);
+
+    private static final Random RANDOM = new Random();
+
+    /** Number of files that are requested at once. */
+    private static final int BATCH_SIZE = 16;
+
+    /**
+     * Time in milliseconds to wait for the host to answer a request before
+     * the next request is sent.
+     */
+    private static final long REQUEST_TIMEOUT = 60 * 1000;
+
+    /** Number of times a file is requested before it is given up. */
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final ISarosSessionManager sessionManager;
+
+    private final EditorManager editorManager;
+
+    /** Guards all following fields. */
+    private final Object lock = new Object();
+
+    /** Files that are not received yet. */
+    private final Set<SPath> pending = new LinkedHashSet<SPath>();
+
+    /** Pending files that were touched by an activity. */
+    private final Set<SPath> urgent = new LinkedHashSet<SPath>();
+
+    /** Number of unsuccessful requests of pending files. */
+    private final Map<SPath, Integer> attempts = new HashMap<SPath, Integer>();
+
+    /** Files that were given up and are not reported yet. */
+    private final Set<SPath> failed = new LinkedHashSet<SPath>();
+
+    private ISarosSession session;
+
+    /** The recoveryID of the outstanding request. */
+    private String requestID;
+
+    private Thread fetcher;
+
+    private final ISarosSessionListener sessionListener = new NullSarosSessionListener() {
+
+        @Override
+        public void sessionStarted(ISarosSession newSarosSession) {
+            synchronized (lock) {
+                session = newSarosSession;
+            }
+
+            newSarosSession.addActivityConsumer(consumer);
+            newSarosSession.addActivityProducer(LazyFileFetcher.this);
+        }
+
+        @Override
+        public void sessionEnded(ISarosSession oldSarosSession) {
+            oldSarosSession.removeActivityConsumer(consumer);
+            oldSarosSession.removeActivityProducer(LazyFileFetcher.this);
+
+            synchronized (lock) {
+                session = null;
+                requestID = null;
+                pending.clear();
+                urgent.clear();
+                attempts.clear();
+                failed.clear();
+                lock.notifyAll();
+            }
+        }
+    };
+
+    private final IActivityConsumer consumer = new AbstractActivityConsumer() {
+
+        @Override
+        public void exec(IActivity activity) {
+            if (activity instanceof IResourceActivity)
+                touched(((IResourceActivity) activity).getPath());
+
+            super.exec(activity);
+        }
+
+        @Override
+        public void receive(FileActivity activity) {
+            synchronized (lock) {
+                /*
+                 * the content of the file is either sent with the activity or
+                 * the file is deleted
+                 */
+                boolean wasPending = remove(activity.getPath());
+
+                if (activity.getType() == FileActivity.Type.MOVED
+                    && remove(activity.getOldPath()) && !wasPending) {
+                    // the file is moved before we received it
+                    pending.add(activity.getPath());
+                    urgent.add(activity.getPath());
+                }
+            }
+        }
+
+        @Override
+        public void receive(ChecksumErrorActivity activity) {
+            synchronized (lock) {
+                if (activity.getSource().isHost()
+                    && activity.getRecoveryID().equals(requestID)) {
+                    // the host sent all requested files it could read
+                    if (activity.getPaths() != null)
+                        LOG.warn("host could not send the files "
+                            + activity.getPaths());
+
+                    requestID = null;
+                    lock.notifyAll();
+                }
+            }
+        }
+    };
+
+    public LazyFileFetcher(ISarosSessionManager sessionManager,
+        EditorManager editorManager) {
+        this.sessionManager = sessionManager;
+        this.editorManager = editorManager;
+
+        this.sessionManager.addSarosSessionListener(sessionListener);
+    }
+
+    @Override
+    public void dispose() {
+        sessionManager.removeSarosSessionListener(sessionListener);
+    }
+
+    /**
+     * Requests the given files from the host in the background.
+     *
+     * @param paths
+     *            the paths of the files that were not received during the
+     *            project negotiation
+     */
+    public void fetch(Collection<SPath> paths) {
+        synchronized (lock) {
+            if (session == null || session.isHost())
+                return;
+
+            pending.addAll(paths);
+
+            if (fetcher == null && !pending.isEmpty()) {
+                fetcher = ThreadUtils.runSafeAsync("dpp-lazy-file-fetcher",
+                    LOG, new Runnable() {
+                        @Override
+                        public void run() {
+                            fetchPending();
+                        }
+                    });
+            }
+        }
+    }
+
+    private void touched(SPath path) {
+        synchronized (lock) {
+            if (pending.contains(path))
+                urgent.add(path);
+        }
+    }
+
+    private boolean remove(SPath path) {
+        urgent.remove(path);
+        attempts.remove(path);
+        return pending.remove(path);
+    }
+
+    private void fetchPending() {
+        try {
+            while (fetchNextBatch()) {
+                // NOP
+            }
+        } finally {
+            final List<SPath> missing;
+
+            synchronized (lock) {
+                fetcher = null;
+
+                missing = new ArrayList<SPath>(failed);
+                failed.clear();
+
+                /*
+                 * files that were added after the last batch was taken but
+                 * before the fetcher was reset
+                 */
+                if (session != null && !pending.isEmpty())
+                    fetch(Collections.<SPath> emptyList());
+            }
+
+            if (!missing.isEmpty())
+                reportMissingFiles(missing);
+        }
+    }
+
+    private void reportMissingFiles(List<SPath> missing) {
+        LOG.error("the host did not send the files " + missing);
+
+        StringBuilder message = new StringBuilder(
+            "The following files could not be received from the host:\n");
+
+        for (SPath path : missing)
+            message.append('\n').append(path.getFullPath());
+
+        DialogUtils.popUpFailureMessage("Missing files", message.toString(),
+            false);
+    }
+
+    /**
+     * Requests the next batch of pending files and waits until the host sent
+     * them.
+     *
+     * @return <code>false</code> if there are no more pending files
+     */
+    private boolean fetchNextBatch() {
+        final ISarosSession currentSession;
+
+        synchronized (lock) {
+            if (session == null || pending.isEmpty())
+                return false;
+
+            currentSession = session;
+        }
+
+        final Set<SPath> hostEditors = getHostEditors(currentSession);
+
+        final List<SPath> batch;
+        final String id = ChecksumErrorActivity.FILE_REQUEST_PREFIX
+            + Long.toHexString(RANDOM.nextLong());
+
+        synchronized (lock) {
+            if (session != currentSession)
+                return false;
+
+            batch = nextBatch(hostEditors);
+            requestID = id;
+        }
+
+        LOG.debug("requesting " + batch.size() + " file(s) from the host");
+
+        fireActivity(new ChecksumErrorActivity(currentSession.getLocalUser(),
+            currentSession.getHost(), batch, id));
+
+        synchronized (lock) {
+            final long deadline = System.currentTimeMillis() + REQUEST_TIMEOUT;
+
+            while (id.equals(requestID)) {
+                long remaining = deadline - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    LOG.warn("host did not answer the file request " + id);
+                    break;
+                }
+
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+
+            requestID = null;
+
+            /*
+             * files that are still pending were not sent because the host did
+             * not answer in time or could not read them
+             */
+            for (SPath path : batch) {
+                if (!pending.contains(path))
+                    continue;
+
+                Integer count = attempts.get(path);
+                int attempt = count == null ? 1 : count + 1;
+
+                if (attempt < MAX_ATTEMPTS) {
+                    // request it again after the other pending files
+                    attempts.put(path, attempt);
+                    pending.remove(path);
+                    pending.add(path);
+                } else {
+                    remove(path);
+                    failed.add(path);
+                }
+            }
+
+            return session == currentSession;
+        }
+    }
+
+    /**
+     * Takes the pending files with the highest priority, the caller must hold
+     * the lock.
+     */
+    private List<SPath> nextBatch(Set<SPath> hostEditors) {
+        final Set<SPath> batch = new LinkedHashSet<SPath>();
+
+        for (SPath path : urgent) {
+            if (batch.size() == BATCH_SIZE)
+                break;
+
+            batch.add(path);
+        }
+
+        for (SPath path : hostEditors) {
+            if (batch.size() == BATCH_SIZE)
+                break;
+
+            if (pending.contains(path))
+                batch.add(path);
+        }
+
+        for (SPath path : pending) {
+            if (batch.size() == BATCH_SIZE)
+                break;
+
+            batch.add(path);
+        }
+
+        return new ArrayList<SPath>(batch);
+    }
+
+    private Set<SPath> getHostEditors(final ISarosSession currentSession) {
+        final Set<SPath> editors = new LinkedHashSet<SPath>();
+
+        SWTUtils.runSafeSWTSync(LOG, new Runnable() {
+            @Override
+            public void run() {
+                editors.addAll(editorManager.getRemoteOpenEditors(currentSession
+                    .getHost()));
+            }
+        });
+
+        return editors;
+    }
+}
@@ -337,6 +337,7 @@ public class EditorManager extends AbstractActivityProducer implements
                             user);
                 }
             });
+            locationAnnotationManager.removeUser(user);
             remoteEditorManager.removeUser(user);
         }
     };
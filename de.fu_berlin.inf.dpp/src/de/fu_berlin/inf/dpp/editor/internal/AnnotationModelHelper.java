@@ -1,6 +1,7 @@
 package de.fu_berlin.inf.dpp.editor.internal;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
@@ -88,7 +89,36 @@ public class AnnotationModelHelper {
             }
         }
 
-        // Remove collected annotations.
+        replaceAnnotationsInModel(model, annotationsToRemove, replacement);
+    }
+
+    /**
+     * Removes the given annotations and adds the replacement in one step.
+     * Unlike
+     * {@link #replaceAnnotationsInModel(IAnnotationModel, Predicate, Map)}
+     * this does not iterate over all annotations of the model.
+     * 
+     * @param model
+     *            The {@link IAnnotationModel} that should be updated.
+     * @param annotations
+     *            The annotations to remove, <code>null</code> elements are
+     *            ignored.
+     * @param replacement
+     *            The annotations to add.
+     */
+    public void replaceAnnotationsInModel(IAnnotationModel model,
+        Collection<Annotation> annotations,
+        Map<Annotation, Position> replacement) {
+
+        ArrayList<Annotation> annotationsToRemove = new ArrayList<Annotation>(
+            annotations.size());
+
+        for (Annotation annotation : annotations) {
+            if (annotation != null) {
+                annotationsToRemove.add(annotation);
+            }
+        }
+
         if (model instanceof IAnnotationModelExtension) {
             IAnnotationModelExtension extension = (IAnnotationModelExtension) model;
             extension.replaceAnnotations(annotationsToRemove
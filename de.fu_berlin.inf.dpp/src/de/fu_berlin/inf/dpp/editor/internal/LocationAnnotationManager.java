@@ -1,8 +1,12 @@
 package de.fu_berlin.inf.dpp.editor.internal;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.apache.log4j.Logger;
 import org.eclipse.jface.preference.IPreferenceStore;
@@ -22,7 +26,6 @@ import org.eclipse.ui.texteditor.IDocumentProvider;
 import org.eclipse.ui.texteditor.ITextEditor;
 
 import de.fu_berlin.inf.dpp.editor.annotations.RemoteCursorAnnotation;
-import de.fu_berlin.inf.dpp.editor.annotations.SarosAnnotation;
 import de.fu_berlin.inf.dpp.editor.annotations.SelectionAnnotation;
 import de.fu_berlin.inf.dpp.editor.annotations.SelectionFillUpAnnotation;
 import de.fu_berlin.inf.dpp.editor.annotations.ViewportAnnotation;
@@ -34,12 +37,29 @@ import de.fu_berlin.inf.dpp.util.Predicate;
 /**
  * This class is responsible for managing annotations related with other users'
  * locations, i.e. their cursors, selections, and viewports.
+ * <p>
+ * The annotations that were added by this class are remembered per annotation
+ * model and user, so they can be replaced without searching the whole
+ * annotation model. All methods must be called from the SWT thread.
  */
 public class LocationAnnotationManager {
 
     private static final Logger LOG = Logger
         .getLogger(LocationAnnotationManager.class);
 
+    /**
+     * The location annotations of one user in one annotation model. The
+     * annotations may have been removed from the model in the meantime.
+     */
+    private static class UserAnnotations {
+        private Annotation selection;
+        private Annotation cursor;
+        private Annotation fillUp;
+        private Annotation viewport;
+    }
+
+    private final Map<IAnnotationModel, Map<User, UserAnnotations>> annotations = new WeakHashMap<IAnnotationModel, Map<User, UserAnnotations>>();
+
     private AnnotationModelHelper annotationModelHelper;
 
     private boolean fillUpEnabled;
@@ -88,6 +108,13 @@ public class LocationAnnotationManager {
                         annotationModelHelper.removeAnnotationsFromEditor(
                             editorPart, predicate);
                     }
+
+                    for (Map<User, UserAnnotations> userAnnotations : annotations
+                        .values()) {
+                        for (UserAnnotations annotation : userAnnotations
+                            .values())
+                            annotation.fillUp = null;
+                    }
                 }
             }
         });
@@ -120,22 +147,9 @@ public class LocationAnnotationManager {
             return;
         }
 
-        // TODO Make use of AnnotationModelHelper.replaceAnnotationsInModel()
-
         int top = lineRange.getStartLine();
         int bottom = top + lineRange.getNumberOfLines();
 
-        // Clean-up. Remove any existing ViewportAnnotations of the given user
-        annotationModelHelper.removeAnnotationsFromModel(model,
-            new Predicate<Annotation>() {
-                @Override
-                public boolean evaluate(Annotation annotation) {
-                    return (annotation instanceof ViewportAnnotation)
-                        && ((SarosAnnotation) annotation).getSource().equals(
-                            user);
-                }
-            });
-
         // Calculate the position of the new ViewportAnnotation and then add it
         // to the model
         try {
@@ -157,12 +171,17 @@ public class LocationAnnotationManager {
             if (lines > 1)
                 va.setMoreThanOneLine(true);
 
-            // TODO Is there a reason *not* to use "va"?
-            SarosAnnotation annotation = va;
-            Position position = new Position(start, end - start);
-            model.addAnnotation(annotation, position);
+            UserAnnotations userAnnotations = getUserAnnotations(model, user);
+
+            annotationModelHelper.replaceAnnotationsInModel(model,
+                Collections.singletonList(userAnnotations.viewport),
+                Collections.singletonMap((Annotation) va, new Position(start,
+                    end - start)));
+
+            userAnnotations.viewport = va;
         } catch (BadLocationException e) {
             LOG.warn("Internal Error:", e);
+            clearViewport(model, user);
         }
     }
 
@@ -174,22 +193,29 @@ public class LocationAnnotationManager {
      * @param editorPart
      */
     public void clearViewportForUser(final User user, IEditorPart editorPart) {
-        IAnnotationModel model = annotationModelHelper
-            .retrieveAnnotationModel(editorPart);
+        ITextViewer viewer = EditorAPI.getViewer(editorPart);
+        if (!(viewer instanceof ISourceViewer)) {
+            return;
+        }
+
+        IAnnotationModel model = ((ISourceViewer) viewer).getAnnotationModel();
 
         if (model == null) {
             return;
         }
 
-        annotationModelHelper.removeAnnotationsFromModel(model,
-            new Predicate<Annotation>() {
-                @Override
-                public boolean evaluate(Annotation annotation) {
-                    return (annotation instanceof ViewportAnnotation)
-                        && ((SarosAnnotation) annotation).getSource().equals(
-                            user);
-                }
-            });
+        clearViewport(model, user);
+    }
+
+    private void clearViewport(IAnnotationModel model, User user) {
+        UserAnnotations userAnnotations = getUserAnnotations(model, user);
+
+        Map<Annotation, Position> replacement = Collections.emptyMap();
+
+        annotationModelHelper.replaceAnnotationsInModel(model,
+            Collections.singletonList(userAnnotations.viewport), replacement);
+
+        userAnnotations.viewport = null;
     }
 
     /**
@@ -230,7 +256,7 @@ public class LocationAnnotationManager {
             return;
 
         if (selection.isEmpty()) {
-            clearSelectionForUser(source, editorPart);
+            clearSelection(model, source);
             return;
         }
 
@@ -238,11 +264,15 @@ public class LocationAnnotationManager {
         int length = selection.getLength();
         boolean isCursor = length == 0;
 
-        // TODO For better performance: Currently, all selection-related
-        // annotations are created and replaced individually. Since the access
-        // to the annotation model tends to be slow and the replacement may take
-        // place in batches, one could first create all new selection-related
-        // annotations and replace them at once.
+        /*
+         * All selection-related annotations are replaced at once as the access
+         * to the annotation model tends to be slow.
+         */
+        Map<Annotation, Position> replacement = new HashMap<Annotation, Position>(
+            4);
+
+        Annotation selectionAnnotation = new SelectionAnnotation(source,
+            isCursor);
 
         if (isCursor) {
             if (offset > 0) {
@@ -250,24 +280,22 @@ public class LocationAnnotationManager {
                  * Highlight the character left of the cursor in the light color
                  * of the user.
                  */
-                setSelectionAnnotation(source, isCursor, new Position(
-                    offset - 1, 1), model);
+                replacement.put(selectionAnnotation,
+                    new Position(offset - 1, 1));
             } else {
                 /*
                  * We have to draw this "highlight" even though it's not visible
                  * at all. This is to prevent ghosting of the highlight when
                  * jumping to the beginning of the file (offset == 0).
                  */
-                setSelectionAnnotation(source, isCursor, new Position(0, 0),
-                    model);
+                replacement.put(selectionAnnotation, new Position(0, 0));
             }
         } else {
             /*
              * Highlight the selection of a remote user in the remote user's
              * light color.
              */
-            setSelectionAnnotation(source, isCursor, new Position(offset,
-                length), model);
+            replacement.put(selectionAnnotation, new Position(offset, length));
         }
 
         /*
@@ -275,11 +303,28 @@ public class LocationAnnotationManager {
          * session. When there is a selection, the cursor will be shown at the
          * end of it.
          */
-        setRemoteCursorAnnotation(source, new Position(offset + length), model);
+        Annotation cursorAnnotation = new RemoteCursorAnnotation(source);
+
+        replacement.put(cursorAnnotation, new Position(offset + length));
+
+        Annotation fillUpAnnotation = null;
 
         if (fillUpEnabled) {
-            setFillUpAnnotation(source, new Position(offset, length), model);
+            fillUpAnnotation = new SelectionFillUpAnnotation(source, offset,
+                length);
+
+            replacement.put(fillUpAnnotation, new Position(offset, length));
         }
+
+        UserAnnotations userAnnotations = getUserAnnotations(model, source);
+
+        annotationModelHelper.replaceAnnotationsInModel(model, Arrays.asList(
+            userAnnotations.selection, userAnnotations.cursor,
+            userAnnotations.fillUp), replacement);
+
+        userAnnotations.selection = selectionAnnotation;
+        userAnnotations.cursor = cursorAnnotation;
+        userAnnotations.fillUp = fillUpAnnotation;
     }
 
     /**
@@ -298,85 +343,65 @@ public class LocationAnnotationManager {
             return;
         }
 
-        annotationModelHelper.removeAnnotationsFromModel(model,
-            new Predicate<Annotation>() {
-                @Override
-                public boolean evaluate(Annotation annotation) {
-                    return (annotation instanceof SelectionAnnotation
-                        || annotation instanceof SelectionFillUpAnnotation || annotation instanceof RemoteCursorAnnotation)
-                        && ((SarosAnnotation) annotation).getSource().equals(
-                            user);
-                }
-            });
+        clearSelection(model, user);
     }
 
-    /**
-     * Helper function to create and add an annotation that highlights the
-     * selected text (see {@link SelectionAnnotation}).
-     */
-    private void setSelectionAnnotation(User user, boolean isCursor,
-        Position position, IAnnotationModel annotationModel) {
+    private void clearSelection(IAnnotationModel model, User user) {
+        UserAnnotations userAnnotations = getUserAnnotations(model, user);
 
-        setAnnotationForSelection(new SelectionAnnotation(user, isCursor),
-            position, annotationModel);
-    }
+        Map<Annotation, Position> replacement = Collections.emptyMap();
 
-    /**
-     * Helper function to create an additional annotation that highlights the
-     * empty space between a line's last character an the right margin (see
-     * {@link SelectionFillUpAnnotation}).
-     */
-    private void setFillUpAnnotation(User user, Position position,
-        IAnnotationModel annotationModel) {
+        annotationModelHelper.replaceAnnotationsInModel(model, Arrays.asList(
+            userAnnotations.selection, userAnnotations.cursor,
+            userAnnotations.fillUp), replacement);
 
-        setAnnotationForSelection(new SelectionFillUpAnnotation(user,
-            position.offset, position.length), position, annotationModel);
+        userAnnotations.selection = null;
+        userAnnotations.cursor = null;
+        userAnnotations.fillUp = null;
     }
 
     /**
-     * Helper function to create an add an annotation that marks the current
-     * text cursor position (see {@link RemoteCursorAnnotation}).
+     * Removes all location annotations of the given user from all annotation
+     * models.
+     * 
+     * @param user
+     *            the user who left the session
      */
-    private void setRemoteCursorAnnotation(User user, Position position,
-        IAnnotationModel annotationModel) {
+    public void removeUser(User user) {
+        Map<Annotation, Position> replacement = Collections.emptyMap();
+
+        for (Entry<IAnnotationModel, Map<User, UserAnnotations>> entry : annotations
+            .entrySet()) {
+
+            UserAnnotations userAnnotations = entry.getValue().remove(user);
 
-        setAnnotationForSelection(new RemoteCursorAnnotation(user), position,
-            annotationModel);
+            if (userAnnotations == null)
+                continue;
+
+            annotationModelHelper.replaceAnnotationsInModel(entry.getKey(),
+                Arrays.asList(userAnnotations.selection,
+                    userAnnotations.cursor, userAnnotations.fillUp,
+                    userAnnotations.viewport), replacement);
+        }
     }
 
-    /**
-     * Sets annotations related to selections made by remote users.
-     * 
-     * @param newAnnotation
-     *            {@link SarosAnnotation} that is set during this call.
-     * @param position
-     *            {@link Position} at which the annotation is replaced, removed,
-     *            or updated.
-     * @param model
-     *            {@link IAnnotationModel} that maintains the annotations for
-     *            the opened document.
-     */
-    private void setAnnotationForSelection(final SarosAnnotation newAnnotation,
-        Position position, IAnnotationModel model) {
+    private UserAnnotations getUserAnnotations(IAnnotationModel model,
+        User user) {
+
+        Map<User, UserAnnotations> userAnnotations = annotations.get(model);
 
-        if (newAnnotation == null || position == null) {
-            throw new IllegalArgumentException(
-                "Both newAnnotation and position must not be null");
+        if (userAnnotations == null) {
+            userAnnotations = new HashMap<User, UserAnnotations>();
+            annotations.put(model, userAnnotations);
         }
 
-        Predicate<Annotation> predicate = new Predicate<Annotation>() {
-            @Override
-            public boolean evaluate(Annotation annotation) {
-                return annotation.getType().equals(newAnnotation.getType())
-                    && ((SarosAnnotation) annotation).getSource().equals(
-                        newAnnotation.getSource());
-            }
-        };
+        UserAnnotations result = userAnnotations.get(user);
 
-        Map<Annotation, Position> replacement = Collections.singletonMap(
-            (Annotation) newAnnotation, position);
+        if (result == null) {
+            result = new UserAnnotations();
+            userAnnotations.put(user, result);
+        }
 
-        annotationModelHelper.replaceAnnotationsInModel(model, predicate,
-            replacement);
+        return result;
     }
 }
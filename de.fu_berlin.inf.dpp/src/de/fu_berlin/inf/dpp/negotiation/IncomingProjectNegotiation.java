@@ -6,9 +6,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 import org.eclipse.core.runtime.CoreException;
@@ -22,9 +28,11 @@ import org.jivesoftware.smackx.filetransfer.IncomingFileTransfer;
 import org.picocontainer.annotations.Inject;
 
 import de.fu_berlin.inf.dpp.ISarosContext;
+import de.fu_berlin.inf.dpp.activities.SPath;
 import de.fu_berlin.inf.dpp.communication.extensions.ProjectNegotiationMissingFilesExtension;
 import de.fu_berlin.inf.dpp.communication.extensions.StartActivityQueuingRequest;
 import de.fu_berlin.inf.dpp.communication.extensions.StartActivityQueuingResponse;
+import de.fu_berlin.inf.dpp.concurrent.watchdog.LazyFileFetcher;
 import de.fu_berlin.inf.dpp.exceptions.LocalCancellationException;
 import de.fu_berlin.inf.dpp.exceptions.SarosCancellationException;
 import de.fu_berlin.inf.dpp.filesystem.FileSystem;
@@ -71,9 +79,22 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
     @Inject
     private IChecksumCache checksumCache;
 
+    @Inject
+    private FileListSnapshotStore fileListSnapshots;
+
     @Inject
     private FileReplacementInProgressObservable fileReplacementInProgressObservable;
 
+    @Inject
+    private LazyFileFetcher lazyFileFetcher;
+
+    /**
+     * projectID => files of a partially shared project that do not exist
+     * locally and are requested after the negotiation, see
+     * {@link Preferences#isLazyPartialSharingEnabled()}
+     */
+    private final Map<String, List<String>> deferredFiles = new ConcurrentHashMap<String, List<String>>();
+
     /*
      * FIXME remove this field, it is used as global access variable throughout
      * multiple methods in this class which is error prone !
@@ -153,8 +174,10 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
 
         fileReplacementInProgressObservable.startReplacement();
 
+        boolean replacementInProgress = true;
+
         ArchiveTransferListener archiveTransferListener = new ArchiveTransferListener(
-            ARCHIVE_TRANSFER_ID + getID());
+            ARCHIVE_TRANSFER_ID + getID() + PATH_DELIMITER);
 
         Exception exception = null;
 
@@ -212,42 +235,33 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
                     .create(new StartActivityQueuingResponse(getSessionID(),
                         getID())));
 
-            checkCancellation(CancelOption.NOTIFY_PEER);
+            fileReplacementInProgressObservable.replacementDone();
+            replacementInProgress = false;
 
-            boolean filesMissing = false;
+            checkCancellation(CancelOption.NOTIFY_PEER);
 
-            for (FileList list : missingFiles)
-                filesMissing |= list.getPaths().size() > 0;
+            final Set<String> projectsToReceive = new HashSet<String>();
 
-            // Host/Inviter decided to transmit files with one big archive
-            if (filesMissing)
-                acceptArchive(archiveTransferListener, monitor);
+            for (FileList list : missingFiles) {
+                if (!list.getPaths().isEmpty())
+                    projectsToReceive.add(list.getProjectID());
+            }
 
             /*
-             * We are finished with the exchanging process. Add all projects
-             * resources to the session.
+             * The projects that are already synchronized can be used right
+             * away. The host sends the files of every other project in its own
+             * archive and each of these projects is added to the session as
+             * soon as its archive is unpacked.
              */
-            for (Entry<String, IProject> entry : localProjectMapping.entrySet()) {
-
-                final String projectID = entry.getKey();
-                final IProject project = entry.getValue();
-
-                List<IResource> resources = null;
-
-                if (isPartialRemoteProject(projectID)) {
-
-                    final List<String> paths = getRemoteFileList(projectID)
-                        .getPaths();
-
-                    resources = new ArrayList<IResource>(paths.size());
+            for (final String projectID : localProjectMapping.keySet()) {
+                if (!projectsToReceive.contains(projectID))
+                    addProjectToSession(projectID);
+            }
 
-                    for (final String path : paths)
-                        resources.add(getResource(project, path));
-                }
+            if (!projectsToReceive.isEmpty())
+                acceptArchives(archiveTransferListener, projectsToReceive,
+                    monitor);
 
-                session.addSharedResources(project, projectID, resources);
-                sessionManager.projectAdded(projectID);
-            }
         } catch (Exception e) {
             exception = e;
         } finally {
@@ -261,7 +275,10 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
                 fileTransferManager
                     .removeFileTransferListener(archiveTransferListener);
 
-            fileReplacementInProgressObservable.replacementDone();
+            archiveTransferListener.cancelTransfers();
+
+            if (replacementInProgress)
+                fileReplacementInProgressObservable.replacementDone();
 
             deleteCollectors();
             monitor.done();
@@ -270,6 +287,54 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
         return terminateProcess(exception);
     }
 
+    /**
+     * Adds the resources of the project with the given ID to the session and
+     * flushes the activities that were queued for it.
+     */
+    private void addProjectToSession(final String projectID) {
+        final IProject project = localProjectMapping.get(projectID);
+
+        List<IResource> resources = null;
+
+        if (isPartialRemoteProject(projectID)) {
+
+            final List<String> paths = getRemoteFileList(projectID).getPaths();
+
+            resources = new ArrayList<IResource>(paths.size());
+
+            for (final String path : paths)
+                resources.add(getResource(project, path));
+        }
+
+        session.addSharedResources(project, projectID, resources);
+        sessionManager.projectAdded(projectID);
+
+        fetchDeferredFiles(project, projectID);
+
+        session.disableQueuing(project);
+    }
+
+    /**
+     * Requests the files of the given project that were not transmitted in
+     * the archive from the host in the background.
+     */
+    private void fetchDeferredFiles(IProject project, String projectID) {
+        final List<String> paths = deferredFiles.remove(projectID);
+
+        if (paths == null)
+            return;
+
+        final List<SPath> files = new ArrayList<SPath>(paths.size());
+
+        for (final String path : paths)
+            files.add(new SPath(getResource(project, path)));
+
+        LOG.debug(this + " : deferred " + files.size()
+            + " file(s) of project " + project);
+
+        lazyFileFetcher.fetch(files);
+    }
+
     public boolean isPartialRemoteProject(String projectID) {
         for (ProjectNegotiationData data : projectNegotiationData) {
             if (data.getProjectID().equals(projectID))
@@ -279,53 +344,72 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
     }
 
     /**
-     * Accepts the archive with all missing files and decompress it.
+     * Accepts the archives of the given projects in the order they arrive.
+     * Every project is decompressed and added to the session as soon as its
+     * archive is received, while the archives of the remaining projects are
+     * still transferred.
+     * 
+     * @param projectIDs
+     *            the IDs of the projects whose archives are expected
      */
-    private void acceptArchive(
+    private void acceptArchives(
         final ArchiveTransferListener archiveTransferListener,
-        final IProgressMonitor monitor) throws IOException,
-        SarosCancellationException {
+        final Set<String> projectIDs, final IProgressMonitor monitor)
+        throws IOException, SarosCancellationException {
 
-        // waiting for the big archive to come in
+        final Set<String> pendingProjectIDs = new HashSet<String>(projectIDs);
 
-        monitor.beginTask(null, 100);
+        monitor.beginTask(null, projectIDs.size() * 100);
 
-        File archiveFile = receiveArchive(archiveTransferListener, getID(),
-            new SubProgressMonitor(monitor, 50));
+        while (!pendingProjectIDs.isEmpty()) {
+            final ArchiveTransfer transfer = awaitArchive(
+                archiveTransferListener, monitor);
 
-        /*
-         * FIXME at this point it makes no sense to report the cancellation to
-         * the remote side, because his negotiation is already finished !
-         */
+            final String projectID = transfer.getProjectID();
 
-        try {
-            unpackArchive(archiveFile, new SubProgressMonitor(monitor, 50));
-            monitor.done();
-        } finally {
-            if (archiveFile != null)
-                archiveFile.delete();
+            try {
+                if (!pendingProjectIDs.remove(projectID))
+                    throw new IOException("received unexpected archive for "
+                        + "project with id " + projectID);
+
+                receiveArchive(transfer, new SubProgressMonitor(monitor, 50));
+
+                /*
+                 * FIXME if this was the last archive it makes no sense to
+                 * report the cancellation to the remote side, because his
+                 * negotiation is already finished !
+                 */
+                unpackArchive(transfer.getArchive(), projectID,
+                    new SubProgressMonitor(monitor, 50));
+            } finally {
+                transfer.getArchive().delete();
+            }
+
+            addProjectToSession(projectID);
         }
+
+        monitor.done();
     }
 
     /**
-     * calculates all the files the host/inviter has to send for synchronization
+     * calculates all the files the host/inviter has to send for synchronization.
+     * The required files of the projects are computed concurrently.
      * 
      * @param projectMapping
      *            projectID => projectName (in local workspace)
      */
     // TODO should be renamed to something like synchronizeProject(s)...
     private List<FileList> calculateMissingFiles(
-        Map<String, IProject> projectMapping, boolean useVersionControl,
+        Map<String, IProject> projectMapping, final boolean useVersionControl,
         IProgressMonitor monitor) throws SarosCancellationException,
         IOException {
 
         monitor.beginTask(null, projectMapping.size() * MONITOR_WORK_SCALE);
 
-        List<FileList> missingFiles = new ArrayList<FileList>();
+        final Map<String, ProjectNegotiationData> projectInfos = new HashMap<String, ProjectNegotiationData>();
 
         /*
-         * this for loop sets up all the projects needed for the session and
-         * computes the missing files.
+         * this for loop sets up all the projects needed for the session
          */
         for (Entry<String, IProject> entry : projectMapping.entrySet()) {
 
@@ -352,20 +436,37 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
                     + " does not exists");
 
             localProjectMapping.put(projectID, project);
+            projectInfos.put(projectID, projectInfo);
+        }
 
-            checkCancellation(CancelOption.NOTIFY_PEER);
-
-            LOG.debug("compute required files for project " + project
-                + " with ID: " + projectID);
-
-            FileList requiredFiles = computeRequiredFiles(project,
-                projectInfo.getFileList(), projectID, new SubProgressMonitor(
-                    monitor, 1 * MONITOR_WORK_SCALE));
+        checkCancellation(CancelOption.NOTIFY_PEER);
 
-            requiredFiles.setProjectID(projectID);
-            checkCancellation(CancelOption.NOTIFY_PEER);
-            missingFiles.add(requiredFiles);
-        }
+        /*
+         * computes the missing files, a large project does not delay the
+         * computation of the other projects
+         */
+        List<FileList> missingFiles = ProjectTaskExecutor.execute(
+            new ArrayList<String>(projectMapping.keySet()),
+            new ProjectTaskExecutor.Task<String, FileList>() {
+                @Override
+                public FileList run(String projectID,
+                    IProgressMonitor projectMonitor) throws IOException,
+                    SarosCancellationException {
+
+                    IProject project = localProjectMapping.get(projectID);
+
+                    LOG.debug("compute required files for project " + project
+                        + " with ID: " + projectID);
+
+                    FileList requiredFiles = computeRequiredFiles(project,
+                        projectInfos.get(projectID).getFileList(), projectID,
+                        useVersionControl, projectMonitor);
+
+                    requiredFiles.setProjectID(projectID);
+                    checkCancellation(CancelOption.NOTIFY_PEER);
+                    return requiredFiles;
+                }
+            }, monitor, 1 * MONITOR_WORK_SCALE);
 
         monitor.done();
 
@@ -594,6 +695,9 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
      * 
      * @param project
      * @param remoteFileList
+     * @param useVersionControl
+     *            <code>true</code> if the VCS state of the project was
+     *            synchronized with the host
      * @param monitor
      * 
      * @return The list of files that we need from the host.
@@ -602,28 +706,70 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
      * @throws IOException
      */
     private FileList computeRequiredFiles(IProject project,
-        FileList remoteFileList, String projectID, IProgressMonitor monitor)
-        throws LocalCancellationException, IOException {
+        FileList remoteFileList, String projectID, boolean useVersionControl,
+        IProgressMonitor monitor) throws LocalCancellationException,
+        IOException {
 
         monitor.beginTask("Compute required Files...", 1 * MONITOR_WORK_SCALE);
 
+        VCSAdapter vcs = null;
+
+        if (useVersionControl && remoteFileList.useVersionControl()
+            && !isPartialRemoteProject(projectID)) {
+            vcs = VCSAdapter
+                .getAdapter((org.eclipse.core.resources.IProject) ResourceAdapterFactory
+                    .convertBack(project));
+        }
+
+        SubProgressMonitor subMonitor = new SubProgressMonitor(monitor,
+            1 * MONITOR_WORK_SCALE, SubProgressMonitor.SUPPRESS_BEGINTASK);
+
+        FileList localFileList;
+
         /*
-         * FIXME VCS data is completely ignored during a diff ! It also makes no
-         * sense any longer. Assume we synchronized VCS state properly but in
-         * the meantime someone switched some file reversions. We will never get
-         * them as we are queuing just before the host starts compressing the
-         * files (and so never "seen" them). We might get the correct binary
-         * file content but the meta data (reversions does NOT match) !
+         * The VCS state was already synchronized, so files that are unmodified
+         * on both sides are provided by the VCS and need not be checksummed.
+         * 
+         * FIXME Assume we synchronized VCS state properly but in the meantime
+         * someone switched some file reversions. We will never get them as we
+         * are queuing just before the host starts compressing the files (and
+         * so never "seen" them). We might get the correct binary file content
+         * but the meta data (reversions does NOT match) !
          */
-        FileList localFileList = FileListFactory.createFileList(project, null,
-            checksumCache, null, new SubProgressMonitor(monitor,
-                1 * MONITOR_WORK_SCALE, SubProgressMonitor.SUPPRESS_BEGINTASK));
+        try {
+            if (vcs != null
+                && vcs.getID().equals(remoteFileList.getVcsProviderID())) {
+                localFileList = FileListFactory.createVCSFileList(project,
+                    checksumCache, fileListSnapshots, vcs, subMonitor);
+            } else {
+                localFileList = FileListFactory.createFileList(project, null,
+                    checksumCache, fileListSnapshots, null, subMonitor);
+            }
+        } catch (de.fu_berlin.inf.dpp.exceptions.OperationCanceledException e) {
+            LocalCancellationException canceled = new LocalCancellationException();
+            canceled.initCause(e);
+            throw canceled;
+        }
 
         FileListDiff filesToSynchronize = computeDiff(localFileList,
             remoteFileList, project, projectID);
 
         List<String> missingFiles = new ArrayList<String>();
-        missingFiles.addAll(filesToSynchronize.getAddedPaths());
+
+        /*
+         * the files of a partially shared project that do not exist locally
+         * are received in the background after the negotiation finished,
+         * altered files are still received now as they could be edited before
+         * their content was replaced
+         */
+        if (preferences.isLazyPartialSharingEnabled()
+            && isPartialRemoteProject(projectID)
+            && !filesToSynchronize.getAddedPaths().isEmpty()) {
+            deferredFiles.put(projectID, filesToSynchronize.getAddedPaths());
+        } else {
+            missingFiles.addAll(filesToSynchronize.getAddedPaths());
+        }
+
         missingFiles.addAll(filesToSynchronize.getAlteredPaths());
 
         /*
@@ -708,14 +854,13 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
         }
     }
 
-    private void unpackArchive(final File archiveFile,
+    private void unpackArchive(final File archiveFile, final String projectID,
         final IProgressMonitor monitor) throws LocalCancellationException,
         IOException {
 
         final Map<String, de.fu_berlin.inf.dpp.filesystem.IProject> projectMapping = new HashMap<String, de.fu_berlin.inf.dpp.filesystem.IProject>();
 
-        for (Entry<String, IProject> entry : localProjectMapping.entrySet())
-            projectMapping.put(entry.getKey(), entry.getValue());
+        projectMapping.put(projectID, localProjectMapping.get(projectID));
 
         final DecompressArchiveTask decompressTask = new DecompressArchiveTask(
             archiveFile, projectMapping, PATH_DELIMITER, monitor);
@@ -732,6 +877,13 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
          * after it finished!
          */
 
+        /*
+         * the replaced files must not be reported as local changes, this
+         * suppresses the local changes of the projects that are already added
+         * to the session for the time of the decompression too
+         */
+        fileReplacementInProgressObservable.startReplacement();
+
         try {
             workspace.run(decompressTask,
                 projectMapping.values().toArray(new IResource[0]));
@@ -740,6 +892,8 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
                 null, CancelOption.DO_NOT_NOTIFY_PEER);
             canceled.initCause(e);
             throw canceled;
+        } finally {
+            fileReplacementInProgressObservable.replacementDone();
         }
 
         LOG.debug(String.format("unpacked archive in %d s",
@@ -911,58 +1065,54 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
         startActivityQueuingRequestCollector.cancel();
     }
 
-    private File receiveArchive(
-        ArchiveTransferListener archiveTransferListener, String transferID,
+    /**
+     * Waits until the host started the transfer of the next archive.
+     */
+    private ArchiveTransfer awaitArchive(
+        ArchiveTransferListener archiveTransferListener,
         IProgressMonitor monitor) throws IOException,
         SarosCancellationException {
 
-        monitor.beginTask("Receiving archive file...", 100);
         LOG.debug("waiting for incoming archive stream request");
 
         monitor
             .subTask("Host is compressing project files. Waiting for the archive file...");
 
         try {
-            while (!archiveTransferListener.hasReceived()) {
+            while (true) {
                 checkCancellation(CancelOption.NOTIFY_PEER);
-                Thread.sleep(200);
+
+                final ArchiveTransfer transfer = archiveTransferListener
+                    .nextTransfer(200);
+
+                if (transfer != null)
+                    return transfer;
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new LocalCancellationException();
         }
+    }
 
-        monitor.subTask("Receiving archive file...");
-
-        LOG.debug(this + " : receiving archive");
-
-        IncomingFileTransfer transfer = archiveTransferListener.getRequest()
-            .accept();
-
-        File archiveFile = File.createTempFile(
-            "saros_archive_" + System.currentTimeMillis(), null);
+    /**
+     * Waits until the given archive is completely received.
+     */
+    private void receiveArchive(ArchiveTransfer transfer,
+        IProgressMonitor monitor) throws IOException,
+        SarosCancellationException {
 
-        boolean transferFailed = true;
+        monitor.beginTask("Receiving archive file...", 100);
 
-        try {
-            transfer.recieveFile(archiveFile);
+        LOG.debug(this + " : receiving archive of project "
+            + transfer.getProjectID());
 
-            monitorFileTransfer(transfer, monitor);
-            transferFailed = false;
-        } catch (XMPPException e) {
-            throw new IOException(e.getMessage(), e.getCause());
-        } finally {
-            if (transferFailed)
-                archiveFile.delete();
-        }
+        monitorFileTransfer(transfer.getTransfer(), monitor);
 
         monitor.done();
 
         LOG.debug(this + " : stored archive in file "
-            + archiveFile.getAbsolutePath() + ", size: "
-            + CoreUtils.formatByte(archiveFile.length()));
-
-        return archiveFile;
+            + transfer.getArchive().getAbsolutePath() + ", size: "
+            + CoreUtils.formatByte(transfer.getArchive().length()));
     }
 
     private void checkProjectMapping(final Map<String, IProject> mapping) {
@@ -978,28 +1128,136 @@ public class IncomingProjectNegotiation extends ProjectNegotiation {
         }
     }
 
+    private static class ArchiveTransfer {
+        private final String projectID;
+        private final IncomingFileTransfer transfer;
+        private final File archive;
+
+        private ArchiveTransfer(String projectID,
+            IncomingFileTransfer transfer, File archive) {
+            this.projectID = projectID;
+            this.transfer = transfer;
+            this.archive = archive;
+        }
+
+        public String getProjectID() {
+            return projectID;
+        }
+
+        public IncomingFileTransfer getTransfer() {
+            return transfer;
+        }
+
+        public File getArchive() {
+            return archive;
+        }
+    }
+
+    /**
+     * Accepts the archives of a negotiation as soon as the host starts their
+     * transfer, so the transfer of an archive does not wait until the previous
+     * archive is decompressed.
+     */
     private static class ArchiveTransferListener implements
         FileTransferListener {
-        private String description;
-        private volatile FileTransferRequest request;
 
-        public ArchiveTransferListener(String description) {
-            this.description = description;
+        private final String prefix;
+
+        private final BlockingQueue<ArchiveTransfer> transfers = new LinkedBlockingQueue<ArchiveTransfer>();
+
+        private final List<ArchiveTransfer> acceptedTransfers = new ArrayList<ArchiveTransfer>();
+
+        private boolean canceled;
+
+        private volatile IOException error;
+
+        /**
+         * @param prefix
+         *            the prefix of the descriptions of the transfers to accept,
+         *            the remaining part of a description is the ID of the
+         *            project whose files are contained in the archive
+         */
+        public ArchiveTransferListener(String prefix) {
+            this.prefix = prefix;
         }
 
         @Override
-        public void fileTransferRequest(FileTransferRequest request) {
-            if (request.getDescription().equals(description)) {
-                this.request = request;
+        public synchronized void fileTransferRequest(
+            FileTransferRequest request) {
+
+            final String description = request.getDescription();
+
+            if (description == null || !description.startsWith(prefix))
+                return;
+
+            if (canceled) {
+                request.reject();
+                return;
             }
+
+            final File archive;
+
+            try {
+                archive = File.createTempFile(
+                    "saros_archive_" + System.currentTimeMillis(), null);
+            } catch (IOException e) {
+                request.reject();
+                error = e;
+                return;
+            }
+
+            final IncomingFileTransfer transfer = request.accept();
+
+            try {
+                transfer.recieveFile(archive);
+            } catch (XMPPException e) {
+                archive.delete();
+                error = new IOException(e.getMessage(), e.getCause());
+                return;
+            }
+
+            final ArchiveTransfer archiveTransfer = new ArchiveTransfer(
+                description.substring(prefix.length()), transfer, archive);
+
+            acceptedTransfers.add(archiveTransfer);
+            transfers.add(archiveTransfer);
         }
 
-        public boolean hasReceived() {
-            return this.request != null;
+        /**
+         * Returns the next accepted transfer, waiting up to the given time if
+         * necessary.
+         * 
+         * @return the next transfer or <code>null</code> if no transfer was
+         *         accepted in the given time
+         * @throws IOException
+         *             if a transfer could not be accepted
+         */
+        public ArchiveTransfer nextTransfer(long timeout) throws IOException,
+            InterruptedException {
+
+            final IOException e = error;
+
+            if (e != null)
+                throw new IOException("failed to receive archive", e);
+
+            return transfers.poll(timeout, TimeUnit.MILLISECONDS);
         }
 
-        public FileTransferRequest getRequest() {
-            return this.request;
+        /**
+         * Cancels all transfers that are still running and deletes their
+         * archives. Transfers that are requested afterwards are rejected.
+         */
+        public synchronized void cancelTransfers() {
+            canceled = true;
+
+            for (final ArchiveTransfer transfer : acceptedTransfers) {
+                if (!transfer.getTransfer().isDone())
+                    transfer.getTransfer().cancel();
+
+                transfer.getArchive().delete();
+            }
+
+            acceptedTransfers.clear();
         }
     }
 
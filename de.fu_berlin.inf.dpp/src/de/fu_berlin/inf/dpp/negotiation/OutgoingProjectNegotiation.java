@@ -3,6 +3,8 @@ package de.fu_berlin.inf.dpp.negotiation;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -30,7 +32,6 @@ import de.fu_berlin.inf.dpp.filesystem.IProject;
 import de.fu_berlin.inf.dpp.filesystem.IResource;
 import de.fu_berlin.inf.dpp.filesystem.IWorkspace;
 import de.fu_berlin.inf.dpp.monitoring.IProgressMonitor;
-import de.fu_berlin.inf.dpp.monitoring.SubProgressMonitor;
 import de.fu_berlin.inf.dpp.negotiation.ProcessTools.CancelOption;
 import de.fu_berlin.inf.dpp.net.PacketCollector;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
@@ -60,6 +61,9 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
     @Inject
     private IChecksumCache checksumCache;
 
+    @Inject
+    private FileListSnapshotStore fileListSnapshots;
+
     private PacketCollector remoteFileListResponseCollector;
 
     private PacketCollector startActivityQueuingResponseCollector;
@@ -81,7 +85,12 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
 
         createCollectors();
 
-        File zipArchive = null;
+        /*
+         * projectID => archive of the files of that project, filled while the
+         * archives are created
+         */
+        final Map<String, File> archives = Collections
+            .synchronizedMap(new HashMap<String, File>());
 
         observeMonitor(monitor);
 
@@ -136,7 +145,7 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
                  */
                 session.userStartedQueuing(user);
 
-                zipArchive = createProjectArchive(fileLists, monitor);
+                createProjectArchives(fileLists, archives, monitor);
                 monitor.subTask("");
             } finally {
                 if (stoppedUsers != null)
@@ -145,9 +154,17 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
 
             checkCancellation(CancelOption.NOTIFY_PEER);
 
-            if (zipArchive != null)
-                sendArchive(zipArchive, peer, ARCHIVE_TRANSFER_ID + getID(),
-                    monitor);
+            /*
+             * every project is sent in its own archive, the smallest first, so
+             * the remote side can already work on the small projects while the
+             * large ones are still transferred
+             */
+            for (final String projectID : sortBySize(archives)) {
+                checkCancellation(CancelOption.NOTIFY_PEER);
+
+                sendArchive(archives.get(projectID), peer, ARCHIVE_TRANSFER_ID
+                    + getID() + PATH_DELIMITER + projectID, monitor);
+            }
 
             User user = session.getUser(peer);
 
@@ -161,9 +178,14 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
             exception = e;
         } finally {
 
-            if (zipArchive != null && !zipArchive.delete())
-                LOG.warn("could not delete archive file: "
-                    + zipArchive.getAbsolutePath());
+            synchronized (archives) {
+                for (final File archive : archives.values()) {
+                    if (!archive.delete())
+                        LOG.warn("could not delete archive file: "
+                            + archive.getAbsolutePath());
+                }
+            }
+
             deleteCollectors();
             monitor.done();
         }
@@ -296,35 +318,27 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
     }
 
     /**
+     * Creates an archive for every project whose file list contains files. The
+     * archives of the projects are created concurrently.
+     * 
      * @param fileLists
      *            a list of file lists containing the files to archive
-     * @return zip file containing all files denoted by the file lists or
-     *         <code>null</code> if the file lists do not contain any files
+     * @param archives
+     *            projectID => archive, the created archives are added to this
+     *            map as soon as they are created so they can be deleted even if
+     *            the creation of another archive fails
      */
-    private File createProjectArchive(final List<FileList> fileLists,
-        final IProgressMonitor monitor) throws IOException,
-        SarosCancellationException {
-
-        boolean skip = true;
-
-        int fileCount = 0;
-
-        for (final FileList list : fileLists) {
-            skip &= list.getPaths().isEmpty();
-            fileCount += list.getPaths().size();
-        }
-
-        if (skip)
-            return null;
-
-        checkCancellation(CancelOption.NOTIFY_PEER);
-
-        final List<IFile> filesToCompress = new ArrayList<IFile>(fileCount);
-        final List<String> fileAlias = new ArrayList<String>(fileCount);
+    private void createProjectArchives(final List<FileList> fileLists,
+        final Map<String, File> archives, final IProgressMonitor monitor)
+        throws IOException, SarosCancellationException {
 
+        final List<FileList> nonEmptyLists = new ArrayList<FileList>();
         final List<IResource> projectsToLock = new ArrayList<IResource>();
 
         for (final FileList list : fileLists) {
+            if (list.getPaths().isEmpty())
+                continue;
+
             final String projectID = list.getProjectID();
 
             final IProject project = session.getProject(projectID);
@@ -334,50 +348,109 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
                     + projectID + " was unshared during synchronization",
                     CancelOption.NOTIFY_PEER);
 
+            nonEmptyLists.add(list);
             projectsToLock.add(project);
+        }
 
-            /*
-             * force editor buffer flush because we read the files from the
-             * underlying storage
-             */
-            if (editorManager != null)
-                editorManager.saveEditors(project);
+        if (nonEmptyLists.isEmpty())
+            return;
+
+        checkCancellation(CancelOption.NOTIFY_PEER);
 
-            final StringBuilder aliasBuilder = new StringBuilder();
+        /*
+         * force editor buffer flush because we read the files from the
+         * underlying storage
+         */
+        if (editorManager != null) {
+            for (final IResource project : projectsToLock)
+                editorManager.saveEditors((IProject) project);
+        }
 
-            aliasBuilder.append(projectID).append(PATH_DELIMITER);
+        LOG.debug(this + " : creating archives");
 
-            final int prefixLength = aliasBuilder.length();
+        monitor.beginTask("Compressing files...", nonEmptyLists.size() * 100);
 
-            for (final String path : list.getPaths()) {
+        ProjectTaskExecutor.execute(nonEmptyLists,
+            new ProjectTaskExecutor.Task<FileList, File>() {
+                @Override
+                public File run(FileList list, IProgressMonitor projectMonitor)
+                    throws IOException, SarosCancellationException {
 
-                // assert path is relative !
-                filesToCompress.add(project.getFile(path));
-                aliasBuilder.append(path);
-                fileAlias.add(aliasBuilder.toString());
-                aliasBuilder.setLength(prefixLength);
-            }
+                    return createProjectArchive(list, archives, projectMonitor);
+                }
+            }, monitor, 100);
+
+        monitor.done();
+    }
+
+    private File createProjectArchive(final FileList list,
+        final Map<String, File> archives, final IProgressMonitor monitor)
+        throws IOException, SarosCancellationException {
+
+        final String projectID = list.getProjectID();
+        final IProject project = session.getProject(projectID);
+
+        final List<IFile> filesToCompress = new ArrayList<IFile>(list
+            .getPaths().size());
+        final List<String> fileAlias = new ArrayList<String>(list.getPaths()
+            .size());
+
+        final StringBuilder aliasBuilder = new StringBuilder();
+
+        aliasBuilder.append(projectID).append(PATH_DELIMITER);
+
+        final int prefixLength = aliasBuilder.length();
+
+        for (final String path : list.getPaths()) {
+
+            // assert path is relative !
+            filesToCompress.add(project.getFile(path));
+            aliasBuilder.append(path);
+            fileAlias.add(aliasBuilder.toString());
+            aliasBuilder.setLength(prefixLength);
         }
 
-        LOG.debug(this + " : creating archive");
+        final File tempArchive = File.createTempFile("saros_" + getID(),
+            ".zip");
 
-        File tempArchive = null;
+        archives.put(projectID, tempArchive);
 
         try {
-            tempArchive = File.createTempFile("saros_" + getID(), ".zip");
             workspace.run(new CreateArchiveTask(tempArchive, filesToCompress,
-                fileAlias, monitor), projectsToLock.toArray(new IResource[0]));
+                fileAlias, monitor), new IResource[] { project });
         } catch (OperationCanceledException e) {
             LocalCancellationException canceled = new LocalCancellationException();
             canceled.initCause(e);
             throw canceled;
         }
 
-        monitor.done();
-
         return tempArchive;
     }
 
+    /**
+     * Returns the IDs of the projects ordered by the size of their archives,
+     * the smallest first.
+     */
+    private static List<String> sortBySize(final Map<String, File> archives) {
+        final List<String> projectIDs;
+
+        synchronized (archives) {
+            projectIDs = new ArrayList<String>(archives.keySet());
+        }
+
+        Collections.sort(projectIDs, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                long sizeA = archives.get(a).length();
+                long sizeB = archives.get(b).length();
+
+                return sizeA < sizeB ? -1 : (sizeA == sizeB ? 0 : 1);
+            }
+        });
+
+        return projectIDs;
+    }
+
     private void createCollectors() {
         remoteFileListResponseCollector = xmppReceiver
             .createCollector(ProjectNegotiationMissingFilesExtension.PROVIDER
@@ -397,7 +470,7 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
         String transferID, IProgressMonitor monitor)
         throws SarosCancellationException, IOException {
 
-        LOG.debug(this + " : sending archive");
+        LOG.debug(this + " : sending archive " + transferID);
         monitor.beginTask("Sending archive file...", 100);
 
         assert fileTransferManager != null;
@@ -418,14 +491,15 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
     }
 
     /**
-     * Method to create list of ProjectExchangeInfo.
+     * Method to create list of ProjectExchangeInfo. The file lists of the
+     * projects are created concurrently.
      * 
      * @param projectsToShare
      *            List of projects to share
      */
     private List<ProjectNegotiationData> createProjectExchangeInfoList(
         final List<IProject> projectsToShare, final IProgressMonitor monitor)
-        throws IOException, LocalCancellationException {
+        throws IOException, SarosCancellationException {
 
         // *stretch* progress bar so it will increment smoothly
         final int scale = 1000;
@@ -435,62 +509,84 @@ public class OutgoingProjectNegotiation extends ProjectNegotiation {
                 "Creating file list and calculating file checksums. This may take a while...",
                 projectsToShare.size() * scale);
 
-        List<ProjectNegotiationData> negData = new ArrayList<ProjectNegotiationData>(
-            projectsToShare.size());
+        if (monitor.isCanceled())
+            throw new LocalCancellationException(null,
+                CancelOption.DO_NOT_NOTIFY_PEER);
 
-        for (IProject project : projectsToShare) {
+        /*
+         * force editor buffer flush because we read the files from the
+         * underlying storage
+         */
+        if (editorManager != null) {
+            for (IProject project : projectsToShare)
+                editorManager.saveEditors(project);
+        }
 
-            if (monitor.isCanceled())
-                throw new LocalCancellationException(null,
-                    CancelOption.DO_NOT_NOTIFY_PEER);
-            try {
+        final List<ProjectNegotiationData> negData;
 
-                VCSProvider vcs = null;
+        try {
+            negData = ProjectTaskExecutor.execute(projectsToShare,
+                new ProjectTaskExecutor.Task<IProject, ProjectNegotiationData>() {
+                    @Override
+                    public ProjectNegotiationData run(IProject project,
+                        IProgressMonitor projectMonitor) throws IOException,
+                        SarosCancellationException {
+                        return createProjectExchangeInfo(project,
+                            projectMonitor);
+                    }
+                }, monitor, scale);
+        } catch (IOException e) {
+            /*
+             * avoid that the error is send to remote side (which is default
+             * for IOExceptions) at this point because the remote side has no
+             * existing project negotiation yet
+             */
+            localCancel(e.getMessage(), CancelOption.DO_NOT_NOTIFY_PEER);
+            // throw to LOG this error in the CancelableProcess class
+            throw new IOException(e.getMessage(), e);
+        }
 
-                if (session.useVersionControl() && vcsProviderFactory != null) {
-                    vcs = vcsProviderFactory.getProvider(project);
-                    // TODO how to handle this if no adapter is available ?
-                    // if(vcs == null)
-                }
+        monitor.done();
 
-                /*
-                 * force editor buffer flush because we read the files from the
-                 * underlying storage
-                 */
-                if (editorManager != null)
-                    editorManager.saveEditors(project);
+        return negData;
+    }
 
-                FileList projectFileList = FileListFactory.createFileList(
-                    project, session.getSharedResources(project),
-                    checksumCache, vcs, new SubProgressMonitor(monitor,
-                        1 * scale, SubProgressMonitor.SUPPRESS_BEGINTASK
-                            | SubProgressMonitor.SUPPRESS_SETTASKNAME));
+    private ProjectNegotiationData createProjectExchangeInfo(
+        final IProject project, final IProgressMonitor monitor)
+        throws IOException, LocalCancellationException {
 
-                boolean partial = !session.isCompletelyShared(project);
+        if (monitor.isCanceled())
+            throw new LocalCancellationException(null,
+                CancelOption.DO_NOT_NOTIFY_PEER);
 
-                String projectID = session.getProjectID(project);
-                projectFileList.setProjectID(projectID);
+        VCSProvider vcs = null;
 
-                ProjectNegotiationData data = new ProjectNegotiationData(
-                    projectID, project.getName(), partial, projectFileList);
+        if (session.useVersionControl() && vcsProviderFactory != null) {
+            vcs = vcsProviderFactory.getProvider(project);
+            // TODO how to handle this if no adapter is available ?
+            // if(vcs == null)
+        }
 
-                negData.add(data);
+        final FileList projectFileList;
 
-            } catch (IOException e) {
-                /*
-                 * avoid that the error is send to remote side (which is default
-                 * for IOExceptions) at this point because the remote side has
-                 * no existing project negotiation yet
-                 */
-                localCancel(e.getMessage(), CancelOption.DO_NOT_NOTIFY_PEER);
-                // throw to LOG this error in the CancelableProcess class
-                throw new IOException(e.getMessage(), e);
-            }
+        try {
+            projectFileList = FileListFactory.createFileList(project,
+                session.getSharedResources(project), checksumCache,
+                fileListSnapshots, vcs, monitor);
+        } catch (OperationCanceledException e) {
+            LocalCancellationException canceled = new LocalCancellationException(
+                null, CancelOption.DO_NOT_NOTIFY_PEER);
+            canceled.initCause(e);
+            throw canceled;
         }
 
-        monitor.done();
+        boolean partial = !session.isCompletelyShared(project);
 
-        return negData;
+        String projectID = session.getProjectID(project);
+        projectFileList.setProjectID(projectID);
+
+        return new ProjectNegotiationData(projectID, project.getName(),
+            partial, projectFileList);
     }
 
     /**
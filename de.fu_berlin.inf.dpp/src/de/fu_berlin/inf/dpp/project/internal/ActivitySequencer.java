@@ -28,27 +28,47 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.PacketListener;
 import org.jivesoftware.smack.packet.Packet;
 import org.jivesoftware.smack.packet.PacketExtension;
 import org.picocontainer.Startable;
+import org.picocontainer.annotations.Nullable;
 
 import de.fu_berlin.inf.dpp.activities.ActivityOptimizer;
+import de.fu_berlin.inf.dpp.activities.FileContentStore;
 import de.fu_berlin.inf.dpp.activities.IActivity;
+import de.fu_berlin.inf.dpp.activities.TextSelectionActivity;
+import de.fu_berlin.inf.dpp.activities.ViewportActivity;
 import de.fu_berlin.inf.dpp.communication.extensions.ActivitiesExtension;
+import de.fu_berlin.inf.dpp.communication.extensions.FileContentExtension;
 import de.fu_berlin.inf.dpp.net.DispatchThreadContext;
+import de.fu_berlin.inf.dpp.net.IConnectionManager;
 import de.fu_berlin.inf.dpp.net.IReceiver;
 import de.fu_berlin.inf.dpp.net.ITransmitter;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
 import de.fu_berlin.inf.dpp.session.ISarosSession;
 import de.fu_berlin.inf.dpp.session.User;
+import de.fu_berlin.inf.dpp.util.NamedThreadFactory;
+import de.fu_berlin.inf.dpp.util.Pair;
 import de.fu_berlin.inf.dpp.util.ThreadUtils;
 
 /**
  * The ActivitySequencer is responsible for making sure that transformed
  * {@linkplain IActivity activities} are sent and received in the right order.
+ * <p>
+ * Large file contents are transferred separately over the
+ * {@linkplain ISarosSession#CONTENT_CONNECTION_ID content connection}, the
+ * activities only reference them. Received activities are not executed before
+ * all referenced contents are available.
+ * <p>
+ * Awareness information, i.e. text selections and viewports, is sent to a user
+ * less frequently if the transmissions to this user are slow. Such activities
+ * are only delayed if they are not accompanied by other activities and the
+ * latest of them is always sent.
  * 
  * @author rdjemili
  * @author coezbek
@@ -68,14 +88,29 @@ public class ActivitySequencer implements Startable {
      */
     private static final int FIRST_SEQUENCE_NUMBER = 0;
 
+    /**
+     * Upper bound in milliseconds for delaying the transmission of awareness
+     * information.
+     */
+    private static final long MAX_AWARENESS_INTERVAL = 1000;
+
+    /**
+     * Additional delay in milliseconds for awareness information per activity
+     * that was queued up while the previous activities were transmitted.
+     */
+    private static final long AWARENESS_INTERVAL_PER_QUEUED_ACTIVITY = 10;
+
     private static class SequencedActivities {
         private final int sequenceNumber;
         private final List<IActivity> activites;
+        private final int queueDepth;
+        private long sendTime;
 
         private SequencedActivities(List<IActivity> activites,
-            int sequenceNumber) {
+            int sequenceNumber, int queueDepth) {
             this.activites = activites;
             this.sequenceNumber = sequenceNumber;
+            this.queueDepth = queueDepth;
         }
     }
 
@@ -88,9 +123,33 @@ public class ActivitySequencer implements Startable {
         private int nextSequenceNumber;
         private final Deque<T> activities = new LinkedList<T>();
 
+        /** smoothed duration of the transmissions to the user */
+        private long averageSendTime;
+
+        /** number of activities that were queued up during the last send */
+        private int queueDepth;
+
+        /** time the last activities were handed to the sender */
+        private long lastSendStart;
+
         private ActivityBuffer(int firstSequenceNumber) {
             nextSequenceNumber = firstSequenceNumber;
         }
+
+        /**
+         * Returns the minimum time between two transmissions that only
+         * contain awareness information. The interval grows with the duration
+         * of the transmissions and the number of queued up activities.
+         */
+        private long getAwarenessInterval() {
+            return Math.min(MAX_AWARENESS_INTERVAL, 2 * averageSendTime
+                + queueDepth * AWARENESS_INTERVAL_PER_QUEUED_ACTIVITY);
+        }
+
+        private void updateStatistics(long sendTime, int queueDepth) {
+            averageSendTime = (3 * averageSendTime + sendTime) / 4;
+            this.queueDepth = queueDepth;
+        }
     }
 
     private final PacketListener activitiesPacketListener = new PacketListener() {
@@ -101,6 +160,14 @@ public class ActivitySequencer implements Startable {
         }
     };
 
+    private final PacketListener contentPacketListener = new PacketListener() {
+
+        @Override
+        public void processPacket(Packet packet) {
+            receiveContent(packet);
+        }
+    };
+
     private final Runnable activitySender = new Runnable() {
 
         @Override
@@ -115,6 +182,9 @@ public class ActivitySequencer implements Startable {
                     if (stopSending)
                         return;
 
+                    long now = System.currentTimeMillis();
+                    long timeout = 0;
+
                     for (Entry<JID, ActivityBuffer<IActivity>> entry : bufferedOutgoingActivities
                         .entrySet()) {
 
@@ -123,23 +193,36 @@ public class ActivitySequencer implements Startable {
                         if (buffer == null || buffer.activities.isEmpty())
                             continue;
 
+                        long delay = buffer.lastSendStart
+                            + buffer.getAwarenessInterval() - now;
+
+                        if (delay > 0 && isAwarenessOnly(buffer.activities)) {
+                            timeout = timeout == 0 ? delay : Math.min(timeout,
+                                delay);
+                            continue;
+                        }
+
+                        int queueDepth = buffer.activities.size();
+
                         List<IActivity> optimizedActivities = ActivityOptimizer
                             .optimize(buffer.activities);
 
                         buffer.activities.clear();
                         buffer.isInTransmission = true;
+                        buffer.lastSendStart = now;
 
                         int currentSequenceNumber = buffer.nextSequenceNumber;
                         buffer.nextSequenceNumber += optimizedActivities.size();
 
                         activitiesToSend.put(entry.getKey(),
                             new SequencedActivities(optimizedActivities,
-                                currentSequenceNumber));
+                                currentSequenceNumber, queueDepth));
                     }
 
                     if (activitiesToSend.isEmpty()) {
                         try {
-                            bufferedOutgoingActivities.wait();
+                            // timeout == 0 waits until new activities arrive
+                            bufferedOutgoingActivities.wait(timeout);
                             continue send;
                         } catch (InterruptedException e) {
                             return;
@@ -149,8 +232,12 @@ public class ActivitySequencer implements Startable {
 
                 for (Entry<JID, SequencedActivities> e : activitiesToSend
                     .entrySet()) {
+                    long start = System.currentTimeMillis();
+
                     sendActivities(e.getKey(), e.getValue().activites,
                         e.getValue().sequenceNumber);
+
+                    e.getValue().sendTime = System.currentTimeMillis() - start;
                 }
 
                 synchronized (bufferedOutgoingActivities) {
@@ -163,6 +250,13 @@ public class ActivitySequencer implements Startable {
                             continue;
 
                         buffer.isInTransmission = false;
+
+                        SequencedActivities sent = activitiesToSend.get(entry
+                            .getKey());
+
+                        if (sent != null)
+                            buffer.updateStatistics(sent.sendTime,
+                                sent.queueDepth);
                     }
 
                     // notify waiting threads in flush method that we are done
@@ -182,6 +276,8 @@ public class ActivitySequencer implements Startable {
 
     private Thread activitySendThread;
 
+    private ExecutorService contentSender;
+
     private final ISarosSession sarosSession;
 
     private final ITransmitter transmitter;
@@ -190,15 +286,21 @@ public class ActivitySequencer implements Startable {
 
     private final DispatchThreadContext dispatchThread;
 
+    private final IConnectionManager connectionManager;
+
+    private final FileContentStore contentStore = new FileContentStore();
+
     private final Map<JID, ActivityBuffer<IActivity>> bufferedIncomingActivities;
 
     private final Map<JID, ActivityBuffer<IActivity>> bufferedOutgoingActivities;
 
     public ActivitySequencer(final ISarosSession sarosSession,
         final ITransmitter transmitter, final IReceiver receiver,
-        final DispatchThreadContext threadContext) {
+        final DispatchThreadContext threadContext,
+        final @Nullable IConnectionManager connectionManager) {
 
         this.dispatchThread = threadContext;
+        this.connectionManager = connectionManager;
         this.sarosSession = sarosSession;
         this.transmitter = transmitter;
         this.receiver = receiver;
@@ -257,6 +359,12 @@ public class ActivitySequencer implements Startable {
         receiver.addPacketListener(activitiesPacketListener,
             ActivitiesExtension.PROVIDER.getPacketFilter(currentSessionID));
 
+        receiver.addPacketListener(contentPacketListener,
+            FileContentExtension.PROVIDER.getPacketFilter(currentSessionID));
+
+        contentSender = Executors.newSingleThreadExecutor(new NamedThreadFactory(
+            "dpp-file-content-sender", false));
+
         activitySendThread = ThreadUtils.runSafeAsync("dpp-activity-sender",
             LOG, activitySender);
     }
@@ -283,6 +391,7 @@ public class ActivitySequencer implements Startable {
         }
 
         receiver.removePacketListener(activitiesPacketListener);
+        receiver.removePacketListener(contentPacketListener);
 
         synchronized (bufferedOutgoingActivities) {
             stopSending = true;
@@ -303,15 +412,22 @@ public class ActivitySequencer implements Startable {
         if (activitySendThread.isAlive())
             LOG.error(activitySendThread.getName() + " thread is still running");
 
+        contentSender.shutdownNow();
+
         synchronized (bufferedOutgoingActivities) {
             bufferedOutgoingActivities.clear();
             bufferedOutgoingActivities.notifyAll();
         }
 
         synchronized (bufferedIncomingActivities) {
+            for (JID jid : bufferedIncomingActivities.keySet())
+                closeContentConnection(jid);
+
             bufferedIncomingActivities.clear();
         }
 
+        contentStore.clear();
+
         activitySendThread = null;
 
         if (isStoppingInterrupted)
@@ -327,6 +443,8 @@ public class ActivitySequencer implements Startable {
 
         boolean transmissionError = false;
 
+        List<IActivity> resolvedActivities = null;
+
         synchronized (bufferedIncomingActivities) {
             ActivityBuffer<IActivity> buffer = bufferedIncomingActivities
                 .get(sender);
@@ -343,6 +461,8 @@ public class ActivitySequencer implements Startable {
                 transmissionError = true;
             } else {
                 buffer.nextSequenceNumber += activities.size();
+                buffer.activities.addAll(activities);
+                resolvedActivities = resolveContents(sender, buffer);
             }
         }
 
@@ -352,7 +472,50 @@ public class ActivitySequencer implements Startable {
             return;
         }
 
-        sarosSession.exec(activities);
+        if (!resolvedActivities.isEmpty())
+            sarosSession.exec(resolvedActivities);
+    }
+
+    /**
+     * Removes the activities from the buffer until an activity is found whose
+     * content was not received yet.
+     * 
+     * @return the removed activities including their contents
+     */
+    private List<IActivity> resolveContents(final JID sender,
+        final ActivityBuffer<IActivity> buffer) {
+
+        List<IActivity> resolvedActivities = new ArrayList<IActivity>();
+
+        while (!buffer.activities.isEmpty()) {
+            IActivity activity = contentStore.resolve(sender,
+                buffer.activities.peek());
+
+            if (activity == null)
+                break;
+
+            buffer.activities.poll();
+            resolvedActivities.add(activity);
+        }
+
+        if (!buffer.activities.isEmpty())
+            LOG.debug("waiting for the content of " + buffer.activities.peek());
+
+        return resolvedActivities;
+    }
+
+    /**
+     * Returns <code>true</code> if the given activities only contain awareness
+     * information which may be delayed.
+     */
+    private static boolean isAwarenessOnly(Iterable<IActivity> activities) {
+        for (IActivity activity : activities) {
+            if (!(activity instanceof TextSelectionActivity)
+                && !(activity instanceof ViewportActivity))
+                return false;
+        }
+
+        return true;
     }
 
     /**
@@ -432,6 +595,7 @@ public class ActivitySequencer implements Startable {
      */
     public void unregisterUser(User user) {
         unregisterUser(user.getJID());
+        closeContentConnection(user.getJID());
     }
 
     /**
@@ -477,6 +641,8 @@ public class ActivitySequencer implements Startable {
         synchronized (bufferedIncomingActivities) {
             bufferedIncomingActivities.put(jid, null);
         }
+
+        contentStore.remove(jid);
     }
 
     private void sendActivities(JID recipient, List<IActivity> activities,
@@ -485,6 +651,13 @@ public class ActivitySequencer implements Startable {
         if (activities.size() == 0)
             return;
 
+        List<Pair<String, byte[]>> contents = new ArrayList<Pair<String, byte[]>>();
+
+        activities = contentStore.toReferences(recipient, activities, contents);
+
+        for (Pair<String, byte[]> content : contents)
+            sendContent(recipient, content.p, content.v);
+
         PacketExtension activityPacketExtension = ActivitiesExtension.PROVIDER
             .create(new ActivitiesExtension(currentSessionID, activities,
                 sequenceNumber));
@@ -508,6 +681,77 @@ public class ActivitySequencer implements Startable {
         }
     }
 
+    private void sendContent(final JID recipient, final String hash,
+        final byte[] content) {
+
+        final PacketExtension contentPacketExtension = FileContentExtension.PROVIDER
+            .create(new FileContentExtension(currentSessionID, hash, content));
+
+        contentSender.execute(ThreadUtils.wrapSafe(LOG, new Runnable() {
+            @Override
+            public void run() {
+                LOG.debug("send content " + hash + " (" + content.length
+                    + " byte(s)) to " + recipient);
+
+                try {
+                    if (connectionManager != null)
+                        connectionManager.connect(
+                            ISarosSession.CONTENT_CONNECTION_ID, recipient);
+
+                    transmitter.send(ISarosSession.CONTENT_CONNECTION_ID,
+                        recipient, contentPacketExtension);
+                } catch (IOException e) {
+                    LOG.error("failed to sent content " + hash + " to "
+                        + recipient, e);
+
+                    unregisterUser(recipient);
+                    notifyTransmissionError(recipient);
+                }
+            }
+        }));
+    }
+
+    private void closeContentConnection(JID jid) {
+        if (connectionManager != null)
+            connectionManager.closeConnection(
+                ISarosSession.CONTENT_CONNECTION_ID, jid);
+    }
+
+    private void receiveContent(Packet contentPacket) {
+        FileContentExtension payload = FileContentExtension.PROVIDER
+            .getPayload(contentPacket);
+
+        if (payload == null) {
+            LOG.warn("content packet payload is corrupted");
+            return;
+        }
+
+        JID from = new JID(contentPacket.getFrom());
+
+        LOG.debug("rcvd content " + payload.getHash() + " from " + from);
+
+        List<IActivity> resolvedActivities;
+
+        synchronized (bufferedIncomingActivities) {
+            ActivityBuffer<IActivity> buffer = bufferedIncomingActivities
+                .get(from);
+
+            if (buffer == null) {
+                LOG.warn("dropping received content from " + from
+                    + " because it is currently not registered");
+                return;
+            }
+
+            contentStore.addContent(from, payload.getHash(),
+                payload.getContent());
+
+            resolvedActivities = resolveContents(from, buffer);
+        }
+
+        if (!resolvedActivities.isEmpty())
+            sarosSession.exec(resolvedActivities);
+    }
+
     private void receiveActivities(Packet activityPacket) {
 
         /* *
@@ -562,6 +806,38 @@ public class ActivitySequencer implements Startable {
         }
     }
 
+    /**
+     * For testing purposes only.
+     * 
+     * @param user
+     * @return the current minimum time between two transmissions to the user
+     *         that only contain awareness information
+     */
+    long getAwarenessInterval(User user) {
+        synchronized (bufferedOutgoingActivities) {
+            ActivityBuffer<IActivity> buffer = bufferedOutgoingActivities
+                .get(user.getJID());
+
+            return buffer == null ? 0 : buffer.getAwarenessInterval();
+        }
+    }
+
+    /**
+     * For testing purposes only.
+     * 
+     * @param user
+     * @return the time the last activities to the user were handed to the
+     *         sender
+     */
+    long getLastSendStart(User user) {
+        synchronized (bufferedOutgoingActivities) {
+            ActivityBuffer<IActivity> buffer = bufferedOutgoingActivities
+                .get(user.getJID());
+
+            return buffer == null ? 0 : buffer.lastSendStart;
+        }
+    }
+
     private void notifyTransmissionError(final JID user) {
         IActivitySequencerCallback currentCallback = callback;
 
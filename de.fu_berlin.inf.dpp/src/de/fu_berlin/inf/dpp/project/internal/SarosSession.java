@@ -1038,6 +1038,14 @@ public final class SarosSession implements ISarosSession {
             localUser, localUser, 0));
     }
 
+    @Override
+    public void disableQueuing(IProject project) {
+        activityQueuer.disableQueuing(project);
+        // send us a dummy activity to ensure the queue gets flushed
+        sendActivity(Collections.singletonList(localUser), new NOPActivity(
+            localUser, localUser, 0));
+    }
+
     private SarosSession(ISarosContext context, JID host, int localColorID,
         int hostColorID, String localNickname, String hostNickname) {
 
@@ -181,6 +181,8 @@ public class Messages extends NLS {
     public static String GeneralPreferencePage_REMOVE_BTN_TEXT;
     public static String GeneralPreferencePage_DISABLE_VERSION_CONTROL_TEXT;
     public static String GeneralPreferencePage_ENCRYPT_PASSWORD_TEXT;
+    public static String GeneralPreferencePage_LAZY_PARTIAL_SHARING_TEXT;
+    public static String GeneralPreferencePage_PERSISTENT_CHAT_HISTORY_TEXT;
     public static String GeneralPreferencePage_FOLLOW_MODE_TEXT;
     public static String GeneralPreferencePage_STARTUP_CONNECT_TEXT;
     public static String GeneralPreferencePage_REMOVE_ACCOUNT_DIALOG_TITLE;
@@ -253,6 +255,8 @@ public class Messages extends NLS {
     public static String NetworkPreferencePage_button_establish_connection;
     public static String NetworkPreferencePage_buttonAllowAlternativeSocks5Port_text;
     public static String NetworkPreferencePage_buttonAllowAlternativeSocks5Port_tooltip;
+    public static String NetworkPreferencePage_buttonEnableLANTransport_text;
+    public static String NetworkPreferencePage_buttonEnableLANTransport_tooltip;
     public static String NetworkPreferencePage_buttonOnlyAllowMediatedSocks5_text;
     public static String NetworkPreferencePage_buttonOnlyAllowMediatedSocks5_tooltip;
     public static String NetworkPreferencePage_connection_established;
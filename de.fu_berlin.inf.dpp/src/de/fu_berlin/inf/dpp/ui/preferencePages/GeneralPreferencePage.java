@@ -73,6 +73,8 @@ public final class GeneralPreferencePage extends FieldEditorPreferencePage
     public static final String FOLLOW_MODE_TEXT = Messages.GeneralPreferencePage_FOLLOW_MODE_TEXT;
     public static final String CONCURRENT_UNDO_TEXT = Messages.GeneralPreferencePage_CONCURRENT_UNDO_TEXT;
     public static final String DISABLE_VERSION_CONTROL_TEXT = Messages.GeneralPreferencePage_DISABLE_VERSION_CONTROL_TEXT;
+    public static final String LAZY_PARTIAL_SHARING_TEXT = Messages.GeneralPreferencePage_LAZY_PARTIAL_SHARING_TEXT;
+    public static final String PERSISTENT_CHAT_HISTORY_TEXT = Messages.GeneralPreferencePage_PERSISTENT_CHAT_HISTORY_TEXT;
 
     // icons
     public static final Image ADD_IMAGE = ImageManager
@@ -113,6 +115,8 @@ public final class GeneralPreferencePage extends FieldEditorPreferencePage
         createAutomaticConnectField(parent);
         createVersionControlPreferences(parent);
         createConcurrentUndoField(parent);
+        createLazyPartialSharingField(parent);
+        createPersistentChatHistoryField(parent);
     }
 
     /*
@@ -341,6 +345,18 @@ public final class GeneralPreferencePage extends FieldEditorPreferencePage
             CONCURRENT_UNDO_TEXT, group));
     }
 
+    private void createLazyPartialSharingField(Composite group) {
+        addField(new BooleanFieldEditor(
+            PreferenceConstants.LAZY_PARTIAL_SHARING,
+            LAZY_PARTIAL_SHARING_TEXT, group));
+    }
+
+    private void createPersistentChatHistoryField(Composite group) {
+        addField(new BooleanFieldEditor(
+            PreferenceConstants.PERSISTENT_CHAT_HISTORY,
+            PERSISTENT_CHAT_HISTORY_TEXT, group));
+    }
+
     @Override
     public void init(IWorkbench workbench) {
         // Nothing to initialize
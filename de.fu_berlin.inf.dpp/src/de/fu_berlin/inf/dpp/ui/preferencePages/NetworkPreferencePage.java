@@ -61,6 +61,7 @@ public final class NetworkPreferencePage extends PreferencePage implements
     private Button buttonOnlyAllowMediatedSocks5;
     private Text localSocks5PortText;
     private Button buttonAllowAlternativeSocks5Port;
+    private Button buttonEnableLANTransport;
 
     private Text stunIPAddressText;
     private Text stunPortText;
@@ -109,6 +110,9 @@ public final class NetworkPreferencePage extends PreferencePage implements
             PreferenceConstants.FORCE_FILETRANSFER_BY_CHAT,
             buttonOnlyAllowIBB.getSelection());
 
+        getPreferenceStore().setValue(PreferenceConstants.ENABLE_LAN_TRANSPORT,
+            buttonEnableLANTransport.getSelection());
+
         getPreferenceStore().setValue(
             PreferenceConstants.LOCAL_SOCKS5_PROXY_DISABLED,
             buttonOnlyAllowMediatedSocks5.getSelection()
@@ -214,6 +218,9 @@ public final class NetworkPreferencePage extends PreferencePage implements
         buttonOnlyAllowMediatedSocks5.setSelection(saros.getPreferenceStore()
             .getBoolean(PreferenceConstants.LOCAL_SOCKS5_PROXY_DISABLED));
 
+        buttonEnableLANTransport.setSelection(saros.getPreferenceStore()
+            .getBoolean(PreferenceConstants.ENABLE_LAN_TRANSPORT));
+
         buttonAllowAlternativeSocks5Port.setSelection(saros
             .getPreferenceStore().getBoolean(
                 PreferenceConstants.USE_NEXT_PORTS_FOR_FILE_TRANSFER));
@@ -254,6 +261,9 @@ public final class NetworkPreferencePage extends PreferencePage implements
             .setSelection(saros.getPreferenceStore().getDefaultBoolean(
                 PreferenceConstants.LOCAL_SOCKS5_PROXY_DISABLED));
 
+        buttonEnableLANTransport.setSelection(saros.getPreferenceStore()
+            .getDefaultBoolean(PreferenceConstants.ENABLE_LAN_TRANSPORT));
+
         buttonAllowAlternativeSocks5Port.setSelection(saros
             .getPreferenceStore().getDefaultBoolean(
                 PreferenceConstants.USE_NEXT_PORTS_FOR_FILE_TRANSFER));
@@ -362,6 +372,12 @@ public final class NetworkPreferencePage extends PreferencePage implements
             }
         });
 
+        buttonEnableLANTransport = new Button(group, SWT.CHECK);
+        buttonEnableLANTransport
+            .setText(Messages.NetworkPreferencePage_buttonEnableLANTransport_text);
+        buttonEnableLANTransport
+            .setToolTipText(Messages.NetworkPreferencePage_buttonEnableLANTransport_tooltip);
+
         buttonOnlyAllowMediatedSocks5 = new Button(group, SWT.CHECK);
         buttonOnlyAllowMediatedSocks5
             .setText(Messages.NetworkPreferencePage_buttonOnlyAllowMediatedSocks5_text);
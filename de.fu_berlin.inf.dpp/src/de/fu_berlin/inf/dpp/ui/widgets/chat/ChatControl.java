@@ -1,7 +1,6 @@
 package de.fu_berlin.inf.dpp.ui.widgets.chat;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -58,6 +57,7 @@ import de.fu_berlin.inf.dpp.ui.widgets.chat.events.CharacterEnteredEvent;
 import de.fu_berlin.inf.dpp.ui.widgets.chat.events.ChatClearedEvent;
 import de.fu_berlin.inf.dpp.ui.widgets.chat.events.IChatControlListener;
 import de.fu_berlin.inf.dpp.ui.widgets.chat.events.IChatDisplayListener;
+import de.fu_berlin.inf.dpp.ui.widgets.chat.events.IChatDisplayScrollListener;
 import de.fu_berlin.inf.dpp.ui.widgets.chat.events.MessageEnteredEvent;
 import de.fu_berlin.inf.dpp.ui.widgets.chat.parts.ChatInput;
 import de.fu_berlin.inf.dpp.ui.widgets.chat.parts.IChatDisplay;
@@ -85,6 +85,11 @@ public final class ChatControl extends Composite {
 
     private static final Logger LOG = Logger.getLogger(ChatControl.class);
 
+    /**
+     * Number of history entries that are read at once.
+     */
+    private static final int HISTORY_PAGE_SIZE = 100;
+
     /*
      * This should be configurable by the user so we do not have to think about
      * the "perfect colors" for color blind people.
@@ -100,6 +105,22 @@ public final class ChatControl extends Composite {
 
     private final Map<JID, Color> colorCache = new HashMap<JID, Color>();
 
+    /**
+     * The JIDs of all entities with a message in the chat display.
+     */
+    private final Set<JID> chatJIDs = new HashSet<JID>();
+
+    /**
+     * Size of the chat history when it was loaded.
+     */
+    private int loadedHistorySize;
+
+    /**
+     * Number of the entries of the loaded history, counting from the most
+     * recent one backwards, that were added to the chat display.
+     */
+    private int displayedHistoryEntries;
+
     private ISarosSession session;
 
     @Inject
@@ -131,12 +152,26 @@ public final class ChatControl extends Composite {
         @Override
         public void chatCleared(ChatClearedEvent event) {
             clearColorCache();
+            chatJIDs.clear();
+            loadedHistorySize = 0;
+            displayedHistoryEntries = 0;
 
             ChatControl.this.chat.clearHistory();
             ChatControl.this.notifyChatCleared(event);
         }
     };
 
+    /**
+     * This {@link IChatDisplayScrollListener} inserts the previous page of the
+     * chat history if the user scrolled to the beginning of the chat display.
+     */
+    private final IChatDisplayScrollListener chatDisplayScrollListener = new IChatDisplayScrollListener() {
+        @Override
+        public void scrolledToTop() {
+            insertPreviousHistoryPage();
+        }
+    };
+
     /**
      * This {@link KeyAdapter} is used to forward events fired in the
      * {@link ChatInput} so the user only has to add listeners on the
@@ -346,6 +381,8 @@ public final class ChatControl extends Composite {
             ((SkypeStyleChatDisplay) chatDisplay).setAlwaysShowScrollBars(true);
 
         chatDisplay.addChatDisplayListener(this.chatDisplayListener);
+        chatDisplay
+            .addChatDisplayScrollListener(this.chatDisplayScrollListener);
 
         // ChatInput
         chatInput = new ChatInput(sashForm, chatInputStyle);
@@ -388,7 +425,16 @@ public final class ChatControl extends Composite {
                 this.session.addListener(projectListener);
         }
 
-        for (ChatElement chatElement : this.chat.getHistory())
+        /*
+         * only the most recent page is displayed, older pages are inserted
+         * when the user scrolls to the beginning of the chat display
+         */
+        loadedHistorySize = chat.getHistorySize();
+        displayedHistoryEntries = Math.min(HISTORY_PAGE_SIZE,
+            loadedHistorySize);
+
+        for (ChatElement chatElement : chat.getHistory(0,
+            displayedHistoryEntries))
             addChatLine(chatElement);
 
         missedMessages = 0;
@@ -420,7 +466,7 @@ public final class ChatControl extends Composite {
 
         clearColorCache();
 
-        for (JID jid : getChatJIDsFromHistory())
+        for (JID jid : chatJIDs)
             chatDisplay.updateEntityColor(jid, getColorForJID(jid));
     }
 
@@ -428,7 +474,7 @@ public final class ChatControl extends Composite {
      * Updates the display names for the current chat contents.
      */
     public void updateDisplayNames() {
-        for (JID jid : getChatJIDsFromHistory())
+        for (JID jid : chatJIDs)
             chatDisplay.updateEntityName(jid, getNickname(jid));
 
         // TODO: this currently scrolls to the bottom
@@ -438,40 +484,103 @@ public final class ChatControl extends Composite {
     }
 
     public void addChatLine(ChatElement element) {
-        /*
-         * FIXME: MUC JIDs are returned with perspective
-         * saros419397963@conference
-         * .saros-con.imp.fu-berlin.de/jenkins_bob_stf@saros
-         * -con.imp.fu-berlin.de/Saros
-         * 
-         * which will become jenkins_bob_stf@saros-con.imp.fu-berlin.de/Saros
-         * after getBareJID() and this is not the BARE JID!
-         */
-        JID jid = element.getSender().getBareJID();
-        Color color = getColorForJID(jid);
-        ChatElementType type = element.getChatElementType();
+        String message = getDisplayMessage(element);
+
+        if (message == null)
+            return;
+
+        JID jid = getDisplayJID(element);
+
+        chatDisplay.addMessage(jid, getNickname(jid), message,
+            element.getDate(), getColorForJID(jid));
+
+        chatJIDs.add(jid);
+    }
+
+    /**
+     * Inserts the given element before the current chat contents.
+     * 
+     * @return <code>true</code> if the element was inserted,
+     *         <code>false</code> if the element is not displayed
+     */
+    private boolean insertChatLine(ChatElement element) {
+        String message = getDisplayMessage(element);
+
+        if (message == null)
+            return false;
 
-        String message = null;
+        JID jid = getDisplayJID(element);
 
-        switch (type) {
+        chatDisplay.insertMessage(jid, getNickname(jid), message,
+            element.getDate(), getColorForJID(jid));
+
+        chatJIDs.add(jid);
+        return true;
+    }
+
+    /**
+     * Inserts the previous page of the chat history before the current chat
+     * contents. Pages without any displayed element are skipped.
+     */
+    private void insertPreviousHistoryPage() {
+        while (displayedHistoryEntries < loadedHistorySize) {
+            int count = Math.min(HISTORY_PAGE_SIZE, loadedHistorySize
+                - displayedHistoryEntries);
+
+            // the offset must also skip the entries added since loading
+            int offset = Math.max(0, chat.getHistorySize() - loadedHistorySize
+                + displayedHistoryEntries);
+
+            List<ChatElement> page = chat.getHistory(offset, count);
+
+            if (page.isEmpty()) {
+                displayedHistoryEntries = loadedHistorySize;
+                return;
+            }
+
+            displayedHistoryEntries += count;
+
+            boolean inserted = false;
+
+            for (int i = page.size() - 1; i >= 0; i--)
+                inserted |= insertChatLine(page.get(i));
+
+            if (inserted)
+                return;
+        }
+    }
+
+    /*
+     * FIXME: MUC JIDs are returned with perspective
+     * saros419397963@conference
+     * .saros-con.imp.fu-berlin.de/jenkins_bob_stf@saros
+     * -con.imp.fu-berlin.de/Saros
+     * 
+     * which will become jenkins_bob_stf@saros-con.imp.fu-berlin.de/Saros after
+     * getBareJID() and this is not the BARE JID!
+     */
+    private static JID getDisplayJID(ChatElement element) {
+        return element.getSender().getBareJID();
+    }
+
+    /**
+     * Returns the text that is displayed for the given element or
+     * <code>null</code> if the element is not displayed.
+     */
+    private static String getDisplayMessage(ChatElement element) {
+        switch (element.getChatElementType()) {
         case MESSAGE:
-            message = element.getMessage().getBody();
-            break;
+            return element.getMessage().getBody();
         case JOIN:
-            message = Messages.ChatRoomsComposite_joined_the_chat;
-            break;
+            return Messages.ChatRoomsComposite_joined_the_chat;
         case LEAVE:
-            message = Messages.ChatRoomsComposite_left_the_chat;
-            break;
+            return Messages.ChatRoomsComposite_left_the_chat;
         case MESSAGERECEPTION:
         case STATECHANGE:
         default:
             // NOP
-            return;
+            return null;
         }
-
-        chatDisplay.addMessage(jid, getNickname(jid), message,
-            element.getDate(), color);
     }
 
     /**
@@ -678,25 +787,6 @@ public final class ChatControl extends Composite {
         return name;
     }
 
-    private Collection<JID> getChatJIDsFromHistory() {
-        /*
-         * FIXME: MUC JIDs are returned with perspective
-         * saros419397963@conference
-         * .saros-con.imp.fu-berlin.de/jenkins_bob_stf@saros
-         * -con.imp.fu-berlin.de/Saros
-         * 
-         * which will become jenkins_bob_stf@saros-con.imp.fu-berlin.de/Saros
-         * after getBareJID() and this is not the BARE JID!
-         */
-
-        Set<JID> jids = new HashSet<JID>();
-
-        for (ChatElement element : chat.getHistory())
-            jids.add(element.getSender().getBareJID());
-
-        return jids;
-    }
-
     private boolean isLocalJID(JID jid) {
         return jid.equals(chat.getJID());
     }
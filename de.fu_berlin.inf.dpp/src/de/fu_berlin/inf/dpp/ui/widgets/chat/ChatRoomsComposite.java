@@ -45,6 +45,7 @@ import de.fu_berlin.inf.dpp.net.xmpp.roster.AbstractRosterListener;
 import de.fu_berlin.inf.dpp.net.xmpp.roster.IRosterListener;
 import de.fu_berlin.inf.dpp.net.xmpp.roster.RosterTracker;
 import de.fu_berlin.inf.dpp.preferences.EclipsePreferenceConstants;
+import de.fu_berlin.inf.dpp.preferences.Preferences;
 import de.fu_berlin.inf.dpp.session.ISarosSession;
 import de.fu_berlin.inf.dpp.session.ISarosSessionListener;
 import de.fu_berlin.inf.dpp.session.ISarosSessionManager;
@@ -126,6 +127,9 @@ public class ChatRoomsComposite extends ListExplanatoryComposite {
     @Inject
     private IPreferenceStore preferenceStore;
 
+    @Inject
+    private Preferences preferences;
+
     private final IPropertyChangeListener propertyChangeListener = new IPropertyChangeListener() {
 
         @Override
@@ -663,11 +667,18 @@ public class ChatRoomsComposite extends ListExplanatoryComposite {
      * @return multi user chat of the session
      */
     private IChat createChat(ISarosSession session) {
-        MultiUserChatPreferences preferences = session.isHost() ? mucNegotiationManager
+        MultiUserChatPreferences chatPreferences = session.isHost() ? mucNegotiationManager
             .getOwnPreferences() : mucNegotiationManager
             .getSessionPreferences();
 
-        return multiUserChatService.createChat(preferences);
+        /*
+         * the room is recreated for every session, so the history is kept per
+         * host
+         */
+        String historyKey = preferences.isChatHistoryPersistent() ? session
+            .getHost().getJID().getBareJID().toString() : null;
+
+        return multiUserChatService.createChat(chatPreferences, historyKey);
     }
 
     /**
@@ -0,0 +1,13 @@
+package de.fu_berlin.inf.dpp.ui.widgets.chat.events;
+
+import java.util.EventListener;
+
+public interface IChatDisplayScrollListener extends EventListener {
+
+    /**
+     * Is called when the user scrolled to the beginning of the current
+     * content of the chat display, e.g to insert older messages.
+     */
+    public void scrolledToTop();
+
+}
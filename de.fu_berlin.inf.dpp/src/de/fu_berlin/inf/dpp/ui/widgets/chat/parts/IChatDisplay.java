@@ -5,6 +5,7 @@ import java.util.Date;
 import org.eclipse.swt.graphics.Color;
 
 import de.fu_berlin.inf.dpp.ui.widgets.chat.events.IChatDisplayListener;
+import de.fu_berlin.inf.dpp.ui.widgets.chat.events.IChatDisplayScrollListener;
 
 /**
  * Interface for adding, removing, and modifying chat content.
@@ -27,6 +28,24 @@ public interface IChatDisplay {
      */
     public void removeChatDisplayListener(IChatDisplayListener listener);
 
+    /**
+     * Adds the given scroll listener to this <code>IChatDisplay</code>.
+     * 
+     * @param listener
+     *            the listener to add
+     */
+    public void addChatDisplayScrollListener(
+        IChatDisplayScrollListener listener);
+
+    /**
+     * Removes the given scroll listener from this <code>IChatDisplay</code>.
+     * 
+     * @param listener
+     *            the listener to removed
+     */
+    public void removeChatDisplayScrollListener(
+        IChatDisplayScrollListener listener);
+
     /**
      * Adds a message to the current content of this <code>IChatDisplay</code>.
      * 
@@ -46,6 +65,28 @@ public interface IChatDisplay {
     public void addMessage(Object entity, String name, String message,
         Date time, Color color);
 
+    /**
+     * Inserts a message before the current content of this
+     * <code>IChatDisplay</code> without changing the visible part of the
+     * content. Messages that are inserted one after another must be inserted
+     * from the newest to the oldest one.
+     * 
+     * @param entity
+     *            a reference to originator of the message
+     * @param name
+     *            the name of the entity
+     * @param message
+     *            the message to insert
+     * @param time
+     *            the time to display belong the message, e.g the time the
+     *            message was received
+     * @param color
+     *            a color hint which should be used to apply additional visual
+     *            appearance to the entity name
+     */
+    public void insertMessage(Object entity, String name, String message,
+        Date time, Color color);
+
     /**
      * Clears the current content of this <code>IChatDisplay</code>.
      */
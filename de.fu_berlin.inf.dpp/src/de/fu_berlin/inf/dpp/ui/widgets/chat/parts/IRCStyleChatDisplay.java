@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.StyleRange;
@@ -19,6 +20,7 @@ import org.eclipse.swt.widgets.Listener;
 
 import de.fu_berlin.inf.dpp.ui.util.SWTUtils;
 import de.fu_berlin.inf.dpp.ui.widgets.chat.events.IChatDisplayListener;
+import de.fu_berlin.inf.dpp.ui.widgets.chat.events.IChatDisplayScrollListener;
 
 /**
  * This composite displays a chat conversation between users.
@@ -30,6 +32,8 @@ public class IRCStyleChatDisplay extends Composite implements IChatDisplay {
 
     private final StyledText display;
 
+    private final List<IChatDisplayScrollListener> chatDisplayScrollListeners = new CopyOnWriteArrayList<IChatDisplayScrollListener>();
+
     private boolean appendLineBreak = false;
 
     private int decorationOffsetStart = 0;
@@ -60,6 +64,14 @@ public class IRCStyleChatDisplay extends Composite implements IChatDisplay {
         });
 
         addHyperLinkListener(display);
+
+        display.getVerticalBar().addListener(SWT.Selection, new Listener() {
+            @Override
+            public void handleEvent(Event event) {
+                if (display.getTopIndex() == 0)
+                    notifyScrolledToTop();
+            }
+        });
     }
 
     @Override
@@ -72,6 +84,18 @@ public class IRCStyleChatDisplay extends Composite implements IChatDisplay {
         // NOP
     }
 
+    @Override
+    public void addChatDisplayScrollListener(
+        final IChatDisplayScrollListener listener) {
+        chatDisplayScrollListeners.add(listener);
+    }
+
+    @Override
+    public void removeChatDisplayScrollListener(
+        final IChatDisplayScrollListener listener) {
+        chatDisplayScrollListeners.remove(listener);
+    }
+
     @Override
     public void addMessage(final Object entity, final String name,
         final String message, final Date time, final Color color) {
@@ -88,6 +112,29 @@ public class IRCStyleChatDisplay extends Composite implements IChatDisplay {
         display.setTopIndex(display.getLineCount() - 1);
     }
 
+    @Override
+    public void insertMessage(final Object entity, final String name,
+        final String message, final Date time, final Color color) {
+
+        if (!appendLineBreak) {
+            addMessage(entity, name, message, time, color);
+            return;
+        }
+
+        final String line = "[" + dateFormatter.format(time) + "] <" + name
+            + "> " + message + "\n";
+
+        final int topIndex = display.getTopIndex();
+        final int lineCount = display.getLineCount();
+
+        display.replaceTextRange(0, 0, line);
+        decorationOffsetStart += line.length();
+        decorateContent(0, line.length());
+
+        // keep the currently visible messages in place
+        display.setTopIndex(topIndex + display.getLineCount() - lineCount);
+    }
+
     @Override
     public void clear() {
         // NOP
@@ -141,8 +188,22 @@ public class IRCStyleChatDisplay extends Composite implements IChatDisplay {
             return;
         }
 
-        final String content = display.getText(decorationOffsetStart,
-            contentLenght - 1);
+        decorateContent(decorationOffsetStart, contentLenght);
+
+        decorationOffsetStart = contentLenght;
+    }
+
+    /**
+     * Decorates the given range of the content of the chat display.
+     * 
+     * @param start
+     *            the offset of the first character to decorate
+     * @param end
+     *            the offset behind the last character to decorate
+     */
+    private void decorateContent(final int start, final int end) {
+
+        final String content = display.getText(start, end - 1);
 
         final List<WordLocation> wordLocations = getWordLocations(content);
 
@@ -168,7 +229,7 @@ public class IRCStyleChatDisplay extends Composite implements IChatDisplay {
         int rangeIdx = 0, styleIdx = 0;
 
         for (final WordLocation wordLocation : wordLocations) {
-            ranges[rangeIdx++] = wordLocation.offset + decorationOffsetStart;
+            ranges[rangeIdx++] = wordLocation.offset + start;
             ranges[rangeIdx++] = wordLocation.length;
 
             StyleRange style = new StyleRange();
@@ -179,12 +240,13 @@ public class IRCStyleChatDisplay extends Composite implements IChatDisplay {
             styles[styleIdx++] = style;
         }
 
-        if (styles.length > 0) {
-            display.setStyleRanges(decorationOffsetStart, contentLenght
-                - decorationOffsetStart, ranges, styles);
-        }
+        if (styles.length > 0)
+            display.setStyleRanges(start, end - start, ranges, styles);
+    }
 
-        decorationOffsetStart = contentLenght;
+    private void notifyScrolledToTop() {
+        for (IChatDisplayScrollListener listener : chatDisplayScrollListeners)
+            listener.scrolledToTop();
     }
 
     // TODO duplicate code, see ChatLine class
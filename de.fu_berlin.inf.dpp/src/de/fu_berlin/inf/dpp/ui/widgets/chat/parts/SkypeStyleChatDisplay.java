@@ -22,6 +22,7 @@ import de.fu_berlin.inf.dpp.ui.Messages;
 import de.fu_berlin.inf.dpp.ui.widgets.SimpleRoundedComposite;
 import de.fu_berlin.inf.dpp.ui.widgets.chat.events.ChatClearedEvent;
 import de.fu_berlin.inf.dpp.ui.widgets.chat.events.IChatDisplayListener;
+import de.fu_berlin.inf.dpp.ui.widgets.chat.events.IChatDisplayScrollListener;
 import de.fu_berlin.inf.dpp.ui.widgets.chat.items.ChatLine;
 import de.fu_berlin.inf.dpp.ui.widgets.chat.items.ChatLinePartnerChangeSeparator;
 import de.fu_berlin.inf.dpp.ui.widgets.chat.items.ChatLineSeparator;
@@ -36,11 +37,16 @@ public final class SkypeStyleChatDisplay extends ScrolledComposite implements
 
     private final List<IChatDisplayListener> chatDisplayListeners = new CopyOnWriteArrayList<IChatDisplayListener>();
 
+    private final List<IChatDisplayScrollListener> chatDisplayScrollListeners = new CopyOnWriteArrayList<IChatDisplayScrollListener>();
+
     private Composite contentComposite;
     private Composite optionsComposite;
 
     private Object lastEntity;
 
+    private Object firstEntity;
+    private Date firstTime;
+
     public SkypeStyleChatDisplay(Composite parent, int style,
         Color backgroundColor) {
         super(parent, style);
@@ -79,6 +85,14 @@ public final class SkypeStyleChatDisplay extends ScrolledComposite implements
                 refresh();
             }
         });
+
+        getVerticalBar().addListener(SWT.Selection, new Listener() {
+            @Override
+            public void handleEvent(Event event) {
+                if (getVerticalBar().getSelection() == 0)
+                    notifyScrolledToTop();
+            }
+        });
     }
 
     /**
@@ -141,11 +155,7 @@ public final class SkypeStyleChatDisplay extends ScrolledComposite implements
         /*
          * Message line
          */
-        ChatLine chatLine = new ChatLine(contentComposite, message);
-        GridData chatLineGridData = new GridData(SWT.FILL, SWT.BEGINNING, true,
-            false);
-        chatLineGridData.horizontalIndent = SimpleRoundedComposite.MARGIN_WIDTH;
-        chatLine.setLayoutData(chatLineGridData);
+        createChatLine(message);
 
         /*
          * Reposition the clear option to the end
@@ -155,6 +165,72 @@ public final class SkypeStyleChatDisplay extends ScrolledComposite implements
         refresh();
 
         lastEntity = entity;
+
+        if (firstEntity == null) {
+            firstEntity = entity;
+            firstTime = time;
+        }
+    }
+
+    @Override
+    public void insertMessage(Object entity, String name, String message,
+        Date time, Color color) {
+
+        Control[] children = contentComposite.getChildren();
+
+        if (firstEntity == null || children.length == 0) {
+            addMessage(entity, name, message, time, color);
+            return;
+        }
+
+        Control first = children[0];
+
+        /*
+         * The first message is now a message of the same user
+         */
+        if (firstEntity.equals(entity)
+            && first instanceof ChatLinePartnerChangeSeparator) {
+            ChatLineSeparator chatLineSeparator = new ChatLineSeparator(
+                contentComposite,
+                ((ChatLinePartnerChangeSeparator) first).getUsername(),
+                first.getBackground(), firstTime);
+            chatLineSeparator.setLayoutData(new GridData(SWT.FILL,
+                SWT.BEGINNING, true, false));
+            chatLineSeparator.setData(entity);
+            chatLineSeparator.moveAbove(first);
+            first.dispose();
+            first = chatLineSeparator;
+        }
+
+        ChatLinePartnerChangeSeparator chatPartnerChangeLine = new ChatLinePartnerChangeSeparator(
+            contentComposite, name, color, time);
+        chatPartnerChangeLine.setLayoutData(new GridData(SWT.FILL,
+            SWT.BEGINNING, true, false));
+        chatPartnerChangeLine.setData(entity);
+        chatPartnerChangeLine.moveAbove(first);
+
+        createChatLine(message).moveAbove(first);
+
+        firstEntity = entity;
+        firstTime = time;
+
+        /*
+         * Keep the currently visible messages in place
+         */
+        int oldHeight = getMinHeight();
+        Point origin = getOrigin();
+        Point neededSize = layoutContent();
+
+        setOrigin(origin.x, origin.y + neededSize.y - oldHeight);
+    }
+
+    private ChatLine createChatLine(String message) {
+        ChatLine chatLine = new ChatLine(contentComposite, message);
+        GridData chatLineGridData = new GridData(SWT.FILL, SWT.BEGINNING, true,
+            false);
+        chatLineGridData.horizontalIndent = SimpleRoundedComposite.MARGIN_WIDTH;
+        chatLine.setLayoutData(chatLineGridData);
+        return chatLine;
     }
 
     @Override
@@ -206,6 +282,15 @@ public final class SkypeStyleChatDisplay extends ScrolledComposite implements
      * scrolls to the bottom.
      */
     public void refresh() {
+        setOrigin(0, layoutContent().y);
+    }
+
+    /**
+     * Layouts the current contents and updates the scroll bar minimum size.
+     * 
+     * @return the size needed to display the current contents
+     */
+    private Point layoutContent() {
         /*
          * Layout makes the added controls visible
          */
@@ -221,7 +306,7 @@ public final class SkypeStyleChatDisplay extends ScrolledComposite implements
             SWT.DEFAULT);
 
         setMinSize(neededSize);
-        setOrigin(0, neededSize.y);
+        return neededSize;
     }
 
     @Override
@@ -232,6 +317,8 @@ public final class SkypeStyleChatDisplay extends ScrolledComposite implements
 
         refresh();
         lastEntity = null;
+        firstEntity = null;
+        firstTime = null;
 
         notifyChatCleared();
     }
@@ -246,6 +333,28 @@ public final class SkypeStyleChatDisplay extends ScrolledComposite implements
         chatDisplayListeners.remove(listener);
     }
 
+    @Override
+    public void addChatDisplayScrollListener(
+        final IChatDisplayScrollListener listener) {
+        chatDisplayScrollListeners.add(listener);
+    }
+
+    @Override
+    public void removeChatDisplayScrollListener(
+        final IChatDisplayScrollListener listener) {
+        chatDisplayScrollListeners.remove(listener);
+    }
+
+    /**
+     * Notify all {@link IChatDisplayScrollListener}s that the beginning of the
+     * chat is visible
+     */
+    private void notifyScrolledToTop() {
+        for (IChatDisplayScrollListener listener : chatDisplayScrollListeners) {
+            listener.scrolledToTop();
+        }
+    }
+
     /**
      * Notify all {@link IChatDisplayListener}s about a cleared chat
      */
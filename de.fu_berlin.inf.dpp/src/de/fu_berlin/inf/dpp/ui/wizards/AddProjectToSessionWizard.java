@@ -50,6 +50,7 @@ import de.fu_berlin.inf.dpp.negotiation.CancelListener;
 import de.fu_berlin.inf.dpp.negotiation.FileList;
 import de.fu_berlin.inf.dpp.negotiation.FileListDiff;
 import de.fu_berlin.inf.dpp.negotiation.FileListFactory;
+import de.fu_berlin.inf.dpp.negotiation.FileListSnapshotStore;
 import de.fu_berlin.inf.dpp.negotiation.IncomingProjectNegotiation;
 import de.fu_berlin.inf.dpp.negotiation.ProcessTools;
 import de.fu_berlin.inf.dpp.negotiation.ProcessTools.CancelLocation;
@@ -87,6 +88,9 @@ public class AddProjectToSessionWizard extends Wizard {
     @Inject
     private IChecksumCache checksumCache;
 
+    @Inject
+    private FileListSnapshotStore fileListSnapshots;
+
     @Inject
     private IConnectionManager connectionManager;
 
@@ -588,7 +592,8 @@ public class AddProjectToSessionWizard extends Wizard {
 
             try {
                 localFileList = FileListFactory.createFileList(adaptedProject,
-                    null, checksumCache, vcs, ProgressMonitorAdapterFactory
+                    null, checksumCache, fileListSnapshots, vcs,
+                    ProgressMonitorAdapterFactory
                         .convertTo(subMonitor.newChild(1,
                             SubMonitor.SUPPRESS_ALL_LABELS)));
             } catch (IOException e) {
@@ -600,6 +605,10 @@ public class AddProjectToSessionWizard extends Wizard {
                 throw new CoreException(new org.eclipse.core.runtime.Status(
                     IStatus.ERROR, Saros.PLUGIN_ID,
                     "failed to compute local file list", e));
+            } catch (de.fu_berlin.inf.dpp.exceptions.OperationCanceledException e) {
+                throw new CoreException(new org.eclipse.core.runtime.Status(
+                    IStatus.CANCEL, Saros.PLUGIN_ID,
+                    "computation of the local file list was canceled", e));
             }
 
             final FileListDiff diff = FileListDiff.diff(localFileList,
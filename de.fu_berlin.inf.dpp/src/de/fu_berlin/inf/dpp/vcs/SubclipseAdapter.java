@@ -29,6 +29,7 @@ import org.tigris.subversion.subclipse.core.resources.LocalResourceStatus;
 import org.tigris.subversion.subclipse.core.resources.RemoteFolder;
 import org.tigris.subversion.subclipse.core.resources.SVNWorkspaceRoot;
 import org.tigris.subversion.subclipse.ui.operations.CheckoutAsProjectOperation;
+import org.tigris.subversion.svnclientadapter.ISVNProperty;
 import org.tigris.subversion.svnclientadapter.SVNRevision;
 import org.tigris.subversion.svnclientadapter.SVNUrl;
 
@@ -289,6 +290,37 @@ class SubclipseAdapter extends VCSAdapter {
             getCurrentRevisionString(resource));
     }
 
+    @Override
+    public boolean isModified(IResource resource) {
+        if (!isManaged(resource))
+            return true;
+
+        ISVNLocalResource svnResource = SVNWorkspaceRoot
+            .getSVNResourceFor(resource);
+        try {
+            return svnResource.isDirty();
+        } catch (SVNException e) {
+            log.error("Error retrieving status of " + resource, e);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isContentTranslated(IResource resource) {
+        if (!isManaged(resource))
+            return true;
+
+        ISVNLocalResource svnResource = SVNWorkspaceRoot
+            .getSVNResourceFor(resource);
+        try {
+            return svnResource.getSvnProperty(ISVNProperty.EOL_STYLE) != null
+                || svnResource.getSvnProperty(ISVNProperty.KEYWORDS) != null;
+        } catch (SVNException e) {
+            log.error("Error retrieving properties of " + resource, e);
+        }
+        return true;
+    }
+
     @Override
     public void switch_(IResource resource, String url, String revisionString,
         IProgressMonitor monitor) {
@@ -477,4 +509,16 @@ class SubclipseAdapter extends VCSAdapter {
     public String getUrl(de.fu_berlin.inf.dpp.filesystem.IResource resource) {
         return getUrl(ResourceAdapterFactory.convertBack(resource));
     }
+
+    @Override
+    public boolean isModified(
+        de.fu_berlin.inf.dpp.filesystem.IResource resource) {
+        return isModified(ResourceAdapterFactory.convertBack(resource));
+    }
+
+    @Override
+    public boolean isContentTranslated(
+        de.fu_berlin.inf.dpp.filesystem.IResource resource) {
+        return isContentTranslated(ResourceAdapterFactory.convertBack(resource));
+    }
 }
@@ -155,6 +155,25 @@ public abstract class VCSAdapter implements VCSProvider {
      */
     public abstract VCSResourceInfo getCurrentResourceInfo(IResource resource);
 
+    /**
+     * Returns true if the content of the file differs from its revision in the
+     * repository or if the file is not managed.
+     * 
+     * @param resource
+     * @return
+     */
+    public abstract boolean isModified(IResource resource);
+
+    /**
+     * Returns true if the content of the file in the working copy may differ
+     * from its content in the repository although it is not modified, or if
+     * the file is not managed.
+     * 
+     * @param resource
+     * @return
+     */
+    public abstract boolean isContentTranslated(IResource resource);
+
     /**
      * Connects the project to the directory in the repository.
      * 
@@ -126,6 +126,49 @@ public class ActivityQueuerTest {
         assertListsAreEqual(activities, processedActivities);
     }
 
+    @Test
+    public void testQueuingDisabledForSingleProject() {
+        IActivity sharedActivity = createJupiterActivity(FOO_PATH_SHARED_PROJECT);
+        IActivity notSharedActivity = createJupiterActivity(PATH_TO_NOT_SHARED_PROJECT);
+
+        activityQueuer.enableQueuing(SHARED_PROJECT);
+        activityQueuer.enableQueuing(NOT_SHARED_PROJECT);
+
+        List<IActivity> processedActivities = activityQueuer.process(Arrays
+            .asList(sharedActivity, notSharedActivity));
+
+        assertTrue("activities were not queued", processedActivities.isEmpty());
+
+        IActivity nopActivity = new NOPActivity(ALICE, ALICE, 0);
+
+        activityQueuer.disableQueuing(SHARED_PROJECT);
+
+        processedActivities = activityQueuer.process(Collections
+            .singletonList(nopActivity));
+
+        List<IActivity> expectedActivities = new ArrayList<IActivity>();
+        expectedActivities.add(new EditorActivity(BOB,
+            EditorActivity.Type.ACTIVATED, FOO_PATH_SHARED_PROJECT));
+        expectedActivities.add(sharedActivity);
+        expectedActivities.add(nopActivity);
+
+        assertListsAreEqual(expectedActivities, processedActivities);
+
+        // the other project is still queued
+        processedActivities = activityQueuer.process(Collections
+            .singletonList(notSharedActivity));
+
+        assertTrue("activity was not queued", processedActivities.isEmpty());
+
+        activityQueuer.disableQueuing();
+
+        processedActivities = activityQueuer.process(Collections
+            .<IActivity> emptyList());
+
+        assertEquals("queued activities were not flushed", 3,
+            processedActivities.size());
+    }
+
     @Test
     public void testQueuingEnabledWithActivityWithoutPath() {
         activityQueuer.enableQueuing(NOT_SHARED_PROJECT);
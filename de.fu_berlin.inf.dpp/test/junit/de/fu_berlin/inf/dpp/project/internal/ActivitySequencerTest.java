@@ -2,24 +2,35 @@ package de.fu_berlin.inf.dpp.project.internal;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.easymock.EasyMock;
+import org.jivesoftware.smack.packet.Packet;
 import org.jivesoftware.smack.packet.PacketExtension;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import de.fu_berlin.inf.dpp.activities.FileActivity;
+import de.fu_berlin.inf.dpp.activities.FileActivity.Purpose;
+import de.fu_berlin.inf.dpp.activities.FileContentStore;
 import de.fu_berlin.inf.dpp.activities.IActivity;
 import de.fu_berlin.inf.dpp.activities.NOPActivity;
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.activities.TextSelectionActivity;
+import de.fu_berlin.inf.dpp.communication.extensions.ActivitiesExtension;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
 import de.fu_berlin.inf.dpp.net.IReceiver;
 import de.fu_berlin.inf.dpp.net.ITransmitter;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
@@ -143,7 +154,7 @@ public class ActivitySequencerTest {
     @Test(timeout = 30000)
     public void testStartAndStop() {
         ActivitySequencer sequencer = new ActivitySequencer(sessionStubAlice,
-            aliceTransmitter, aliceReceiver, null);
+            aliceTransmitter, aliceReceiver, null, null);
 
         sequencer.start();
         sequencer.stop();
@@ -152,7 +163,7 @@ public class ActivitySequencerTest {
     @Test(timeout = 30000, expected = IllegalStateException.class)
     public void testMultipleStarts() {
         ActivitySequencer sequencer = new ActivitySequencer(sessionStubAlice,
-            aliceTransmitter, aliceReceiver, null);
+            aliceTransmitter, aliceReceiver, null, null);
 
         for (int i = 0; i < Integer.MAX_VALUE; i++)
             sequencer.start();
@@ -161,7 +172,7 @@ public class ActivitySequencerTest {
     @Test(timeout = 30000, expected = IllegalStateException.class)
     public void testStopWithoutStart() {
         ActivitySequencer sequencer = new ActivitySequencer(sessionStubAlice,
-            aliceTransmitter, aliceReceiver, null);
+            aliceTransmitter, aliceReceiver, null, null);
 
         sequencer.stop();
     }
@@ -169,7 +180,7 @@ public class ActivitySequencerTest {
     @Test(timeout = 30000)
     public void testMultipleStops() {
         ActivitySequencer sequencer = new ActivitySequencer(sessionStubAlice,
-            aliceTransmitter, aliceReceiver, null);
+            aliceTransmitter, aliceReceiver, null, null);
 
         sequencer.start();
         try {
@@ -200,7 +211,7 @@ public class ActivitySequencerTest {
         EasyMock.replay(brokenTransmitter);
 
         aliceSequencer = new ActivitySequencer(sessionStubAlice,
-            brokenTransmitter, aliceReceiver, null);
+            brokenTransmitter, aliceReceiver, null, null);
 
         aliceSequencer.start();
 
@@ -227,10 +238,10 @@ public class ActivitySequencerTest {
         int activityCount = 1000;
 
         aliceSequencer = new ActivitySequencer(sessionStubAlice,
-            aliceTransmitter, aliceReceiver, null);
+            aliceTransmitter, aliceReceiver, null, null);
 
         bobSequencer = new ActivitySequencer(sessionStubBob, bobTransmitter,
-            bobReceiver, null);
+            bobReceiver, null, null);
 
         aliceSequencer.start();
         bobSequencer.start();
@@ -268,10 +279,10 @@ public class ActivitySequencerTest {
     public void testSendWithoutRegisteredUser() {
 
         aliceSequencer = new ActivitySequencer(sessionStubAlice,
-            aliceTransmitter, aliceReceiver, null);
+            aliceTransmitter, aliceReceiver, null, null);
 
         bobSequencer = new ActivitySequencer(sessionStubBob, bobTransmitter,
-            bobReceiver, null);
+            bobReceiver, null, null);
 
         aliceSequencer.start();
         bobSequencer.start();
@@ -303,10 +314,10 @@ public class ActivitySequencerTest {
     public void testReceiveWithoutRegisteredUser() {
 
         aliceSequencer = new ActivitySequencer(sessionStubAlice,
-            aliceTransmitter, aliceReceiver, null);
+            aliceTransmitter, aliceReceiver, null, null);
 
         bobSequencer = new ActivitySequencer(sessionStubBob, bobTransmitter,
-            bobReceiver, null);
+            bobReceiver, null, null);
 
         aliceSequencer.start();
         bobSequencer.start();
@@ -338,11 +349,11 @@ public class ActivitySequencerTest {
     public void testSendAndReceiveWithDifferendSessionIDs() {
 
         aliceSequencer = new ActivitySequencer(sessionStubAlice,
-            aliceTransmitter, aliceReceiver, null);
+            aliceTransmitter, aliceReceiver, null, null);
 
         sessionStubBob.setID("4711");
         bobSequencer = new ActivitySequencer(sessionStubBob, bobTransmitter,
-            bobReceiver, null);
+            bobReceiver, null, null);
 
         aliceSequencer.start();
         bobSequencer.start();
@@ -370,4 +381,246 @@ public class ActivitySequencerTest {
             "received activies although the session id is different on local and remote side",
             0, receivedActivities.size());
     }
+
+    @Test(timeout = 30000)
+    public void testSendAndReceiveFileContent() throws InterruptedException {
+
+        aliceSequencer = new ActivitySequencer(sessionStubAlice,
+            aliceTransmitter, aliceReceiver, null, null);
+
+        bobSequencer = new ActivitySequencer(sessionStubBob, bobTransmitter,
+            bobReceiver, null, null);
+
+        aliceSequencer.start();
+        bobSequencer.start();
+
+        User bobUserInAliceSession = new User(BOB_JID, null, false, false, 0, 0);
+        User aliceUserInBobSession = new User(ALICE_JID, null, true, false, 0,
+            0);
+
+        sessionStubAlice.addUser(bobUserInAliceSession);
+        sessionStubBob.addUser(aliceUserInBobSession);
+
+        aliceSequencer.registerUser(bobUserInAliceSession);
+        bobSequencer.registerUser(aliceUserInBobSession);
+
+        IProject project = EasyMock.createNiceMock(IProject.class);
+        IPath path = EasyMock.createNiceMock(IPath.class);
+        EasyMock.replay(project, path);
+
+        byte[] content = new byte[FileContentStore.MIN_CONTENT_SIZE * 2];
+        Arrays.fill(content, (byte) 'x');
+
+        FileActivity fileActivity = FileActivity.created(aliceUser, new SPath(
+            project, path), content, "UTF-8", Purpose.ACTIVITY);
+
+        List<IActivity> activities = new ArrayList<IActivity>();
+
+        activities.add(new NOPActivity(aliceUser, bobUserInAliceSession, 0));
+        activities.add(fileActivity);
+        activities.add(fileActivity);
+        activities.add(new NOPActivity(aliceUser, bobUserInAliceSession, 1));
+
+        for (IActivity activity : activities)
+            aliceSequencer.sendActivity(
+                Collections.singletonList(bobUserInAliceSession), activity);
+
+        aliceSequencer.flush(bobUserInAliceSession);
+
+        // the content is sent asynchronously
+        while (sessionStubBob.getReceivedActivities().size() < activities
+            .size())
+            Thread.sleep(10);
+
+        List<IActivity> receivedActivities = sessionStubBob
+            .getReceivedActivities();
+
+        assertEquals(activities, receivedActivities);
+        assertNull(((FileActivity) receivedActivities.get(1)).getContentHash());
+    }
+
+    /** A transmission of activities as seen by the transmitter. */
+    private static class Transmission {
+        private final long start;
+        private final long awarenessInterval;
+        private final List<IActivity> activities;
+
+        private Transmission(long start, long awarenessInterval,
+            List<IActivity> activities) {
+            this.start = start;
+            this.awarenessInterval = awarenessInterval;
+            this.activities = activities;
+        }
+
+        private boolean isAwarenessOnly() {
+            for (IActivity activity : activities)
+                if (!(activity instanceof TextSelectionActivity))
+                    return false;
+
+            return true;
+        }
+
+        private boolean contains(Class<? extends IActivity> clazz) {
+            for (IActivity activity : activities)
+                if (clazz.isInstance(activity))
+                    return true;
+
+            return false;
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testAwarenessIsThrottledForSlowUser() throws Exception {
+
+        final long sendDelay = 100;
+
+        final User bobUserInAliceSession = new User(BOB_JID, null, false,
+            false, 0, 0);
+
+        final List<Transmission> transmissions = Collections
+            .synchronizedList(new ArrayList<Transmission>());
+
+        ITransmitter slowTransmitter = new ITransmitter() {
+
+            @Override
+            public void sendPacket(Packet packet) throws IOException {
+                aliceTransmitter.sendPacket(packet);
+            }
+
+            @Override
+            public void sendPacketExtension(JID jid, PacketExtension extension) {
+                aliceTransmitter.sendPacketExtension(jid, extension);
+            }
+
+            @Override
+            public void send(JID recipient, PacketExtension extension)
+                throws IOException {
+                send(null, recipient, extension);
+            }
+
+            @Override
+            public void send(String connectionID, JID recipient,
+                PacketExtension extension) throws IOException {
+
+                ActivitiesExtension payload = ActivitiesExtension.PROVIDER
+                    .getPayload(extension);
+
+                /*
+                 * the statistics are only updated after this call returns, so
+                 * this is the interval the sequencer used for this transmission
+                 */
+                if (payload != null)
+                    transmissions.add(new Transmission(aliceSequencer
+                        .getLastSendStart(bobUserInAliceSession),
+                        aliceSequencer
+                            .getAwarenessInterval(bobUserInAliceSession),
+                        payload.getActivities()));
+
+                try {
+                    Thread.sleep(sendDelay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+
+                aliceTransmitter.send(connectionID, recipient, extension);
+            }
+        };
+
+        aliceSequencer = new ActivitySequencer(sessionStubAlice,
+            slowTransmitter, aliceReceiver, null, null);
+
+        bobSequencer = new ActivitySequencer(sessionStubBob, bobTransmitter,
+            bobReceiver, null, null);
+
+        aliceSequencer.start();
+        bobSequencer.start();
+
+        User aliceUserInBobSession = new User(ALICE_JID, null, true, false, 0,
+            0);
+
+        sessionStubAlice.addUser(bobUserInAliceSession);
+        sessionStubBob.addUser(aliceUserInBobSession);
+
+        aliceSequencer.registerUser(bobUserInAliceSession);
+        bobSequencer.registerUser(aliceUserInBobSession);
+
+        IProject project = EasyMock.createNiceMock(IProject.class);
+        IPath path = EasyMock.createNiceMock(IPath.class);
+        EasyMock.replay(project, path);
+
+        SPath spath = new SPath(project, path);
+
+        List<User> recipients = Collections
+            .singletonList(bobUserInAliceSession);
+
+        int offset = 0;
+
+        // wait until the transmissions are slow enough to be throttled
+        while (aliceSequencer
+            .getAwarenessInterval(bobUserInAliceSession) <= 2 * sendDelay) {
+            aliceSequencer.sendActivity(recipients, new TextSelectionActivity(
+                aliceUser, offset++, 0, spath));
+
+            Thread.sleep(10);
+        }
+
+        // submit a NOP right after an awareness transmission started
+        int count = transmissions.size();
+
+        while (transmissions.size() == count) {
+            aliceSequencer.sendActivity(recipients, new TextSelectionActivity(
+                aliceUser, offset++, 0, spath));
+
+            Thread.sleep(10);
+        }
+
+        aliceSequencer.sendActivity(recipients, new NOPActivity(aliceUser,
+            bobUserInAliceSession, 0));
+
+        for (int i = 0; i < 20; i++) {
+            aliceSequencer.sendActivity(recipients, new TextSelectionActivity(
+                aliceUser, offset++, 0, spath));
+
+            Thread.sleep(10);
+        }
+
+        aliceSequencer.flush(bobUserInAliceSession);
+
+        boolean nopSent = false;
+
+        for (int i = 1; i < transmissions.size(); i++) {
+            Transmission previous = transmissions.get(i - 1);
+            Transmission current = transmissions.get(i);
+
+            long gap = current.start - previous.start;
+
+            if (current.isAwarenessOnly()) {
+                assertTrue("awareness information was sent " + gap
+                    + " ms after the previous transmission, the interval is "
+                    + current.awarenessInterval + " ms",
+                    gap >= current.awarenessInterval);
+            } else if (current.contains(NOPActivity.class)) {
+                assertTrue("the NOP was delayed for " + gap
+                    + " ms like awareness information, the interval is "
+                    + current.awarenessInterval + " ms",
+                    gap < current.awarenessInterval);
+
+                nopSent = true;
+            }
+        }
+
+        assertTrue("the NOP was not sent", nopSent);
+
+        assertTrue("awareness information was not coalesced",
+            transmissions.size() < offset);
+
+        List<IActivity> receivedActivities = sessionStubBob
+            .getReceivedActivities();
+
+        IActivity last = receivedActivities.get(receivedActivities.size() - 1);
+
+        assertEquals("final selection was not delivered", offset - 1,
+            ((TextSelectionActivity) last).getOffset());
+    }
 }
@@ -277,6 +277,11 @@ public class SarosSessionStub implements ISarosSession {
         throw new RuntimeException("Unexpected call to Stub");
     }
 
+    @Override
+    public void disableQueuing(IProject project) {
+        throw new RuntimeException("Unexpected call to Stub");
+    }
+
     @Override
     public void userStartedQueuing(User user) {
         throw new RuntimeException("Unexpected call to Stub");